@@ -0,0 +1,101 @@
+package org.devoware.bayesian.prototype;
+
+import java.util.List;
+import java.util.Random;
+
+import org.devoware.bayesian.prototype.expr.ProbabilityExpression;
+
+import com.google.common.collect.Lists;
+
+public class BenchmarkNetworks {
+
+  public static enum Shape {
+    CHAIN,
+    TREE,
+    POLYTREE,
+    DENSE
+  }
+
+  private static final int MAX_DENSE_PARENTS = 4;
+
+  public static Network sprinkler() {
+    Network network = new Network();
+
+    RandomVariable cloudy = network.newVariable("C", "Cloudy");
+    RandomVariable sprinkler = network.newVariable("S", "Sprinkler");
+    RandomVariable raining = network.newVariable("R", "Raining");
+    RandomVariable wetGrass = network.newVariable("W", "Wet Grass");
+
+    cloudy.addChild(sprinkler);
+    cloudy.addChild(raining);
+    sprinkler.addChild(wetGrass);
+    raining.addChild(wetGrass);
+
+    cloudy.getCpt().put("P(C)", 0.5);
+
+    sprinkler.getCpt().put("P(S|C)", 0.1);
+    sprinkler.getCpt().put("P(S|~C)", 0.5);
+
+    raining.getCpt().put("P(R|C)", 0.8);
+    raining.getCpt().put("P(R|~C)", 0.2);
+
+    wetGrass.getCpt().put("P(W|S,R)", 0.99);
+    wetGrass.getCpt().put("P(W|S,~R)", 0.9);
+    wetGrass.getCpt().put("P(W|~S,R)", 0.9);
+    wetGrass.getCpt().put("P(W|~S,~R)", 0.0);
+    return network;
+  }
+
+  // Generates a network of binary variables X0..Xn-1 whose edges all point from lower to higher
+  // indices, with CPT entries drawn from a seeded random source
+  public static Network generate(Shape shape, int size, long seed) {
+    Random random = new Random(seed);
+    Network network = new Network();
+    List<RandomVariable> vars = Lists.newArrayList();
+    for (int i = 0; i < size; i++) {
+      vars.add(network.newVariable("X" + i));
+    }
+    for (int i = 1; i < size; i++) {
+      switch (shape) {
+        case CHAIN:
+          vars.get(i - 1).addChild(vars.get(i));
+          break;
+        case TREE:
+          vars.get((i - 1) / 2).addChild(vars.get(i));
+          break;
+        case POLYTREE:
+          // Orienting the edges of a random tree at random always yields a polytree
+          RandomVariable neighbor = vars.get(random.nextInt(i));
+          if (random.nextBoolean()) {
+            neighbor.addChild(vars.get(i));
+          } else {
+            vars.get(i).addChild(neighbor);
+          }
+          break;
+        case DENSE:
+          int parents = Math.min(i, MAX_DENSE_PARENTS);
+          while (vars.get(i).getParents().size() < parents) {
+            RandomVariable parent = vars.get(random.nextInt(i));
+            if (!vars.get(i).getParents().contains(parent)) {
+              parent.addChild(vars.get(i));
+            }
+          }
+          break;
+      }
+    }
+    for (RandomVariable var : vars) {
+      List<RandomVariable> parents = Lists.newArrayList(var.getParents());
+      for (int row = 0; row < (1 << parents.size()); row++) {
+        ProbabilityExpression.Builder builder = ProbabilityExpression.builder().withHypothesis(var.getId(), true);
+        for (int j = 0; j < parents.size(); j++) {
+          builder.withEvidence(parents.get(j).getId(), (row & (1 << j)) != 0);
+        }
+        var.getCpt().put(builder.build(), 0.05 + 0.9 * random.nextDouble());
+      }
+    }
+    return network;
+  }
+
+  private BenchmarkNetworks() {}
+
+}
@@ -0,0 +1,53 @@
+package org.devoware.bayesian.prototype;
+
+import java.math.BigDecimal;
+import java.util.concurrent.TimeUnit;
+
+import org.devoware.bayesian.prototype.expr.ProbabilityExpression;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class CptLookupBenchmark {
+
+  private ConditionalProbabilityTable cpt;
+  private ProbabilityExpression expr;
+  private int row;
+
+  @Setup
+  public void setup() {
+    Network network = BenchmarkNetworks.sprinkler();
+    cpt = network.getVariable("W").getCpt();
+    expr = network.parse("P(W|S,~R)");
+    row = 1;
+  }
+
+  @Benchmark
+  public BigDecimal getDecimalFromString() {
+    return cpt.getDecimal("P(W|S,~R)");
+  }
+
+  @Benchmark
+  public BigDecimal getDecimalFromExpression() {
+    return cpt.getDecimal(expr);
+  }
+
+  @Benchmark
+  public double getProbabilityByRow() {
+    return cpt.getProbability(row, 1);
+  }
+
+}
@@ -0,0 +1,64 @@
+package org.devoware.bayesian.prototype;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+import org.devoware.bayesian.prototype.BenchmarkNetworks.Shape;
+import org.devoware.bayesian.prototype.expr.ProbabilityExpression;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+// Exact enumeration is exponential in the number of requisite variables, so it is only measured
+// on the smaller networks as a baseline for the other engines
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class EnumerationBenchmark {
+
+  @Param({"CHAIN", "TREE", "POLYTREE", "DENSE"})
+  private Shape shape;
+
+  @Param({"10", "14", "18"})
+  private int size;
+
+  @Param({"1", "4"})
+  private int parallelism;
+
+  private ForkJoinPool pool;
+  private Inferencer inferencer;
+  private ProbabilityExpression query;
+
+  @Setup
+  public void setup() {
+    Network network = BenchmarkNetworks.generate(shape, size, 42);
+    pool = parallelism == 1 ? null : new ForkJoinPool(parallelism);
+    inferencer = Inferencer.create(network.freeze(), pool);
+    query = network.parse("P(X0|X" + (size - 1) + ")");
+  }
+
+  @TearDown
+  public void tearDown() {
+    if (pool != null) {
+      pool.shutdown();
+    }
+  }
+
+  @Benchmark
+  public double enumeration() {
+    return inferencer.query(query);
+  }
+
+}
@@ -0,0 +1,96 @@
+package org.devoware.bayesian.prototype;
+
+import java.util.concurrent.TimeUnit;
+
+import org.devoware.bayesian.prototype.BenchmarkNetworks.Shape;
+import org.devoware.bayesian.prototype.expr.ProbabilityExpression;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class InferenceBenchmark {
+
+  @Param({"CHAIN", "TREE", "POLYTREE", "DENSE"})
+  private Shape shape;
+
+  @Param({"10", "20", "40", "60"})
+  private int size;
+
+  // The number of distinct sets of evidence the queries rotate through, so that each invocation
+  // propagates new evidence rather than reading the calibration the previous one left behind
+  private static final int EVIDENCE_SETS = 8;
+
+  private Network network;
+  private String[] evidenceIds;
+  private ProbabilityExpression[] queries;
+  private int next;
+  private VariableElimination variableElimination;
+  private JunctionTreeEngine junctionTree;
+
+  @Setup
+  public void setup() {
+    network = BenchmarkNetworks.generate(shape, size, 42);
+    // allMarginals measures inference, not the network's cache of query results
+    network.setQueryCacheSize(0);
+    // Querying the first variable given the last ones forces evidence to flow through the network
+    evidenceIds = new String[] {"X" + (size - 1), "X" + (size - 2), "X" + (size - 3)};
+    queries = new ProbabilityExpression[EVIDENCE_SETS];
+    for (int i = 0; i < EVIDENCE_SETS; i++) {
+      ProbabilityExpression.Builder builder = ProbabilityExpression.builder().withHypothesis("X0", true);
+      for (int j = 0; j < evidenceIds.length; j++) {
+        builder.withEvidence(evidenceIds[j], (i & (1 << j)) != 0);
+      }
+      queries[i] = builder.build();
+    }
+    variableElimination = VariableElimination.create(network);
+    junctionTree = JunctionTreeEngine.create(network);
+  }
+
+  @Benchmark
+  public double variableElimination() {
+    return variableElimination.query(nextQuery());
+  }
+
+  @Benchmark
+  public double junctionTree() {
+    return junctionTree.query(nextQuery());
+  }
+
+  @Benchmark
+  public void allMarginals(Blackhole blackhole) {
+    int set = nextSet();
+    for (int j = 0; j < evidenceIds.length; j++) {
+      network.setEvidence(evidenceIds[j], (set & (1 << j)) != 0);
+    }
+    for (RandomVariable var : network.getVariables()) {
+      blackhole.consume(var.getProbability());
+    }
+    network.clearEvidence();
+  }
+
+  private ProbabilityExpression nextQuery() {
+    return queries[nextSet()];
+  }
+
+  private int nextSet() {
+    int set = next;
+    next = (next + 1) % EVIDENCE_SETS;
+    return set;
+  }
+
+}
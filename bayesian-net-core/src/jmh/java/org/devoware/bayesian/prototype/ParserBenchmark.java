@@ -0,0 +1,41 @@
+package org.devoware.bayesian.prototype;
+
+import java.util.concurrent.TimeUnit;
+
+import org.devoware.bayesian.prototype.expr.ProbabilityExpression;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ParserBenchmark {
+
+  @Param({"P(C)", "P(W|S,~R)", "P(C,~S,R|W)"})
+  private String expression;
+
+  private Network network;
+
+  @Setup
+  public void setup() {
+    network = BenchmarkNetworks.sprinkler();
+  }
+
+  @Benchmark
+  public ProbabilityExpression parse() {
+    return network.parse(expression);
+  }
+
+}
@@ -0,0 +1,75 @@
+package org.devoware.bayesian.prototype;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.google.common.collect.ImmutableList;
+
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class SprinklerBenchmark {
+
+  @Param({"VARIABLE_ELIMINATION", "JUNCTION_TREE"})
+  private InferenceAlgorithm algorithm;
+
+  @Param({"DOUBLE", "LOG_SPACE", "DECIMAL"})
+  private NumericMode numericMode;
+
+  // With the cache on, repeated queries are answered from it whatever the algorithm and numeric
+  // mode, so these measure only cache hits
+  @Param({"false", "true"})
+  private boolean queryCache;
+
+  private static final List<String> PAIR = ImmutableList.of("P(R|W,C)", "P(S|W,C)");
+
+  private Network network;
+  private PreparedQuery prepared;
+
+  @Setup
+  public void setup() {
+    network = BenchmarkNetworks.sprinkler();
+    network.setInferenceAlgorithm(algorithm);
+    network.setNumericMode(numericMode);
+    if (!queryCache) {
+      network.setQueryCacheSize(0);
+    }
+    prepared = network.prepare("P(R|W,C)");
+  }
+
+  @Benchmark
+  public double query() {
+    return network.query("P(R|W,C)");
+  }
+
+  @Benchmark
+  public double queryPair() {
+    return network.query("P(R|W,C)") + network.query("P(S|W,C)");
+  }
+
+  @Benchmark
+  public List<Double> queryAllPair() {
+    return network.queryAll(PAIR);
+  }
+
+  @Benchmark
+  public double preparedQuery() {
+    return prepared.execute(true, true);
+  }
+
+}
@@ -1,6 +1,10 @@
+import java.util.List;
+
 import org.devoware.bayesian.prototype.Network;
 import org.devoware.bayesian.prototype.RandomVariable;
 
+import com.google.common.collect.ImmutableList;
+
 public class Main {
 
   public static void main(String[] args) {
@@ -45,8 +49,10 @@ public class Main {
 
     System.out.println("EXAMPLE 1:\n\nQ. What's the most probable immediate cause for the grass being wet when the sky is cloudy?");
 
-    double probabilityRaining = network.query("P(R|W,C)");
-    double probabilitySprinkler = network.query("P(S|W,C)");
+    // Both queries share the same evidence, so they are answered together in one pass
+    List<Double> probabilities = network.queryAll(ImmutableList.of("P(R|W,C)", "P(S|W,C)"));
+    double probabilityRaining = probabilities.get(0);
+    double probabilitySprinkler = probabilities.get(1);
 
     if (probabilityRaining > probabilitySprinkler) {
       System.out.println("A. The most probable immediate cause is that it is raining.");
@@ -61,8 +67,9 @@ public class Main {
 
     System.out.println("\nEXAMPLE 2:\n\nQ. What's the most probable immediate cause for the grass being wet when the sky is clear?");
 
-    probabilityRaining = network.query("P(R|W,~C)");
-    probabilitySprinkler = network.query("P(S|W,~C)");
+    probabilities = network.queryAll(ImmutableList.of("P(R|W,~C)", "P(S|W,~C)"));
+    probabilityRaining = probabilities.get(0);
+    probabilitySprinkler = probabilities.get(1);
 
     if (probabilityRaining > probabilitySprinkler) {
       System.out.println("A. The most probable immediate cause is that it is raining.");
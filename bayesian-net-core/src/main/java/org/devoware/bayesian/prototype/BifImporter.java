@@ -0,0 +1,204 @@
+package org.devoware.bayesian.prototype;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.util.Objects.requireNonNull;
+
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+
+import org.devoware.bayesian.prototype.ModelTokenizer.Kind;
+
+import com.google.common.collect.Lists;
+
+// Loads networks from files in the Bayesian Interchange Format (BIF 0.15), as used by the
+// published benchmark networks:
+//
+//   variable Rain {
+//     type discrete [ 2 ] { yes, no };
+//   }
+//   probability ( Rain | Cloudy ) {
+//     (yes) 0.8, 0.2;
+//     (no) 0.2, 0.8;
+//   }
+//
+// A distribution is given either row by row, each row naming the parents' states, or as a table
+// listing every entry with the last variable in the declaration varying fastest; a default row
+// may fill any rows that are not given. Properties are skipped.
+public class BifImporter {
+
+  private BifImporter() {}
+
+  public static Network read(Path path) throws IOException {
+    requireNonNull(path, "path cannot be null");
+    try (Reader reader = new InputStreamReader(Files.newInputStream(path), UTF_8)) {
+      return read(reader);
+    }
+  }
+
+  public static Network read(Reader reader) throws IOException {
+    ModelTokenizer in = new ModelTokenizer(reader, "//", true);
+    NetworkDefinition definition = new NetworkDefinition();
+    while (in.next() != Kind.EOF) {
+      if (in.isWord("network")) {
+        in.expectName();
+        in.expect('{');
+        in.skipPast('}');
+      } else if (in.isWord("variable")) {
+        readVariable(in, definition);
+      } else if (in.isWord("probability")) {
+        readProbability(in, definition);
+      } else {
+        throw in.error("expected a network, variable or probability block but found " + in.describe());
+      }
+    }
+    return definition.build();
+  }
+
+  private static void readVariable(ModelTokenizer in, NetworkDefinition definition) throws IOException {
+    String id = in.expectName();
+    List<String> states = null;
+    in.expect('{');
+    for (in.next(); !in.isSymbol('}'); in.next()) {
+      if (in.isWord("type")) {
+        in.next();
+        if (!in.isWord("discrete")) {
+          throw in.error("only discrete variables are supported but " + id + " is " + in.describe());
+        }
+        in.expect('[');
+        in.next();
+        double count = in.number();
+        in.expect(']');
+        in.expect('{');
+        states = Lists.newArrayList();
+        do {
+          states.add(in.expectName());
+          in.next();
+        } while (in.isSymbol(','));
+        if (!in.isSymbol('}')) {
+          throw in.error("expected ',' or '}' but found " + in.describe());
+        }
+        in.expect(';');
+        if (count != states.size()) {
+          throw in.error("the variable " + id + " is declared with " + (long) count + " states but " + states.size() + " are listed");
+        }
+      } else if (in.isWord("property")) {
+        in.skipPast(';');
+      } else {
+        throw in.error("expected a type or property but found " + in.describe());
+      }
+    }
+    if (states == null) {
+      throw in.error("the variable " + id + " has no type");
+    }
+    if (!definition.addVariable(id, null, states)) {
+      throw in.error("the variable " + id + " is declared twice");
+    }
+  }
+
+  private static void readProbability(ModelTokenizer in, NetworkDefinition definition) throws IOException {
+    in.expect('(');
+    String id = in.expectName();
+    List<String> states = states(in, definition, id);
+    List<String> parents = Lists.newArrayList();
+    in.next();
+    if (in.isSymbol('|')) {
+      do {
+        parents.add(in.expectName());
+        in.next();
+      } while (in.isSymbol(','));
+    }
+    if (!in.isSymbol(')')) {
+      throw in.error("expected ')' but found " + in.describe());
+    }
+    int cardinality = states.size();
+    int[] parentCards = new int[parents.size()];
+    List<List<String>> parentStates = Lists.newArrayList();
+    int rows = 1;
+    for (int i = 0; i < parents.size(); i++) {
+      parentStates.add(states(in, definition, parents.get(i)));
+      parentCards[i] = parentStates.get(i).size();
+      rows *= parentCards[i];
+    }
+
+    double[] values = new double[rows * cardinality];
+    boolean[] assigned = new boolean[rows];
+    double[] defaults = null;
+    in.expect('{');
+    for (in.next(); !in.isSymbol('}'); in.next()) {
+      if (in.isWord("table")) {
+        double[] table = readNumbers(in, values.length);
+        values = NetworkDefinition.toCptLayout(table, cardinality, parentCards, false);
+        Arrays.fill(assigned, true);
+      } else if (in.isWord("default")) {
+        defaults = readNumbers(in, cardinality);
+      } else if (in.isWord("property")) {
+        in.skipPast(';');
+      } else if (in.isSymbol('(')) {
+        // Rows number the parents' states first parent fastest, as CPTs do
+        int row = 0;
+        int radix = 1;
+        for (int i = 0; i < parents.size(); i++) {
+          String state = in.expectName();
+          int index = parentStates.get(i).indexOf(state);
+          if (index < 0) {
+            throw in.error("'" + state + "' is not a state of the variable " + parents.get(i));
+          }
+          row += radix * index;
+          radix *= parentCards[i];
+          if (i < parents.size() - 1) {
+            in.expect(',');
+          }
+        }
+        in.expect(')');
+        System.arraycopy(readNumbers(in, cardinality), 0, values, row * cardinality, cardinality);
+        assigned[row] = true;
+      } else {
+        throw in.error("expected a table, default or row of probabilities but found " + in.describe());
+      }
+    }
+    for (int row = 0; row < rows; row++) {
+      if (!assigned[row]) {
+        if (defaults == null) {
+          throw in.error("the probabilities for " + id + " do not cover every state of its parents");
+        }
+        System.arraycopy(defaults, 0, values, row * cardinality, cardinality);
+      }
+    }
+    if (!definition.setDistribution(id, parents, values)) {
+      throw in.error("the probabilities for " + id + " are given twice");
+    }
+  }
+
+  // Reads the given number of probabilities, separated by commas or whitespace, up to a ';'
+  private static double[] readNumbers(ModelTokenizer in, int count) throws IOException {
+    double[] numbers = new double[count];
+    int n = 0;
+    for (in.next(); !in.isSymbol(';'); in.next()) {
+      if (in.isSymbol(',')) {
+        continue;
+      }
+      if (n == count) {
+        throw in.error("expected " + count + " probabilities but found more");
+      }
+      numbers[n++] = in.number();
+    }
+    if (n < count) {
+      throw in.error("expected " + count + " probabilities but found " + n);
+    }
+    return numbers;
+  }
+
+  private static List<String> states(ModelTokenizer in, NetworkDefinition definition, String id) throws IOException {
+    List<String> states = definition.getStates(id);
+    if (states == null) {
+      throw in.error("the variable " + id + " is not declared");
+    }
+    return states;
+  }
+
+}
@@ -0,0 +1,41 @@
+package org.devoware.bayesian.prototype;
+
+import java.util.List;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.primitives.Doubles;
+
+// An estimate pooled from several Markov chains, with the Gelman-Rubin convergence diagnostic
+public class ChainEstimate extends Estimate {
+
+  private final List<Double> chainValues;
+  private final double potentialScaleReduction;
+
+  ChainEstimate(double value, double standardError, double confidence, long sampleCount,
+      double effectiveSampleSize, double[] chainValues, double potentialScaleReduction) {
+    super(value, standardError, confidence, sampleCount, effectiveSampleSize);
+    this.chainValues = ImmutableList.copyOf(Doubles.asList(chainValues));
+    this.potentialScaleReduction = potentialScaleReduction;
+  }
+
+  // The estimate from each chain on its own, in chain order
+  public List<Double> getChainValues() {
+    return chainValues;
+  }
+
+  // R-hat: close to 1.0 once the chains agree with one another, and NaN for a single chain
+  public double getPotentialScaleReduction() {
+    return potentialScaleReduction;
+  }
+
+  public boolean hasConverged(double threshold) {
+    return potentialScaleReduction <= threshold;
+  }
+
+  @Override
+  public String toString() {
+    return super.toString() + " [chainValues=" + chainValues + ", potentialScaleReduction="
+        + potentialScaleReduction + "]";
+  }
+
+}
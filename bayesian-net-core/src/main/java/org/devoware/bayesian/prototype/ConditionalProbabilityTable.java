@@ -4,6 +4,7 @@ import static com.google.common.base.Preconditions.checkArgument;
 import static java.util.Objects.requireNonNull;
 
 import java.math.BigDecimal;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -13,38 +14,46 @@ import org.devoware.bayesian.prototype.expr.ProbabilityExpression;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Lists;
-import com.google.common.collect.Maps;
-import com.google.common.collect.Sets;
 
 public class ConditionalProbabilityTable {
+  // How far the entries of a row may sum from 1.0, allowing for rounding in entries such as 0.1,
+  // 0.2 and 0.7
+  static final double ROW_SUM_TOLERANCE = 1e-6;
+
   private final Network network;
   private final RandomVariable var;
-  private final Set<ProbabilityExpression> expressions = Sets.newLinkedHashSet();
-  private final Map<ProbabilityExpression,BigDecimal> probabilities = Maps.newLinkedHashMap();
+  private final int cardinality;
+  private List<RandomVariable> parents = ImmutableList.of();
+  // Entry (row * cardinality + state) holds P(var = state | row). The row numbers the parents'
+  // states in mixed radix with the first parent varying fastest, so for boolean parents bit i of
+  // the row is set when the i-th parent is true; state 1 of a boolean variable stands for true.
+  private double[] values;
+  private boolean[] assigned;
+  private int assignedEntries;
+  private Set<ProbabilityExpression> expressions;
 
   public ConditionalProbabilityTable(Network network, RandomVariable var) {
     this.network = requireNonNull(network, "network cannot be null");
     this.var = requireNonNull(var, "var cannot be null");
-    ProbabilityExpression positiveExpr = network.parse(genKey(var.getId()));
-    this.expressions.add(positiveExpr);
-    ProbabilityExpression negativeExpr = network.parse(genKey("~" + var.getId()));
-    this.expressions.add(negativeExpr);
+    this.cardinality = var.getCardinality();
+    this.values = new double[cardinality];
+    this.assigned = new boolean[cardinality];
   }
-  
+
   public boolean hasAllRequiredProbabilities() {
-    if (expressions.size() != probabilities.size()) {
-      return false;
-    }
-    return true;
+    return assignedEntries == assigned.length;
   }
-  
+
   public Set<ProbabilityExpression> expressions() {
-    return ImmutableSet.copyOf(expressions);
+    if (expressions == null) {
+      expressions = generateExpressions();
+    }
+    return expressions;
   }
-  
+
   public List<ProbabilityExpression> findExpressions(ProbabilityExpressionFilter filter) {
     List<ProbabilityExpression> matches = Lists.newArrayList();
-    for (ProbabilityExpression expr : expressions) {
+    for (ProbabilityExpression expr : expressions()) {
       if (filter.filter(expr)) {
         matches.add(expr);
       }
@@ -54,29 +63,32 @@ public class ConditionalProbabilityTable {
 
   public boolean contains (ProbabilityExpression expr) {
     requireNonNull(expr, "expr cannot be null");
-    return expressions.contains(expr);
+    return indexOf(expr) >= 0;
   }
-  
+
   public boolean contains (String expr) {
     return contains(network.parse(expr));
   }
-  
+
   public Double get(ProbabilityExpression expr) {
     requireNonNull(expr, "expr cannot be null");
-    BigDecimal decimal = probabilities.get(expr);
-    if (decimal == null) {
+    int index = indexOf(expr);
+    if (index < 0 || !assigned[index]) {
       return null;
     }
-    return decimal.doubleValue();
+    return values[index];
   }
 
   public Double get(String expr) {
     return get(network.parse(expr));
   }
-  
+
   public BigDecimal getDecimal(ProbabilityExpression expr) {
-    requireNonNull(expr, "expr cannot be null");
-    return probabilities.get(expr);
+    Double value = get(expr);
+    if (value == null) {
+      return null;
+    }
+    return BigDecimal.valueOf(value);
   }
 
   public BigDecimal getDecimal(String expr) {
@@ -86,15 +98,16 @@ public class ConditionalProbabilityTable {
   public void put(ProbabilityExpression expr, double prob) {
     requireNonNull(expr, "expr cannot be null");
     checkArgument(prob >= 0.0 && prob <= 1.0, "prob must be between 0.0 and 1.0");
-    if (!expressions.contains(expr)) {
+    int index = indexOf(expr);
+    if (index < 0) {
       throw new IllegalArgumentException("The specified probability expression is not valid for this node");
     }
-    BigDecimal decimal = new BigDecimal("" + prob);
-    probabilities.put(expr, decimal);
-    boolean value = expr.getHypothesis(var.getId()); 
-    ProbabilityExpression negativeExpression = ProbabilityExpression.builder(expr).withHypothesis(var.getId(), !value).build();
-   
-    probabilities.put(negativeExpression, new BigDecimal("1.0").subtract(decimal));  
+    assign(index, prob);
+    if (cardinality == 2) {
+      // The complement is computed in decimal so that P(~X) = 1 - P(X) holds exactly as entered
+      assign(index ^ 1, BigDecimal.ONE.subtract(BigDecimal.valueOf(prob)).doubleValue());
+    }
+    network.modelChanged();
   }
 
   public void put(String expr, double prob) {
@@ -103,50 +116,159 @@ public class ConditionalProbabilityTable {
 
   @Override
   public String toString() {
-    return "ConditionalProbabilityTable [network=" + network + ", var=" + var + ", expressions="
-        + expressions + ", probabilities=" + probabilities + "]";
+    return "ConditionalProbabilityTable [network=" + network + ", var=" + var + ", parents="
+        + parents + ", values=" + Arrays.toString(values) + "]";
+  }
+
+  List<RandomVariable> getParents() {
+    return parents;
+  }
+
+  // The entries in their internal layout; the array is shared, not copied
+  double[] getValues() {
+    return values;
+  }
+
+  // Assigns every entry at once from an array in the internal layout
+  void putAll(double[] values) {
+    requireNonNull(values, "values cannot be null");
+    checkArgument(values.length == this.values.length,
+        "Expected " + this.values.length + " probabilities for variable " + var.getId() + " but received " + values.length);
+    for (double value : values) {
+      checkArgument(value >= 0.0 && value <= 1.0, "prob must be between 0.0 and 1.0");
+    }
+    String unnormalized = findUnnormalizedRow(values);
+    checkArgument(unnormalized == null, unnormalized);
+    System.arraycopy(values, 0, this.values, 0, values.length);
+    Arrays.fill(assigned, true);
+    assignedEntries = assigned.length;
+    network.modelChanged();
+  }
+
+  // Describes the first row whose entries do not sum to 1.0, or returns null if every row does.
+  // Entries put one at a time are only checked once all are assigned, since a row of more than
+  // two states passes through unnormalized values while it is being edited.
+  String findUnnormalizedRow() {
+    return hasAllRequiredProbabilities() ? findUnnormalizedRow(values) : null;
+  }
+
+  int getRowCount() {
+    return values.length / cardinality;
+  }
+
+  double getProbability(int row, int state) {
+    return values[row * cardinality + state];
+  }
+
+  Factor toFactor(Map<String, Integer> indices) {
+    int[] vars = new int[parents.size() + 1];
+    int[] cards = new int[parents.size() + 1];
+    vars[0] = indices.get(var.getId());
+    cards[0] = cardinality;
+    for (int i = 0; i < parents.size(); i++) {
+      vars[i + 1] = indices.get(parents.get(i).getId());
+      cards[i + 1] = parents.get(i).getCardinality();
+    }
+    return Factor.create(vars, cards, values.clone());
   }
 
   void handleParentAdded() {
-    expressions.clear();
-    probabilities.clear();
-    for (String permutation : generateParentPermutations(var.getParents())) {
-      ProbabilityExpression positiveExpr = network.parse(genKey(var.getId() + "|" + permutation));
-      expressions.add(positiveExpr);
-      ProbabilityExpression negativeExpr = network.parse(genKey("~" + var.getId() + "|" + permutation));
-      expressions.add(negativeExpr);
+    parents = ImmutableList.copyOf(var.getParents());
+    int size = cardinality;
+    for (RandomVariable parent : parents) {
+      size *= parent.getCardinality();
     }
+    values = new double[size];
+    assigned = new boolean[size];
+    assignedEntries = 0;
+    expressions = null;
   }
 
-  private List<String> generateParentPermutations(Set<RandomVariable> parents) {
-    List<RandomVariable> remaining = ImmutableList.copyOf(parents);
-    List<String> results = Lists.newArrayList();
-    generateParentPermutations(remaining, results, 0, "");
-    return results;
+  private void assign(int index, double prob) {
+    values[index] = prob;
+    if (!assigned[index]) {
+      assigned[index] = true;
+      assignedEntries++;
+    }
   }
 
-  private void generateParentPermutations(List<RandomVariable> parents, List<String> results,
-      int idx, String base) {
-    RandomVariable current = parents.get(idx);
-    String newBase = base;
-    if (!base.isEmpty()) {
-      newBase += ",";
+  // Resolves the expression straight to an entry, looking each term up in place
+  private int indexOf(ProbabilityExpression expr) {
+    if (expr.getHypothesisCount() != 1 || expr.getEvidenceCount() != parents.size()) {
+      return -1;
+    }
+    String hypothesis = expr.getHypothesisState(var.getId());
+    int state = hypothesis == null ? -1 : var.indexOfState(hypothesis);
+    if (state < 0) {
+      return -1;
     }
-    String perm1 = newBase + current.getId();
-    String perm2 = newBase + "~" + current.getId();
-    if (idx >= parents.size() - 1) {
-      results.add(perm1);
-      results.add(perm2);
-    } else {
-      generateParentPermutations(parents, results, idx + 1, perm1);
-      generateParentPermutations(parents, results, idx + 1, perm2);
+    int row = 0;
+    int stride = 1;
+    for (int i = 0; i < parents.size(); i++) {
+      RandomVariable parent = parents.get(i);
+      String evidence = expr.getEvidenceState(parent.getId());
+      int index = evidence == null ? -1 : parent.indexOfState(evidence);
+      if (index < 0) {
+        return -1;
+      }
+      row += index * stride;
+      stride *= parent.getCardinality();
     }
+    return row * cardinality + state;
   }
 
-  private String genKey(String id) {
-    return "P(" + id + ")";
+  private String findUnnormalizedRow(double[] values) {
+    for (int row = 0; row < getRowCount(); row++) {
+      double total = 0.0;
+      for (int state = 0; state < cardinality; state++) {
+        total += values[row * cardinality + state];
+      }
+      if (Math.abs(total - 1.0) > ROW_SUM_TOLERANCE) {
+        return "The probabilities of variable " + var.getId() + describeRow(row) + " sum to " + total + " rather than 1.0";
+      }
+    }
+    return null;
+  }
+
+  private String describeRow(int row) {
+    StringBuilder description = new StringBuilder();
+    for (RandomVariable parent : parents) {
+      description.append(description.length() == 0 ? " given " : ", ")
+          .append(parent.getId()).append('=').append(parent.getStates().get(row % parent.getCardinality()));
+      row /= parent.getCardinality();
+    }
+    return description.toString();
+  }
+
+  private Set<ProbabilityExpression> generateExpressions() {
+    ImmutableSet.Builder<ProbabilityExpression> builder = ImmutableSet.builder();
+    int k = parents.size();
+    // List the rows with the first parent varying slowest, naming true before false and the
+    // states of other variables in the order they were declared
+    int[] digits = new int[k];
+    for (int r = 0; r < getRowCount(); r++) {
+      for (int state : listingOrder(var)) {
+        ProbabilityExpression.Builder expr = ProbabilityExpression.builder()
+            .withHypothesis(var.getId(), var.getStates().get(state));
+        for (int j = 0; j < k; j++) {
+          RandomVariable parent = parents.get(j);
+          expr.withEvidence(parent.getId(), parent.getStates().get(listingOrder(parent)[digits[j]]));
+        }
+        builder.add(expr.build());
+      }
+      for (int j = k - 1; j >= 0 && ++digits[j] == parents.get(j).getCardinality(); j--) {
+        digits[j] = 0;
+      }
+    }
+    return builder.build();
+  }
+
+  private static int[] listingOrder(RandomVariable var) {
+    int[] order = new int[var.getCardinality()];
+    for (int i = 0; i < order.length; i++) {
+      order[i] = var.isBoolean() ? order.length - 1 - i : i;
+    }
+    return order;
   }
-  
- 
 
 }
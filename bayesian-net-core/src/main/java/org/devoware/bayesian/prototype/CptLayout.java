@@ -0,0 +1,125 @@
+package org.devoware.bayesian.prototype;
+
+import java.util.Arrays;
+import java.util.List;
+
+import com.google.common.collect.Lists;
+
+// Lays out every CPT of a network end to end in one array, in network order and each in its own
+// layout, so that the learners can keep the counts for all of them together and address the
+// entry of a variable's family under a joint state directly.
+class CptLayout {
+
+  private final List<RandomVariable> vars;
+  private final int[] cards;
+  private final int[] offsets;
+  private final int[][] parents;
+  // strides[v][i] is how far apart the entries of consecutive states of the i-th parent of v lie
+  private final int[][] strides;
+  private final int size;
+
+  CptLayout(Network network) {
+    this.vars = Lists.newArrayList(network.getVariables());
+    Topology topology = network.getTopology();
+    int n = vars.size();
+    this.cards = new int[n];
+    this.offsets = new int[n + 1];
+    this.parents = new int[n][];
+    this.strides = new int[n][];
+    for (int v = 0; v < n; v++) {
+      cards[v] = vars.get(v).getCardinality();
+    }
+    for (int v = 0; v < n; v++) {
+      parents[v] = new int[topology.getParentCount(v)];
+      strides[v] = new int[parents[v].length];
+      int stride = cards[v];
+      for (int i = 0; i < parents[v].length; i++) {
+        parents[v][i] = topology.getParent(v, i);
+        strides[v][i] = stride;
+        stride = Math.multiplyExact(stride, cards[parents[v][i]]);
+      }
+      offsets[v + 1] = Math.addExact(offsets[v], stride);
+    }
+    this.size = offsets[n];
+  }
+
+  List<RandomVariable> getVariables() {
+    return vars;
+  }
+
+  int getCardinality(int var) {
+    return cards[var];
+  }
+
+  int[] getParents(int var) {
+    return parents[var];
+  }
+
+  // The total number of CPT entries
+  int size() {
+    return size;
+  }
+
+  int getOffset(int var) {
+    return offsets[var];
+  }
+
+  // How far apart the entries of consecutive states of the given member of the family lie
+  int getStride(int var, int member) {
+    if (member == var) {
+      return 1;
+    }
+    for (int i = 0; i < parents[var].length; i++) {
+      if (parents[var][i] == member) {
+        return strides[var][i];
+      }
+    }
+    throw new IllegalArgumentException("Variable " + member + " is not in the family of variable " + var);
+  }
+
+  // The index of the entry of the variable's CPT for the given states of every variable
+  int indexOf(int var, int[] states) {
+    int index = offsets[var] + states[var];
+    for (int i = 0; i < parents[var].length; i++) {
+      index += states[parents[var][i]] * strides[var][i];
+    }
+    return index;
+  }
+
+  // Collects the current entries of every CPT
+  double[] getValues() {
+    double[] values = new double[size];
+    for (int v = 0; v < vars.size(); v++) {
+      double[] cpt = vars.get(v).getCpt().getValues();
+      System.arraycopy(cpt, 0, values, offsets[v], cpt.length);
+    }
+    return values;
+  }
+
+  // Estimates every CPT from counts in this layout, adding the pseudo count to each entry before
+  // normalizing its row; a row with no mass becomes uniform. The network is left unchanged.
+  double[] estimate(double[] counts, double pseudoCount) {
+    double[] values = new double[size];
+    for (int v = 0; v < vars.size(); v++) {
+      int card = cards[v];
+      for (int row = offsets[v]; row < offsets[v + 1]; row += card) {
+        double total = 0.0;
+        for (int s = 0; s < card; s++) {
+          total += counts[row + s] + pseudoCount;
+        }
+        for (int s = 0; s < card; s++) {
+          values[row + s] = total == 0.0 ? 1.0 / card : (counts[row + s] + pseudoCount) / total;
+        }
+      }
+    }
+    return values;
+  }
+
+  // Assigns every CPT from entries in this layout
+  void assign(double[] values) {
+    for (int v = 0; v < vars.size(); v++) {
+      vars.get(v).getCpt().putAll(Arrays.copyOfRange(values, offsets[v], offsets[v + 1]));
+    }
+  }
+
+}
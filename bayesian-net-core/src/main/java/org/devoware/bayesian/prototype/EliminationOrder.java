@@ -0,0 +1,185 @@
+package org.devoware.bayesian.prototype;
+
+import static java.util.Objects.requireNonNull;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.List;
+
+import com.google.common.collect.Lists;
+
+// Greedy elimination orders on the interaction graph of a set of factor scopes. The graph is held
+// as an int array of neighbors per variable index, in the order they were linked, and membership
+// tests stamp the neighbors of one variable into a shared array, so the degree and fill-in of a
+// variable cost time in the degrees of it and its neighbors only.
+class EliminationOrder {
+
+  enum Heuristic {
+    MIN_FILL,
+    MIN_DEGREE
+  }
+
+  // The first degrees[v] entries of neighbors[v] are the neighbors of v; neighbors[v] is null for
+  // a variable outside the graph or already eliminated
+  private final int[][] neighbors;
+  private final int[] degrees;
+  // marks[v] == stamp when v was marked by the current membership test
+  private final int[] marks;
+  private int stamp;
+  private final Heuristic heuristic;
+  private final List<int[]> cliques = Lists.newArrayList();
+
+  static int[] compute(List<int[]> scopes, Collection<Integer> toEliminate, Heuristic heuristic) {
+    requireNonNull(scopes, "scopes cannot be null");
+    requireNonNull(toEliminate, "toEliminate cannot be null");
+    requireNonNull(heuristic, "heuristic cannot be null");
+    BitSet remaining = new BitSet();
+    for (int var : toEliminate) {
+      remaining.set(var);
+    }
+    EliminationOrder order = new EliminationOrder(scopes, remaining.length(), heuristic);
+    return order.compute(remaining);
+  }
+
+  // Eliminates every variable of the graph formed by the given scopes and returns the clique
+  // created by each elimination step; the eliminated variable is the first entry of its clique
+  static List<int[]> triangulate(List<int[]> scopes, Heuristic heuristic) {
+    requireNonNull(scopes, "scopes cannot be null");
+    requireNonNull(heuristic, "heuristic cannot be null");
+    EliminationOrder order = new EliminationOrder(scopes, 0, heuristic);
+    BitSet remaining = new BitSet();
+    for (int var = 0; var < order.neighbors.length; var++) {
+      if (order.neighbors[var] != null) {
+        remaining.set(var);
+      }
+    }
+    order.compute(remaining);
+    return order.cliques;
+  }
+
+  private EliminationOrder(List<int[]> scopes, int minSize, Heuristic heuristic) {
+    this.heuristic = heuristic;
+    int size = minSize;
+    for (int[] scope : scopes) {
+      for (int var : scope) {
+        size = Math.max(size, var + 1);
+      }
+    }
+    this.neighbors = new int[size][];
+    this.degrees = new int[size];
+    this.marks = new int[size];
+    for (int[] scope : scopes) {
+      for (int var : scope) {
+        if (neighbors[var] == null) {
+          neighbors[var] = new int[Math.max(4, scope.length - 1)];
+        }
+        link(var, scope, scope.length);
+      }
+    }
+  }
+
+  // Eliminates the given variables, lowest index first among equally good candidates
+  private int[] compute(BitSet remaining) {
+    int[] order = new int[remaining.cardinality()];
+    for (int idx = 0; idx < order.length; idx++) {
+      int best = -1;
+      long bestPrimary = Long.MAX_VALUE;
+      long bestSecondary = Long.MAX_VALUE;
+      for (int var = remaining.nextSetBit(0); var >= 0; var = remaining.nextSetBit(var + 1)) {
+        long fill = fillEdges(var);
+        long degree = degree(var);
+        long primary = heuristic == Heuristic.MIN_FILL ? fill : degree;
+        long secondary = heuristic == Heuristic.MIN_FILL ? degree : fill;
+        if (primary < bestPrimary || (primary == bestPrimary && secondary < bestSecondary)) {
+          best = var;
+          bestPrimary = primary;
+          bestSecondary = secondary;
+        }
+      }
+      eliminate(best);
+      remaining.clear(best);
+      order[idx] = best;
+    }
+    return order;
+  }
+
+  private long degree(int var) {
+    return neighbors[var] == null ? 0 : degrees[var];
+  }
+
+  // Counts the pairs of neighbors that are not yet neighbors of each other
+  private long fillEdges(int var) {
+    int[] adjacent = neighbors[var];
+    if (adjacent == null) {
+      return 0;
+    }
+    long degree = degrees[var];
+    mark(var);
+    // Each edge among the neighbors is seen from both of its ends
+    long linked = 0;
+    for (int i = 0; i < degree; i++) {
+      int a = adjacent[i];
+      for (int j = 0; j < degrees[a]; j++) {
+        if (marks[neighbors[a][j]] == stamp) {
+          linked++;
+        }
+      }
+    }
+    return degree * (degree - 1) / 2 - linked / 2;
+  }
+
+  private void eliminate(int var) {
+    int[] adjacent = neighbors[var];
+    if (adjacent == null) {
+      return;
+    }
+    int degree = degrees[var];
+    neighbors[var] = null;
+    int[] clique = new int[degree + 1];
+    clique[0] = var;
+    System.arraycopy(adjacent, 0, clique, 1, degree);
+    cliques.add(clique);
+    for (int i = 0; i < degree; i++) {
+      int a = adjacent[i];
+      unlink(a, var);
+      link(a, adjacent, degree);
+    }
+  }
+
+  // Adds the first count variables, other than var itself, that are not yet neighbors of var
+  private void link(int var, int[] vars, int count) {
+    mark(var);
+    for (int k = 0; k < count; k++) {
+      int other = vars[k];
+      if (other != var && marks[other] != stamp) {
+        marks[other] = stamp;
+        if (degrees[var] == neighbors[var].length) {
+          neighbors[var] = Arrays.copyOf(neighbors[var], degrees[var] * 2);
+        }
+        neighbors[var][degrees[var]++] = other;
+      }
+    }
+  }
+
+  // Removes a neighbor, keeping the others in the order they were linked
+  private void unlink(int var, int other) {
+    int[] adjacent = neighbors[var];
+    for (int i = 0; i < degrees[var]; i++) {
+      if (adjacent[i] == other) {
+        System.arraycopy(adjacent, i + 1, adjacent, i, degrees[var] - i - 1);
+        degrees[var]--;
+        return;
+      }
+    }
+  }
+
+  // Starts a new membership test holding the neighbors of the variable
+  private void mark(int var) {
+    stamp++;
+    for (int i = 0; i < degrees[var]; i++) {
+      marks[neighbors[var][i]] = stamp;
+    }
+  }
+
+}
@@ -0,0 +1,146 @@
+package org.devoware.bayesian.prototype;
+
+import static java.util.Objects.requireNonNull;
+
+import java.util.List;
+import java.util.Set;
+
+import org.devoware.bayesian.prototype.EliminationOrder.Heuristic;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
+import com.google.common.primitives.Ints;
+
+// The part of a variable elimination run that depends only on which variables are queried and
+// observed: the requisite CPT factors, the elimination order and the factor schedule. Executing
+// the plan only has to reduce the factors by the evidence values and replay the schedule, and
+// since it never modifies the plan, a compiled plan can be executed from several threads at once.
+class EliminationPlan {
+
+  private final int[] queryVars;
+  private final int[] evidenceVars;
+  private final boolean logSpace;
+  private final Factor[] factors;
+  // For each factor, the positions in evidenceVars of the observed variables it contains
+  private final int[][] reductions;
+  private final int[] order;
+  // For each elimination step, the slots of the factors to multiply before summing out the
+  // variable; initial factors occupy the first slots and step i writes slot factors.length + i
+  private final int[][] steps;
+  private final int[] results;
+  // Sums the CPTs of the ancestors of the evidence to its probability, for when the requisite
+  // factors leave out some of the evidence; null when they hold all of it
+  private final EliminationPlan evidencePlan;
+
+  static EliminationPlan compile(NetworkSnapshot snapshot, int[] queryVars, int[] evidenceVars, Heuristic heuristic) {
+    requireNonNull(snapshot, "snapshot cannot be null");
+    requireNonNull(queryVars, "queryVars cannot be null");
+    requireNonNull(evidenceVars, "evidenceVars cannot be null");
+    requireNonNull(heuristic, "heuristic cannot be null");
+    int[] requisite = QueryPruner.requisiteVariables(snapshot, queryVars, evidenceVars);
+    EliminationPlan evidencePlan = null;
+    if (QueryPruner.dropsEvidence(requisite, evidenceVars)) {
+      evidencePlan = new EliminationPlan(snapshot, new int[0], evidenceVars.clone(),
+          QueryPruner.ancestors(snapshot, evidenceVars), heuristic, null);
+    }
+    return new EliminationPlan(snapshot, queryVars.clone(), evidenceVars.clone(), requisite, heuristic, evidencePlan);
+  }
+
+  private EliminationPlan(NetworkSnapshot snapshot, int[] queryVars, int[] evidenceVars, int[] requisite,
+      Heuristic heuristic, EliminationPlan evidencePlan) {
+    this.queryVars = queryVars;
+    this.evidenceVars = evidenceVars;
+    this.logSpace = snapshot.getNumericMode() == NumericMode.LOG_SPACE;
+    this.evidencePlan = evidencePlan;
+
+    this.factors = new Factor[requisite.length];
+    this.reductions = new int[requisite.length][];
+    List<int[]> scopes = Lists.newArrayList();
+    Set<Integer> hidden = Sets.newLinkedHashSet();
+    for (int f = 0; f < requisite.length; f++) {
+      Factor factor = snapshot.getFactor(requisite[f]);
+      factors[f] = factor;
+      List<Integer> observed = Lists.newArrayList();
+      List<Integer> scope = Lists.newArrayList();
+      for (int v : factor.getVariables()) {
+        int position = Ints.indexOf(evidenceVars, v);
+        if (position >= 0) {
+          observed.add(position);
+        } else {
+          scope.add(v);
+          if (!Ints.contains(queryVars, v)) {
+            hidden.add(v);
+          }
+        }
+      }
+      reductions[f] = Ints.toArray(observed);
+      scopes.add(Ints.toArray(scope));
+    }
+
+    this.order = EliminationOrder.compute(scopes, hidden, heuristic);
+    // Replay the eliminations on the scopes alone to find which factors each step consumes
+    List<Integer> live = Lists.newArrayList();
+    for (int i = 0; i < scopes.size(); i++) {
+      live.add(i);
+    }
+    this.steps = new int[order.length][];
+    for (int step = 0; step < order.length; step++) {
+      List<Integer> consumed = Lists.newArrayList();
+      Set<Integer> scope = Sets.newLinkedHashSet();
+      for (int slot : live) {
+        if (Ints.contains(scopes.get(slot), order[step])) {
+          consumed.add(slot);
+          scope.addAll(Ints.asList(scopes.get(slot)));
+        }
+      }
+      scope.remove(order[step]);
+      live.removeAll(consumed);
+      live.add(scopes.size());
+      scopes.add(Ints.toArray(scope));
+      steps[step] = Ints.toArray(consumed);
+    }
+    this.results = Ints.toArray(live);
+  }
+
+  int[] getQueryVariables() {
+    return queryVars;
+  }
+
+  int[] getEvidenceVariables() {
+    return evidenceVars;
+  }
+
+  // Returns the unnormalized joint distribution of the query variables and the evidence, where
+  // evidenceStates lines up with getEvidenceVariables(). When the evidence is impossible the
+  // returned factor has zero mass, even if the impossibility lies outside the requisite factors.
+  Factor execute(int[] evidenceStates) {
+    if (evidencePlan != null) {
+      Factor evidence = evidencePlan.execute(evidenceStates);
+      if (evidence.hasZeroMass()) {
+        return evidence;
+      }
+    }
+    Factor[] slots = new Factor[factors.length + steps.length];
+    for (int i = 0; i < factors.length; i++) {
+      Factor factor = factors[i];
+      for (int position : reductions[i]) {
+        factor = factor.reduce(evidenceVars[position], evidenceStates[position]);
+      }
+      slots[i] = factor;
+    }
+    for (int step = 0; step < steps.length; step++) {
+      Factor product = null;
+      for (int slot : steps[step]) {
+        product = (product == null) ? slots[slot] : product.product(slots[slot]);
+        slots[slot] = null;
+      }
+      slots[factors.length + step] = product.sumOut(order[step]);
+    }
+    Factor result = Factor.unit(logSpace);
+    for (int slot : results) {
+      result = result.product(slots[slot]);
+    }
+    return result;
+  }
+
+}
@@ -0,0 +1,90 @@
+package org.devoware.bayesian.prototype;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+// An approximate probability together with a confidence interval around it, as produced by the
+// sampling engines
+public class Estimate {
+
+  private final double value;
+  private final double lowerBound;
+  private final double upperBound;
+  private final double confidence;
+  private final long sampleCount;
+  private final double effectiveSampleSize;
+
+  static Estimate create(double value, double standardError, double confidence, long sampleCount,
+      double effectiveSampleSize) {
+    return new Estimate(value, standardError, confidence, sampleCount, effectiveSampleSize);
+  }
+
+  // Builds the normal-approximation interval value +/- z * standardError, clipped to [0, 1]
+  Estimate(double value, double standardError, double confidence, long sampleCount,
+      double effectiveSampleSize) {
+    double halfWidth = zScore(confidence) * standardError;
+    this.value = value;
+    this.lowerBound = Math.max(0.0, value - halfWidth);
+    this.upperBound = Math.min(1.0, value + halfWidth);
+    this.confidence = confidence;
+    this.sampleCount = sampleCount;
+    this.effectiveSampleSize = effectiveSampleSize;
+  }
+
+  public double getValue() {
+    return value;
+  }
+
+  public double getLowerBound() {
+    return lowerBound;
+  }
+
+  public double getUpperBound() {
+    return upperBound;
+  }
+
+  public double getHalfWidth() {
+    return (upperBound - lowerBound) / 2;
+  }
+
+  public double getConfidence() {
+    return confidence;
+  }
+
+  public long getSampleCount() {
+    return sampleCount;
+  }
+
+  // The number of independent, equally weighted samples that would carry the same information
+  public double getEffectiveSampleSize() {
+    return effectiveSampleSize;
+  }
+
+  @Override
+  public String toString() {
+    return getClass().getSimpleName() + " [value=" + value + ", interval=[" + lowerBound + ", " + upperBound
+        + "], confidence=" + confidence + ", sampleCount=" + sampleCount + ", effectiveSampleSize="
+        + effectiveSampleSize + "]";
+  }
+
+  // The two-sided standard normal quantile for the confidence level, using Acklam's rational
+  // approximation of the inverse normal distribution, which is accurate to about 1e-9
+  static double zScore(double confidence) {
+    checkArgument(confidence > 0.0 && confidence < 1.0, "confidence must be between 0.0 and 1.0");
+    double p = 1 - (1 - confidence) / 2;
+    double q;
+    if (p > 0.97575) {
+      q = Math.sqrt(-2 * Math.log(1 - p));
+      return -(((((-7.784894002430293e-03 * q - 3.223964580411365e-01) * q - 2.400758277161838e+00) * q
+          - 2.549732539343734e+00) * q + 4.374664141464968e+00) * q + 2.938163982698783e+00)
+          / ((((7.784695709041462e-03 * q + 3.224671290700398e-01) * q + 2.445134137142996e+00) * q
+          + 3.754408661907416e+00) * q + 1);
+    }
+    q = p - 0.5;
+    double r = q * q;
+    return (((((-3.969683028665376e+01 * r + 2.209460984245205e+02) * r - 2.759285104469687e+02) * r
+        + 1.383577518672690e+02) * r - 3.066479806614716e+01) * r + 2.506628277459239e+00) * q
+        / (((((-5.447609879822406e+01 * r + 1.615858368580409e+02) * r - 1.556989798598866e+02) * r
+        + 6.680131188771972e+01) * r - 1.328068155288572e+01) * r + 1);
+  }
+
+}
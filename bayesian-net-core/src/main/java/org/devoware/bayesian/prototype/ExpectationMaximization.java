@@ -0,0 +1,426 @@
+package org.devoware.bayesian.prototype;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.util.concurrent.Futures.getUnchecked;
+import static java.util.Objects.requireNonNull;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+import org.devoware.bayesian.prototype.JunctionTree.Calibration;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+
+// Fits every CPT of a network to data with missing values by expectation maximization. Each
+// iteration infers, for every row, the joint distribution of each variable's family given the
+// values the row does give (the E-step), adds these up as expected counts, and then estimates the
+// CPTs from the counts as ParameterLearner does from observed ones (the M-step). Iterations stop
+// once the log-likelihood of the data changes by no more than the tolerance, relative to its size,
+// or after the iteration limit. The last iteration's E-step measures the log-likelihood of the
+// parameters it ran on, and those parameters are the ones written to the network, once, when the
+// iterations stop.
+//
+// Rows that agree on every value, missing ones included, are grouped before the first iteration
+// and inferred once per iteration, weighted by their number. The E-step runs on a junction tree
+// compiled once, whose clique potentials each iteration rebuilds from the current CPTs. The tree
+// is held in log space whatever the network's numeric mode, so the probability of a row with many
+// values given cannot underflow to zero. The distinct rows are sorted so that neighbours tend to
+// share evidence, and split into fixed-size shards, each calibrating the tree for one row after
+// another so that only the messages a change of evidence affects are recomputed. Shards are
+// counted in parallel and merged in order, so the result does not depend on the parallelism. Rows
+// without missing values are counted directly, without inference.
+//
+// The search starts from the network's CPTs; any CPT that is not fully assigned starts from
+// random entries drawn with the configured seed.
+public class ExpectationMaximization {
+
+  // Marks a missing value in a row of state indices
+  public static final int MISSING = -1;
+
+  // The distinct rows inferred by one task
+  private static final int SHARD_SIZE = 1 << 10;
+
+  private final int maxIterations;
+  private final double tolerance;
+  private final double pseudoCount;
+  private final long seed;
+  private final int parallelism;
+  private final ForkJoinPool pool;
+
+  public static Builder builder() {
+    return new Builder();
+  }
+
+  private ExpectationMaximization(Builder builder) {
+    this.maxIterations = builder.maxIterations;
+    this.tolerance = builder.tolerance;
+    this.pseudoCount = builder.pseudoCount;
+    this.seed = builder.seed;
+    this.parallelism = builder.parallelism;
+    this.pool = builder.pool;
+  }
+
+  public long getSeed() {
+    return seed;
+  }
+
+  // Learns from rows giving the index of every variable's state, in the order the variables were
+  // created, or MISSING where the value is not known
+  public LearningResult learn(Network network, Iterator<int[]> rows) {
+    requireNonNull(network, "network cannot be null");
+    requireNonNull(rows, "rows cannot be null");
+    CptLayout layout = new CptLayout(network);
+    int n = layout.getVariables().size();
+    Map<Pattern, Pattern> grouped = Maps.newHashMap();
+    long rowCount = 0;
+    while (rows.hasNext()) {
+      int[] row = rows.next();
+      rowCount++;
+      checkArgument(row.length == n, "Row " + rowCount + ": Expected " + n + " states but found " + row.length);
+      for (int v = 0; v < n; v++) {
+        checkArgument(row[v] >= MISSING && row[v] < layout.getCardinality(v),
+            "Row " + rowCount + ": Variable " + layout.getVariables().get(v).getId() + " has no state " + row[v]);
+      }
+      Pattern pattern = grouped.get(new Pattern(row));
+      if (pattern == null) {
+        pattern = new Pattern(row.clone());
+        grouped.put(pattern, pattern);
+      }
+      pattern.count++;
+    }
+    checkArgument(rowCount > 0, "No rows were given");
+    List<Pattern> patterns = Lists.newArrayList(grouped.keySet());
+    Collections.sort(patterns);
+    for (Pattern pattern : patterns) {
+      // Worked out here, before the patterns are shared with the workers
+      pattern.evidence = pattern.toEvidence();
+    }
+
+    double[] parameters = initialize(layout);
+    // Compiled once for its cliques; each iteration builds the potentials of its own parameters
+    JunctionTree compiled = JunctionTree.compile(network.snapshot(), true);
+    double previous = Double.NaN;
+    for (int iteration = 1;; iteration++) {
+      Expectation expectation = expect(compiled.withCpts(toFactors(layout, parameters)), layout, parameters, patterns);
+      double logLikelihood = expectation.logLikelihood;
+      boolean converged = iteration > 1 && Math.abs(logLikelihood - previous) <= tolerance * Math.abs(logLikelihood);
+      if (converged || iteration == maxIterations) {
+        layout.assign(parameters);
+        return LearningResult.create(iteration, logLikelihood, converged, rowCount, patterns.size());
+      }
+      parameters = layout.estimate(expectation.counts, pseudoCount);
+      previous = logLikelihood;
+    }
+  }
+
+  // Returns the entries of every CPT, with random ones for each CPT that is not fully assigned
+  private double[] initialize(CptLayout layout) {
+    SplittableRandom random = new SplittableRandom(seed);
+    double[] values = layout.getValues();
+    for (int v = 0; v < layout.getVariables().size(); v++) {
+      if (layout.getVariables().get(v).getCpt().hasAllRequiredProbabilities()) {
+        continue;
+      }
+      int card = layout.getCardinality(v);
+      for (int row = layout.getOffset(v); row < layout.getOffset(v + 1); row += card) {
+        // Exponential draws, normalized, give a row uniformly distributed over the simplex
+        double total = 0.0;
+        for (int s = 0; s < card; s++) {
+          values[row + s] = -Math.log(1.0 - random.nextDouble());
+          total += values[row + s];
+        }
+        for (int s = 0; s < card; s++) {
+          values[row + s] /= total;
+        }
+      }
+    }
+    return values;
+  }
+
+  // The CPTs with the given entries, as one factor over each variable's family
+  private static Factor[] toFactors(CptLayout layout, double[] parameters) {
+    Factor[] factors = new Factor[layout.getVariables().size()];
+    for (int v = 0; v < factors.length; v++) {
+      int[] parents = layout.getParents(v);
+      int[] family = new int[parents.length + 1];
+      int[] cards = new int[parents.length + 1];
+      family[0] = v;
+      cards[0] = layout.getCardinality(v);
+      for (int i = 0; i < parents.length; i++) {
+        family[i + 1] = parents[i];
+        cards[i + 1] = layout.getCardinality(parents[i]);
+      }
+      factors[v] = Factor.create(family, cards, Arrays.copyOfRange(parameters, layout.getOffset(v), layout.getOffset(v + 1)));
+    }
+    return factors;
+  }
+
+  private Expectation expect(JunctionTree tree, CptLayout layout, double[] parameters, List<Pattern> patterns) {
+    Expectation total = new Expectation(new double[layout.size()]);
+    double[][] buffers = new double[parallelism][layout.size()];
+    for (int from = 0; from < patterns.size(); from += parallelism * SHARD_SIZE) {
+      List<Callable<Expectation>> round = Lists.newArrayList();
+      for (int p = 0; p < parallelism && from + p * SHARD_SIZE < patterns.size(); p++) {
+        int start = from + p * SHARD_SIZE;
+        List<Pattern> shard = patterns.subList(start, Math.min(start + SHARD_SIZE, patterns.size()));
+        double[] counts = buffers[p];
+        round.add(() -> {
+          Arrays.fill(counts, 0.0);
+          Expectation expectation = new Expectation(counts);
+          try {
+            expectation.add(tree, layout, parameters, shard);
+          } catch (RuntimeException e) {
+            expectation.error = e;
+          }
+          return expectation;
+        });
+      }
+      for (Expectation expectation : run(round)) {
+        // Errors are handed back rather than thrown, so that they are rethrown as they were raised
+        // rather than as the copy the pool makes when a task fails
+        if (expectation.error != null) {
+          throw expectation.error;
+        }
+        total.merge(expectation);
+      }
+    }
+    return total;
+  }
+
+  private List<Expectation> run(List<Callable<Expectation>> shards) {
+    List<Expectation> results = Lists.newArrayListWithCapacity(shards.size());
+    if (parallelism == 1) {
+      for (Callable<Expectation> shard : shards) {
+        try {
+          results.add(shard.call());
+        } catch (Exception e) {
+          throw new IllegalStateException(e);
+        }
+      }
+    } else {
+      for (Future<Expectation> shard : pool.invokeAll(shards)) {
+        results.add(getUnchecked(shard));
+      }
+    }
+    return results;
+  }
+
+  public static class Builder {
+
+    private int maxIterations = 100;
+    private double tolerance = 1e-6;
+    private double pseudoCount = 0.0;
+    private long seed = new SplittableRandom().nextLong();
+    private int parallelism = 1;
+    private ForkJoinPool pool = ForkJoinPool.commonPool();
+
+    private Builder() {}
+
+    public Builder withMaxIterations(int maxIterations) {
+      checkArgument(maxIterations >= 1, "maxIterations must be at least 1");
+      this.maxIterations = maxIterations;
+      return this;
+    }
+
+    // Stops once an iteration changes the log-likelihood by no more than this fraction of it
+    public Builder withTolerance(double tolerance) {
+      checkArgument(tolerance >= 0.0, "tolerance cannot be negative");
+      this.tolerance = tolerance;
+      return this;
+    }
+
+    // The count added to every entry before normalizing: 0 for maximum likelihood, 1 for Laplace smoothing
+    public Builder withPseudoCount(double pseudoCount) {
+      checkArgument(pseudoCount >= 0.0, "pseudoCount cannot be negative");
+      this.pseudoCount = pseudoCount;
+      return this;
+    }
+
+    public Builder withSeed(long seed) {
+      this.seed = seed;
+      return this;
+    }
+
+    public Builder withParallelism(int parallelism) {
+      checkArgument(parallelism >= 1, "parallelism must be at least 1");
+      this.parallelism = parallelism;
+      return this;
+    }
+
+    // Runs the tasks on the given pool rather than the common pool
+    public Builder withPool(ForkJoinPool pool) {
+      this.pool = requireNonNull(pool, "pool cannot be null");
+      return this;
+    }
+
+    public ExpectationMaximization build() {
+      return new ExpectationMaximization(this);
+    }
+
+  }
+
+  // A distinct row of the data and the number of times it occurs
+  private static class Pattern implements Comparable<Pattern> {
+    private final int[] states;
+    private final int hash;
+    private long count;
+    private Map<Integer, Integer> evidence;
+
+    private Pattern(int[] states) {
+      this.states = states;
+      this.hash = Arrays.hashCode(states);
+    }
+
+    private boolean isComplete() {
+      return evidence.size() == states.length;
+    }
+
+    // The values the row gives, by variable index
+    private Map<Integer, Integer> toEvidence() {
+      ImmutableMap.Builder<Integer, Integer> builder = ImmutableMap.builder();
+      for (int v = 0; v < states.length; v++) {
+        if (states[v] != MISSING) {
+          builder.put(v, states[v]);
+        }
+      }
+      return builder.build();
+    }
+
+    @Override
+    public int compareTo(Pattern other) {
+      for (int v = 0; v < states.length; v++) {
+        if (states[v] != other.states[v]) {
+          return Integer.compare(states[v], other.states[v]);
+        }
+      }
+      return 0;
+    }
+
+    @Override
+    public int hashCode() {
+      return hash;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+      return obj instanceof Pattern && Arrays.equals(states, ((Pattern) obj).states);
+    }
+
+    @Override
+    public String toString() {
+      return Arrays.toString(states);
+    }
+  }
+
+  // Expected counts in the layout of a CptLayout, with the log-likelihood of the rows counted
+  private static class Expectation {
+    private final double[] counts;
+    private double logLikelihood;
+    private RuntimeException error;
+
+    private Expectation(double[] counts) {
+      this.counts = counts;
+    }
+
+    private void merge(Expectation other) {
+      for (int i = 0; i < counts.length; i++) {
+        counts[i] += other.counts[i];
+      }
+      logLikelihood += other.logLikelihood;
+    }
+
+    private void add(JunctionTree tree, CptLayout layout, double[] parameters, List<Pattern> patterns) {
+      int n = layout.getVariables().size();
+      Calibration calibration = null;
+      for (Pattern pattern : patterns) {
+        int[] states = pattern.states;
+        double weight = pattern.count;
+        if (pattern.isComplete()) {
+          double logProbability = 0.0;
+          for (int v = 0; v < n; v++) {
+            int index = layout.indexOf(v, states);
+            counts[index] += weight;
+            logProbability += Math.log(parameters[index]);
+          }
+          logLikelihood += weight * checkPossible(logProbability, pattern);
+          continue;
+        }
+        calibration = calibration == null ? tree.calibrate(pattern.evidence) : calibration.update(pattern.evidence);
+        double mass = Double.NaN;
+        double logProbability = Double.NaN;
+        for (int v = 0; v < n; v++) {
+          if (isObserved(layout, v, states)) {
+            counts[layout.indexOf(v, states)] += weight;
+            continue;
+          }
+          int[] parents = layout.getParents(v);
+          int[] family = new int[parents.length + 1];
+          family[0] = v;
+          System.arraycopy(parents, 0, family, 1, parents.length);
+          Factor marginal = tree.marginal(family, calibration);
+          if (Double.isNaN(mass)) {
+            // Every family's joint with the evidence sums to the probability of the evidence
+            mass = marginal.sum();
+            logProbability = checkPossible(marginal.isLogSpace() ? mass : Math.log(mass), pattern);
+          }
+          addFamily(layout, v, marginal, mass, weight);
+        }
+        logLikelihood += weight * logProbability;
+      }
+    }
+
+    // Adds the family's posterior, the marginal divided by the probability of the evidence (its
+    // mass, in the marginal's numeric space), to its counts
+    private void addFamily(CptLayout layout, int var, Factor marginal, double mass, double weight) {
+      int[] vars = marginal.getVariables();
+      int[] cards = new int[vars.length];
+      int[] strides = new int[vars.length];
+      for (int j = 0; j < vars.length; j++) {
+        cards[j] = marginal.getCardinality(vars[j]);
+        strides[j] = layout.getStride(var, vars[j]);
+      }
+      double[] values = marginal.getValues();
+      int[] digits = new int[vars.length];
+      int index = layout.getOffset(var);
+      for (int k = 0; k < values.length; k++) {
+        counts[index] += weight * (marginal.isLogSpace() ? Math.exp(values[k] - mass) : values[k] / mass);
+        for (int j = 0; j < vars.length; j++) {
+          index += strides[j];
+          if (++digits[j] < cards[j]) {
+            break;
+          }
+          index -= strides[j] * cards[j];
+          digits[j] = 0;
+        }
+      }
+    }
+
+    private static boolean isObserved(CptLayout layout, int var, int[] states) {
+      if (states[var] == MISSING) {
+        return false;
+      }
+      for (int parent : layout.getParents(var)) {
+        if (states[parent] == MISSING) {
+          return false;
+        }
+      }
+      return true;
+    }
+
+    private static double checkPossible(double logProbability, Pattern pattern) {
+      checkArgument(logProbability > Double.NEGATIVE_INFINITY,
+          "The row " + pattern + " has a probability of zero under the current parameters");
+      return logProbability;
+    }
+  }
+
+}
@@ -0,0 +1,55 @@
+package org.devoware.bayesian.prototype;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static java.util.Objects.requireNonNull;
+
+import java.util.Map;
+
+import com.google.common.collect.ImmutableMap;
+
+// The most probable joint assignment of a set of variables given some evidence, as found by a
+// most-probable-explanation or maximum a posteriori query
+public class Explanation {
+
+  private final Map<String, String> assignment;
+  private final double logProbability;
+
+  static Explanation create(Map<String, String> assignment, double logProbability) {
+    requireNonNull(assignment, "assignment cannot be null");
+    return new Explanation(ImmutableMap.copyOf(assignment), logProbability);
+  }
+
+  private Explanation(Map<String, String> assignment, double logProbability) {
+    this.assignment = assignment;
+    this.logProbability = logProbability;
+  }
+
+  // The state of each explained variable, in network order
+  public Map<String, String> getAssignment() {
+    return assignment;
+  }
+
+  public String getState(String id) {
+    requireNonNull(id, "id cannot be null");
+    String state = assignment.get(id);
+    checkArgument(state != null, "The variable with an id of '" + id + "' is not part of this explanation");
+    return state;
+  }
+
+  // The probability of the assignment given the evidence
+  public double getProbability() {
+    return Math.exp(logProbability);
+  }
+
+  // The natural logarithm of getProbability(), which stays finite for large assignments whose
+  // probability underflows
+  public double getLogProbability() {
+    return logProbability;
+  }
+
+  @Override
+  public String toString() {
+    return "Explanation [assignment=" + assignment + ", probability=" + getProbability() + "]";
+  }
+
+}
@@ -0,0 +1,303 @@
+package org.devoware.bayesian.prototype;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static java.util.Objects.requireNonNull;
+
+import java.util.Arrays;
+
+class Factor {
+
+  // Values are laid out in mixed-radix order, with the first variable varying fastest
+  private final int[] vars;
+  private final int[] cards;
+  private final int[] strides;
+  private final double[] values;
+  // When set, the values hold natural logarithms of the probabilities
+  private final boolean logSpace;
+
+  static Factor create(int[] vars, int[] cards, double[] values) {
+    return create(vars, cards, values, false);
+  }
+
+  static Factor create(int[] vars, int[] cards, double[] values, boolean logSpace) {
+    requireNonNull(vars, "vars cannot be null");
+    requireNonNull(cards, "cards cannot be null");
+    requireNonNull(values, "values cannot be null");
+    checkArgument(vars.length == cards.length, "vars and cards must have the same length");
+    checkArgument(values.length == size(cards), "values does not match the size of the factor");
+    return new Factor(vars, cards, values, logSpace);
+  }
+
+  static Factor unit(boolean logSpace) {
+    return new Factor(new int[0], new int[0], new double[] {logSpace ? 0.0 : 1.0}, logSpace);
+  }
+
+  static Factor indicator(int var, int card, int state, boolean logSpace) {
+    double[] values = new double[card];
+    Arrays.fill(values, logSpace ? Double.NEGATIVE_INFINITY : 0.0);
+    values[state] = logSpace ? 0.0 : 1.0;
+    return new Factor(new int[] {var}, new int[] {card}, values, logSpace);
+  }
+
+  private Factor(int[] vars, int[] cards, double[] values, boolean logSpace) {
+    this.vars = vars;
+    this.cards = cards;
+    this.values = values;
+    this.logSpace = logSpace;
+    this.strides = new int[vars.length];
+    int stride = 1;
+    for (int i = 0; i < vars.length; i++) {
+      strides[i] = stride;
+      stride *= cards[i];
+    }
+  }
+
+  int[] getVariables() {
+    return vars;
+  }
+
+  int getCardinality(int var) {
+    return cards[position(var)];
+  }
+
+  double[] getValues() {
+    return values;
+  }
+
+  boolean isLogSpace() {
+    return logSpace;
+  }
+
+  Factor toLogSpace() {
+    if (logSpace) {
+      return this;
+    }
+    double[] result = new double[values.length];
+    for (int i = 0; i < values.length; i++) {
+      result[i] = Math.log(values[i]);
+    }
+    return new Factor(vars, cards, result, true);
+  }
+
+  boolean contains(int var) {
+    return position(var) >= 0;
+  }
+
+  double getValue(int[] vars, int[] states) {
+    int index = 0;
+    for (int i = 0; i < this.vars.length; i++) {
+      int state = -1;
+      for (int j = 0; j < vars.length; j++) {
+        if (vars[j] == this.vars[i]) {
+          state = states[j];
+          break;
+        }
+      }
+      checkArgument(state >= 0, "No state was specified for variable " + this.vars[i]);
+      index += state * strides[i];
+    }
+    return values[index];
+  }
+
+  // Returns the total mass of the factor, in the same space as its values
+  double sum() {
+    if (logSpace) {
+      return logSumExp(values);
+    }
+    double sum = 0.0;
+    for (double value : values) {
+      sum += value;
+    }
+    return sum;
+  }
+
+  boolean hasZeroMass() {
+    double sum = sum();
+    return logSpace ? sum == Double.NEGATIVE_INFINITY : sum == 0.0;
+  }
+
+  // Returns the probability of the given states once the factor is normalized
+  double normalizedValue(int[] vars, int[] states) {
+    double value = getValue(vars, states);
+    double sum = sum();
+    return logSpace ? Math.exp(value - sum) : value / sum;
+  }
+
+  Factor product(Factor other) {
+    checkArgument(logSpace == other.logSpace, "Cannot multiply factors held in different numeric spaces");
+    int[] unionVars = Arrays.copyOf(vars, vars.length + other.vars.length);
+    int[] unionCards = Arrays.copyOf(cards, cards.length + other.cards.length);
+    int n = vars.length;
+    for (int i = 0; i < other.vars.length; i++) {
+      if (!contains(other.vars[i])) {
+        unionVars[n] = other.vars[i];
+        unionCards[n] = other.cards[i];
+        n++;
+      }
+    }
+    unionVars = Arrays.copyOf(unionVars, n);
+    unionCards = Arrays.copyOf(unionCards, n);
+
+    int[] thisStrides = new int[n];
+    int[] otherStrides = new int[n];
+    for (int i = 0; i < n; i++) {
+      thisStrides[i] = strideOf(unionVars[i]);
+      otherStrides[i] = other.strideOf(unionVars[i]);
+    }
+
+    double[] result = new double[size(unionCards)];
+    int[] assignment = new int[n];
+    int j = 0, k = 0;
+    for (int i = 0; i < result.length; i++) {
+      result[i] = logSpace ? values[j] + other.values[k] : values[j] * other.values[k];
+      for (int l = 0; l < n; l++) {
+        assignment[l]++;
+        if (assignment[l] == unionCards[l]) {
+          assignment[l] = 0;
+          j -= (unionCards[l] - 1) * thisStrides[l];
+          k -= (unionCards[l] - 1) * otherStrides[l];
+        } else {
+          j += thisStrides[l];
+          k += otherStrides[l];
+          break;
+        }
+      }
+    }
+    return new Factor(unionVars, unionCards, result, logSpace);
+  }
+
+  Factor sumOut(int var) {
+    int p = position(var);
+    if (p < 0) {
+      return this;
+    }
+    int stride = strides[p];
+    int block = stride * cards[p];
+    double[] result = new double[values.length / cards[p]];
+    if (logSpace) {
+      // log-sum-exp, shifting each group by its maximum so that small terms do not underflow
+      double[] max = new double[result.length];
+      Arrays.fill(max, Double.NEGATIVE_INFINITY);
+      for (int i = 0; i < values.length; i++) {
+        int o = (i % stride) + (i / block) * stride;
+        max[o] = Math.max(max[o], values[i]);
+      }
+      for (int i = 0; i < values.length; i++) {
+        int o = (i % stride) + (i / block) * stride;
+        if (max[o] != Double.NEGATIVE_INFINITY) {
+          result[o] += Math.exp(values[i] - max[o]);
+        }
+      }
+      for (int o = 0; o < result.length; o++) {
+        result[o] = max[o] == Double.NEGATIVE_INFINITY ? max[o] : max[o] + Math.log(result[o]);
+      }
+    } else {
+      for (int i = 0; i < values.length; i++) {
+        result[(i % stride) + (i / block) * stride] += values[i];
+      }
+    }
+    return new Factor(remove(vars, p), remove(cards, p), result, logSpace);
+  }
+
+  // Maximizes the variable out of the factor, which is the same in either numeric space
+  Factor maxOut(int var) {
+    int p = position(var);
+    if (p < 0) {
+      return this;
+    }
+    int stride = strides[p];
+    int block = stride * cards[p];
+    double[] result = new double[values.length / cards[p]];
+    Arrays.fill(result, Double.NEGATIVE_INFINITY);
+    for (int i = 0; i < values.length; i++) {
+      int o = (i % stride) + (i / block) * stride;
+      result[o] = Math.max(result[o], values[i]);
+    }
+    return new Factor(remove(vars, p), remove(cards, p), result, logSpace);
+  }
+
+  // Returns the state of the variable with the largest value given the states of the factor's
+  // other variables, which are looked up by variable index; ties go to the lowest state
+  int maximizingState(int var, int[] states) {
+    int p = position(var);
+    checkArgument(p >= 0, "The factor does not contain variable " + var);
+    int base = 0;
+    for (int i = 0; i < vars.length; i++) {
+      if (i != p) {
+        base += states[vars[i]] * strides[i];
+      }
+    }
+    int best = 0;
+    for (int state = 1; state < cards[p]; state++) {
+      if (values[base + state * strides[p]] > values[base + best * strides[p]]) {
+        best = state;
+      }
+    }
+    return best;
+  }
+
+  Factor reduce(int var, int state) {
+    int p = position(var);
+    if (p < 0) {
+      return this;
+    }
+    checkArgument(state >= 0 && state < cards[p], "state is out of range for variable " + var);
+    int stride = strides[p];
+    int block = stride * cards[p];
+    double[] result = new double[values.length / cards[p]];
+    for (int o = 0; o < result.length; o++) {
+      result[o] = values[(o % stride) + state * stride + (o / stride) * block];
+    }
+    return new Factor(remove(vars, p), remove(cards, p), result, logSpace);
+  }
+
+  @Override
+  public String toString() {
+    return "Factor [vars=" + Arrays.toString(vars) + ", cards=" + Arrays.toString(cards)
+        + ", values=" + Arrays.toString(values) + ", logSpace=" + logSpace + "]";
+  }
+
+  private int position(int var) {
+    for (int i = 0; i < vars.length; i++) {
+      if (vars[i] == var) {
+        return i;
+      }
+    }
+    return -1;
+  }
+
+  private int strideOf(int var) {
+    int p = position(var);
+    return p < 0 ? 0 : strides[p];
+  }
+
+  private static double logSumExp(double[] values) {
+    double max = Double.NEGATIVE_INFINITY;
+    for (double value : values) {
+      max = Math.max(max, value);
+    }
+    if (max == Double.NEGATIVE_INFINITY) {
+      return max;
+    }
+    double sum = 0.0;
+    for (double value : values) {
+      sum += Math.exp(value - max);
+    }
+    return max + Math.log(sum);
+  }
+
+  private static int[] remove(int[] array, int p) {
+    int[] result = new int[array.length - 1];
+    System.arraycopy(array, 0, result, 0, p);
+    System.arraycopy(array, p + 1, result, p, array.length - p - 1);
+    return result;
+  }
+
+  private static int size(int[] cards) {
+    int size = 1;
+    for (int card : cards) {
+      size *= card;
+    }
+    return size;
+  }
+}
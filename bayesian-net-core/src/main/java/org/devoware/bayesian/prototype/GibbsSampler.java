@@ -0,0 +1,360 @@
+package org.devoware.bayesian.prototype;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.util.concurrent.Futures.getUnchecked;
+import static java.util.Objects.requireNonNull;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+import org.devoware.bayesian.prototype.expr.ProbabilityExpression;
+
+import com.google.common.collect.Lists;
+import com.google.common.primitives.Ints;
+
+// Approximate inference by Gibbs sampling. Each sweep resamples every unobserved requisite
+// variable from its distribution given its Markov blanket: its own CPT row times the CPT entries
+// of its requisite children, whose other parents are the co-parents. Because the evidence is
+// clamped rather than weighted, unlikely evidence on the leaves costs no more than likely evidence.
+//
+// Several chains run independently, one task per chain on the configured pool, each from its own
+// generator split in turn off a generator seeded with the configured seed, so a seed reproduces
+// the same estimate. Each chain starts from a state consistent with the evidence; evidence for
+// which none is found is rejected, as likelihood weighting rejects evidence no sample satisfies. After
+// the burn-in, every thinning-th sweep is recorded. The chains are pooled for the estimate and
+// compared with one another for the Gelman-Rubin R-hat; the standard error comes from batch means
+// within each chain, which accounts for the autocorrelation of successive sweeps. Deterministic
+// CPT entries can split the state space into regions a chain never leaves, which R-hat exposes.
+public class GibbsSampler {
+
+  // Draws are recorded in about this many consecutive batches per chain to estimate the standard error
+  private static final int BATCHES_PER_CHAIN = 20;
+  // Forward samples, and then sweeps, tried per chain for a starting state that has a nonzero probability
+  private static final int INITIALIZATION_ATTEMPTS = 1000;
+
+  private final int chains;
+  private final int burnIn;
+  private final int samples;
+  private final int thinning;
+  private final double confidence;
+  private final long seed;
+  private final ForkJoinPool pool;
+
+  public static Builder builder() {
+    return new Builder();
+  }
+
+  private GibbsSampler(Builder builder) {
+    this.chains = builder.chains;
+    this.burnIn = builder.burnIn;
+    this.samples = builder.samples;
+    this.thinning = builder.thinning;
+    this.confidence = builder.confidence;
+    this.seed = builder.seed;
+    this.pool = builder.pool;
+  }
+
+  public long getSeed() {
+    return seed;
+  }
+
+  public ChainEstimate estimate(Network network, String expression) {
+    requireNonNull(network, "network cannot be null");
+    return estimate(network.freeze(), expression);
+  }
+
+  public ChainEstimate estimate(NetworkSnapshot snapshot, String expression) {
+    requireNonNull(snapshot, "snapshot cannot be null");
+    return estimate(snapshot, snapshot.parse(expression));
+  }
+
+  public ChainEstimate estimate(NetworkSnapshot snapshot, ProbabilityExpression expr) {
+    requireNonNull(snapshot, "snapshot cannot be null");
+    requireNonNull(expr, "expr cannot be null");
+    snapshot.checkComplete();
+    if (expr.hasTermDisagreemets()) {
+      return exact(0.0);
+    }
+    if (expr.getEvidenceStates().keySet().containsAll(expr.getHypothesisStates().keySet())) {
+      return exact(1.0);
+    }
+    MarkovBlankets blankets = new MarkovBlankets(SampledQuery.create(snapshot, expr));
+    SplittableRandom seeds = new SplittableRandom(seed);
+    List<Callable<double[]>> tasks = Lists.newArrayList();
+    for (int c = 0; c < chains; c++) {
+      SplittableRandom random = seeds.split();
+      // Starting states are drawn here, so that evidence no sample satisfies is reported on the
+      // calling thread
+      int[] states = blankets.initialState(random);
+      if (states == null) {
+        throw new IllegalStateException("No state consistent with the evidence specified in " + expr
+            + " was found in " + INITIALIZATION_ATTEMPTS + " forward samples and as many sweeps");
+      }
+      tasks.add(() -> blankets.run(states, random));
+    }
+    List<double[]> draws = Lists.newArrayList();
+    for (Future<double[]> chain : pool.invokeAll(tasks)) {
+      draws.add(getUnchecked(chain));
+    }
+    return summarize(draws);
+  }
+
+  private ChainEstimate exact(double value) {
+    double[] chainValues = new double[chains];
+    Arrays.fill(chainValues, value);
+    return new ChainEstimate(value, 0.0, confidence, 0, 0, chainValues, 1.0);
+  }
+
+  // Pools the recorded indicators of each chain into the estimate, its batch-means standard error
+  // and the potential scale reduction
+  private ChainEstimate summarize(List<double[]> draws) {
+    int m = draws.size();
+    int n = draws.get(0).length;
+    double[] means = new double[m];
+    double within = 0.0;
+    double asymptoticVariance = 0.0;
+    int batchSize = Math.max(1, n / BATCHES_PER_CHAIN);
+    int batches = n / batchSize;
+    for (int c = 0; c < m; c++) {
+      double[] chain = draws.get(c);
+      double sum = 0.0;
+      for (double draw : chain) {
+        sum += draw;
+      }
+      means[c] = sum / n;
+      within += n > 1 ? means[c] * (1 - means[c]) * n / (n - 1) : 0.0;
+      double batchVariance = 0.0;
+      for (int b = 0; b < batches; b++) {
+        double batchSum = 0.0;
+        for (int i = b * batchSize; i < (b + 1) * batchSize; i++) {
+          batchSum += chain[i];
+        }
+        double deviation = batchSum / batchSize - means[c];
+        batchVariance += deviation * deviation;
+      }
+      asymptoticVariance += batches > 1 ? batchSize * batchVariance / (batches - 1) : 0.0;
+    }
+    within /= m;
+    asymptoticVariance /= m;
+    double value = 0.0;
+    for (double mean : means) {
+      value += mean;
+    }
+    value /= m;
+    long count = (long) m * n;
+    double standardError = Math.sqrt(asymptoticVariance / count);
+    double variance = value * (1 - value);
+    double effectiveSampleSize = asymptoticVariance > 0.0 ? Math.min(count, count * variance / asymptoticVariance) : count;
+    return new ChainEstimate(value, standardError, confidence, count, effectiveSampleSize, means,
+        potentialScaleReduction(means, within, n));
+  }
+
+  private static double potentialScaleReduction(double[] means, double within, int n) {
+    int m = means.length;
+    if (m < 2 || n < 2) {
+      return Double.NaN;
+    }
+    double grandMean = 0.0;
+    for (double mean : means) {
+      grandMean += mean;
+    }
+    grandMean /= m;
+    double between = 0.0;
+    for (double mean : means) {
+      between += (mean - grandMean) * (mean - grandMean);
+    }
+    between *= (double) n / (m - 1);
+    if (within == 0.0) {
+      return between == 0.0 ? 1.0 : Double.POSITIVE_INFINITY;
+    }
+    double pooled = (n - 1) * within / n + between / n;
+    return Math.sqrt(pooled / within);
+  }
+
+  public static class Builder {
+
+    private int chains = 4;
+    private int burnIn = 1000;
+    private int samples = 10000;
+    private int thinning = 1;
+    private double confidence = 0.95;
+    private long seed = new SplittableRandom().nextLong();
+    private ForkJoinPool pool = ForkJoinPool.commonPool();
+
+    private Builder() {}
+
+    // Runs this many independent chains, each as a task of its own
+    public Builder withChains(int chains) {
+      checkArgument(chains >= 1, "chains must be at least 1");
+      this.chains = chains;
+      return this;
+    }
+
+    // Discards this many sweeps at the start of every chain
+    public Builder withBurnIn(int burnIn) {
+      checkArgument(burnIn >= 0, "burnIn cannot be negative");
+      this.burnIn = burnIn;
+      return this;
+    }
+
+    // Records this many draws in every chain after the burn-in
+    public Builder withSamples(int samples) {
+      checkArgument(samples >= 1, "samples must be at least 1");
+      this.samples = samples;
+      return this;
+    }
+
+    // Records only every thinning-th sweep
+    public Builder withThinning(int thinning) {
+      checkArgument(thinning >= 1, "thinning must be at least 1");
+      this.thinning = thinning;
+      return this;
+    }
+
+    public Builder withConfidence(double confidence) {
+      checkArgument(confidence > 0.0 && confidence < 1.0, "confidence must be between 0.0 and 1.0");
+      this.confidence = confidence;
+      return this;
+    }
+
+    public Builder withSeed(long seed) {
+      this.seed = seed;
+      return this;
+    }
+
+    // Runs the chains on the given pool rather than the common pool
+    public Builder withPool(ForkJoinPool pool) {
+      this.pool = requireNonNull(pool, "pool cannot be null");
+      return this;
+    }
+
+    public GibbsSampler build() {
+      return new GibbsSampler(this);
+    }
+
+  }
+
+  // The unobserved requisite variables with the requisite children whose CPTs make up the rest of
+  // their Markov blankets
+  private class MarkovBlankets {
+    private final SampledQuery query;
+    private final NetworkSnapshot snapshot;
+    private final int[] sampled;
+    private final int[][] children;
+    private final int maxCardinality;
+
+    private MarkovBlankets(SampledQuery query) {
+      this.query = query;
+      this.snapshot = query.getSnapshot();
+      int[] order = query.getOrder();
+      boolean[] requisite = new boolean[snapshot.size()];
+      for (int var : order) {
+        requisite[var] = true;
+      }
+      List<Integer> sampled = Lists.newArrayList();
+      List<int[]> children = Lists.newArrayList();
+      int maxCardinality = 0;
+      for (int var : order) {
+        if (query.isObserved(var)) {
+          continue;
+        }
+        sampled.add(var);
+        maxCardinality = Math.max(maxCardinality, snapshot.getCardinality(var));
+        children.add(Arrays.stream(snapshot.getChildren(var)).filter(c -> requisite[c]).toArray());
+      }
+      this.sampled = Ints.toArray(sampled);
+      this.children = children.toArray(new int[children.size()][]);
+      this.maxCardinality = maxCardinality;
+    }
+
+    // Runs one chain from the given state, returning 1.0 for each recorded draw that satisfies
+    // the hypotheses and 0.0 for each that does not
+    private double[] run(int[] states, SplittableRandom random) {
+      // The unnormalized conditional probabilities of the states of the variable being resampled
+      double[] weights = new double[maxCardinality];
+      double[] draws = new double[samples];
+      for (int sweep = 0; sweep < burnIn; sweep++) {
+        sweep(states, weights, random);
+      }
+      for (int d = 0; d < samples; d++) {
+        for (int t = 0; t < thinning; t++) {
+          sweep(states, weights, random);
+        }
+        draws[d] = query.matchesHypotheses(states) ? 1.0 : 0.0;
+      }
+      return draws;
+    }
+
+    // Forward samples a starting state the evidence does not rule out. Should every sample be ruled
+    // out, as happens when the evidence is merely unlikely, sweeps from the last one look for such a
+    // state instead; null means neither found one.
+    private int[] initialState(SplittableRandom random) {
+      int[] states = query.newAssignment();
+      for (int attempt = 0; attempt < INITIALIZATION_ATTEMPTS; attempt++) {
+        for (int var : query.getOrder()) {
+          if (!query.isObserved(var)) {
+            states[var] = query.sample(var, states, random.nextDouble());
+          }
+        }
+        if (joint(states) > 0.0) {
+          return states;
+        }
+      }
+      double[] weights = new double[maxCardinality];
+      for (int attempt = 0; attempt < INITIALIZATION_ATTEMPTS; attempt++) {
+        sweep(states, weights, random);
+        if (joint(states) > 0.0) {
+          return states;
+        }
+      }
+      return null;
+    }
+
+    // The unnormalized probability of a joint state of the requisite variables
+    private double joint(int[] states) {
+      double product = 1.0;
+      for (int var : query.getOrder()) {
+        product *= query.probability(var, states);
+      }
+      return product;
+    }
+
+    private void sweep(int[] states, double[] weights, SplittableRandom random) {
+      for (int k = 0; k < sampled.length; k++) {
+        int var = sampled[k];
+        int card = snapshot.getCardinality(var);
+        double total = 0.0;
+        for (int state = 0; state < card; state++) {
+          states[var] = state;
+          weights[state] = blanket(var, k, states);
+          total += weights[state];
+        }
+        // Every state is ruled out only off the support, where any state will do; a chain only
+        // starts there while looking for the support
+        double u = random.nextDouble() * total;
+        int state = total > 0.0 ? 0 : random.nextInt(card);
+        if (total > 0.0) {
+          double cumulative = weights[0];
+          while (state < card - 1 && u >= cumulative) {
+            cumulative += weights[++state];
+          }
+        }
+        states[var] = state;
+      }
+    }
+
+    // The unnormalized probability of the variable's current state given its Markov blanket
+    private double blanket(int var, int k, int[] states) {
+      double product = query.probability(var, states);
+      for (int child : children[k]) {
+        product *= query.probability(child, states);
+      }
+      return product;
+    }
+  }
+
+}
@@ -0,0 +1,170 @@
+package org.devoware.bayesian.prototype;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.util.Objects.requireNonNull;
+
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import org.devoware.bayesian.prototype.ModelTokenizer.Kind;
+
+import com.google.common.collect.Lists;
+
+// Loads networks from files in the Hugin .net format, restricted to discrete chance nodes:
+//
+//   node Rain {
+//     label = "Raining";
+//     states = ("yes" "no");
+//   }
+//   potential ( Rain | Cloudy ) {
+//     data = (( 0.8 0.2 ) ( 0.2 0.8 ));
+//   }
+//
+// The data of a potential lists every entry with the child's states varying fastest and then the
+// parents', last parent fastest; its parentheses only group the entries and are not checked.
+// Attributes other than labels, states and data are skipped.
+public class HuginImporter {
+
+  private HuginImporter() {}
+
+  public static Network read(Path path) throws IOException {
+    requireNonNull(path, "path cannot be null");
+    try (Reader reader = new InputStreamReader(Files.newInputStream(path), UTF_8)) {
+      return read(reader);
+    }
+  }
+
+  public static Network read(Reader reader) throws IOException {
+    ModelTokenizer in = new ModelTokenizer(reader, "%", false);
+    NetworkDefinition definition = new NetworkDefinition();
+    while (in.next() != Kind.EOF) {
+      if (in.isWord("net")) {
+        in.expect('{');
+        in.skipPast('}');
+      } else if (in.isWord("node")) {
+        readNode(in, definition);
+      } else if (in.isWord("discrete")) {
+        in.next();
+        if (!in.isWord("node")) {
+          throw in.error("only discrete chance nodes are supported but found discrete " + in.describe());
+        }
+        readNode(in, definition);
+      } else if (in.isWord("potential")) {
+        readPotential(in, definition);
+      } else {
+        throw in.error("only discrete chance nodes are supported but found " + in.describe());
+      }
+    }
+    return definition.build();
+  }
+
+  private static void readNode(ModelTokenizer in, NetworkDefinition definition) throws IOException {
+    String id = in.expectName();
+    String label = null;
+    List<String> states = null;
+    in.expect('{');
+    for (in.next(); !in.isSymbol('}'); in.next()) {
+      if (in.kind() != Kind.WORD) {
+        throw in.error("expected an attribute but found " + in.describe());
+      }
+      if (in.isWord("states")) {
+        in.expect('=');
+        in.expect('(');
+        states = Lists.newArrayList();
+        for (in.next(); !in.isSymbol(')'); in.next()) {
+          if (in.kind() != Kind.STRING && in.kind() != Kind.WORD) {
+            throw in.error("expected a state but found " + in.describe());
+          }
+          states.add(in.text());
+        }
+        in.expect(';');
+      } else if (in.isWord("label")) {
+        in.expect('=');
+        label = in.expectName();
+        in.expect(';');
+      } else {
+        in.skipPast(';');
+      }
+    }
+    if (states == null) {
+      throw in.error("the node " + id + " has no states");
+    }
+    if (!definition.addVariable(id, label == null || label.isEmpty() ? null : label, states)) {
+      throw in.error("the node " + id + " is declared twice");
+    }
+  }
+
+  private static void readPotential(ModelTokenizer in, NetworkDefinition definition) throws IOException {
+    in.expect('(');
+    String id = in.expectName();
+    List<String> states = states(in, definition, id);
+    List<String> parents = Lists.newArrayList();
+    in.next();
+    if (in.isSymbol('|')) {
+      for (in.next(); in.kind() == Kind.WORD; in.next()) {
+        parents.add(in.text());
+      }
+    }
+    if (!in.isSymbol(')')) {
+      throw in.error("expected ')' but found " + in.describe());
+    }
+    int cardinality = states.size();
+    int[] parentCards = new int[parents.size()];
+    int size = cardinality;
+    for (int i = 0; i < parents.size(); i++) {
+      parentCards[i] = states(in, definition, parents.get(i)).size();
+      size *= parentCards[i];
+    }
+
+    double[] data = null;
+    in.expect('{');
+    for (in.next(); !in.isSymbol('}'); in.next()) {
+      if (in.isWord("data")) {
+        in.expect('=');
+        data = readData(in, size);
+      } else if (in.kind() == Kind.WORD) {
+        in.skipPast(';');
+      } else {
+        throw in.error("expected an attribute but found " + in.describe());
+      }
+    }
+    if (data == null) {
+      throw in.error("the potential for " + id + " has no data");
+    }
+    if (!definition.setDistribution(id, parents, NetworkDefinition.toCptLayout(data, cardinality, parentCards, true))) {
+      throw in.error("the potential for " + id + " is given twice");
+    }
+  }
+
+  // Reads the given number of entries up to a ';', ignoring the parentheses that group them
+  private static double[] readData(ModelTokenizer in, int count) throws IOException {
+    double[] numbers = new double[count];
+    int n = 0;
+    for (in.next(); !in.isSymbol(';'); in.next()) {
+      if (in.isSymbol('(') || in.isSymbol(')')) {
+        continue;
+      }
+      if (n == count) {
+        throw in.error("expected " + count + " entries but found more");
+      }
+      numbers[n++] = in.number();
+    }
+    if (n < count) {
+      throw in.error("expected " + count + " entries but found " + n);
+    }
+    return numbers;
+  }
+
+  private static List<String> states(ModelTokenizer in, NetworkDefinition definition, String id) throws IOException {
+    List<String> states = definition.getStates(id);
+    if (states == null) {
+      throw in.error("the node " + id + " is not declared");
+    }
+    return states;
+  }
+
+}
@@ -0,0 +1,8 @@
+package org.devoware.bayesian.prototype;
+
+public enum InferenceAlgorithm {
+  VARIABLE_ELIMINATION,
+  JUNCTION_TREE,
+  // Approximate; configured with Network.setBeliefPropagation
+  LOOPY_BELIEF_PROPAGATION
+}
@@ -0,0 +1,9 @@
+package org.devoware.bayesian.prototype;
+
+import org.devoware.bayesian.prototype.expr.ProbabilityExpression;
+
+interface InferenceEngine {
+
+  double query(ProbabilityExpression expr);
+
+}
@@ -1,170 +1,269 @@
 package org.devoware.bayesian.prototype;
 
+import static com.google.common.base.Preconditions.checkState;
+import static java.util.Objects.requireNonNull;
+
 import java.math.BigDecimal;
 import java.math.MathContext;
-import java.math.RoundingMode;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
-import java.util.Optional;
 import java.util.Set;
-import java.util.stream.Collectors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
 
 import org.devoware.bayesian.prototype.expr.ProbabilityExpression;
 
 import com.google.common.collect.Lists;
-import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import com.google.common.primitives.Ints;
+
+// Exact inference by enumerating every joint assignment of the requisite variables, summed in
+// decimal arithmetic. Sums and products of decimals are exact, so the result does not depend on
+// the order in which assignments are added up, whether sequentially or across parallel tasks.
+class Inferencer implements InferenceEngine {
 
-class Inferencer {
-  
-  private final Network network;
+  // Ranges of at most this many assignments are summed directly rather than split further
+  private static final long SEQUENTIAL_THRESHOLD = 1 << 12;
+
+  private final NetworkSnapshot snapshot;
+  // Shares the enumeration out across its threads, or null to enumerate on the calling thread
+  private final ForkJoinPool pool;
 
   static Inferencer create(Network network) {
-    return new Inferencer(network);
+    requireNonNull(network, "network cannot be null");
+    return create(network.snapshot());
   }
-  
-  private Inferencer(Network network) {
-    this.network = network;
+
+  static Inferencer create(NetworkSnapshot snapshot) {
+    requireNonNull(snapshot, "snapshot cannot be null");
+    return create(snapshot, snapshot.getEnumerationPool());
   }
-  
+
+  static Inferencer create(NetworkSnapshot snapshot, ForkJoinPool pool) {
+    return new Inferencer(snapshot, pool);
+  }
+
+  private Inferencer(NetworkSnapshot snapshot, ForkJoinPool pool) {
+    this.snapshot = requireNonNull(snapshot, "snapshot cannot be null");
+    this.pool = pool;
+  }
+
   double query (String expression) {
-    ProbabilityExpression expr = network.parse(expression);
+    return query(snapshot.parse(expression));
+  }
+
+  @Override
+  public double query (ProbabilityExpression expr) {
     if (expr.hasTermDisagreemets()) {
       return 0.0;
     }
-    ProbabilityExpressionFilter numeratorFilter = generateNumeratorFilter(expr);
-    List<ProbabilityExpressionFilter> numeratorFilters = generateJointProbabilityFilters(numeratorFilter);
-    BigDecimal result = compute(numeratorFilters);
-    Optional<ProbabilityExpressionFilter> denominatorFilter = generateDenominatorFilter(expr);
-    if (denominatorFilter.isPresent()) {
-      List<ProbabilityExpressionFilter> denominatorFilters = generateJointProbabilityFilters(denominatorFilter.get());
-      BigDecimal denominator = compute(denominatorFilters);
-      result = result.divide(denominator, new MathContext(5, RoundingMode.HALF_UP));
+    Map<String, String> evidence = expr.getEvidenceStates();
+    if (evidence.keySet().containsAll(expr.getHypothesisStates().keySet())) {
+      // Every hypothesis repeats a piece of evidence, so it is known to hold
+      return 1.0;
     }
-    return result.doubleValue();
-  }
-
-  private ProbabilityExpressionFilter generateNumeratorFilter(ProbabilityExpression expr) {
-    ProbabilityExpressionFilter.Builder builder = ProbabilityExpressionFilter.builder();
-    for (Entry<String, Boolean> entry : expr.getHypothesesMap().entrySet()) {
-      builder.withHypothesis(entry.getKey(), entry.getValue());
+    int[] evidenceVars = toIndices(evidence.keySet());
+    int[] requisite = QueryPruner.requisiteVariables(snapshot, toIndices(expr.getHypothesisStates().keySet()), evidenceVars);
+    if (QueryPruner.dropsEvidence(requisite, evidenceVars)) {
+      // The pruned variables hold evidence whose probability has to be checked on its own
+      Enumeration check = new Enumeration(QueryPruner.ancestors(snapshot, evidenceVars));
+      for (Entry<String, String> entry : evidence.entrySet()) {
+        int var = snapshot.indexOf(entry.getKey());
+        check.fix(var, snapshot.stateIndex(var, entry.getValue()));
+      }
+      if (check.sum()[1].signum() == 0) {
+        throw new IllegalArgumentException("The evidence specified in " + expr + " has a probability of zero");
+      }
     }
-    for (Entry<String, Boolean> entry : expr.getEvidenceMap().entrySet()) {
-      builder.withHypothesis(entry.getKey(), entry.getValue());
+    Enumeration enumeration = new Enumeration(requisite);
+    for (Entry<String, String> entry : evidence.entrySet()) {
+      int var = snapshot.indexOf(entry.getKey());
+      enumeration.fix(var, snapshot.stateIndex(var, entry.getValue()));
     }
-    return builder.build();
-  }
-
-  private Optional<ProbabilityExpressionFilter> generateDenominatorFilter(ProbabilityExpression expr) {
+    for (Entry<String, String> entry : expr.getHypothesisStates().entrySet()) {
+      int var = snapshot.indexOf(entry.getKey());
+      int state = snapshot.stateIndex(var, entry.getValue());
+      if (!expr.hasEvidence()) {
+        // Without evidence there is no denominator, so only the matching assignments are needed
+        enumeration.fix(var, state);
+      } else if (!evidence.containsKey(entry.getKey())) {
+        enumeration.target(var, state);
+      }
+    }
+    BigDecimal[] sums = enumeration.sum();
     if (!expr.hasEvidence()) {
-      return Optional.empty();
+      return sums[0].doubleValue();
     }
-    ProbabilityExpressionFilter.Builder builder = ProbabilityExpressionFilter.builder();
-    for (Entry<String, Boolean> entry : expr.getEvidenceMap().entrySet()) {
-      builder.withHypothesis(entry.getKey(), entry.getValue());
+    if (sums[1].signum() == 0) {
+      throw new IllegalArgumentException("The evidence specified in " + expr + " has a probability of zero");
     }
-    return Optional.of(builder.build());
+    return sums[0].divide(sums[1], MathContext.DECIMAL128).doubleValue();
   }
 
-  private List<ProbabilityExpressionFilter> generateJointProbabilityFilters(
-      ProbabilityExpressionFilter inputFilter) {
-    List<Map<String,Boolean>> jointFilterMaps = Lists.newArrayList();
-    Map<String,Boolean> base = Maps.newLinkedHashMap();
-    List<String> varIds = getVariables().stream().map(RandomVariable::getId).collect(Collectors.toList());
-    generateJointProbabilityFilters(inputFilter.toMap(), varIds, 0, jointFilterMaps, base);
-    List<ProbabilityExpressionFilter> jointFilters = Lists.newArrayList();
-    for (Map<String,Boolean> jointFilterMap : jointFilterMaps) {
-      jointFilters.add(ProbabilityExpressionFilter.builder().withHypotheses(jointFilterMap).build());
-    }
-    return jointFilters;
+  private int[] toIndices(Set<String> ids) {
+    return ids.stream().mapToInt(snapshot::indexOf).toArray();
   }
 
-  private void generateJointProbabilityFilters(Map<String,Boolean> inputFilter, List<String> varIds, int idx,
-      List<Map<String, Boolean>> jointFilterMaps, Map<String, Boolean> base) {
-    String currentVar = varIds.get(idx);
-    Boolean fixedValue = inputFilter.get(currentVar);
-    if (idx >= varIds.size() - 1) {
-      if (fixedValue != null) {
-        Map<String,Boolean> filterMap = Maps.newLinkedHashMap(base);
-        filterMap.put(currentVar, fixedValue);
-        jointFilterMaps.add(filterMap);
-      } else {
-        Map<String,Boolean> filterMap1 = Maps.newLinkedHashMap(base);
-        filterMap1.put(currentVar, true);
-        jointFilterMaps.add(filterMap1);
-        Map<String,Boolean> filterMap2 = Maps.newLinkedHashMap(base);
-        filterMap2.put(currentVar, false);
-        jointFilterMaps.add(filterMap2);
+  // The assignments to enumerate for one query. Only the requisite variables and their parents take
+  // part in the joint probability; the parents of a requisite variable are either requisite
+  // themselves or fixed by the evidence. Assignment indices number the states of the free variables
+  // in mixed radix with the first free variable varying fastest.
+  private class Enumeration {
+    private final int[] vars;
+    private final int[] states;
+    private final int[] factorPositions;
+    private final int[][] parentPositions;
+    private final int[] cards;
+    private final BigDecimal[][] tables;
+    private final List<Integer> targetPositions = Lists.newArrayList();
+    private final List<Integer> targetStates = Lists.newArrayList();
+    private int[] free;
+    private int[] targets;
+    private int[] targetValues;
+
+    private Enumeration(int[] requisite) {
+      Set<Integer> vars = Sets.newLinkedHashSet(Ints.asList(requisite));
+      for (int var : requisite) {
+        vars.addAll(Ints.asList(snapshot.getParents(var)));
       }
-    } else {
-      if (fixedValue != null) {
-        Map<String,Boolean> newBase = Maps.newLinkedHashMap(base);
-        newBase.put(currentVar, fixedValue);
-        generateJointProbabilityFilters(inputFilter, varIds, idx + 1, jointFilterMaps, newBase);
-      } else {
-        Map<String,Boolean> newBase1 = Maps.newLinkedHashMap(base);
-        newBase1.put(currentVar, true);
-        generateJointProbabilityFilters(inputFilter, varIds, idx + 1, jointFilterMaps, newBase1);
-        Map<String,Boolean> newBase2 = Maps.newLinkedHashMap(base);
-        newBase2.put(currentVar, false);
-        generateJointProbabilityFilters(inputFilter, varIds, idx + 1, jointFilterMaps, newBase2);
+      this.vars = Ints.toArray(vars);
+      this.states = new int[this.vars.length];
+      this.cards = new int[this.vars.length];
+      for (int p = 0; p < this.vars.length; p++) {
+        cards[p] = snapshot.getCardinality(this.vars[p]);
+      }
+      Arrays.fill(states, -1);
+      this.factorPositions = new int[requisite.length];
+      this.parentPositions = new int[requisite.length][];
+      this.tables = new BigDecimal[requisite.length][];
+      for (int k = 0; k < requisite.length; k++) {
+        int var = requisite[k];
+        factorPositions[k] = Ints.indexOf(this.vars, var);
+        int[] parents = snapshot.getParents(var);
+        parentPositions[k] = new int[parents.length];
+        for (int j = 0; j < parents.length; j++) {
+          parentPositions[k][j] = Ints.indexOf(this.vars, parents[j]);
+        }
+        int card = snapshot.getCardinality(var);
+        int rows = 1;
+        for (int parent : parents) {
+          rows *= snapshot.getCardinality(parent);
+        }
+        tables[k] = new BigDecimal[rows * card];
+        for (int row = 0; row < rows; row++) {
+          for (int state = 0; state < card; state++) {
+            tables[k][row * card + state] = BigDecimal.valueOf(snapshot.getProbability(var, row, state));
+          }
+        }
       }
     }
-  }
 
-  private BigDecimal compute(List<ProbabilityExpressionFilter> filters) {
-    List<List<ProbabilityExpression>> permutations = getAllMatches(filters);
-    BigDecimal result = new BigDecimal("0.0");
-    for (List<ProbabilityExpression> permutation : permutations) {
-      BigDecimal intermediate = null;
-      for (ProbabilityExpression expr : permutation) {
-        BigDecimal probability = eval(expr);
-        if (intermediate == null) {
-          intermediate = probability;
-        } else {
-          intermediate = intermediate.multiply(probability);
+    private void fix(int var, int state) {
+      int position = Ints.indexOf(vars, var);
+      if (position >= 0) {
+        states[position] = state;
+      }
+    }
+
+    private void target(int var, int state) {
+      targetPositions.add(Ints.indexOf(vars, var));
+      targetStates.add(state);
+    }
+
+    // Returns the joint probability of the targets and the fixed states, followed by that of the
+    // fixed states alone
+    private BigDecimal[] sum() {
+      List<Integer> free = Lists.newArrayList();
+      for (int p = 0; p < vars.length; p++) {
+        if (states[p] < 0) {
+          free.add(p);
         }
       }
-      if (intermediate != null) {
-        result = result.add(intermediate);
+      this.free = Ints.toArray(free);
+      this.targets = Ints.toArray(targetPositions);
+      this.targetValues = Ints.toArray(targetStates);
+      long count = 1;
+      for (int position : this.free) {
+        checkState(count <= Long.MAX_VALUE / cards[position], "Too many variables to enumerate: " + free.size());
+        count *= cards[position];
+      }
+      if (pool == null || count <= SEQUENTIAL_THRESHOLD) {
+        return sum(0, count);
       }
+      return pool.invoke(new SumTask(0, count));
     }
-    return result;
-  }
-  
-  private BigDecimal eval(ProbabilityExpression expr) {
-    String hypothesisId = Lists.newArrayList(expr.getHypothesesMap().keySet()).get(0);
-    RandomVariable var = network.getVariable(hypothesisId);
-    return var.getCpt().getDecimal(expr);
-  }
 
-  private List<List<ProbabilityExpression>> getAllMatches(List<ProbabilityExpressionFilter> filters) {
-    List<List<ProbabilityExpression>> allMatches = Lists.newArrayList();
-    boolean firstLoop = true;
-    for (ProbabilityExpressionFilter filter : filters) {
-      List<ProbabilityExpression> matches = Lists.newArrayList();
-      for (RandomVariable var : getVariables()) {
-        if (firstLoop) {
-          firstLoop = false;
-          if (!var.getCpt().hasAllRequiredProbabilities()) {
-            throw new IllegalStateException("Random variable " + var.getId() + " does not have all of its required probabilities set.");
+    private BigDecimal[] sum(long from, long to) {
+      int[] assignment = states.clone();
+      long rest = from;
+      for (int j = 0; j < free.length; j++) {
+        assignment[free[j]] = (int) (rest % cards[free[j]]);
+        rest /= cards[free[j]];
+      }
+      BigDecimal matching = BigDecimal.ZERO;
+      BigDecimal total = BigDecimal.ZERO;
+      for (long i = from; i < to; i++) {
+        BigDecimal product = BigDecimal.ONE;
+        for (int k = 0; k < factorPositions.length; k++) {
+          int row = 0;
+          int[] parents = parentPositions[k];
+          for (int j = parents.length - 1; j >= 0; j--) {
+            row = row * cards[parents[j]] + assignment[parents[j]];
+          }
+          int position = factorPositions[k];
+          product = product.multiply(tables[k][row * cards[position] + assignment[position]]);
+        }
+        total = total.add(product);
+        if (matchesTargets(assignment)) {
+          matching = matching.add(product);
+        }
+        // Advance to the next assignment by incrementing the free variables as a mixed-radix counter
+        for (int j = 0; j < free.length; j++) {
+          if (++assignment[free[j]] < cards[free[j]]) {
+            break;
           }
+          assignment[free[j]] = 0;
         }
-        List<ProbabilityExpression> varMatches = var.getCpt().findExpressions(filter);
-        // Since we are using a joint probability expression filter, we expect exactly one match from each CPT
-        if (varMatches.size() != 1) {
-          throw new AssertionError("Expected only one expression from the CPT for variable " + var.getId() + " to match the specified joint probability filter " + filter);
+      }
+      return new BigDecimal[] {matching, total};
+    }
+
+    private boolean matchesTargets(int[] assignment) {
+      for (int t = 0; t < targets.length; t++) {
+        if (assignment[targets[t]] != targetValues[t]) {
+          return false;
         }
-        matches.add(varMatches.get(0));
       }
-      allMatches.add(matches);
+      return true;
     }
-    return allMatches;
-  }
 
-  private Set<RandomVariable> getVariables() {
-    // TODO: Is it correct to include matches from all vars, or just the ones that are reachable for the vars referenced in the filter?
-    return network.getVariables();
+    // Splits a range of assignment indices in half; the halves differ mostly in the states of the
+    // highest-order free variables
+    private class SumTask extends RecursiveTask<BigDecimal[]> {
+      private static final long serialVersionUID = 1L;
+      private final long from;
+      private final long to;
+
+      private SumTask(long from, long to) {
+        this.from = from;
+        this.to = to;
+      }
+
+      @Override
+      protected BigDecimal[] compute() {
+        if (to - from <= SEQUENTIAL_THRESHOLD) {
+          return sum(from, to);
+        }
+        long middle = from + (to - from) / 2;
+        SumTask low = new SumTask(from, middle);
+        low.fork();
+        BigDecimal[] high = new SumTask(middle, to).compute();
+        BigDecimal[] lowSums = low.join();
+        return new BigDecimal[] {lowSums[0].add(high[0]), lowSums[1].add(high[1])};
+      }
+    }
   }
 
 }
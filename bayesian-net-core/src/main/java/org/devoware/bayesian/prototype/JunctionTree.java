@@ -0,0 +1,484 @@
+package org.devoware.bayesian.prototype;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static java.util.Objects.requireNonNull;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.devoware.bayesian.prototype.EliminationOrder.Heuristic;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Queues;
+import com.google.common.collect.Sets;
+import com.google.common.primitives.Ints;
+
+// A clique tree compiled from the moralized and triangulated network. Clique potentials are
+// calibrated with Shafer-Shenoy message passing. Messages are computed lazily, only when a belief
+// needs them, and a calibration for new evidence reuses every message of the previous one whose
+// sending side holds no changed evidence. Missing messages are filled in by explicit collect
+// (children before parents) and distribute (parents before children) schedules rather than by
+// recursion, so the depth of the tree is not limited by the call stack. The compiled tree is never
+// modified; each set of evidence gets its own Calibration, and new CPTs get a tree of their own
+// that shares the cliques.
+class JunctionTree {
+
+  private final int[][] cliques;
+  private final Factor[] potentials;
+  private final int[] parent;
+  private final int[][] children;
+  // Clique c lies in the subtree rooted at i when enter[i] <= enter[c] < exit[i]; preorder[enter[i]]
+  // is i, so the subtree of i occupies preorder[enter[i]] to preorder[exit[i] - 1]
+  private final int[] enter;
+  private final int[] exit;
+  private final int[] preorder;
+  private final int[] root;
+  // containing[v] lists the cliques that contain variable v
+  private final int[][] containing;
+  private final int[] home;
+  // assignment[v] is the clique whose potential holds the CPT of variable v
+  private final int[] assignment;
+  private final int[] cards;
+  private final boolean logSpace;
+
+  static JunctionTree compile(NetworkSnapshot snapshot) {
+    requireNonNull(snapshot, "snapshot cannot be null");
+    return new JunctionTree(snapshot, snapshot.getNumericMode() == NumericMode.LOG_SPACE);
+  }
+
+  // Compiles the tree with its potentials held in log space or not, whatever the snapshot's
+  // numeric mode
+  static JunctionTree compile(NetworkSnapshot snapshot, boolean logSpace) {
+    requireNonNull(snapshot, "snapshot cannot be null");
+    return new JunctionTree(snapshot, logSpace);
+  }
+
+  private JunctionTree(NetworkSnapshot snapshot, boolean logSpace) {
+    int size = snapshot.size();
+    this.cards = new int[size];
+    this.logSpace = logSpace;
+
+    // Moralize: every family (a variable together with its parents) becomes a complete subgraph
+    List<int[]> scopes = Lists.newArrayList();
+    for (int v = 0; v < size; v++) {
+      cards[v] = snapshot.getCardinality(v);
+      scopes.add(snapshot.getFactor(v).getVariables());
+    }
+
+    this.cliques = maximalCliques(EliminationOrder.triangulate(scopes, Heuristic.MIN_FILL));
+    int n = cliques.length;
+    List<List<Integer>> containingLists = Lists.newArrayList();
+    for (int v = 0; v < size; v++) {
+      containingLists.add(Lists.newArrayList());
+    }
+    for (int i = 0; i < n; i++) {
+      for (int var : cliques[i]) {
+        containingLists.get(var).add(i);
+      }
+    }
+    this.containing = new int[size][];
+    for (int v = 0; v < size; v++) {
+      containing[v] = Ints.toArray(containingLists.get(v));
+    }
+
+    // Connect the cliques with a maximum weight spanning tree over separator sizes (Prim)
+    this.parent = new int[n];
+    Arrays.fill(parent, -1);
+    int[] weight = new int[n];
+    Arrays.fill(weight, -1);
+    boolean[] inTree = new boolean[n];
+    int[] order = new int[n];
+    for (int step = 0; step < n; step++) {
+      int next = -1;
+      for (int i = 0; i < n; i++) {
+        if (!inTree[i] && (next < 0 || weight[i] > weight[next])) {
+          next = i;
+        }
+      }
+      inTree[next] = true;
+      order[step] = next;
+      // Only cliques that share a variable with the new one can be joined to it
+      for (int var : cliques[next]) {
+        for (int i : containing[var]) {
+          if (!inTree[i]) {
+            int w = intersection(cliques[next], cliques[i]).length;
+            if (w > weight[i]) {
+              weight[i] = w;
+              parent[i] = next;
+            }
+          }
+        }
+      }
+    }
+    List<List<Integer>> childLists = Lists.newArrayList();
+    for (int i = 0; i < n; i++) {
+      childLists.add(Lists.newArrayList());
+    }
+    for (int i = 0; i < n; i++) {
+      if (parent[i] >= 0) {
+        childLists.get(parent[i]).add(i);
+      }
+    }
+    this.children = new int[n][];
+    for (int i = 0; i < n; i++) {
+      children[i] = Ints.toArray(childLists.get(i));
+    }
+    this.enter = new int[n];
+    this.exit = new int[n];
+    this.preorder = new int[n];
+    this.root = new int[n];
+    int time = 0;
+    Deque<Integer> stack = Queues.newArrayDeque();
+    for (int r : order) {
+      if (parent[r] >= 0) {
+        continue;
+      }
+      // Iterative depth-first traversal; a clique is pushed once on entry and once, negated, on exit
+      stack.push(r);
+      while (!stack.isEmpty()) {
+        int i = stack.pop();
+        if (i < 0) {
+          exit[~i] = time;
+          continue;
+        }
+        preorder[time] = i;
+        enter[i] = time++;
+        root[i] = r;
+        stack.push(~i);
+        for (int child : children[i]) {
+          stack.push(child);
+        }
+      }
+    }
+
+    // Each variable is homed in the smallest clique containing it, and each CPT is assigned to a
+    // clique containing its whole family
+    this.home = new int[size];
+    this.assignment = new int[size];
+    Factor[] cpts = new Factor[size];
+    for (int v = 0; v < size; v++) {
+      home[v] = smallestCliqueContaining(new int[] {v});
+      assignment[v] = smallestCliqueContaining(scopes.get(v));
+      cpts[v] = snapshot.getFactor(v);
+    }
+    this.potentials = potentials(cpts);
+  }
+
+  private JunctionTree(JunctionTree tree, Factor[] cpts) {
+    this.cliques = tree.cliques;
+    this.parent = tree.parent;
+    this.children = tree.children;
+    this.enter = tree.enter;
+    this.exit = tree.exit;
+    this.preorder = tree.preorder;
+    this.root = tree.root;
+    this.containing = tree.containing;
+    this.home = tree.home;
+    this.assignment = tree.assignment;
+    this.cards = tree.cards;
+    this.logSpace = tree.logSpace;
+    this.potentials = potentials(cpts);
+  }
+
+  // Returns a tree with the same cliques whose potentials are built from new CPTs, given as one
+  // factor over each variable's family in snapshot order, without triangulating the network again
+  JunctionTree withCpts(Factor[] cpts) {
+    requireNonNull(cpts, "cpts cannot be null");
+    checkArgument(cpts.length == cards.length, "Expected " + cards.length + " CPTs but received " + cpts.length);
+    return new JunctionTree(this, cpts);
+  }
+
+  boolean hasCliqueContaining(int[] vars) {
+    return smallestCliqueContaining(vars) >= 0;
+  }
+
+  // Returns the joint distribution of the given variables and the calibration's evidence, or null
+  // if no single clique contains all of the variables
+  Factor marginal(int[] vars, Calibration calibration) {
+    int c = smallestCliqueContaining(vars);
+    if (c < 0) {
+      return null;
+    }
+    Factor belief = calibration.belief(c);
+    for (int var : cliques[c]) {
+      if (!Ints.contains(vars, var)) {
+        belief = belief.sumOut(var);
+      }
+    }
+    return belief;
+  }
+
+  Calibration calibrate(Map<Integer, Integer> evidence) {
+    requireNonNull(evidence, "evidence cannot be null");
+    return new Calibration(null, evidence);
+  }
+
+  // The clique messages for one set of evidence. Messages are filled in on first use; racing
+  // threads may compute the same message twice, but factors are immutable so either copy is valid.
+  class Calibration {
+    private final Map<Integer, Integer> evidence;
+    private final Factor[] evidencePotentials;
+    private final Factor[] upward;
+    private final Factor[] downward;
+    private final AtomicInteger computedMessages = new AtomicInteger();
+    // Whether the evidence has a probability of zero, or null until it is first asked
+    private volatile Boolean impossible;
+
+    private Calibration(Calibration previous, Map<Integer, Integer> evidence) {
+      int n = potentials.length;
+      this.evidence = ImmutableMap.copyOf(evidence);
+      this.upward = new Factor[n];
+      this.downward = new Factor[n];
+      if (previous == null) {
+        this.evidencePotentials = new Factor[n];
+        for (int c = 0; c < n; c++) {
+          evidencePotentials[c] = absorbEvidence(c);
+        }
+        return;
+      }
+      this.evidencePotentials = previous.evidencePotentials.clone();
+      System.arraycopy(previous.upward, 0, upward, 0, n);
+      System.arraycopy(previous.downward, 0, downward, 0, n);
+      // below[i] counts the cliques with changed evidence in the subtree of i, and changes[r] those
+      // in the tree rooted at r
+      int[] below = new int[n];
+      int[] changes = new int[n];
+      boolean[] changed = new boolean[n];
+      for (int var : Sets.union(evidence.keySet(), previous.evidence.keySet())) {
+        int c = home[var];
+        if (changed[c] || Objects.equals(evidence.get(var), previous.evidence.get(var))) {
+          continue;
+        }
+        changed[c] = true;
+        // Retract the old evidence by starting over from the clique's prior potential
+        evidencePotentials[c] = absorbEvidence(c);
+        changes[root[c]]++;
+        // The upward message of a clique summarizes its subtree, so those of c and its ancestors change
+        for (int i = c; i >= 0; i = parent[i]) {
+          below[i]++;
+          upward[i] = null;
+        }
+      }
+      // The downward message of a clique summarizes everything outside its subtree, so it only
+      // survives when every change in its tree lies below it
+      for (int r = 0; r < n; r++) {
+        if (parent[r] < 0 && changes[r] > 0) {
+          for (int t = enter[r]; t < exit[r]; t++) {
+            int i = preorder[t];
+            if (below[i] < changes[r]) {
+              downward[i] = null;
+            }
+          }
+        }
+      }
+    }
+
+    Map<Integer, Integer> getEvidence() {
+      return evidence;
+    }
+
+    // Returns a calibration for new evidence that shares the messages the change leaves intact
+    Calibration update(Map<Integer, Integer> evidence) {
+      requireNonNull(evidence, "evidence cannot be null");
+      return new Calibration(this, evidence);
+    }
+
+    // Returns the number of messages this calibration has computed rather than reused
+    int getComputedMessages() {
+      return computedMessages.get();
+    }
+
+    // Returns whether the evidence has a probability of zero. A belief only reflects the evidence in
+    // its own tree, so the root of every tree holding evidence is checked.
+    boolean isImpossible() {
+      Boolean impossible = this.impossible;
+      if (impossible == null) {
+        impossible = false;
+        boolean[] checked = new boolean[potentials.length];
+        for (int var : evidence.keySet()) {
+          int r = root[home[var]];
+          if (!checked[r]) {
+            checked[r] = true;
+            if (belief(r).hasZeroMass()) {
+              impossible = true;
+              break;
+            }
+          }
+        }
+        this.impossible = impossible;
+      }
+      return impossible;
+    }
+
+    private Factor absorbEvidence(int c) {
+      Factor potential = potentials[c];
+      for (Entry<Integer, Integer> entry : evidence.entrySet()) {
+        int var = entry.getKey();
+        if (home[var] == c) {
+          potential = potential.product(Factor.indicator(var, cards[var], entry.getValue(), logSpace));
+        }
+      }
+      return potential;
+    }
+
+    private Factor belief(int c) {
+      Factor belief = evidencePotentials[c];
+      if (parent[c] >= 0) {
+        belief = belief.product(downward(c));
+      }
+      for (int child : children[c]) {
+        belief = belief.product(upward(child));
+      }
+      return belief;
+    }
+
+    // Returns the message from i to its parent, first computing it and every missing message below
+    // it, children before parents. Subtrees whose message is already known are skipped.
+    private Factor upward(int i) {
+      Factor message = upward[i];
+      if (message != null) {
+        return message;
+      }
+      int[] schedule = new int[exit[i] - enter[i]];
+      int count = 0;
+      for (int t = enter[i]; t < exit[i];) {
+        int c = preorder[t];
+        if (upward[c] != null) {
+          t = exit[c];
+        } else {
+          schedule[count++] = c;
+          t++;
+        }
+      }
+      for (int k = count - 1; k >= 0; k--) {
+        int c = schedule[k];
+        message = message(c, parent[c]);
+        upward[c] = message;
+      }
+      return message;
+    }
+
+    // Returns the message from the parent of i to i, first computing the missing messages on the
+    // path down to it from the nearest ancestor whose message is known, parents before children
+    private Factor downward(int i) {
+      Factor message = downward[i];
+      if (message != null) {
+        return message;
+      }
+      int length = 0;
+      for (int c = i; parent[c] >= 0 && downward[c] == null; c = parent[c]) {
+        length++;
+      }
+      int[] schedule = new int[length];
+      for (int c = i, k = length; k > 0; c = parent[c]) {
+        schedule[--k] = c;
+      }
+      for (int c : schedule) {
+        message = message(parent[c], c);
+        downward[c] = message;
+      }
+      return message;
+    }
+
+    // Every message this reads is either known or computed by a schedule of its own, so the calls
+    // nest at most two deep
+    private Factor message(int from, int to) {
+      computedMessages.incrementAndGet();
+      Factor message = evidencePotentials[from];
+      if (parent[from] >= 0 && parent[from] != to) {
+        message = message.product(downward(from));
+      }
+      for (int child : children[from]) {
+        if (child != to) {
+          message = message.product(upward(child));
+        }
+      }
+      int[] separator = intersection(cliques[from], cliques[to]);
+      for (int var : cliques[from]) {
+        if (!Ints.contains(separator, var)) {
+          message = message.sumOut(var);
+        }
+      }
+      return message;
+    }
+  }
+
+  // Multiplies each CPT, in the tree's numeric space, into the potential of its clique
+  private Factor[] potentials(Factor[] cpts) {
+    Factor[] potentials = new Factor[cliques.length];
+    for (int i = 0; i < cliques.length; i++) {
+      int[] cliqueCards = new int[cliques[i].length];
+      int cliqueSize = 1;
+      for (int j = 0; j < cliques[i].length; j++) {
+        cliqueCards[j] = cards[cliques[i][j]];
+        cliqueSize *= cliqueCards[j];
+      }
+      double[] ones = new double[cliqueSize];
+      Arrays.fill(ones, logSpace ? 0.0 : 1.0);
+      potentials[i] = Factor.create(cliques[i], cliqueCards, ones, logSpace);
+    }
+    for (int v = 0; v < cpts.length; v++) {
+      int c = assignment[v];
+      potentials[c] = potentials[c].product(logSpace ? cpts[v].toLogSpace() : cpts[v]);
+    }
+    return potentials;
+  }
+
+  private int smallestCliqueContaining(int[] vars) {
+    if (vars.length == 0) {
+      return cliques.length == 0 ? -1 : 0;
+    }
+    // Only the cliques containing the first variable need to be looked at
+    int best = -1;
+    for (int i : containing[vars[0]]) {
+      if (containsAll(cliques[i], vars) && (best < 0 || cliques[i].length < cliques[best].length)) {
+        best = i;
+      }
+    }
+    return best;
+  }
+
+  private static int[][] maximalCliques(Collection<int[]> candidates) {
+    List<int[]> maximal = Lists.newArrayList();
+    for (int[] candidate : candidates) {
+      boolean subsumed = false;
+      for (int[] other : candidates) {
+        if (other != candidate && other.length > candidate.length && containsAll(other, candidate)) {
+          subsumed = true;
+          break;
+        }
+      }
+      if (!subsumed) {
+        maximal.add(candidate);
+      }
+    }
+    return maximal.toArray(new int[maximal.size()][]);
+  }
+
+  private static boolean containsAll(int[] set, int[] subset) {
+    for (int var : subset) {
+      if (!Ints.contains(set, var)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private static int[] intersection(int[] a, int[] b) {
+    List<Integer> result = Lists.newArrayList();
+    for (int var : a) {
+      if (Ints.contains(b, var)) {
+        result.add(var);
+      }
+    }
+    return Ints.toArray(result);
+  }
+
+}
@@ -0,0 +1,120 @@
+package org.devoware.bayesian.prototype;
+
+import static java.util.Objects.requireNonNull;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.devoware.bayesian.prototype.JunctionTree.Calibration;
+import org.devoware.bayesian.prototype.expr.ProbabilityExpression;
+
+import com.google.common.base.Supplier;
+import com.google.common.base.Suppliers;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.primitives.Ints;
+
+class JunctionTreeEngine implements InferenceEngine {
+
+  private final NetworkSnapshot snapshot;
+  private final VariableElimination fallback;
+  private final Supplier<JunctionTree> tree;
+  // The most recent calibration, from which the next set of evidence is calibrated incrementally;
+  // concurrent queries may each calibrate and the last one is kept
+  private final AtomicReference<Calibration> calibration = new AtomicReference<>();
+
+  static JunctionTreeEngine create(Network network) {
+    requireNonNull(network, "network cannot be null");
+    return create(network.snapshot());
+  }
+
+  static JunctionTreeEngine create(NetworkSnapshot snapshot) {
+    return new JunctionTreeEngine(snapshot);
+  }
+
+  private JunctionTreeEngine(NetworkSnapshot snapshot) {
+    this.snapshot = requireNonNull(snapshot, "snapshot cannot be null");
+    this.fallback = VariableElimination.create(snapshot);
+    this.tree = Suppliers.memoize(() -> JunctionTree.compile(snapshot));
+  }
+
+  @Override
+  public double query(ProbabilityExpression expr) {
+    requireNonNull(expr, "expr cannot be null");
+    Map<Integer, Integer> evidence = evidenceOf(expr);
+    return evaluate(expr, evidence, () -> getCalibration(tree.get(), evidence));
+  }
+
+  // Answers the queries in their original order, calibrating the tree once for each distinct set
+  // of evidence rather than once per query
+  double[] queryAll(List<ProbabilityExpression> exprs) {
+    requireNonNull(exprs, "exprs cannot be null");
+    Map<Map<String, String>, List<Integer>> groups = Maps.newLinkedHashMap();
+    for (int i = 0; i < exprs.size(); i++) {
+      groups.computeIfAbsent(exprs.get(i).getEvidenceStates(), e -> Lists.newArrayList()).add(i);
+    }
+    double[] results = new double[exprs.size()];
+    for (List<Integer> group : groups.values()) {
+      Map<Integer, Integer> evidence = evidenceOf(exprs.get(group.get(0)));
+      Supplier<Calibration> calibration = Suppliers.memoize(() -> getCalibration(tree.get(), evidence));
+      for (int i : group) {
+        results[i] = evaluate(exprs.get(i), evidence, calibration);
+      }
+    }
+    return results;
+  }
+
+  private double evaluate(ProbabilityExpression expr, Map<Integer, Integer> evidence, Supplier<Calibration> calibration) {
+    if (expr.hasTermDisagreemets()) {
+      return 0.0;
+    }
+    List<Integer> queryVars = Lists.newArrayList();
+    List<Integer> queryStates = Lists.newArrayList();
+    for (Entry<String, String> entry : expr.getHypothesisStates().entrySet()) {
+      int var = snapshot.indexOf(entry.getKey());
+      if (!evidence.containsKey(var)) {
+        queryVars.add(var);
+        queryStates.add(snapshot.stateIndex(var, entry.getValue()));
+      }
+    }
+    if (queryVars.isEmpty()) {
+      return 1.0;
+    }
+    JunctionTree tree = this.tree.get();
+    int[] vars = Ints.toArray(queryVars);
+    if (!tree.hasCliqueContaining(vars)) {
+      // The hypotheses span several cliques
+      return fallback.query(expr);
+    }
+    Calibration calibrated = calibration.get();
+    if (calibrated.isImpossible()) {
+      throw new IllegalArgumentException("The evidence specified in " + expr + " has a probability of zero");
+    }
+    return tree.marginal(vars, calibrated).normalizedValue(vars, Ints.toArray(queryStates));
+  }
+
+  private Map<Integer, Integer> evidenceOf(ProbabilityExpression expr) {
+    Map<Integer, Integer> evidence = Maps.newHashMap();
+    for (Entry<String, String> entry : expr.getEvidenceStates().entrySet()) {
+      int var = snapshot.indexOf(entry.getKey());
+      evidence.put(var, snapshot.stateIndex(var, entry.getValue()));
+    }
+    return evidence;
+  }
+
+  private Calibration getCalibration(JunctionTree tree, Map<Integer, Integer> evidence) {
+    Calibration current = calibration.get();
+    if (current == null) {
+      current = tree.calibrate(evidence);
+      calibration.set(current);
+    } else if (!current.getEvidence().equals(evidence)) {
+      // Only the messages that depend on the changed observations are recomputed
+      current = current.update(evidence);
+      calibration.set(current);
+    }
+    return current;
+  }
+
+}
@@ -0,0 +1,54 @@
+package org.devoware.bayesian.prototype;
+
+// The outcome of fitting a network's CPTs by expectation maximization
+public class LearningResult {
+
+  private final int iterations;
+  private final double logLikelihood;
+  private final boolean converged;
+  private final long rowCount;
+  private final int patternCount;
+
+  static LearningResult create(int iterations, double logLikelihood, boolean converged, long rowCount, int patternCount) {
+    return new LearningResult(iterations, logLikelihood, converged, rowCount, patternCount);
+  }
+
+  private LearningResult(int iterations, double logLikelihood, boolean converged, long rowCount, int patternCount) {
+    this.iterations = iterations;
+    this.logLikelihood = logLikelihood;
+    this.converged = converged;
+    this.rowCount = rowCount;
+    this.patternCount = patternCount;
+  }
+
+  // The E-steps run; the CPTs were estimated anew after every one but the last
+  public int getIterations() {
+    return iterations;
+  }
+
+  // The natural log of the probability of the data under the learned CPTs
+  public double getLogLikelihood() {
+    return logLikelihood;
+  }
+
+  // False when the iteration limit was reached before the log-likelihood settled
+  public boolean isConverged() {
+    return converged;
+  }
+
+  public long getRowCount() {
+    return rowCount;
+  }
+
+  // The number of distinct rows, each of which was inferred once per iteration
+  public int getPatternCount() {
+    return patternCount;
+  }
+
+  @Override
+  public String toString() {
+    return getClass().getSimpleName() + " [iterations=" + iterations + ", logLikelihood=" + logLikelihood
+        + ", converged=" + converged + ", rowCount=" + rowCount + ", patternCount=" + patternCount + "]";
+  }
+
+}
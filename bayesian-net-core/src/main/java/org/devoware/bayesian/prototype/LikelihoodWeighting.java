@@ -0,0 +1,246 @@
+package org.devoware.bayesian.prototype;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.util.concurrent.Futures.getUnchecked;
+import static java.util.Objects.requireNonNull;
+
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.devoware.bayesian.prototype.expr.ProbabilityExpression;
+
+import com.google.common.collect.Lists;
+
+// Approximate inference by likelihood weighting: the unobserved variables are sampled from their
+// CPTs in topological order, and each sample is weighted by the probability of the evidence given
+// its sampled parents. Only the variables requisite for the query are sampled.
+//
+// Samples are drawn in fixed-size batches, each from its own generator split in turn off a
+// generator seeded with the configured seed, and the batches are merged in the order they were
+// split. Sampling stops after the first batch at which the confidence interval is narrow enough,
+// the sample limit is reached or the time budget runs out, so for a given seed the estimate does
+// not depend on the parallelism unless the time budget cuts the run short.
+public class LikelihoodWeighting {
+
+  private static final int BATCH_SIZE = 1 << 10;
+  // The interval is not trusted to decide convergence before the weights amount to this many samples
+  private static final double MIN_EFFECTIVE_SAMPLES = 100;
+
+  private final double precision;
+  private final double confidence;
+  private final long timeBudgetNanos;
+  private final long maxSamples;
+  private final long seed;
+  private final int parallelism;
+  private final ForkJoinPool pool;
+
+  public static Builder builder() {
+    return new Builder();
+  }
+
+  private LikelihoodWeighting(Builder builder) {
+    this.precision = builder.precision;
+    this.confidence = builder.confidence;
+    this.timeBudgetNanos = builder.timeBudgetNanos;
+    this.maxSamples = builder.maxSamples;
+    this.seed = builder.seed;
+    this.parallelism = builder.parallelism;
+    this.pool = builder.pool;
+  }
+
+  public long getSeed() {
+    return seed;
+  }
+
+  public Estimate estimate(Network network, String expression) {
+    requireNonNull(network, "network cannot be null");
+    return estimate(network.freeze(), expression);
+  }
+
+  public Estimate estimate(NetworkSnapshot snapshot, String expression) {
+    requireNonNull(snapshot, "snapshot cannot be null");
+    return estimate(snapshot, snapshot.parse(expression));
+  }
+
+  public Estimate estimate(NetworkSnapshot snapshot, ProbabilityExpression expr) {
+    requireNonNull(snapshot, "snapshot cannot be null");
+    requireNonNull(expr, "expr cannot be null");
+    snapshot.checkComplete();
+    if (expr.hasTermDisagreemets()) {
+      return Estimate.create(0.0, 0.0, confidence, 0, 0);
+    }
+    if (expr.getEvidenceStates().keySet().containsAll(expr.getHypothesisStates().keySet())) {
+      return Estimate.create(1.0, 0.0, confidence, 0, 0);
+    }
+    SampledQuery query = SampledQuery.create(snapshot, expr);
+    long start = System.nanoTime();
+    SplittableRandom seeds = new SplittableRandom(seed);
+    Totals totals = new Totals();
+    long scheduled = 0;
+    while (true) {
+      List<Callable<Totals>> round = Lists.newArrayList();
+      while (round.size() < parallelism && scheduled < maxSamples) {
+        SplittableRandom random = seeds.split();
+        long count = Math.min(BATCH_SIZE, maxSamples - scheduled);
+        scheduled += count;
+        round.add(() -> sample(query, random, count));
+      }
+      for (Totals batch : run(round)) {
+        totals.add(batch);
+        if (totals.count >= maxSamples || System.nanoTime() - start >= timeBudgetNanos
+            || (totals.getEffectiveSampleSize() >= MIN_EFFECTIVE_SAMPLES && totals.getHalfWidth(confidence) <= precision)) {
+          return totals.toEstimate(expr, confidence);
+        }
+      }
+    }
+  }
+
+  private List<Totals> run(List<Callable<Totals>> batches) {
+    List<Totals> results = Lists.newArrayListWithCapacity(batches.size());
+    if (parallelism == 1) {
+      for (Callable<Totals> batch : batches) {
+        results.add(ForkJoinTask.adapt(batch).invoke());
+      }
+    } else {
+      for (Future<Totals> batch : pool.invokeAll(batches)) {
+        results.add(getUnchecked(batch));
+      }
+    }
+    return results;
+  }
+
+  public static class Builder {
+
+    private double precision = 0.01;
+    private double confidence = 0.95;
+    private long timeBudgetNanos = Long.MAX_VALUE;
+    private long maxSamples = 1L << 24;
+    private long seed = new SplittableRandom().nextLong();
+    private int parallelism = 1;
+    private ForkJoinPool pool = ForkJoinPool.commonPool();
+
+    private Builder() {}
+
+    // Stops sampling once the confidence interval is no wider than this on either side of the estimate
+    public Builder withPrecision(double precision) {
+      checkArgument(precision > 0.0, "precision must be greater than 0.0");
+      this.precision = precision;
+      return this;
+    }
+
+    public Builder withConfidence(double confidence) {
+      checkArgument(confidence > 0.0 && confidence < 1.0, "confidence must be between 0.0 and 1.0");
+      this.confidence = confidence;
+      return this;
+    }
+
+    public Builder withTimeBudget(long duration, TimeUnit unit) {
+      checkArgument(duration > 0, "duration must be greater than 0");
+      requireNonNull(unit, "unit cannot be null");
+      this.timeBudgetNanos = unit.toNanos(duration);
+      return this;
+    }
+
+    public Builder withMaxSamples(long maxSamples) {
+      checkArgument(maxSamples > 0, "maxSamples must be greater than 0");
+      this.maxSamples = maxSamples;
+      return this;
+    }
+
+    public Builder withSeed(long seed) {
+      this.seed = seed;
+      return this;
+    }
+
+    public Builder withParallelism(int parallelism) {
+      checkArgument(parallelism >= 1, "parallelism must be at least 1");
+      this.parallelism = parallelism;
+      return this;
+    }
+
+    // Runs the tasks on the given pool rather than the common pool
+    public Builder withPool(ForkJoinPool pool) {
+      this.pool = requireNonNull(pool, "pool cannot be null");
+      return this;
+    }
+
+    public LikelihoodWeighting build() {
+      return new LikelihoodWeighting(this);
+    }
+
+  }
+
+  private static Totals sample(SampledQuery query, SplittableRandom random, long count) {
+    int[] order = query.getOrder();
+    Totals totals = new Totals();
+    int[] states = query.newAssignment();
+    for (long s = 0; s < count; s++) {
+      double weight = 1.0;
+      for (int k = 0; k < order.length && weight > 0.0; k++) {
+        int var = order[k];
+        if (query.isObserved(var)) {
+          weight *= query.probability(var, states);
+        } else {
+          states[var] = query.sample(var, states, random.nextDouble());
+        }
+      }
+      totals.add(weight, weight > 0.0 && query.matchesHypotheses(states));
+    }
+    return totals;
+  }
+
+  // Running sums of the sample weights, split by whether the sample satisfies the hypotheses
+  private static class Totals {
+    private long count;
+    private double weights;
+    private double squaredWeights;
+    private double matchingWeights;
+    private double matchingSquaredWeights;
+
+    private void add(double weight, boolean matching) {
+      count++;
+      weights += weight;
+      squaredWeights += weight * weight;
+      if (matching) {
+        matchingWeights += weight;
+        matchingSquaredWeights += weight * weight;
+      }
+    }
+
+    private void add(Totals other) {
+      count += other.count;
+      weights += other.weights;
+      squaredWeights += other.squaredWeights;
+      matchingWeights += other.matchingWeights;
+      matchingSquaredWeights += other.matchingSquaredWeights;
+    }
+
+    private double getEffectiveSampleSize() {
+      return squaredWeights == 0.0 ? 0.0 : weights * weights / squaredWeights;
+    }
+
+    // The delta-method standard error of the ratio estimate matchingWeights / weights
+    private double getStandardError() {
+      double mean = matchingWeights / weights;
+      double variance = (matchingSquaredWeights * (1 - 2 * mean) + mean * mean * squaredWeights) / (weights * weights);
+      return Math.sqrt(Math.max(0.0, variance));
+    }
+
+    private double getHalfWidth(double confidence) {
+      return Estimate.zScore(confidence) * getStandardError();
+    }
+
+    private Estimate toEstimate(ProbabilityExpression expr, double confidence) {
+      if (weights == 0.0) {
+        throw new IllegalStateException("None of the " + count + " samples drawn is consistent with the evidence specified in " + expr);
+      }
+      return Estimate.create(matchingWeights / weights, getStandardError(), confidence, count, getEffectiveSampleSize());
+    }
+  }
+
+}
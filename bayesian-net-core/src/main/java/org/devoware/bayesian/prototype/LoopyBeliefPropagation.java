@@ -0,0 +1,480 @@
+package org.devoware.bayesian.prototype;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static java.util.Objects.requireNonNull;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+
+import org.devoware.bayesian.prototype.expr.ProbabilityExpression;
+
+import com.google.common.collect.Lists;
+import com.google.common.primitives.Ints;
+
+// Approximate inference by loopy belief propagation: sum-product message passing on the factor
+// graph of the CPTs requisite for a query, iterated until the messages stop changing. Messages are
+// held in flat arrays indexed by edge, so an iteration is linear in the size of the CPTs however
+// densely the network is connected. On a network without loops the beliefs are exact.
+//
+// Queries have the same meaning as Network.query. A conjunction of hypotheses is answered by the
+// chain rule, P(A,B|e) = P(A|e) P(B|A,e), propagating once per hypothesis and starting each
+// propagation from the previous messages. A query whose messages have not settled within the
+// iteration limit fails unless non-convergence is allowed; evaluate reports the iterations and
+// convergence alongside the value instead.
+public class LoopyBeliefPropagation {
+
+  private final double damping;
+  private final int maxIterations;
+  private final double tolerance;
+  private final MessageSchedule schedule;
+  private final boolean allowNonConvergence;
+
+  public static Builder builder() {
+    return new Builder();
+  }
+
+  private LoopyBeliefPropagation(Builder builder) {
+    this.damping = builder.damping;
+    this.maxIterations = builder.maxIterations;
+    this.tolerance = builder.tolerance;
+    this.schedule = builder.schedule;
+    this.allowNonConvergence = builder.allowNonConvergence;
+  }
+
+  public double query(Network network, String expression) {
+    requireNonNull(network, "network cannot be null");
+    return query(network.freeze(), expression);
+  }
+
+  public double query(NetworkSnapshot snapshot, String expression) {
+    requireNonNull(snapshot, "snapshot cannot be null");
+    return query(snapshot, snapshot.parse(expression));
+  }
+
+  public double query(NetworkSnapshot snapshot, ProbabilityExpression expr) {
+    PropagationResult result = evaluate(snapshot, expr);
+    if (!result.isConverged() && !allowNonConvergence) {
+      throw new IllegalStateException("The messages for " + expr + " did not converge within "
+          + result.getIterations() + " iterations");
+    }
+    return result.getValue();
+  }
+
+  public PropagationResult evaluate(Network network, String expression) {
+    requireNonNull(network, "network cannot be null");
+    return evaluate(network.freeze(), expression);
+  }
+
+  public PropagationResult evaluate(NetworkSnapshot snapshot, String expression) {
+    requireNonNull(snapshot, "snapshot cannot be null");
+    return evaluate(snapshot, snapshot.parse(expression));
+  }
+
+  public PropagationResult evaluate(NetworkSnapshot snapshot, ProbabilityExpression expr) {
+    requireNonNull(snapshot, "snapshot cannot be null");
+    requireNonNull(expr, "expr cannot be null");
+    snapshot.checkComplete();
+    if (expr.hasTermDisagreemets()) {
+      return PropagationResult.create(0.0, 0, true);
+    }
+    Propagation propagation = propagate(snapshot, expr);
+    return PropagationResult.create(propagation.probability, propagation.iterations, propagation.converged);
+  }
+
+  private Propagation propagate(NetworkSnapshot snapshot, ProbabilityExpression expr) {
+    Map<String, String> evidence = expr.getEvidenceStates();
+    int[] evidenceVars = new int[evidence.size()];
+    int[] evidenceStates = new int[evidence.size()];
+    int i = 0;
+    for (Entry<String, String> entry : evidence.entrySet()) {
+      evidenceVars[i] = snapshot.indexOf(entry.getKey());
+      evidenceStates[i] = snapshot.stateIndex(evidenceVars[i], entry.getValue());
+      i++;
+    }
+    List<Integer> hypotheses = Lists.newArrayList();
+    List<Integer> hypothesisStates = Lists.newArrayList();
+    for (Entry<String, String> entry : expr.getHypothesisStates().entrySet()) {
+      if (!evidence.containsKey(entry.getKey())) {
+        int var = snapshot.indexOf(entry.getKey());
+        hypotheses.add(var);
+        hypothesisStates.add(snapshot.stateIndex(var, entry.getValue()));
+      }
+    }
+    int[] requisite = QueryPruner.requisiteVariables(snapshot, Ints.toArray(hypotheses), evidenceVars);
+    Propagation propagation = new Propagation(snapshot, requisite);
+    for (int e = 0; e < evidenceVars.length; e++) {
+      propagation.observe(evidenceVars[e], evidenceStates[e]);
+    }
+    propagation.probability = 1.0;
+    for (int h = 0; h < hypotheses.size(); h++) {
+      propagation.run();
+      double[] belief = propagation.belief(hypotheses.get(h));
+      if (belief == null) {
+        throw new IllegalArgumentException("The evidence specified in " + expr + " has a probability of zero");
+      }
+      propagation.probability *= belief[hypothesisStates.get(h)];
+      if (propagation.probability == 0.0) {
+        break;
+      }
+      propagation.observe(hypotheses.get(h), hypothesisStates.get(h));
+    }
+    return propagation;
+  }
+
+  public static class Builder {
+
+    private double damping = 0.0;
+    private int maxIterations = 100;
+    private double tolerance = 1e-6;
+    private MessageSchedule schedule = MessageSchedule.SYNCHRONOUS;
+    private boolean allowNonConvergence = false;
+
+    private Builder() {}
+
+    // Keeps this fraction of the previous message in each update, which helps oscillating
+    // messages settle
+    public Builder withDamping(double damping) {
+      checkArgument(damping >= 0.0 && damping < 1.0, "damping must be at least 0.0 and less than 1.0");
+      this.damping = damping;
+      return this;
+    }
+
+    // Gives up after this many iterations; under the residual schedule an iteration is as many
+    // single message updates as there are messages
+    public Builder withMaxIterations(int maxIterations) {
+      checkArgument(maxIterations >= 1, "maxIterations must be at least 1");
+      this.maxIterations = maxIterations;
+      return this;
+    }
+
+    // Stops once no message entry would change by more than this
+    public Builder withTolerance(double tolerance) {
+      checkArgument(tolerance > 0.0, "tolerance must be greater than 0.0");
+      this.tolerance = tolerance;
+      return this;
+    }
+
+    public Builder withSchedule(MessageSchedule schedule) {
+      this.schedule = requireNonNull(schedule, "schedule cannot be null");
+      return this;
+    }
+
+    // Lets query return the beliefs reached at the iteration limit rather than fail
+    public Builder withAllowNonConvergence(boolean allowNonConvergence) {
+      this.allowNonConvergence = allowNonConvergence;
+      return this;
+    }
+
+    public LoopyBeliefPropagation build() {
+      return new LoopyBeliefPropagation(this);
+    }
+
+  }
+
+  // The factor graph of the requisite CPTs with its messages. Edge e joins factor edgeFactor[e]
+  // to the variable at position edgePosition[e] of the factor's scope; the factor-to-variable
+  // message on the edge occupies messages[edgeOffsets[e]] onwards, one entry per state.
+  private class Propagation {
+    private final NetworkSnapshot snapshot;
+    private final int[][] scopes;
+    private final double[][] tables;
+    private final int[][] strides;
+    private final int[] factorEdges;
+    private final int[] edgeFactor;
+    private final int[] edgePosition;
+    private final int[] edgeVar;
+    private final int[] edgeOffsets;
+    // The edges incident on each variable, by snapshot index
+    private final int[][] variableEdges;
+    private final int[] observed;
+    private double[] messages;
+    private double[] pending;
+    private final double[] residuals;
+    private final double[][] scratch;
+    // Summed and combined over the runs of a conjunction of hypotheses
+    private int iterations;
+    private boolean converged = true;
+    private double probability;
+
+    private Propagation(NetworkSnapshot snapshot, int[] requisite) {
+      this.snapshot = snapshot;
+      int f = requisite.length;
+      this.scopes = new int[f][];
+      this.tables = new double[f][];
+      this.strides = new int[f][];
+      this.factorEdges = new int[f + 1];
+      int maxScope = 0;
+      for (int k = 0; k < f; k++) {
+        int var = requisite[k];
+        int[] parents = snapshot.getParents(var);
+        scopes[k] = new int[parents.length + 1];
+        scopes[k][0] = var;
+        System.arraycopy(parents, 0, scopes[k], 1, parents.length);
+        strides[k] = new int[scopes[k].length];
+        int size = 1;
+        for (int i = 0; i < scopes[k].length; i++) {
+          strides[k][i] = size;
+          size *= snapshot.getCardinality(scopes[k][i]);
+        }
+        // The CPT entry for (state, row) lies at state + card * row, which is the factor layout
+        // with the variable varying fastest
+        int card = snapshot.getCardinality(var);
+        tables[k] = new double[size];
+        for (int index = 0; index < size; index++) {
+          tables[k][index] = snapshot.getProbability(var, index / card, index % card);
+        }
+        factorEdges[k + 1] = factorEdges[k] + scopes[k].length;
+        maxScope = Math.max(maxScope, scopes[k].length);
+      }
+      int edges = factorEdges[f];
+      this.edgeFactor = new int[edges];
+      this.edgePosition = new int[edges];
+      this.edgeVar = new int[edges];
+      this.edgeOffsets = new int[edges + 1];
+      int[] degrees = new int[snapshot.size()];
+      for (int k = 0; k < f; k++) {
+        for (int i = 0; i < scopes[k].length; i++) {
+          int e = factorEdges[k] + i;
+          edgeFactor[e] = k;
+          edgePosition[e] = i;
+          edgeVar[e] = scopes[k][i];
+          edgeOffsets[e + 1] = edgeOffsets[e] + snapshot.getCardinality(scopes[k][i]);
+          degrees[scopes[k][i]]++;
+        }
+      }
+      this.variableEdges = new int[snapshot.size()][];
+      for (int v = 0; v < variableEdges.length; v++) {
+        variableEdges[v] = new int[degrees[v]];
+        degrees[v] = 0;
+      }
+      for (int e = 0; e < edges; e++) {
+        variableEdges[edgeVar[e]][degrees[edgeVar[e]]++] = e;
+      }
+      this.observed = new int[snapshot.size()];
+      Arrays.fill(observed, -1);
+      this.messages = new double[edgeOffsets[edges]];
+      this.pending = new double[edgeOffsets[edges]];
+      for (int e = 0; e < edges; e++) {
+        Arrays.fill(messages, edgeOffsets[e], edgeOffsets[e + 1], 1.0 / snapshot.getCardinality(edgeVar[e]));
+      }
+      this.residuals = new double[edges];
+      this.scratch = new double[maxScope][];
+      for (int i = 0; i < maxScope; i++) {
+        scratch[i] = new double[maxCardinality(snapshot)];
+      }
+    }
+
+    private void observe(int var, int state) {
+      observed[var] = state;
+    }
+
+    private void run() {
+      boolean settled = schedule == MessageSchedule.SYNCHRONOUS ? runSynchronous() : runResidual();
+      converged &= settled;
+    }
+
+    private boolean runSynchronous() {
+      int edges = edgeVar.length;
+      boolean settled = false;
+      for (int iteration = 0; iteration < maxIterations && !settled; iteration++) {
+        double change = 0.0;
+        for (int e = 0; e < edges; e++) {
+          change = Math.max(change, compute(e));
+        }
+        double[] sent = messages;
+        messages = pending;
+        pending = sent;
+        settled = change < tolerance;
+        iterations++;
+      }
+      return settled;
+    }
+
+    private boolean runResidual() {
+      int edges = edgeVar.length;
+      ResidualQueue queue = new ResidualQueue(edges);
+      for (int e = 0; e < edges; e++) {
+        residuals[e] = compute(e);
+        queue.update(e);
+      }
+      long limit = (long) maxIterations * Math.max(1, edges);
+      long updates = 0;
+      boolean settled = edges == 0;
+      while (!settled && updates < limit) {
+        int e = queue.peek();
+        if (residuals[e] < tolerance) {
+          settled = true;
+          break;
+        }
+        System.arraycopy(pending, edgeOffsets[e], messages, edgeOffsets[e], edgeOffsets[e + 1] - edgeOffsets[e]);
+        // A damped message moves only part of the way, so it may still have some way to go
+        residuals[e] = compute(e);
+        queue.update(e);
+        updates++;
+        // The new message changes what the receiving variable sends its other factors, and so
+        // what those factors send the rest of their scopes
+        for (int into : variableEdges[edgeVar[e]]) {
+          if (into == e) {
+            continue;
+          }
+          int factor = edgeFactor[into];
+          for (int out = factorEdges[factor]; out < factorEdges[factor + 1]; out++) {
+            if (out != into) {
+              residuals[out] = compute(out);
+              queue.update(out);
+            }
+          }
+        }
+      }
+      iterations += (int) ((updates + Math.max(1, edges) - 1) / Math.max(1, edges));
+      return settled;
+    }
+
+    // Computes the damped factor-to-variable message for the edge into pending, returning the
+    // largest change from the current message
+    private double compute(int e) {
+      int factor = edgeFactor[e];
+      int position = edgePosition[e];
+      int[] scope = scopes[factor];
+      for (int i = 0; i < scope.length; i++) {
+        if (i != position) {
+          incoming(factorEdges[factor] + i, scratch[i]);
+        }
+      }
+      int offset = edgeOffsets[e];
+      int card = edgeOffsets[e + 1] - offset;
+      Arrays.fill(pending, offset, offset + card, 0.0);
+      double[] table = tables[factor];
+      int[] stride = strides[factor];
+      for (int index = 0; index < table.length; index++) {
+        double value = table[index];
+        for (int i = 0; i < scope.length && value != 0.0; i++) {
+          if (i != position) {
+            value *= scratch[i][(index / stride[i]) % snapshot.getCardinality(scope[i])];
+          }
+        }
+        pending[offset + (index / stride[position]) % card] += value;
+      }
+      normalize(pending, offset, card);
+      double change = 0.0;
+      for (int s = 0; s < card; s++) {
+        double damped = (1 - damping) * pending[offset + s] + damping * messages[offset + s];
+        pending[offset + s] = damped;
+        change = Math.max(change, Math.abs(damped - messages[offset + s]));
+      }
+      return change;
+    }
+
+    // Computes the message from the variable on the edge to its factor: the evidence on the
+    // variable times the messages from its other factors
+    private void incoming(int e, double[] into) {
+      int var = edgeVar[e];
+      int card = snapshot.getCardinality(var);
+      for (int s = 0; s < card; s++) {
+        into[s] = observed[var] < 0 || observed[var] == s ? 1.0 : 0.0;
+      }
+      for (int other : variableEdges[var]) {
+        if (other != e) {
+          for (int s = 0; s < card; s++) {
+            into[s] *= messages[edgeOffsets[other] + s];
+          }
+        }
+      }
+      normalize(into, 0, card);
+    }
+
+    // Returns the normalized belief of the variable, or null when every state has zero belief
+    private double[] belief(int var) {
+      int card = snapshot.getCardinality(var);
+      double[] belief = new double[card];
+      Arrays.fill(belief, 1.0);
+      for (int e : variableEdges[var]) {
+        for (int s = 0; s < card; s++) {
+          belief[s] *= messages[edgeOffsets[e] + s];
+        }
+      }
+      double total = 0.0;
+      for (double value : belief) {
+        total += value;
+      }
+      if (total == 0.0) {
+        return null;
+      }
+      for (int s = 0; s < card; s++) {
+        belief[s] /= total;
+      }
+      return belief;
+    }
+
+    // Edges ordered by residual in an indexed binary max-heap
+    private class ResidualQueue {
+      private final int[] heap;
+      private final int[] positions;
+
+      private ResidualQueue(int edges) {
+        this.heap = new int[edges];
+        this.positions = new int[edges];
+        for (int e = 0; e < edges; e++) {
+          heap[e] = e;
+          positions[e] = e;
+        }
+      }
+
+      private int peek() {
+        return heap[0];
+      }
+
+      // Restores the heap order after the residual of the edge has changed
+      private void update(int e) {
+        int i = positions[e];
+        while (i > 0 && residuals[heap[(i - 1) / 2]] < residuals[e]) {
+          move(heap[(i - 1) / 2], i);
+          i = (i - 1) / 2;
+        }
+        while (true) {
+          int child = 2 * i + 1;
+          if (child >= heap.length) {
+            break;
+          }
+          if (child + 1 < heap.length && residuals[heap[child + 1]] > residuals[heap[child]]) {
+            child++;
+          }
+          if (residuals[heap[child]] <= residuals[e]) {
+            break;
+          }
+          move(heap[child], i);
+          i = child;
+        }
+        move(e, i);
+      }
+
+      private void move(int e, int i) {
+        heap[i] = e;
+        positions[e] = i;
+      }
+    }
+  }
+
+  private static void normalize(double[] values, int offset, int length) {
+    double total = 0.0;
+    for (int i = offset; i < offset + length; i++) {
+      total += values[i];
+    }
+    if (total > 0.0) {
+      for (int i = offset; i < offset + length; i++) {
+        values[i] /= total;
+      }
+    }
+  }
+
+  private static int maxCardinality(NetworkSnapshot snapshot) {
+    int max = 1;
+    for (int v = 0; v < snapshot.size(); v++) {
+      max = Math.max(max, snapshot.getCardinality(v));
+    }
+    return max;
+  }
+
+}
@@ -0,0 +1,144 @@
+package org.devoware.bayesian.prototype;
+
+import static java.util.Objects.requireNonNull;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+
+import org.devoware.bayesian.prototype.EliminationOrder.Heuristic;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import com.google.common.primitives.Ints;
+
+// Most probable explanations by max-product variable elimination. The requisite CPTs are reduced
+// by the evidence; the variables outside the explanation are summed out first and the explained
+// variables are then maximized out, each in min-fill order. Every maximization keeps the factor
+// it maximized over, so replaying the steps backwards recovers the best state of each explained
+// variable from the states already chosen for the variables maximized out after it, without
+// enumerating the joint assignments. Summing every variable out of the same reduced CPTs gives
+// the probability of the evidence, which turns the maximum into a posterior probability.
+class MaxProductElimination {
+
+  private final NetworkSnapshot snapshot;
+  private final boolean logSpace;
+
+  static MaxProductElimination create(NetworkSnapshot snapshot) {
+    requireNonNull(snapshot, "snapshot cannot be null");
+    return new MaxProductElimination(snapshot);
+  }
+
+  private MaxProductElimination(NetworkSnapshot snapshot) {
+    this.snapshot = snapshot;
+    this.logSpace = snapshot.getNumericMode() == NumericMode.LOG_SPACE;
+  }
+
+  // Finds the most probable joint state of the explained variables given the evidence; explained
+  // variables that are also observed keep their observed state
+  Explanation explain(int[] explained, Map<String, String> evidence) {
+    int[] evidenceVars = new int[evidence.size()];
+    // The state of every observed variable, and in the end of every explained one
+    int[] states = new int[snapshot.size()];
+    int i = 0;
+    for (Entry<String, String> entry : evidence.entrySet()) {
+      int var = snapshot.indexOf(entry.getKey());
+      evidenceVars[i++] = var;
+      states[var] = snapshot.stateIndex(var, entry.getValue());
+    }
+    int[] requisite = QueryPruner.requisiteVariables(snapshot, explained, evidenceVars);
+    if (QueryPruner.dropsEvidence(requisite, evidenceVars)) {
+      // The pruned variables hold evidence whose probability has to be checked on its own
+      Set<Integer> ancestral = Sets.newLinkedHashSet();
+      List<Factor> factors = reduce(QueryPruner.ancestors(snapshot, evidenceVars), evidenceVars, states, ancestral);
+      if (toLog(eliminate(factors, order(factors, ancestral), false, null)) == Double.NEGATIVE_INFINITY) {
+        throw new IllegalArgumentException("The evidence " + evidence + " has a probability of zero");
+      }
+    }
+    Set<Integer> scope = Sets.newLinkedHashSet();
+    List<Factor> factors = reduce(requisite, evidenceVars, states, scope);
+
+    double logEvidence = toLog(eliminate(Lists.newArrayList(factors), order(factors, scope), false, null));
+    if (logEvidence == Double.NEGATIVE_INFINITY) {
+      throw new IllegalArgumentException("The evidence " + evidence + " has a probability of zero");
+    }
+    Set<Integer> maximized = Sets.newLinkedHashSet();
+    for (int var : explained) {
+      if (scope.contains(var)) {
+        maximized.add(var);
+      }
+    }
+    eliminate(factors, order(factors, Sets.difference(scope, maximized)), false, null);
+    int[] maxOrder = order(factors, maximized);
+    Factor[] trace = new Factor[maxOrder.length];
+    double logJoint = toLog(eliminate(factors, maxOrder, true, trace));
+
+    for (int step = maxOrder.length - 1; step >= 0; step--) {
+      states[maxOrder[step]] = trace[step].maximizingState(maxOrder[step], states);
+    }
+    Map<String, String> assignment = Maps.newLinkedHashMap();
+    int[] sorted = explained.clone();
+    Arrays.sort(sorted);
+    for (int var : sorted) {
+      assignment.put(snapshot.getId(var), snapshot.getStates(var).get(states[var]));
+    }
+    return Explanation.create(assignment, Math.min(0.0, logJoint - logEvidence));
+  }
+
+  // Eliminates the variables in order from the factors, which are updated in place, and returns
+  // the product of the factors that remain; when a trace is given, step i records the product the
+  // i-th variable was eliminated from
+  private double eliminate(List<Factor> factors, int[] order, boolean maximize, Factor[] trace) {
+    for (int step = 0; step < order.length; step++) {
+      Factor product = null;
+      for (Iterator<Factor> it = factors.iterator(); it.hasNext();) {
+        Factor factor = it.next();
+        if (factor.contains(order[step])) {
+          product = (product == null) ? factor : product.product(factor);
+          it.remove();
+        }
+      }
+      if (trace != null) {
+        trace[step] = product;
+      }
+      factors.add(maximize ? product.maxOut(order[step]) : product.sumOut(order[step]));
+    }
+    Factor result = Factor.unit(logSpace);
+    for (Factor factor : factors) {
+      result = result.product(factor);
+    }
+    return result.getValues()[0];
+  }
+
+  // Returns the CPTs of the given variables reduced by the evidence, adding the variables left in
+  // them to the scope
+  private List<Factor> reduce(int[] vars, int[] evidenceVars, int[] states, Set<Integer> scope) {
+    List<Factor> factors = Lists.newArrayListWithCapacity(vars.length);
+    for (int var : vars) {
+      Factor factor = snapshot.getFactor(var);
+      for (int observed : evidenceVars) {
+        factor = factor.reduce(observed, states[observed]);
+      }
+      factors.add(factor);
+      scope.addAll(Ints.asList(factor.getVariables()));
+    }
+    return factors;
+  }
+
+  private static int[] order(List<Factor> factors, Set<Integer> vars) {
+    List<int[]> scopes = Lists.newArrayListWithCapacity(factors.size());
+    for (Factor factor : factors) {
+      scopes.add(factor.getVariables());
+    }
+    return EliminationOrder.compute(scopes, vars, Heuristic.MIN_FILL);
+  }
+
+  private double toLog(double value) {
+    return logSpace ? value : Math.log(value);
+  }
+
+}
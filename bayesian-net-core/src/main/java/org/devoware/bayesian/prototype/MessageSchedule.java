@@ -0,0 +1,9 @@
+package org.devoware.bayesian.prototype;
+
+public enum MessageSchedule {
+  // Every message is recomputed from the previous iteration's messages, then all are replaced at once
+  SYNCHRONOUS,
+  // The message whose pending update changes it most is sent first, which usually converges in
+  // fewer updates and more often than the synchronous schedule
+  RESIDUAL
+}
@@ -0,0 +1,219 @@
+package org.devoware.bayesian.prototype;
+
+import static com.google.common.base.Preconditions.checkState;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.util.Objects.requireNonNull;
+
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+
+import com.google.common.collect.Lists;
+
+// Saves networks in a compact binary format and loads them by memory-mapping the file. All
+// numbers are little-endian:
+//
+//   header     magic "BNET", format version, variable count, edge count (four ints)
+//   variables  for each variable: id, label, state count and state names, where a string is an
+//              int byte length followed by UTF-8 bytes
+//   edges      parent offsets (variable count + 1 ints) and parent indices (edge count ints), so
+//              that the parents of variable v are entries offsets[v] to offsets[v + 1], in the
+//              order their CPT rows are laid out
+//   padding    zero bytes up to a multiple of 8
+//   CPTs       for each variable, its entries as doubles: row * cardinality + state, with the
+//              parents' states numbered in mixed radix, first parent varying fastest
+//
+// Loading copies the CPT doubles out of the mapping in bulk rather than parsing expressions, and
+// builds the network in one step with a NetworkBuilder.
+public class ModelFile {
+
+  private static final int MAGIC = 'B' | 'N' << 8 | 'E' << 16 | 'T' << 24;
+  static final int VERSION = 1;
+
+  private ModelFile() {}
+
+  public static void write(Network network, Path path) throws IOException {
+    requireNonNull(network, "network cannot be null");
+    requireNonNull(path, "path cannot be null");
+    List<RandomVariable> vars = Lists.newArrayList(network.getVariables());
+    Topology topology = network.getTopology();
+    int size = 16 + 4 * (vars.size() + 1) + 4 * topology.getEdgeCount();
+    List<byte[]> strings = Lists.newArrayList();
+    for (RandomVariable var : vars) {
+      checkState(var.getCpt().hasAllRequiredProbabilities(),
+          "You must first assign probabilities to all entries in the CPT for variable " + var.getId());
+      String unnormalized = var.getCpt().findUnnormalizedRow();
+      checkState(unnormalized == null, unnormalized);
+      strings.add(var.getId().getBytes(UTF_8));
+      strings.add(var.getLabel().getBytes(UTF_8));
+      for (String state : var.getStates()) {
+        strings.add(state.getBytes(UTF_8));
+      }
+      size += 4;
+    }
+    for (byte[] string : strings) {
+      size += 4 + string.length;
+    }
+    int padding = -size & 7;
+    long cptSize = 0;
+    for (RandomVariable var : vars) {
+      cptSize += 8L * var.getCpt().getValues().length;
+    }
+    checkState(size + padding + cptSize <= Integer.MAX_VALUE, "The network is too large to be saved in a single model file");
+
+    ByteBuffer buffer = ByteBuffer.allocate((int) (size + padding + cptSize)).order(ByteOrder.LITTLE_ENDIAN);
+    buffer.putInt(MAGIC).putInt(VERSION).putInt(vars.size()).putInt(topology.getEdgeCount());
+    int s = 0;
+    for (RandomVariable var : vars) {
+      putString(buffer, strings.get(s++));
+      putString(buffer, strings.get(s++));
+      buffer.putInt(var.getCardinality());
+      for (int i = 0; i < var.getCardinality(); i++) {
+        putString(buffer, strings.get(s++));
+      }
+    }
+    int offset = 0;
+    for (int v = 0; v < vars.size(); v++) {
+      buffer.putInt(offset);
+      offset += topology.getParentCount(v);
+    }
+    buffer.putInt(offset);
+    for (int v = 0; v < vars.size(); v++) {
+      for (int i = 0; i < topology.getParentCount(v); i++) {
+        buffer.putInt(topology.getParent(v, i));
+      }
+    }
+    buffer.position(buffer.position() + padding);
+    for (RandomVariable var : vars) {
+      buffer.asDoubleBuffer().put(var.getCpt().getValues());
+      buffer.position(buffer.position() + 8 * var.getCpt().getValues().length);
+    }
+    buffer.flip();
+    try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+        StandardOpenOption.TRUNCATE_EXISTING)) {
+      while (buffer.hasRemaining()) {
+        channel.write(buffer);
+      }
+    }
+  }
+
+  public static Network read(Path path) throws IOException {
+    requireNonNull(path, "path cannot be null");
+    try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+      if (channel.size() > Integer.MAX_VALUE) {
+        throw new IOException(path + " is too large to be a model file");
+      }
+      MappedByteBuffer mapping = channel.map(MapMode.READ_ONLY, 0, channel.size());
+      return read(mapping.order(ByteOrder.LITTLE_ENDIAN), path);
+    }
+  }
+
+  private static Network read(ByteBuffer buffer, Path path) throws IOException {
+    try {
+      if (buffer.remaining() < 16 || buffer.getInt() != MAGIC) {
+        throw new IOException(path + " is not a model file");
+      }
+      int version = buffer.getInt();
+      if (version != VERSION) {
+        throw new IOException(path + " has format version " + version + " but only version " + VERSION + " is supported");
+      }
+      int variableCount = buffer.getInt();
+      int edgeCount = buffer.getInt();
+      // Each variable takes at least 20 bytes and each edge 4, which bounds what a corrupt header can allocate
+      if (variableCount < 0 || edgeCount < 0 || variableCount > buffer.remaining() / 20 || edgeCount > buffer.remaining() / 4) {
+        throw new IOException(path + " is corrupt: the header gives " + variableCount + " variables and " + edgeCount + " edges");
+      }
+      NetworkBuilder builder = Network.builder();
+      List<String> ids = Lists.newArrayListWithCapacity(variableCount);
+      int[] cards = new int[variableCount];
+      for (int v = 0; v < variableCount; v++) {
+        String id = getString(buffer);
+        String label = getString(buffer);
+        int cardinality = buffer.getInt();
+        if (cardinality < 2 || cardinality > buffer.remaining() / 4) {
+          throw new IOException(path + " is corrupt: variable " + id + " has " + cardinality + " states");
+        }
+        List<String> states = Lists.newArrayListWithCapacity(cardinality);
+        for (int i = 0; i < cardinality; i++) {
+          states.add(getString(buffer));
+        }
+        builder.withVariable(id, label, states);
+        ids.add(id);
+        cards[v] = cardinality;
+      }
+      int[] offsets = new int[variableCount + 1];
+      buffer.asIntBuffer().get(offsets);
+      buffer.position(buffer.position() + 4 * offsets.length);
+      int[] parents = new int[edgeCount];
+      buffer.asIntBuffer().get(parents);
+      buffer.position(buffer.position() + 4 * parents.length);
+      buffer.position(buffer.position() + (-buffer.position() & 7));
+      for (int v = 0; v < variableCount; v++) {
+        if (offsets[v] > offsets[v + 1]) {
+          throw new IOException(path + " is corrupt: the edge offsets are not in order");
+        }
+      }
+      if (offsets[0] != 0 || offsets[variableCount] != edgeCount) {
+        throw new IOException(path + " is corrupt: the edge offsets do not match the edge count");
+      }
+      for (int v = 0; v < variableCount; v++) {
+        for (int e = offsets[v]; e < offsets[v + 1]; e++) {
+          if (parents[e] < 0 || parents[e] >= variableCount) {
+            throw new IOException(path + " is corrupt: edge " + e + " refers to variable " + parents[e]);
+          }
+          builder.withEdge(ids.get(parents[e]), ids.get(v));
+        }
+      }
+      for (int v = 0; v < variableCount; v++) {
+        long size = cards[v];
+        try {
+          for (int e = offsets[v]; e < offsets[v + 1]; e++) {
+            size = Math.multiplyExact(size, cards[parents[e]]);
+          }
+        } catch (ArithmeticException e) {
+          size = Long.MAX_VALUE;
+        }
+        if (size > Integer.MAX_VALUE) {
+          throw new IOException(path + " is corrupt: the CPT of variable " + ids.get(v) + " has too many entries");
+        }
+        if (size > buffer.remaining() / 8) {
+          throw new BufferUnderflowException();
+        }
+        double[] values = new double[(int) size];
+        buffer.asDoubleBuffer().get(values);
+        buffer.position(buffer.position() + 8 * values.length);
+        builder.withCpt(ids.get(v), values);
+      }
+      if (buffer.hasRemaining()) {
+        throw new IOException(path + " is corrupt: " + buffer.remaining() + " unexpected bytes at the end of the file");
+      }
+      return builder.build();
+    } catch (BufferUnderflowException | IndexOutOfBoundsException e) {
+      throw new IOException(path + " is corrupt: the file ends early", e);
+    } catch (IllegalArgumentException | NetworkCycleException e) {
+      throw new IOException(path + " is corrupt: " + e.getMessage(), e);
+    }
+  }
+
+  private static void putString(ByteBuffer buffer, byte[] string) {
+    buffer.putInt(string.length).put(string);
+  }
+
+  private static String getString(ByteBuffer buffer) {
+    int length = buffer.getInt();
+    if (length < 0 || length > buffer.remaining()) {
+      throw new BufferUnderflowException();
+    }
+    byte[] bytes = new byte[length];
+    buffer.get(bytes);
+    return new String(bytes, UTF_8);
+  }
+
+}
@@ -0,0 +1,217 @@
+package org.devoware.bayesian.prototype;
+
+import static java.util.Objects.requireNonNull;
+
+import java.io.IOException;
+import java.io.Reader;
+
+// Splits a text model file into words, quoted strings and single-character symbols as it reads
+// it, so that a file is never held in memory whole. Words run until whitespace or a symbol, which
+// covers the identifiers and numbers of both BIF and Hugin files. Comments are skipped: lines
+// starting with the given marker, and /* ... */ blocks when enabled.
+class ModelTokenizer {
+
+  enum Kind { WORD, STRING, SYMBOL, EOF }
+
+  private static final String SYMBOLS = "{}()[]|,;=";
+
+  private final Reader in;
+  private final String lineComment;
+  private final boolean blockComments;
+  private final char[] buffer = new char[8192];
+  private final StringBuilder text = new StringBuilder();
+  private int position;
+  private int limit;
+  private int line = 1;
+  private Kind kind;
+  private char symbol;
+
+  ModelTokenizer(Reader in, String lineComment, boolean blockComments) {
+    this.in = requireNonNull(in, "in cannot be null");
+    this.lineComment = requireNonNull(lineComment, "lineComment cannot be null");
+    this.blockComments = blockComments;
+  }
+
+  // Advances to the next token and returns its kind
+  Kind next() throws IOException {
+    skipWhitespaceAndComments();
+    text.setLength(0);
+    int c = peek(0);
+    if (c < 0) {
+      return kind = Kind.EOF;
+    }
+    position++;
+    if (SYMBOLS.indexOf(c) >= 0) {
+      symbol = (char) c;
+      return kind = Kind.SYMBOL;
+    }
+    if (c == '"') {
+      for (c = read(); c != '"'; c = read()) {
+        if (c < 0) {
+          throw error("unterminated string");
+        }
+        if (c == '\n') {
+          line++;
+        }
+        text.append((char) c);
+      }
+      return kind = Kind.STRING;
+    }
+    text.append((char) c);
+    for (c = peek(0); c >= 0 && !isWhitespace(c) && SYMBOLS.indexOf(c) < 0 && c != '"' && !atComment(); c = peek(0)) {
+      text.append((char) c);
+      position++;
+    }
+    return kind = Kind.WORD;
+  }
+
+  Kind kind() {
+    return kind;
+  }
+
+  // The characters of the current word or string
+  String text() {
+    return text.toString();
+  }
+
+  boolean isSymbol(char c) {
+    return kind == Kind.SYMBOL && symbol == c;
+  }
+
+  boolean isWord(String word) {
+    return kind == Kind.WORD && text.length() == word.length() && text.indexOf(word) == 0;
+  }
+
+  // The current word read as a number
+  double number() throws IOException {
+    if (kind != Kind.WORD) {
+      throw error("expected a number but found " + describe());
+    }
+    try {
+      return Double.parseDouble(text.toString());
+    } catch (NumberFormatException e) {
+      throw error("expected a number but found " + describe());
+    }
+  }
+
+  void expect(char c) throws IOException {
+    next();
+    if (!isSymbol(c)) {
+      throw error("expected '" + c + "' but found " + describe());
+    }
+  }
+
+  // Reads a name, which may be a word or a quoted string
+  String expectName() throws IOException {
+    next();
+    if (kind != Kind.WORD && kind != Kind.STRING) {
+      throw error("expected a name but found " + describe());
+    }
+    return text();
+  }
+
+  // Skips tokens up to and including the given symbol, passing over nested brackets
+  void skipPast(char c) throws IOException {
+    int depth = 0;
+    while (next() != Kind.EOF) {
+      if (depth == 0 && isSymbol(c)) {
+        return;
+      }
+      if (isSymbol('(') || isSymbol('{') || isSymbol('[')) {
+        depth++;
+      } else if (isSymbol(')') || isSymbol('}') || isSymbol(']')) {
+        depth--;
+      }
+    }
+    throw error("expected '" + c + "' but found the end of the file");
+  }
+
+  String describe() {
+    switch (kind) {
+      case EOF:
+        return "the end of the file";
+      case SYMBOL:
+        return "'" + symbol + "'";
+      case STRING:
+        return "\"" + text + "\"";
+      default:
+        return "'" + text + "'";
+    }
+  }
+
+  IOException error(String message) {
+    return new IOException("Line " + line + ": " + message);
+  }
+
+  private void skipWhitespaceAndComments() throws IOException {
+    for (int c = peek(0); c >= 0; c = peek(0)) {
+      if (isWhitespace(c)) {
+        if (c == '\n') {
+          line++;
+        }
+        position++;
+      } else if (startsWith(lineComment)) {
+        for (c = read(); c >= 0 && c != '\n'; c = read()) {
+        }
+        line++;
+      } else if (blockComments && startsWith("/*")) {
+        position += 2;
+        while (!startsWith("*/")) {
+          c = read();
+          if (c < 0) {
+            throw error("unterminated comment");
+          }
+          if (c == '\n') {
+            line++;
+          }
+        }
+        position += 2;
+      } else {
+        return;
+      }
+    }
+  }
+
+  private boolean atComment() throws IOException {
+    return startsWith(lineComment) || (blockComments && startsWith("/*"));
+  }
+
+  private boolean startsWith(String prefix) throws IOException {
+    for (int i = 0; i < prefix.length(); i++) {
+      if (peek(i) != prefix.charAt(i)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private int read() throws IOException {
+    int c = peek(0);
+    if (c >= 0) {
+      position++;
+    }
+    return c;
+  }
+
+  // Returns the character the given distance ahead without consuming it, or -1 at the end
+  private int peek(int ahead) throws IOException {
+    if (position + ahead >= limit) {
+      System.arraycopy(buffer, position, buffer, 0, limit - position);
+      limit -= position;
+      position = 0;
+      while (ahead >= limit) {
+        int n = in.read(buffer, limit, buffer.length - limit);
+        if (n < 0) {
+          return -1;
+        }
+        limit += n;
+      }
+    }
+    return buffer[position + ahead];
+  }
+
+  private static boolean isWhitespace(int c) {
+    return c == ' ' || c == '\t' || c == '\n' || c == '\r' || c == '\f';
+  }
+
+}
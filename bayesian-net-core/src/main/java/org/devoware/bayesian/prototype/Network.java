@@ -1,52 +1,95 @@
 package org.devoware.bayesian.prototype;
 
 import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkState;
+import static com.google.common.base.Throwables.throwIfUnchecked;
 import static java.util.Objects.requireNonNull;
 
+import java.util.AbstractSet;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.NoSuchElementException;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
 
 import org.devoware.bayesian.prototype.expr.Parser;
 import org.devoware.bayesian.prototype.expr.ProbabilityExpression;
 
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.LinkedHashMultimap;
+import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
 import com.google.common.collect.Multimap;
-import com.google.common.collect.Sets;
+import com.google.common.collect.UnmodifiableIterator;
 import com.google.common.eventbus.EventBus;
+import com.google.common.util.concurrent.UncheckedExecutionException;
 
 public class Network {
 
+  static final List<String> BOOLEAN_STATES = ImmutableList.of(ProbabilityExpression.FALSE, ProbabilityExpression.TRUE);
+
+  private static final long DEFAULT_QUERY_CACHE_SIZE = 1024;
+
   private final EventBus eventBus = new EventBus();
   private final Parser parser = Parser.create(this);
-  private final Inferencer inferencer = Inferencer.create(this);
-  private final Set<RandomVariable> vars = Sets.newLinkedHashSet();
-  private final Map<String, RandomVariable> varsById = Maps.newLinkedHashMap();
-  private final Multimap<String, RandomVariable> childToParentEdges = LinkedHashMultimap.create();
-  private final Multimap<String, RandomVariable> parentToChildEdges = LinkedHashMultimap.create();
-  private final Map<String,Boolean> evidence = Maps.newTreeMap();
+  // Variables in creation order; a variable's position here is its index in the topology
+  private final List<RandomVariable> vars = Lists.newArrayList();
+  private final Map<String, RandomVariable> varsById = Maps.newHashMap();
+  // The edges, added one at a time; laid out as a Topology once per change, when one is needed
+  private Topology.Builder graph = Topology.builder();
+  private final Map<String,String> evidence = Maps.newTreeMap();
+  private InferenceAlgorithm algorithm = InferenceAlgorithm.VARIABLE_ELIMINATION;
+  private NumericMode numericMode = NumericMode.DOUBLE;
+  private ForkJoinPool enumerationPool;
+  private LoopyBeliefPropagation beliefPropagation = LoopyBeliefPropagation.builder().build();
+  private int version;
+  private volatile NetworkSnapshot snapshot;
+  // Query results by expression; cleared whenever a change to the model or the settings could alter them
+  private Cache<ProbabilityExpression, Double> posteriors = newPosteriorCache(DEFAULT_QUERY_CACHE_SIZE);
   
   public Network () {}
 
+  // Starts assembling a whole network in one step; see NetworkBuilder
+  public static NetworkBuilder builder() {
+    return new NetworkBuilder();
+  }
+
   public RandomVariable newVariable(String id) {
     return newVariable(id, null);
   }
 
   public RandomVariable newVariable(String id, String label) {
+    return newVariable(id, label, BOOLEAN_STATES);
+  }
+
+  // Creates a discrete variable with the given states, which are named in expressions as
+  // P(Weather=rain|...)
+  public RandomVariable newVariable(String id, String label, List<String> states) {
     requireNonNull(id, "id cannot be null");
+    requireNonNull(states, "states cannot be null");
     checkArgument(!varsById.containsKey(id), "A variable with an id of '" + id + "' is already defined");
+    checkArgument(states.size() >= 2, "A variable must have at least two states");
+    checkArgument(ImmutableSet.copyOf(states).size() == states.size(), "The states of a variable must be distinct");
     if (label == null) {
       label = id;
     }
-    varsById.put(id, null);
-    RandomVariable node = new RandomVariable(this, id, label);
+    RandomVariable node = new RandomVariable(this, vars.size(), id, label, states);
     vars.add(node);
     varsById.put(id, node);
+    graph.withVariable();
     eventBus.register(node);
+    modelChanged();
     return node;
   }
   
@@ -56,10 +99,9 @@ public class Network {
   
   public Multimap<RandomVariable,RandomVariable> getEdges () {
     Multimap<RandomVariable,RandomVariable> edges = LinkedHashMultimap.create();
-    for (Entry<String,Collection<RandomVariable>> entry : parentToChildEdges.asMap().entrySet()) {
-      RandomVariable parent = varsById.get(entry.getKey());
-      for (RandomVariable child : entry.getValue()) {
-        edges.put(parent, child);
+    for (int parent = 0; parent < vars.size(); parent++) {
+      for (int i = 0; i < graph.getChildCount(parent); i++) {
+        edges.put(vars.get(parent), vars.get(graph.getChildRow(parent)[i]));
       }
     }
     return edges;
@@ -76,10 +118,125 @@ public class Network {
   }
   
   public double query(String expression) {
-    if (!allCptsPopulated()) {
-      throw new IllegalStateException("You must first assign probabilities to all entries in the CPT for each random variable");
+    return query(parse(expression));
+  }
+
+  // Answers a query built with ProbabilityExpression.builder(), without going through the parser
+  public double query(ProbabilityExpression expr) {
+    requireNonNull(expr, "expr cannot be null");
+    checkAllCptsPopulated();
+    return cached(expr, () -> snapshot().query(expr));
+  }
+
+  public List<Double> queryAll(List<String> expressions) {
+    requireNonNull(expressions, "expressions cannot be null");
+    checkAllCptsPopulated();
+    List<ProbabilityExpression> exprs = Lists.newArrayListWithCapacity(expressions.size());
+    for (String expression : expressions) {
+      exprs.add(parse(expression));
     }
-    return inferencer.query(expression);
+    Double[] results = new Double[exprs.size()];
+    List<ProbabilityExpression> misses = Lists.newArrayList();
+    for (int i = 0; i < results.length; i++) {
+      results[i] = posteriors.getIfPresent(exprs.get(i));
+      if (results[i] == null) {
+        misses.add(exprs.get(i));
+      }
+    }
+    if (!misses.isEmpty()) {
+      double[] computed = snapshot().evaluateAll(misses);
+      for (int i = 0, m = 0; i < results.length; i++) {
+        if (results[i] == null) {
+          results[i] = computed[m];
+          posteriors.put(exprs.get(i), computed[m++]);
+        }
+      }
+    }
+    return Arrays.asList(results);
+  }
+
+  public PreparedQuery prepare(String expression) {
+    return prepare(parse(expression));
+  }
+
+  public PreparedQuery prepare(ProbabilityExpression expr) {
+    requireNonNull(expr, "expr cannot be null");
+    return PreparedQuery.create(this, expr);
+  }
+
+  // Returns the most probable joint state of all the unobserved variables given the evidence, which
+  // maps variable ids to observed states
+  public Explanation mostProbableExplanation(Map<String, String> evidence) {
+    checkAllCptsPopulated();
+    return snapshot().mostProbableExplanation(evidence);
+  }
+
+  // Returns the most probable joint state of the given variables given the evidence, summing over
+  // the states of every other unobserved variable
+  public Explanation maximumAPosteriori(Collection<String> ids, Map<String, String> evidence) {
+    checkAllCptsPopulated();
+    return snapshot().maximumAPosteriori(ids, evidence);
+  }
+
+  // Returns an immutable snapshot of the current model and inference settings that can be queried
+  // concurrently; later changes to the network are not reflected in it
+  public NetworkSnapshot freeze() {
+    checkAllCptsPopulated();
+    return snapshot();
+  }
+
+  public InferenceAlgorithm getInferenceAlgorithm() {
+    return algorithm;
+  }
+
+  public void setInferenceAlgorithm(InferenceAlgorithm algorithm) {
+    this.algorithm = requireNonNull(algorithm, "algorithm cannot be null");
+    posteriors.invalidateAll();
+  }
+
+  public NumericMode getNumericMode() {
+    return numericMode;
+  }
+
+  public void setNumericMode(NumericMode numericMode) {
+    this.numericMode = requireNonNull(numericMode, "numericMode cannot be null");
+    posteriors.invalidateAll();
+  }
+
+  public ForkJoinPool getEnumerationPool() {
+    return enumerationPool;
+  }
+
+  // Sets the pool whose threads share the assignments enumerated by exact DECIMAL queries, such as
+  // ForkJoinPool.commonPool(); null, the default, enumerates them on the calling thread
+  public void setEnumerationPool(ForkJoinPool enumerationPool) {
+    this.enumerationPool = enumerationPool;
+  }
+
+  public LoopyBeliefPropagation getBeliefPropagation() {
+    return beliefPropagation;
+  }
+
+  // Sets the damping, iteration limit and other settings used to answer queries when the inference
+  // algorithm is LOOPY_BELIEF_PROPAGATION
+  public void setBeliefPropagation(LoopyBeliefPropagation beliefPropagation) {
+    this.beliefPropagation = requireNonNull(beliefPropagation, "beliefPropagation cannot be null");
+    posteriors.invalidateAll();
+  }
+
+  // Bounds the number of query results remembered between calls, evicting the least recently used
+  // first; a size of zero turns the cache off
+  public void setQueryCacheSize(long size) {
+    checkArgument(size >= 0, "size cannot be negative");
+    posteriors = newPosteriorCache(size);
+  }
+
+  public CacheStats getQueryCacheStats() {
+    return posteriors.stats();
+  }
+
+  public void clearQueryCache() {
+    posteriors.invalidateAll();
   }
 
   public boolean containsVar(String id) {
@@ -87,9 +244,15 @@ public class Network {
   }
   
   public void setEvidence (String varId, boolean value) {
+    setEvidence(varId, value ? ProbabilityExpression.TRUE : ProbabilityExpression.FALSE);
+  }
+
+  public void setEvidence (String varId, String state) {
     requireNonNull(varId, "varId cannot be null");
+    requireNonNull(state, "state cannot be null");
     checkArgument(varsById.containsKey(varId), "A variable with an id of '" + varId + "' has not been defined for this network");
-    evidence.put(varId, value);
+    checkArgument(varsById.get(varId).indexOfState(state) >= 0, "'" + state + "' is not a state of variable " + varId);
+    evidence.put(varId, state);
     eventBus.post(this);
   }
   
@@ -105,7 +268,17 @@ public class Network {
     eventBus.post(this);
   }
   
+  // Returns the evidence on boolean variables
   public Map<String,Boolean> getEvidence () {
+    ImmutableMap.Builder<String,Boolean> builder = ImmutableMap.builder();
+    for (Entry<String,String> entry : evidence.entrySet()) {
+      checkState(varsById.get(entry.getKey()).isBoolean(), "Variable " + entry.getKey() + " is not boolean; use getEvidenceStates()");
+      builder.put(entry.getKey(), ProbabilityExpression.TRUE.equals(entry.getValue()));
+    }
+    return builder.build();
+  }
+
+  public Map<String,String> getEvidenceStates () {
     return ImmutableMap.copyOf(evidence);
   }
 
@@ -121,35 +294,108 @@ public class Network {
     eventBus.unregister(object);
   }
 
+  // Fills an empty network with the variables and edges collected by a NetworkBuilder, which has
+  // already validated them; each CPT is sized for its parents once rather than once per edge
+  void load(List<String> ids, List<String> labels, List<List<String>> states, Topology topology) {
+    checkState(vars.isEmpty(), "Only an empty network can be loaded");
+    for (int v = 0; v < ids.size(); v++) {
+      RandomVariable node = new RandomVariable(this, v, ids.get(v), labels.get(v), states.get(v));
+      vars.add(node);
+      varsById.put(node.getId(), node);
+      eventBus.register(node);
+    }
+    this.graph = Topology.builder(topology);
+    for (RandomVariable node : vars) {
+      if (node.hasParents()) {
+        node.getCpt().handleParentAdded();
+      }
+    }
+    modelChanged();
+  }
+
   void addEdge(RandomVariable parent, RandomVariable child) {
     requireNonNull(parent, "parent cannot be null");
     requireNonNull(child, "child cannot be null");
-    if (parent.getId().equals(child.getId())) {
+    if (graph.reaches(child.getIndex(), parent.getIndex())) {
       throw NetworkCycleException.create(parent.getId(), child.getId());
     }
-    checkForCycles(parent.getId(), child.getId(), child);
-    parentToChildEdges.put(parent.getId(), child);
-    childToParentEdges.put(child.getId(), parent);
+    if (!graph.hasEdge(parent.getIndex(), child.getIndex())) {
+      graph.withEdge(parent.getIndex(), child.getIndex());
+    }
+    modelChanged();
     eventBus.post(new EdgeAddedEvent(parent, child));
   }
 
+  double getProbability(RandomVariable var, String state) {
+    checkArgument(var.indexOfState(state) >= 0, "'" + state + "' is not a state of variable " + var.getId());
+    checkAllCptsPopulated();
+    ProbabilityExpression.Builder builder = ProbabilityExpression.builder().withHypothesis(var.getId(), state);
+    for (Entry<String,String> entry : evidence.entrySet()) {
+      builder.withEvidence(entry.getKey(), entry.getValue());
+    }
+    ProbabilityExpression expr = builder.build();
+    return cached(expr, () -> snapshot().marginal(expr));
+  }
+
+  int getVersion() {
+    return version;
+  }
+
+  void modelChanged() {
+    version++;
+    posteriors.invalidateAll();
+  }
+
+  // Queries run against a snapshot that is rebuilt whenever the model or the inference settings change
+  NetworkSnapshot snapshot() {
+    NetworkSnapshot current = snapshot;
+    if (current == null || current.getVersion() != version || current.getNumericMode() != numericMode
+        || current.getInferenceAlgorithm() != algorithm
+        || current.getEnumerationPool() != enumerationPool
+        || current.getBeliefPropagation() != beliefPropagation) {
+      current = NetworkSnapshot.create(this);
+      snapshot = current;
+    }
+    return current;
+  }
+
+  Topology getTopology() {
+    return graph.build();
+  }
+
+  RandomVariable getVariable(int index) {
+    return vars.get(index);
+  }
+
   Set<RandomVariable> getChildren(RandomVariable node) {
-    Collection<RandomVariable> children = parentToChildEdges.get(node.getId());
-    return ImmutableSet.copyOf(children);
+    int var = node.getIndex();
+    return new AdjacentVariables(graph.getChildRow(var), graph.getChildCount(var));
   }
 
   Set<RandomVariable> getParents(RandomVariable node) {
-    Collection<RandomVariable> parents = childToParentEdges.get(node.getId());
-    return ImmutableSet.copyOf(parents);
+    int var = node.getIndex();
+    return new AdjacentVariables(graph.getParentRow(var), graph.getParentCount(var));
+  }
+
+  // Returns the remembered result of the query, or runs it and remembers the result; prepared
+  // queries go through here too
+  double cached(ProbabilityExpression expr, Callable<Double> query) {
+    try {
+      return posteriors.get(expr, query);
+    } catch (ExecutionException | UncheckedExecutionException e) {
+      throwIfUnchecked(e.getCause());
+      throw new IllegalStateException(e.getCause());
+    }
+  }
+
+  private static Cache<ProbabilityExpression, Double> newPosteriorCache(long size) {
+    return CacheBuilder.newBuilder().maximumSize(size).recordStats().build();
   }
 
-  private void checkForCycles(String parent, String child, RandomVariable start) {
-     for (RandomVariable descendant : parentToChildEdges.get(start.getId())) {
-       if (parent.equals(descendant.getId())) {
-         throw NetworkCycleException.create(parent, child);
-       }
-       checkForCycles(parent, child, descendant);
-     }
+  private void checkAllCptsPopulated() {
+    if (!allCptsPopulated()) {
+      throw new IllegalStateException("You must first assign probabilities to all entries in the CPT for each random variable");
+    }
   }
 
   private boolean allCptsPopulated() {
@@ -161,5 +407,59 @@ public class Network {
     return true;
   }
 
-  
+  // A read-only view of the parents or children of a variable: the first count entries of its row
+  // in the graph. Those entries never change as the graph grows, so the view behaves like a copy
+  // taken when it was created without copying anything.
+  private class AdjacentVariables extends AbstractSet<RandomVariable> {
+    private final int[] row;
+    private final int count;
+
+    private AdjacentVariables(int[] row, int count) {
+      this.row = row;
+      this.count = count;
+    }
+
+    @Override
+    public int size() {
+      return count;
+    }
+
+    @Override
+    public boolean contains(Object o) {
+      if (!(o instanceof RandomVariable)) {
+        return false;
+      }
+      int other = ((RandomVariable) o).getIndex();
+      if (other >= vars.size() || vars.get(other) != o) {
+        return false;
+      }
+      for (int i = 0; i < count; i++) {
+        if (row[i] == other) {
+          return true;
+        }
+      }
+      return false;
+    }
+
+    @Override
+    public Iterator<RandomVariable> iterator() {
+      return new UnmodifiableIterator<RandomVariable>() {
+        private int i;
+
+        @Override
+        public boolean hasNext() {
+          return i < count;
+        }
+
+        @Override
+        public RandomVariable next() {
+          if (!hasNext()) {
+            throw new NoSuchElementException();
+          }
+          return vars.get(row[i++]);
+        }
+      };
+    }
+  }
+
 }
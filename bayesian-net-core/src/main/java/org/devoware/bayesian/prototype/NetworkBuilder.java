@@ -0,0 +1,100 @@
+package org.devoware.bayesian.prototype;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static java.util.Objects.requireNonNull;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import com.google.common.primitives.Ints;
+
+// Assembles a whole network before creating it, for models too large to build one edge at a time.
+// Adding an edge to a live network checks it for cycles and resizes the child's CPT; here the
+// edges are checked once by a topological sort, the topology is built in one step and each CPT is
+// sized for all its parents once. A variable's parents are ordered as their edges were added, and
+// its CPT entries are given as row * cardinality + state, with the rows numbering the parents'
+// states in mixed radix, first parent varying fastest (state 1 of a boolean variable is true).
+public class NetworkBuilder {
+
+  private final Map<String, Integer> indices = Maps.newHashMap();
+  private final List<String> ids = Lists.newArrayList();
+  private final List<String> labels = Lists.newArrayList();
+  private final List<List<String>> states = Lists.newArrayList();
+  private final List<double[]> cpts = Lists.newArrayList();
+  private final List<Integer> edgeParents = Lists.newArrayList();
+  private final List<Integer> edgeChildren = Lists.newArrayList();
+  private final Set<Long> edges = Sets.newHashSet();
+
+  NetworkBuilder() {}
+
+  public NetworkBuilder withVariable(String id) {
+    return withVariable(id, null);
+  }
+
+  public NetworkBuilder withVariable(String id, String label) {
+    return withVariable(id, label, Network.BOOLEAN_STATES);
+  }
+
+  public NetworkBuilder withVariable(String id, String label, List<String> states) {
+    requireNonNull(id, "id cannot be null");
+    requireNonNull(states, "states cannot be null");
+    checkArgument(!indices.containsKey(id), "A variable with an id of '" + id + "' is already defined");
+    checkArgument(states.size() >= 2, "A variable must have at least two states");
+    checkArgument(ImmutableSet.copyOf(states).size() == states.size(), "The states of a variable must be distinct");
+    indices.put(id, ids.size());
+    ids.add(id);
+    labels.add(label == null ? id : label);
+    this.states.add(ImmutableList.copyOf(states));
+    cpts.add(null);
+    return this;
+  }
+
+  // Adds an edge between two variables already added; adding the same edge again has no effect
+  public NetworkBuilder withEdge(String parent, String child) {
+    int from = indexOf(parent);
+    int to = indexOf(child);
+    if (edges.add((long) from << 32 | to)) {
+      edgeParents.add(from);
+      edgeChildren.add(to);
+    }
+    return this;
+  }
+
+  // Sets every CPT entry of the variable; its length is checked against the parents on build
+  public NetworkBuilder withCpt(String id, double[] values) {
+    requireNonNull(values, "values cannot be null");
+    cpts.set(indexOf(id), values.clone());
+    return this;
+  }
+
+  public Network build() {
+    Topology topology = Topology.create(ids.size(), Ints.toArray(edgeParents), Ints.toArray(edgeChildren));
+    try {
+      topology.topologicalOrder();
+    } catch (IllegalStateException e) {
+      throw new NetworkCycleException("The edges of the network form a cycle", e);
+    }
+    Network network = new Network();
+    network.load(ids, labels, states, topology);
+    for (int v = 0; v < ids.size(); v++) {
+      if (cpts.get(v) != null) {
+        network.getVariable(ids.get(v)).getCpt().putAll(cpts.get(v));
+      }
+    }
+    return network;
+  }
+
+  private int indexOf(String id) {
+    requireNonNull(id, "id cannot be null");
+    Integer index = indices.get(id);
+    checkArgument(index != null, "No variable with an id of '" + id + "' has been added");
+    return index;
+  }
+
+}
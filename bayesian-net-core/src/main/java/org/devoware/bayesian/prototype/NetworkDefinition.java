@@ -0,0 +1,106 @@
+package org.devoware.bayesian.prototype;
+
+import static java.util.Objects.requireNonNull;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Maps;
+
+// Collects the variables and distributions read from a model file, so that the importers can look
+// up the states of the variables they have read, and then builds the network in one step with a
+// NetworkBuilder.
+class NetworkDefinition {
+
+  private final Map<String, VariableDefinition> variables = Maps.newLinkedHashMap();
+
+  // Returns false if a variable with the id is already defined
+  boolean addVariable(String id, String label, List<String> states) {
+    requireNonNull(id, "id cannot be null");
+    requireNonNull(states, "states cannot be null");
+    if (variables.containsKey(id)) {
+      return false;
+    }
+    variables.put(id, new VariableDefinition(label, ImmutableList.copyOf(states)));
+    return true;
+  }
+
+  // The states of the variable, or null if it is not defined
+  List<String> getStates(String id) {
+    VariableDefinition var = variables.get(id);
+    return var == null ? null : var.states;
+  }
+
+  // Sets the parents of the variable and its CPT entries, laid out as row * cardinality + state
+  // with the rows numbered in mixed radix, first parent varying fastest. Returns false if the
+  // variable already has a distribution.
+  boolean setDistribution(String id, List<String> parents, double[] values) {
+    VariableDefinition var = variables.get(id);
+    if (var.values != null) {
+      return false;
+    }
+    var.parents = ImmutableList.copyOf(parents);
+    var.values = values;
+    return true;
+  }
+
+  Network build() throws IOException {
+    NetworkBuilder builder = Network.builder();
+    try {
+      for (Map.Entry<String, VariableDefinition> entry : variables.entrySet()) {
+        builder.withVariable(entry.getKey(), entry.getValue().label, entry.getValue().states);
+      }
+      for (Map.Entry<String, VariableDefinition> entry : variables.entrySet()) {
+        VariableDefinition var = entry.getValue();
+        if (var.values == null) {
+          throw new IOException("No probabilities are given for the variable " + entry.getKey());
+        }
+        for (String parent : var.parents) {
+          builder.withEdge(parent, entry.getKey());
+        }
+        builder.withCpt(entry.getKey(), var.values);
+      }
+      return builder.build();
+    } catch (IllegalArgumentException | NetworkCycleException e) {
+      throw new IOException(e.getMessage(), e);
+    }
+  }
+
+  // Reorders a table given parent configuration by parent configuration, with the last parent
+  // varying fastest as in BIF, XMLBIF and Hugin files, into the layout of a CPT. The child's
+  // states vary fastest within each configuration when childFastest is set, and slowest otherwise.
+  static double[] toCptLayout(double[] table, int cardinality, int[] parentCards, boolean childFastest) {
+    int rows = table.length / cardinality;
+    double[] values = new double[table.length];
+    int[] digits = new int[parentCards.length];
+    for (int row = 0; row < rows; row++) {
+      // digits hold the parents' states for this CPT row; tableRow numbers them last parent fastest
+      int tableRow = 0;
+      for (int i = 0; i < parentCards.length; i++) {
+        tableRow = tableRow * parentCards[i] + digits[i];
+      }
+      for (int state = 0; state < cardinality; state++) {
+        values[row * cardinality + state] = childFastest ? table[tableRow * cardinality + state] : table[state * rows + tableRow];
+      }
+      for (int i = 0; i < digits.length && ++digits[i] == parentCards[i]; i++) {
+        digits[i] = 0;
+      }
+    }
+    return values;
+  }
+
+  private static class VariableDefinition {
+    private final String label;
+    private final List<String> states;
+    private List<String> parents;
+    private double[] values;
+
+    private VariableDefinition(String label, List<String> states) {
+      this.label = label;
+      this.states = states;
+    }
+  }
+
+}
@@ -0,0 +1,304 @@
+package org.devoware.bayesian.prototype;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static java.util.Objects.requireNonNull;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.IntStream;
+
+import org.devoware.bayesian.prototype.expr.Parser;
+import org.devoware.bayesian.prototype.expr.ProbabilityExpression;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.primitives.Doubles;
+
+// An immutable copy of a network's structure, CPTs and inference settings. Variables are
+// addressed by their index in network order, and none of the query paths mutate shared state, so
+// a snapshot can be queried from any number of threads without locking.
+public class NetworkSnapshot {
+
+  private final int version;
+  private final NumericMode numericMode;
+  private final InferenceAlgorithm algorithm;
+  private final ForkJoinPool enumerationPool;
+  private final LoopyBeliefPropagation beliefPropagation;
+  private final List<String> ids;
+  private final Map<String, Integer> indices;
+  private final Topology topology;
+  private final int[][] parents;
+  private final int[][] children;
+  private final int[] cards;
+  private final List<List<String>> states;
+  private final double[][] probabilities;
+  // CPT factors, held in log space when the numeric mode calls for it
+  private final Factor[] factors;
+  private final boolean complete;
+  // Describes the first CPT row found not to sum to 1.0, or null
+  private final String unnormalized;
+  private final Parser parser;
+  private final Inferencer inferencer;
+  private final VariableElimination variableElimination;
+  private final JunctionTreeEngine junctionTree;
+  private final InferenceEngine loopy;
+  private final MaxProductElimination maxProduct;
+
+  static NetworkSnapshot create(Network network) {
+    requireNonNull(network, "network cannot be null");
+    return new NetworkSnapshot(network);
+  }
+
+  private NetworkSnapshot(Network network) {
+    this.version = network.getVersion();
+    this.numericMode = network.getNumericMode();
+    this.algorithm = network.getInferenceAlgorithm();
+    this.enumerationPool = network.getEnumerationPool();
+    this.beliefPropagation = network.getBeliefPropagation();
+    List<RandomVariable> vars = ImmutableList.copyOf(network.getVariables());
+    ImmutableList.Builder<String> ids = ImmutableList.builder();
+    Map<String, Integer> indices = Maps.newHashMap();
+    for (int i = 0; i < vars.size(); i++) {
+      ids.add(vars.get(i).getId());
+      indices.put(vars.get(i).getId(), i);
+    }
+    this.ids = ids.build();
+    this.indices = ImmutableMap.copyOf(indices);
+
+    int n = vars.size();
+    this.topology = network.getTopology();
+    this.parents = new int[n][];
+    this.children = new int[n][];
+    this.cards = new int[n];
+    ImmutableList.Builder<List<String>> states = ImmutableList.builder();
+    this.probabilities = new double[n][];
+    this.factors = new Factor[n];
+    boolean complete = true;
+    String unnormalized = null;
+    for (int i = 0; i < n; i++) {
+      RandomVariable var = vars.get(i);
+      ConditionalProbabilityTable cpt = var.getCpt();
+      parents[i] = new int[topology.getParentCount(i)];
+      for (int p = 0; p < parents[i].length; p++) {
+        parents[i][p] = topology.getParent(i, p);
+      }
+      children[i] = new int[topology.getChildCount(i)];
+      for (int c = 0; c < children[i].length; c++) {
+        children[i][c] = topology.getChild(i, c);
+      }
+      cards[i] = var.getCardinality();
+      states.add(var.getStates());
+      Factor factor = cpt.toFactor(this.indices);
+      probabilities[i] = factor.getValues();
+      factors[i] = numericMode == NumericMode.LOG_SPACE ? factor.toLogSpace() : factor;
+      complete &= cpt.hasAllRequiredProbabilities();
+      if (unnormalized == null) {
+        unnormalized = cpt.findUnnormalizedRow();
+      }
+    }
+    this.states = states.build();
+    this.complete = complete;
+    this.unnormalized = unnormalized;
+
+    this.parser = Parser.create(this::containsVar);
+    this.inferencer = Inferencer.create(this);
+    this.variableElimination = VariableElimination.create(this);
+    this.junctionTree = JunctionTreeEngine.create(this);
+    // Fails on messages that do not settle unless the propagation allows it
+    this.loopy = expr -> beliefPropagation.query(this, expr);
+    this.maxProduct = MaxProductElimination.create(this);
+  }
+
+  public List<String> getVariableIds() {
+    return ids;
+  }
+
+  public boolean containsVar(String id) {
+    return indices.containsKey(id);
+  }
+
+  public NumericMode getNumericMode() {
+    return numericMode;
+  }
+
+  public InferenceAlgorithm getInferenceAlgorithm() {
+    return algorithm;
+  }
+
+  public ForkJoinPool getEnumerationPool() {
+    return enumerationPool;
+  }
+
+  public LoopyBeliefPropagation getBeliefPropagation() {
+    return beliefPropagation;
+  }
+
+  public ProbabilityExpression parse(String expr) {
+    requireNonNull(expr, "expr cannot be null");
+    return parser.parse(expr);
+  }
+
+  public double query(String expression) {
+    return query(parse(expression));
+  }
+
+  public double query(ProbabilityExpression expr) {
+    requireNonNull(expr, "expr cannot be null");
+    checkComplete();
+    return getInferenceEngine().query(expr);
+  }
+
+  // Evaluates the queries together, sharing one junction tree calibration among all queries with
+  // the same evidence, unless they are answered by loopy belief propagation; the results are
+  // returned in the order of the expressions
+  public List<Double> queryAll(List<String> expressions) {
+    requireNonNull(expressions, "expressions cannot be null");
+    List<ProbabilityExpression> exprs = Lists.newArrayListWithCapacity(expressions.size());
+    for (String expression : expressions) {
+      exprs.add(parse(expression));
+    }
+    return Doubles.asList(evaluateAll(exprs));
+  }
+
+  // Returns the most probable joint state of all the unobserved variables given the evidence, which
+  // maps variable ids to observed states
+  public Explanation mostProbableExplanation(Map<String, String> evidence) {
+    requireNonNull(evidence, "evidence cannot be null");
+    checkComplete();
+    int[] explained = IntStream.range(0, size()).filter(var -> !evidence.containsKey(ids.get(var))).toArray();
+    return maxProduct.explain(explained, evidence);
+  }
+
+  // Returns the most probable joint state of the given variables given the evidence, summing over
+  // the states of every other unobserved variable
+  public Explanation maximumAPosteriori(Collection<String> ids, Map<String, String> evidence) {
+    requireNonNull(ids, "ids cannot be null");
+    requireNonNull(evidence, "evidence cannot be null");
+    checkArgument(!ids.isEmpty(), "ids cannot be empty");
+    checkComplete();
+    return maxProduct.explain(ids.stream().mapToInt(this::indexOf).distinct().toArray(), evidence);
+  }
+
+  public PreparedQuery prepare(String expression) {
+    return prepare(parse(expression));
+  }
+
+  public PreparedQuery prepare(ProbabilityExpression expr) {
+    requireNonNull(expr, "expr cannot be null");
+    return PreparedQuery.create(this, expr);
+  }
+
+  int getVersion() {
+    return version;
+  }
+
+  int size() {
+    return ids.size();
+  }
+
+  int indexOf(String id) {
+    Integer index = indices.get(id);
+    if (index == null) {
+      throw new IllegalArgumentException("A variable with an id of '" + id + "' has not been defined for this network");
+    }
+    return index;
+  }
+
+  String getId(int var) {
+    return ids.get(var);
+  }
+
+  Topology getTopology() {
+    return topology;
+  }
+
+  int[] getParents(int var) {
+    return parents[var];
+  }
+
+  int[] getChildren(int var) {
+    return children[var];
+  }
+
+  int getCardinality(int var) {
+    return cards[var];
+  }
+
+  List<String> getStates(int var) {
+    return states.get(var);
+  }
+
+  int stateIndex(int var, String state) {
+    int index = states.get(var).indexOf(state);
+    if (index < 0) {
+      throw new IllegalArgumentException("'" + state + "' is not a state of the variable with an id of '" + ids.get(var) + "'");
+    }
+    return index;
+  }
+
+  // Returns the CPT of the variable as a factor over [var, parents...] in the snapshot's numeric space
+  Factor getFactor(int var) {
+    return factors[var];
+  }
+
+  double getProbability(int var, int row, int state) {
+    return probabilities[var][row * cards[var] + state];
+  }
+
+  // Answers the query from the junction tree, whose calibration is shared by every marginal under
+  // the same evidence, whatever the configured algorithm
+  double marginal(ProbabilityExpression expr) {
+    checkComplete();
+    if (numericMode == NumericMode.DECIMAL) {
+      return inferencer.query(expr);
+    }
+    return junctionTree.query(expr);
+  }
+
+  double[] evaluateAll(List<ProbabilityExpression> exprs) {
+    checkComplete();
+    if (numericMode == NumericMode.DECIMAL) {
+      double[] results = new double[exprs.size()];
+      for (int i = 0; i < results.length; i++) {
+        results[i] = inferencer.query(exprs.get(i));
+      }
+      return results;
+    }
+    if (algorithm == InferenceAlgorithm.LOOPY_BELIEF_PROPAGATION) {
+      double[] results = new double[exprs.size()];
+      for (int i = 0; i < results.length; i++) {
+        results[i] = loopy.query(exprs.get(i));
+      }
+      return results;
+    }
+    return junctionTree.queryAll(exprs);
+  }
+
+  void checkComplete() {
+    if (!complete) {
+      throw new IllegalStateException("You must first assign probabilities to all entries in the CPT for each random variable");
+    }
+    if (unnormalized != null) {
+      throw new IllegalStateException(unnormalized);
+    }
+  }
+
+  private InferenceEngine getInferenceEngine() {
+    if (numericMode == NumericMode.DECIMAL) {
+      return inferencer;
+    }
+    switch (algorithm) {
+      case JUNCTION_TREE:
+        return junctionTree;
+      case LOOPY_BELIEF_PROPAGATION:
+        return loopy;
+      default:
+        return variableElimination;
+    }
+  }
+
+}
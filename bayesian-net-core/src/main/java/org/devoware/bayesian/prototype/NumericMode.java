@@ -0,0 +1,10 @@
+package org.devoware.bayesian.prototype;
+
+public enum NumericMode {
+  // Double precision arithmetic over probabilities
+  DOUBLE,
+  // Double precision arithmetic over log probabilities, for models whose products underflow
+  LOG_SPACE,
+  // Exact BigDecimal enumeration, intended as a reference for regression testing
+  DECIMAL
+}
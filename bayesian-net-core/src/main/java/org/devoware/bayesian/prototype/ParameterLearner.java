@@ -0,0 +1,283 @@
+package org.devoware.bayesian.prototype;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.util.concurrent.Futures.getUnchecked;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.util.Objects.requireNonNull;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+import com.google.common.collect.AbstractIterator;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Iterators;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+
+// Fits every CPT of a network to complete data: each row of the data gives the state of every
+// variable, and P(X = x | parents = u) is estimated as
+//
+//   (N(x, u) + a) / (N(u) + a * |X|)
+//
+// where N counts the matching rows and a is the pseudo count of a symmetric Dirichlet prior: 0
+// gives the maximum likelihood estimate and 1 Laplace smoothing. A row of parent states that never
+// occurs, and so cannot be estimated, gets a uniform distribution.
+//
+// The rows are streamed: they are read in blocks on the calling thread, and each block is split
+// between the workers, which decode and count their share into counts of their own. The counts
+// are only merged, and the CPTs only filled, once every row has been counted, so an error in the
+// data leaves the network unchanged.
+public class ParameterLearner {
+
+  // The rows handed to a worker at a time
+  private static final int BATCH_SIZE = 1 << 12;
+
+  private final double pseudoCount;
+  private final int parallelism;
+  private final ForkJoinPool pool;
+
+  public static Builder builder() {
+    return new Builder();
+  }
+
+  private ParameterLearner(Builder builder) {
+    this.pseudoCount = builder.pseudoCount;
+    this.parallelism = builder.parallelism;
+    this.pool = builder.pool;
+  }
+
+  // Learns from rows giving the value of every variable in the order the variables were created;
+  // every variable must be boolean. Returns the number of rows.
+  public long learn(Network network, Iterator<boolean[]> rows) {
+    requireNonNull(network, "network cannot be null");
+    requireNonNull(rows, "rows cannot be null");
+    CptLayout layout = new CptLayout(network);
+    for (RandomVariable var : layout.getVariables()) {
+      checkArgument(var.isBoolean(), "Variable " + var.getId() + " is not boolean; give the index of its state instead");
+    }
+    int n = layout.getVariables().size();
+    // Rows are held until their block is counted, so they are copied in case the caller reuses arrays
+    return learn(layout, Iterators.transform(rows, boolean[]::clone), (row, states) -> {
+      checkArgument(row.length == n, "Expected " + n + " values but found " + row.length);
+      for (int v = 0; v < n; v++) {
+        states[v] = row[v] ? 1 : 0;
+      }
+    });
+  }
+
+  // Learns from rows giving the index of every variable's state, in the order the variables were
+  // created. Returns the number of rows.
+  public long learnStates(Network network, Iterator<int[]> rows) {
+    requireNonNull(network, "network cannot be null");
+    requireNonNull(rows, "rows cannot be null");
+    CptLayout layout = new CptLayout(network);
+    int n = layout.getVariables().size();
+    return learn(layout, Iterators.transform(rows, int[]::clone), (row, states) -> {
+      checkArgument(row.length == n, "Expected " + n + " states but found " + row.length);
+      for (int v = 0; v < n; v++) {
+        checkArgument(row[v] >= 0 && row[v] < layout.getCardinality(v), "Variable " + layout.getVariables().get(v).getId() + " has no state " + row[v]);
+        states[v] = row[v];
+      }
+    });
+  }
+
+  public long learnCsv(Network network, Path path) throws IOException {
+    requireNonNull(path, "path cannot be null");
+    try (Reader reader = Files.newBufferedReader(path, UTF_8)) {
+      return learnCsv(network, reader);
+    }
+  }
+
+  // Learns from comma-separated values whose first line gives the ids of the variables in each
+  // column, and whose other lines give their states by name. Every variable must have a column;
+  // other columns and blank lines are ignored. Returns the number of rows.
+  public long learnCsv(Network network, Reader csv) throws IOException {
+    requireNonNull(network, "network cannot be null");
+    requireNonNull(csv, "csv cannot be null");
+    CptLayout layout = new CptLayout(network);
+    BufferedReader reader = csv instanceof BufferedReader ? (BufferedReader) csv : new BufferedReader(csv);
+    String header = reader.readLine();
+    if (header == null) {
+      throw new IOException("The data has no header line");
+    }
+    String[] ids = split(header);
+    Map<String, Integer> columnsById = Maps.newHashMap();
+    for (int c = 0; c < ids.length; c++) {
+      columnsById.put(ids[c], c);
+    }
+    int n = layout.getVariables().size();
+    int[] columns = new int[n];
+    List<Map<String, Integer>> stateIndices = Lists.newArrayListWithCapacity(n);
+    for (int v = 0; v < n; v++) {
+      RandomVariable var = layout.getVariables().get(v);
+      Integer column = columnsById.get(var.getId());
+      if (column == null) {
+        throw new IOException("The data has no column for the variable " + var.getId());
+      }
+      columns[v] = column;
+      ImmutableMap.Builder<String, Integer> indices = ImmutableMap.builder();
+      for (int s = 0; s < var.getCardinality(); s++) {
+        indices.put(var.getStates().get(s), s);
+      }
+      stateIndices.add(indices.build());
+    }
+
+    Iterator<String> lines = new AbstractIterator<String>() {
+      @Override
+      protected String computeNext() {
+        try {
+          for (String line = reader.readLine(); line != null; line = reader.readLine()) {
+            if (!line.trim().isEmpty()) {
+              return line;
+            }
+          }
+          return endOfData();
+        } catch (IOException e) {
+          throw new UncheckedIOException(e);
+        }
+      }
+    };
+    try {
+      return learn(layout, lines, (line, states) -> {
+        String[] fields = split(line);
+        checkArgument(fields.length == ids.length, "Expected " + ids.length + " values but found " + fields.length);
+        for (int v = 0; v < n; v++) {
+          Integer state = stateIndices.get(v).get(fields[columns[v]]);
+          checkArgument(state != null, "'" + fields[columns[v]] + "' is not a state of the variable " + layout.getVariables().get(v).getId());
+          states[v] = state;
+        }
+      });
+    } catch (UncheckedIOException e) {
+      throw e.getCause();
+    } catch (IllegalArgumentException e) {
+      throw new IOException(e.getMessage(), e);
+    }
+  }
+
+  private <T> long learn(CptLayout layout, Iterator<T> rows, Decoder<T> decoder) {
+    long[][] partials = new long[parallelism][layout.size()];
+    List<T> block = Lists.newArrayListWithCapacity(parallelism * BATCH_SIZE);
+    long count = 0;
+    while (rows.hasNext()) {
+      block.clear();
+      while (block.size() < parallelism * BATCH_SIZE && rows.hasNext()) {
+        block.add(rows.next());
+      }
+      count(layout, block, count, decoder, partials);
+      count += block.size();
+    }
+    double[] counts = new double[layout.size()];
+    for (long[] partial : partials) {
+      for (int i = 0; i < counts.length; i++) {
+        counts[i] += partial[i];
+      }
+    }
+    layout.assign(layout.estimate(counts, pseudoCount));
+    return count;
+  }
+
+  // Counts a block of rows, the first of which is the given row of the data
+  private <T> void count(CptLayout layout, List<T> block, long first, Decoder<T> decoder, long[][] partials) {
+    if (parallelism == 1) {
+      countRows(layout, block, first, decoder, partials[0]);
+      return;
+    }
+    // Each task hands back any error in its rows, so that it is rethrown as it was raised rather
+    // than as the copy the pool makes when a task fails
+    List<Callable<RuntimeException>> tasks = Lists.newArrayList();
+    for (int from = 0, p = 0; from < block.size(); from += BATCH_SIZE, p++) {
+      List<T> rows = block.subList(from, Math.min(from + BATCH_SIZE, block.size()));
+      long start = first + from;
+      long[] counts = partials[p];
+      tasks.add(() -> {
+        try {
+          countRows(layout, rows, start, decoder, counts);
+          return null;
+        } catch (RuntimeException e) {
+          return e;
+        }
+      });
+    }
+    for (Future<RuntimeException> task : pool.invokeAll(tasks)) {
+      RuntimeException error = getUnchecked(task);
+      if (error != null) {
+        throw error;
+      }
+    }
+  }
+
+  private static <T> void countRows(CptLayout layout, List<T> rows, long first, Decoder<T> decoder, long[] counts) {
+    int[] states = new int[layout.getVariables().size()];
+    for (int i = 0; i < rows.size(); i++) {
+      try {
+        decoder.decode(rows.get(i), states);
+      } catch (IllegalArgumentException e) {
+        throw new IllegalArgumentException("Row " + (first + i + 1) + ": " + e.getMessage(), e);
+      }
+      for (int v = 0; v < states.length; v++) {
+        counts[layout.indexOf(v, states)]++;
+      }
+    }
+  }
+
+  private static String[] split(String line) {
+    String[] fields = line.split(",", -1);
+    for (int i = 0; i < fields.length; i++) {
+      String field = fields[i].trim();
+      if (field.length() >= 2 && field.startsWith("\"") && field.endsWith("\"")) {
+        field = field.substring(1, field.length() - 1);
+      }
+      fields[i] = field;
+    }
+    return fields;
+  }
+
+  public static class Builder {
+
+    private double pseudoCount = 0.0;
+    private int parallelism = 1;
+    private ForkJoinPool pool = ForkJoinPool.commonPool();
+
+    private Builder() {}
+
+    // The count added to every entry before normalizing: 0 for maximum likelihood, 1 for Laplace smoothing
+    public Builder withPseudoCount(double pseudoCount) {
+      checkArgument(pseudoCount >= 0.0, "pseudoCount cannot be negative");
+      this.pseudoCount = pseudoCount;
+      return this;
+    }
+
+    public Builder withParallelism(int parallelism) {
+      checkArgument(parallelism >= 1, "parallelism must be at least 1");
+      this.parallelism = parallelism;
+      return this;
+    }
+
+    // Runs the tasks on the given pool rather than the common pool
+    public Builder withPool(ForkJoinPool pool) {
+      this.pool = requireNonNull(pool, "pool cannot be null");
+      return this;
+    }
+
+    public ParameterLearner build() {
+      return new ParameterLearner(this);
+    }
+
+  }
+
+  // Turns a row of the data into the index of every variable's state
+  private interface Decoder<T> {
+    void decode(T row, int[] states);
+  }
+
+}
@@ -0,0 +1,227 @@
+package org.devoware.bayesian.prototype;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static java.util.Objects.requireNonNull;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.function.Supplier;
+
+import org.devoware.bayesian.prototype.EliminationOrder.Heuristic;
+import org.devoware.bayesian.prototype.expr.ProbabilityExpression;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import com.google.common.primitives.Ints;
+
+// A query whose shape (the hypotheses and the observed variables) is fixed up front, so that it
+// can be run repeatedly with different evidence values. Variable ids are resolved once, and under
+// variable elimination the requisite CPTs are selected and the elimination order is computed once;
+// the plan is rebuilt only when the snapshot it was compiled against is replaced, i.e. when the
+// network or its settings change. Under the other algorithms and numeric modes each execution is
+// answered by the snapshot's engine, exactly as Network.query would answer it. A query prepared on
+// a network goes through the network's posterior cache like any other query. Executing a prepared
+// query is safe from multiple threads.
+public class PreparedQuery {
+
+  private final Supplier<NetworkSnapshot> snapshots;
+  // The network whose posterior cache the results go through, or null for a query prepared on a snapshot
+  private final Network network;
+  private final ProbabilityExpression expr;
+  private final List<String> evidenceIds;
+  // The states each observed variable can take, in the order of evidenceIds
+  private final List<List<String>> evidenceStates;
+  private final List<String> queryIds;
+  private final int[] queryStates;
+  // For each hypothesis that repeats an observed variable, its position in evidenceIds and its state
+  private final int[] repeatedPositions;
+  private final int[] repeatedStates;
+  private final int[] defaultEvidence;
+
+  private volatile CompiledPlan compiled;
+
+  static PreparedQuery create(Network network, ProbabilityExpression expr) {
+    requireNonNull(network, "network cannot be null");
+    requireNonNull(expr, "expr cannot be null");
+    return new PreparedQuery(network::snapshot, network, expr);
+  }
+
+  static PreparedQuery create(NetworkSnapshot snapshot, ProbabilityExpression expr) {
+    requireNonNull(snapshot, "snapshot cannot be null");
+    requireNonNull(expr, "expr cannot be null");
+    return new PreparedQuery(() -> snapshot, null, expr);
+  }
+
+  private PreparedQuery(Supplier<NetworkSnapshot> snapshots, Network network, ProbabilityExpression expr) {
+    this.snapshots = snapshots;
+    this.network = network;
+    this.expr = expr;
+    NetworkSnapshot snapshot = snapshots.get();
+    Map<String, String> evidence = expr.getEvidenceStates();
+    for (String id : expr.getHypothesisStates().keySet()) {
+      checkArgument(snapshot.containsVar(id), "A variable with an id of '" + id + "' has not been defined for this network");
+    }
+    for (String id : evidence.keySet()) {
+      checkArgument(snapshot.containsVar(id), "A variable with an id of '" + id + "' has not been defined for this network");
+    }
+    this.evidenceIds = ImmutableList.copyOf(evidence.keySet());
+    ImmutableList.Builder<List<String>> evidenceStates = ImmutableList.builder();
+    for (String id : evidenceIds) {
+      evidenceStates.add(snapshot.getStates(snapshot.indexOf(id)));
+    }
+    this.evidenceStates = evidenceStates.build();
+    this.defaultEvidence = new int[evidenceIds.size()];
+    for (int i = 0; i < evidenceIds.size(); i++) {
+      defaultEvidence[i] = evidenceState(i, evidence.get(evidenceIds.get(i)));
+    }
+    List<String> queryIds = Lists.newArrayList();
+    List<Integer> queryStates = Lists.newArrayList();
+    List<Integer> repeatedPositions = Lists.newArrayList();
+    List<Integer> repeatedStates = Lists.newArrayList();
+    for (Entry<String, String> entry : expr.getHypothesisStates().entrySet()) {
+      int position = evidenceIds.indexOf(entry.getKey());
+      if (position >= 0) {
+        repeatedPositions.add(position);
+        repeatedStates.add(evidenceState(position, entry.getValue()));
+      } else {
+        queryIds.add(entry.getKey());
+        queryStates.add(snapshot.stateIndex(snapshot.indexOf(entry.getKey()), entry.getValue()));
+      }
+    }
+    this.queryIds = ImmutableList.copyOf(queryIds);
+    this.queryStates = Ints.toArray(queryStates);
+    this.repeatedPositions = Ints.toArray(repeatedPositions);
+    this.repeatedStates = Ints.toArray(repeatedStates);
+  }
+
+  public ProbabilityExpression getExpression() {
+    return expr;
+  }
+
+  public List<String> getEvidenceIds() {
+    return evidenceIds;
+  }
+
+  // Runs the query with the evidence values it was prepared with
+  public double execute() {
+    return execute(defaultEvidence);
+  }
+
+  // Runs the query with new values for the observed variables, given in the order of getEvidenceIds()
+  public double execute(boolean... evidenceValues) {
+    requireNonNull(evidenceValues, "evidenceValues cannot be null");
+    checkArgument(evidenceValues.length == evidenceIds.size(),
+        "Expected " + evidenceIds.size() + " evidence values but received " + evidenceValues.length);
+    int[] evidenceStates = new int[evidenceValues.length];
+    for (int i = 0; i < evidenceValues.length; i++) {
+      evidenceStates[i] = evidenceState(i, String.valueOf(evidenceValues[i]));
+    }
+    return execute(evidenceStates);
+  }
+
+  // Runs the query with new states for the observed variables, given in the order of getEvidenceIds()
+  public double execute(String... evidenceValues) {
+    requireNonNull(evidenceValues, "evidenceValues cannot be null");
+    checkArgument(evidenceValues.length == evidenceIds.size(),
+        "Expected " + evidenceIds.size() + " evidence values but received " + evidenceValues.length);
+    int[] evidenceStates = new int[evidenceValues.length];
+    for (int i = 0; i < evidenceValues.length; i++) {
+      evidenceStates[i] = evidenceState(i, evidenceValues[i]);
+    }
+    return execute(evidenceStates);
+  }
+
+  // Runs the query with new values for the observed variables, which must be exactly those of getEvidenceIds()
+  public double execute(Map<String, Boolean> evidence) {
+    requireNonNull(evidence, "evidence cannot be null");
+    checkArgument(evidence.size() == evidenceIds.size() && evidence.keySet().containsAll(evidenceIds),
+        "The evidence must assign a value to each of " + evidenceIds);
+    int[] evidenceStates = new int[evidenceIds.size()];
+    for (int i = 0; i < evidenceIds.size(); i++) {
+      evidenceStates[i] = evidenceState(i, String.valueOf(evidence.get(evidenceIds.get(i))));
+    }
+    return execute(evidenceStates);
+  }
+
+  @Override
+  public String toString() {
+    return "PreparedQuery [expr=" + expr + "]";
+  }
+
+  private double execute(int[] evidenceStates) {
+    for (int i = 0; i < repeatedPositions.length; i++) {
+      if (evidenceStates[repeatedPositions[i]] != repeatedStates[i]) {
+        return 0.0;
+      }
+    }
+    if (queryIds.isEmpty()) {
+      return 1.0;
+    }
+    if (network != null) {
+      return network.cached(toExpression(evidenceStates), () -> evaluate(evidenceStates));
+    }
+    return evaluate(evidenceStates);
+  }
+
+  private double evaluate(int[] evidenceStates) {
+    NetworkSnapshot snapshot = snapshots.get();
+    if (snapshot.getNumericMode() == NumericMode.DECIMAL
+        || snapshot.getInferenceAlgorithm() != InferenceAlgorithm.VARIABLE_ELIMINATION) {
+      return snapshot.query(toExpression(evidenceStates));
+    }
+    EliminationPlan plan = getPlan(snapshot);
+    Factor result = plan.execute(evidenceStates);
+    if (result.hasZeroMass()) {
+      throw new IllegalArgumentException("The evidence specified in " + toExpression(evidenceStates) + " has a probability of zero");
+    }
+    return result.normalizedValue(plan.getQueryVariables(), queryStates);
+  }
+
+  private EliminationPlan getPlan(NetworkSnapshot snapshot) {
+    CompiledPlan current = compiled;
+    if (current == null || current.snapshot != snapshot) {
+      snapshot.checkComplete();
+      int[] queryVars = new int[queryIds.size()];
+      for (int i = 0; i < queryVars.length; i++) {
+        queryVars[i] = snapshot.indexOf(queryIds.get(i));
+      }
+      int[] evidenceVars = new int[evidenceIds.size()];
+      for (int i = 0; i < evidenceVars.length; i++) {
+        evidenceVars[i] = snapshot.indexOf(evidenceIds.get(i));
+      }
+      current = new CompiledPlan(snapshot, EliminationPlan.compile(snapshot, queryVars, evidenceVars, Heuristic.MIN_FILL));
+      compiled = current;
+    }
+    return current.plan;
+  }
+
+  private ProbabilityExpression toExpression(int[] evidenceStates) {
+    ProbabilityExpression.Builder builder = ProbabilityExpression.builder();
+    for (Entry<String, String> entry : expr.getHypothesisStates().entrySet()) {
+      builder.withHypothesis(entry.getKey(), entry.getValue());
+    }
+    for (int i = 0; i < evidenceIds.size(); i++) {
+      builder.withEvidence(evidenceIds.get(i), this.evidenceStates.get(i).get(evidenceStates[i]));
+    }
+    return builder.build();
+  }
+
+  private int evidenceState(int position, String state) {
+    requireNonNull(state, "state cannot be null");
+    int index = evidenceStates.get(position).indexOf(state);
+    checkArgument(index >= 0, "'" + state + "' is not a state of the variable with an id of '" + evidenceIds.get(position) + "'");
+    return index;
+  }
+
+  private static class CompiledPlan {
+    private final NetworkSnapshot snapshot;
+    private final EliminationPlan plan;
+
+    private CompiledPlan(NetworkSnapshot snapshot, EliminationPlan plan) {
+      this.snapshot = snapshot;
+      this.plan = plan;
+    }
+  }
+
+}
@@ -32,13 +32,13 @@ public class ProbabilityExpressionFilter {
   }
   
   public boolean filter (ProbabilityExpression expr) {
-    for (Entry<String,Boolean> entry : expr.getHypothesesMap().entrySet()) {
-      if (this.hypotheses.containsKey(entry.getKey()) && this.hypotheses.get(entry.getKey()) != entry.getValue()) {
+    for (Entry<String,String> entry : expr.getHypothesisStates().entrySet()) {
+      if (this.hypotheses.containsKey(entry.getKey()) && !String.valueOf(this.hypotheses.get(entry.getKey())).equals(entry.getValue())) {
         return false;
       }
     }
-    for (Entry<String,Boolean> entry : expr.getEvidenceMap().entrySet()) {
-      if (this.hypotheses.containsKey(entry.getKey()) && this.hypotheses.get(entry.getKey()) != entry.getValue()) {
+    for (Entry<String,String> entry : expr.getEvidenceStates().entrySet()) {
+      if (this.hypotheses.containsKey(entry.getKey()) && !String.valueOf(this.hypotheses.get(entry.getKey())).equals(entry.getValue())) {
         return false;
       }
     }
@@ -0,0 +1,40 @@
+package org.devoware.bayesian.prototype;
+
+// The outcome of answering a query by loopy belief propagation
+public class PropagationResult {
+
+  private final double value;
+  private final int iterations;
+  private final boolean converged;
+
+  static PropagationResult create(double value, int iterations, boolean converged) {
+    return new PropagationResult(value, iterations, converged);
+  }
+
+  private PropagationResult(double value, int iterations, boolean converged) {
+    this.value = value;
+    this.iterations = iterations;
+    this.converged = converged;
+  }
+
+  public double getValue() {
+    return value;
+  }
+
+  // The iterations run, summed over the propagations of a conjunction of hypotheses
+  public int getIterations() {
+    return iterations;
+  }
+
+  // False when any propagation reached the iteration limit before its messages settled
+  public boolean isConverged() {
+    return converged;
+  }
+
+  @Override
+  public String toString() {
+    return getClass().getSimpleName() + " [value=" + value + ", iterations=" + iterations + ", converged="
+        + converged + "]";
+  }
+
+}
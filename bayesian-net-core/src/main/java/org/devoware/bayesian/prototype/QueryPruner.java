@@ -0,0 +1,177 @@
+package org.devoware.bayesian.prototype;
+
+import static java.util.Objects.requireNonNull;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Set;
+
+import com.google.common.collect.Sets;
+
+// Finds the variables whose CPTs are needed to answer a query using the Bayes-Ball algorithm
+// (Shachter, 1998). Barren nodes and nodes d-separated from the query given the evidence are
+// never marked, so their CPTs can be dropped without changing the conditional probability.
+class QueryPruner {
+
+  private final Topology topology;
+  private final boolean[] observed;
+  private final boolean[] top;
+  private final boolean[] bottom;
+  // Pending visits, encoded as var * 2 + 1 when the ball arrives from a child
+  private int[] schedule = new int[16];
+  private int head;
+  private int tail;
+
+  static Set<RandomVariable> requisiteVariables(Network network, Collection<String> query,
+      Collection<String> evidence) {
+    requireNonNull(network, "network cannot be null");
+    requireNonNull(query, "query cannot be null");
+    requireNonNull(evidence, "evidence cannot be null");
+    NetworkSnapshot snapshot = network.snapshot();
+    Set<RandomVariable> requisite = Sets.newLinkedHashSet();
+    for (int var : requisiteVariables(snapshot, toIndices(snapshot, query), toIndices(snapshot, evidence))) {
+      requisite.add(network.getVariable(snapshot.getId(var)));
+    }
+    return requisite;
+  }
+
+  // Returns the requisite variables in network order
+  static int[] requisiteVariables(NetworkSnapshot snapshot, int[] query, int[] evidence) {
+    requireNonNull(snapshot, "snapshot cannot be null");
+    requireNonNull(query, "query cannot be null");
+    requireNonNull(evidence, "evidence cannot be null");
+    QueryPruner pruner = new QueryPruner(snapshot, evidence);
+    for (int var : query) {
+      if (!pruner.observed[var]) {
+        pruner.visit(var, true);
+      }
+    }
+    pruner.run();
+    int count = 0;
+    for (boolean marked : pruner.top) {
+      if (marked) {
+        count++;
+      }
+    }
+    int[] requisite = new int[count];
+    int i = 0;
+    for (int var = 0; var < pruner.top.length; var++) {
+      if (pruner.top[var]) {
+        requisite[i++] = var;
+      }
+    }
+    return requisite;
+  }
+
+  // Returns whether some observed variable is not requisite. The requisite CPTs, reduced by the
+  // evidence, only sum to the probability of the evidence when every observed variable is among
+  // them; otherwise impossible evidence can be pruned with its CPT, and whether the evidence is
+  // possible has to be found from its ancestors instead.
+  static boolean dropsEvidence(int[] requisite, int[] evidence) {
+    for (int var : evidence) {
+      if (Arrays.binarySearch(requisite, var) < 0) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  // Returns the given variables and their ancestors in network order, whose CPTs are all that the
+  // probability of observing the given variables depends on
+  static int[] ancestors(NetworkSnapshot snapshot, int[] vars) {
+    requireNonNull(snapshot, "snapshot cannot be null");
+    requireNonNull(vars, "vars cannot be null");
+    Topology topology = snapshot.getTopology();
+    boolean[] marked = new boolean[snapshot.size()];
+    int[] pending = new int[snapshot.size()];
+    int count = 0;
+    for (int var : vars) {
+      if (!marked[var]) {
+        marked[var] = true;
+        pending[count++] = var;
+      }
+    }
+    for (int i = 0; i < count; i++) {
+      for (int p = 0; p < topology.getParentCount(pending[i]); p++) {
+        int parent = topology.getParent(pending[i], p);
+        if (!marked[parent]) {
+          marked[parent] = true;
+          pending[count++] = parent;
+        }
+      }
+    }
+    Arrays.sort(pending, 0, count);
+    return Arrays.copyOf(pending, count);
+  }
+
+  private QueryPruner(NetworkSnapshot snapshot, int[] evidence) {
+    this.topology = snapshot.getTopology();
+    this.observed = new boolean[snapshot.size()];
+    this.top = new boolean[snapshot.size()];
+    this.bottom = new boolean[snapshot.size()];
+    for (int var : evidence) {
+      observed[var] = true;
+    }
+  }
+
+  private void run() {
+    while (head < tail) {
+      int visit = schedule[head++];
+      int var = visit >> 1;
+      boolean fromChild = (visit & 1) != 0;
+      if (fromChild && !observed[var]) {
+        if (!top[var]) {
+          top[var] = true;
+          scheduleParents(var);
+        }
+        if (!bottom[var]) {
+          bottom[var] = true;
+          scheduleChildren(var);
+        }
+      } else if (!fromChild) {
+        if (observed[var]) {
+          if (!top[var]) {
+            top[var] = true;
+            scheduleParents(var);
+          }
+        } else if (!bottom[var]) {
+          bottom[var] = true;
+          scheduleChildren(var);
+        }
+      }
+    }
+  }
+
+  private void scheduleParents(int var) {
+    for (int i = 0; i < topology.getParentCount(var); i++) {
+      visit(topology.getParent(var, i), true);
+    }
+  }
+
+  private void scheduleChildren(int var) {
+    for (int i = 0; i < topology.getChildCount(var); i++) {
+      visit(topology.getChild(var, i), false);
+    }
+  }
+
+  private void visit(int var, boolean fromChild) {
+    if (tail == schedule.length) {
+      int[] grown = new int[schedule.length * 2];
+      System.arraycopy(schedule, head, grown, 0, tail - head);
+      tail -= head;
+      head = 0;
+      schedule = grown;
+    }
+    schedule[tail++] = var * 2 + (fromChild ? 1 : 0);
+  }
+
+  private static int[] toIndices(NetworkSnapshot snapshot, Collection<String> ids) {
+    int[] result = new int[ids.size()];
+    int i = 0;
+    for (String id : ids) {
+      result[i++] = snapshot.indexOf(id);
+    }
+    return result;
+  }
+
+}
@@ -1,25 +1,35 @@
 package org.devoware.bayesian.prototype;
 
+import static com.google.common.base.Preconditions.checkState;
 import static java.util.Objects.requireNonNull;
 
-import java.util.Map.Entry;
+import java.util.List;
 import java.util.Set;
 
+import org.devoware.bayesian.prototype.expr.ProbabilityExpression;
+
+import com.google.common.collect.ImmutableList;
 import com.google.common.eventbus.Subscribe;
 
 public class RandomVariable {
 
   private final Network network;
+  private final int index;
   private final String id;
   private final String label;
+  // The names of the variable's states; state i of a variable is addressed by index i throughout
+  private final List<String> states;
   private final ConditionalProbabilityTable cpt;
 
-  RandomVariable(Network network, String id, String label) {
+  RandomVariable(Network network, int index, String id, String label, List<String> states) {
     requireNonNull(id, "id cannot be null");
     requireNonNull(label, "label cannot be null");
+    requireNonNull(states, "states cannot be null");
     this.network = network;
+    this.index = index;
     this.id = id;
     this.label = label;
+    this.states = ImmutableList.copyOf(states);
     this.cpt = new ConditionalProbabilityTable(network, this);
   }
   
@@ -31,17 +41,30 @@ public class RandomVariable {
     return label;
   }
   
+  public List<String> getStates() {
+    return states;
+  }
+
+  public int getCardinality() {
+    return states.size();
+  }
+
+  // True for a variable whose states are false and true, written ~X and X in expressions
+  public boolean isBoolean() {
+    return states.equals(Network.BOOLEAN_STATES);
+  }
+
   public void addChild(RandomVariable node) {
     requireNonNull(node, "node cannot be null");
     network.addEdge(this, node);
   }
 
   public boolean hasChildren() {
-    return !getChildren().isEmpty();
+    return !network.getChildren(this).isEmpty();
   }
   
   public boolean hasParents() {
-    return !getParents().isEmpty();
+    return !network.getParents(this).isEmpty();
   }
   
   public Set<RandomVariable> getChildren() {
@@ -52,29 +75,28 @@ public class RandomVariable {
     return network.getParents(this);
   }
   
+  // The position of the variable in the network's creation order, used to address it in the topology
+  int getIndex() {
+    return index;
+  }
+
+  // Returns the index of the named state, or -1 when the variable has no such state
+  int indexOfState(String state) {
+    return states.indexOf(state);
+  }
+
   public ConditionalProbabilityTable getCpt() {
     return cpt;
   }
   
   public double getProbability() {
-    StringBuilder buf = new StringBuilder("P(").append(id);
-    if (network.hasEvidence()) {
-      buf.append("|");
-      boolean firstLoop = true;
-      for (Entry<String,Boolean> entry : network.getEvidence().entrySet()) {
-        if (firstLoop) {
-          firstLoop = false;
-        } else {
-          buf.append(",");
-        }
-        if (entry.getValue() == false) {
-          buf.append("~");
-        }
-        buf.append(entry.getKey());
-      }
-    }
-    buf.append(")");
-    return network.query(buf.toString());
+    checkState(isBoolean(), "Variable " + id + " is not boolean; ask for the probability of one of its states");
+    return network.getProbability(this, ProbabilityExpression.TRUE);
+  }
+
+  public double getProbability(String state) {
+    requireNonNull(state, "state cannot be null");
+    return network.getProbability(this, state);
   }
   
   @Override
@@ -0,0 +1,118 @@
+package org.devoware.bayesian.prototype;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Map.Entry;
+
+import org.devoware.bayesian.prototype.expr.ProbabilityExpression;
+
+// A query prepared for the sampling engines: the variables requisite for the query in topological
+// order, the evidence states by variable index (-1 when unobserved) and the hypotheses to count
+class SampledQuery {
+
+  private final NetworkSnapshot snapshot;
+  private final int[] order;
+  private final int[] evidenceStates;
+  private final int[] hypotheses;
+  private final int[] hypothesisStates;
+
+  static SampledQuery create(NetworkSnapshot snapshot, ProbabilityExpression expr) {
+    return new SampledQuery(snapshot, expr);
+  }
+
+  private SampledQuery(NetworkSnapshot snapshot, ProbabilityExpression expr) {
+    this.snapshot = snapshot;
+    this.evidenceStates = new int[snapshot.size()];
+    Arrays.fill(evidenceStates, -1);
+    Map<String, String> evidence = expr.getEvidenceStates();
+    int[] evidenceVars = new int[evidence.size()];
+    int i = 0;
+    for (Entry<String, String> entry : evidence.entrySet()) {
+      int var = snapshot.indexOf(entry.getKey());
+      evidenceVars[i++] = var;
+      evidenceStates[var] = snapshot.stateIndex(var, entry.getValue());
+    }
+    Map<String, String> hypotheses = expr.getHypothesisStates();
+    this.hypotheses = new int[hypotheses.size()];
+    this.hypothesisStates = new int[hypotheses.size()];
+    i = 0;
+    for (Entry<String, String> entry : hypotheses.entrySet()) {
+      this.hypotheses[i] = snapshot.indexOf(entry.getKey());
+      this.hypothesisStates[i] = snapshot.stateIndex(this.hypotheses[i], entry.getValue());
+      i++;
+    }
+    boolean[] requisite = new boolean[snapshot.size()];
+    for (int var : QueryPruner.requisiteVariables(snapshot, this.hypotheses, evidenceVars)) {
+      requisite[var] = true;
+    }
+    int[] order = new int[snapshot.size()];
+    int count = 0;
+    for (int var : snapshot.getTopology().topologicalOrder()) {
+      if (requisite[var]) {
+        order[count++] = var;
+      }
+    }
+    this.order = Arrays.copyOf(order, count);
+  }
+
+  NetworkSnapshot getSnapshot() {
+    return snapshot;
+  }
+
+  // The requisite variables, each after its parents
+  int[] getOrder() {
+    return order;
+  }
+
+  boolean isObserved(int var) {
+    return evidenceStates[var] >= 0;
+  }
+
+  int getEvidenceState(int var) {
+    return evidenceStates[var];
+  }
+
+  // Returns a fresh assignment of every variable with the evidence states filled in
+  int[] newAssignment() {
+    return evidenceStates.clone();
+  }
+
+  // The probability the variable's CPT gives its state in the assignment, given its parents' states
+  double probability(int var, int[] states) {
+    return snapshot.getProbability(var, row(var, states), states[var]);
+  }
+
+  // The CPT row of the variable's parents' states in the assignment, first parent varying fastest
+  int row(int var, int[] states) {
+    int row = 0;
+    int[] parents = snapshot.getParents(var);
+    for (int j = parents.length - 1; j >= 0; j--) {
+      row = row * snapshot.getCardinality(parents[j]) + states[parents[j]];
+    }
+    return row;
+  }
+
+  // Draws a state for the variable from its CPT row given its parents' states in the assignment
+  int sample(int var, int[] states, double u) {
+    int row = row(var, states);
+    int last = snapshot.getCardinality(var) - 1;
+    double cumulative = 0.0;
+    for (int state = 0; state < last; state++) {
+      cumulative += snapshot.getProbability(var, row, state);
+      if (u < cumulative) {
+        return state;
+      }
+    }
+    return last;
+  }
+
+  boolean matchesHypotheses(int[] states) {
+    for (int h = 0; h < hypotheses.length; h++) {
+      if (states[hypotheses[h]] != hypothesisStates[h]) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+}
@@ -0,0 +1,278 @@
+package org.devoware.bayesian.prototype;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkElementIndex;
+import static com.google.common.base.Preconditions.checkState;
+
+import java.util.Arrays;
+
+// The edges of a network over the variable indices 0..n-1, held in compressed sparse row form:
+// the parents of v are parents[parentOffsets[v]] up to parents[parentOffsets[v + 1] - 1], in the
+// order their edges were added, and likewise for the children. Instances are immutable, so one can
+// be shared with any number of snapshots. A network that grows one edge at a time collects its
+// edges in a Builder, which lays out the arrays once when the topology is next asked for.
+class Topology {
+
+  static final Topology EMPTY = new Topology(new int[1], new int[0], new int[1], new int[0]);
+
+  private final int[] parentOffsets;
+  private final int[] parents;
+  private final int[] childOffsets;
+  private final int[] children;
+
+  // Builds the topology of n variables from parallel arrays of edge endpoints in one pass
+  static Topology create(int n, int[] edgeParents, int[] edgeChildren) {
+    checkArgument(n >= 0, "n cannot be negative");
+    checkArgument(edgeParents.length == edgeChildren.length, "every edge must have a parent and a child");
+    int[] parentOffsets = new int[n + 1];
+    int[] childOffsets = new int[n + 1];
+    for (int e = 0; e < edgeParents.length; e++) {
+      checkElementIndex(edgeParents[e], n, "parent");
+      checkElementIndex(edgeChildren[e], n, "child");
+      parentOffsets[edgeChildren[e] + 1]++;
+      childOffsets[edgeParents[e] + 1]++;
+    }
+    for (int v = 0; v < n; v++) {
+      parentOffsets[v + 1] += parentOffsets[v];
+      childOffsets[v + 1] += childOffsets[v];
+    }
+    int[] parents = new int[edgeParents.length];
+    int[] children = new int[edgeParents.length];
+    int[] parentFill = Arrays.copyOf(parentOffsets, n);
+    int[] childFill = Arrays.copyOf(childOffsets, n);
+    for (int e = 0; e < edgeParents.length; e++) {
+      parents[parentFill[edgeChildren[e]]++] = edgeParents[e];
+      children[childFill[edgeParents[e]]++] = edgeChildren[e];
+    }
+    return new Topology(parentOffsets, parents, childOffsets, children);
+  }
+
+  static Builder builder() {
+    return new Builder();
+  }
+
+  // Starts a builder from the edges of an existing topology
+  static Builder builder(Topology topology) {
+    return new Builder(topology);
+  }
+
+  private Topology(int[] parentOffsets, int[] parents, int[] childOffsets, int[] children) {
+    this.parentOffsets = parentOffsets;
+    this.parents = parents;
+    this.childOffsets = childOffsets;
+    this.children = children;
+  }
+
+  int size() {
+    return parentOffsets.length - 1;
+  }
+
+  int getEdgeCount() {
+    return parents.length;
+  }
+
+  int getParentCount(int var) {
+    return parentOffsets[var + 1] - parentOffsets[var];
+  }
+
+  int getParent(int var, int i) {
+    return parents[parentOffsets[var] + i];
+  }
+
+  int getChildCount(int var) {
+    return childOffsets[var + 1] - childOffsets[var];
+  }
+
+  int getChild(int var, int i) {
+    return children[childOffsets[var] + i];
+  }
+
+  boolean hasEdge(int parent, int child) {
+    for (int i = parentOffsets[child]; i < parentOffsets[child + 1]; i++) {
+      if (parents[i] == parent) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  // Orders the variables so that every parent precedes its children, breaking ties by index
+  int[] topologicalOrder() {
+    int n = size();
+    int[] pending = new int[n];
+    int[] order = new int[n];
+    int tail = 0;
+    for (int v = 0; v < n; v++) {
+      pending[v] = getParentCount(v);
+      if (pending[v] == 0) {
+        order[tail++] = v;
+      }
+    }
+    for (int head = 0; head < tail; head++) {
+      int var = order[head];
+      for (int i = childOffsets[var]; i < childOffsets[var + 1]; i++) {
+        if (--pending[children[i]] == 0) {
+          order[tail++] = children[i];
+        }
+      }
+    }
+    checkState(tail == n, "The topology contains a cycle");
+    return order;
+  }
+
+  // Collects the edges of a network that grows one variable or edge at a time. Each variable's
+  // parents and children are kept in rows of their own that only ever grow, so adding an edge costs
+  // amortized constant time. Entries once written never change: a row that outgrows its array moves
+  // to a larger copy, and the old array keeps its entries, so a view of the first count entries of
+  // a row stays valid as edges are added. Not thread-safe.
+  static class Builder {
+
+    private static final int[] EMPTY_ROW = new int[0];
+
+    private int size;
+    private int edgeCount;
+    private int[][] parentRows = new int[8][];
+    private int[] parentCounts = new int[8];
+    private int[][] childRows = new int[8][];
+    private int[] childCounts = new int[8];
+    // The topology of the edges added so far, or null until it is next asked for
+    private Topology built = EMPTY;
+
+    private Builder() {}
+
+    private Builder(Topology topology) {
+      for (int v = 0; v < topology.size(); v++) {
+        withVariable();
+      }
+      for (int v = 0; v < topology.size(); v++) {
+        parentRows[v] = Arrays.copyOfRange(topology.parents, topology.parentOffsets[v], topology.parentOffsets[v + 1]);
+        parentCounts[v] = parentRows[v].length;
+        childRows[v] = Arrays.copyOfRange(topology.children, topology.childOffsets[v], topology.childOffsets[v + 1]);
+        childCounts[v] = childRows[v].length;
+      }
+      this.edgeCount = topology.getEdgeCount();
+      this.built = topology;
+    }
+
+    Builder withVariable() {
+      if (size == parentRows.length) {
+        parentRows = Arrays.copyOf(parentRows, size * 2);
+        parentCounts = Arrays.copyOf(parentCounts, size * 2);
+        childRows = Arrays.copyOf(childRows, size * 2);
+        childCounts = Arrays.copyOf(childCounts, size * 2);
+      }
+      parentRows[size] = EMPTY_ROW;
+      childRows[size] = EMPTY_ROW;
+      size++;
+      built = null;
+      return this;
+    }
+
+    Builder withEdge(int parent, int child) {
+      checkElementIndex(parent, size, "parent");
+      checkElementIndex(child, size, "child");
+      parentRows[child] = append(parentRows[child], parentCounts[child]++, parent);
+      childRows[parent] = append(childRows[parent], childCounts[parent]++, child);
+      edgeCount++;
+      built = null;
+      return this;
+    }
+
+    int size() {
+      return size;
+    }
+
+    int getParentCount(int var) {
+      return parentCounts[var];
+    }
+
+    // Returns the array whose first getParentCount(var) entries are the parents of the variable;
+    // callers must not modify it
+    int[] getParentRow(int var) {
+      return parentRows[var];
+    }
+
+    int getChildCount(int var) {
+      return childCounts[var];
+    }
+
+    int[] getChildRow(int var) {
+      return childRows[var];
+    }
+
+    boolean hasEdge(int parent, int child) {
+      for (int i = 0; i < parentCounts[child]; i++) {
+        if (parentRows[child][i] == parent) {
+          return true;
+        }
+      }
+      return false;
+    }
+
+    // Returns true when a directed path leads from one variable to the other
+    boolean reaches(int from, int to) {
+      if (from == to) {
+        return true;
+      }
+      boolean[] visited = new boolean[size];
+      int[] stack = new int[size];
+      int top = 0;
+      stack[top++] = from;
+      visited[from] = true;
+      while (top > 0) {
+        int var = stack[--top];
+        for (int i = 0; i < childCounts[var]; i++) {
+          int child = childRows[var][i];
+          if (child == to) {
+            return true;
+          }
+          if (!visited[child]) {
+            visited[child] = true;
+            stack[top++] = child;
+          }
+        }
+      }
+      return false;
+    }
+
+    // Lays out the edges added so far; the result is kept until the next variable or edge is added
+    Topology build() {
+      Topology topology = built;
+      if (topology == null) {
+        topology = new Topology(offsets(parentCounts), flatten(parentRows, parentCounts),
+            offsets(childCounts), flatten(childRows, childCounts));
+        built = topology;
+      }
+      return topology;
+    }
+
+    private int[] offsets(int[] counts) {
+      int[] offsets = new int[size + 1];
+      for (int v = 0; v < size; v++) {
+        offsets[v + 1] = offsets[v] + counts[v];
+      }
+      return offsets;
+    }
+
+    private int[] flatten(int[][] rows, int[] counts) {
+      int[] flat = new int[edgeCount];
+      int at = 0;
+      for (int v = 0; v < size; v++) {
+        System.arraycopy(rows[v], 0, flat, at, counts[v]);
+        at += counts[v];
+      }
+      return flat;
+    }
+
+    // Writes the value at the given position of the row, moving the row to a larger copy when full
+    private static int[] append(int[] row, int at, int value) {
+      if (at == row.length) {
+        row = Arrays.copyOf(row, Math.max(4, row.length * 2));
+      }
+      row[at] = value;
+      return row;
+    }
+
+  }
+
+}
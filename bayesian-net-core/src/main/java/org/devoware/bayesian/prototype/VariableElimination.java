@@ -0,0 +1,82 @@
+package org.devoware.bayesian.prototype;
+
+import static java.util.Objects.requireNonNull;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+
+import org.devoware.bayesian.prototype.EliminationOrder.Heuristic;
+import org.devoware.bayesian.prototype.expr.ProbabilityExpression;
+
+import com.google.common.collect.Lists;
+import com.google.common.primitives.Ints;
+
+class VariableElimination implements InferenceEngine {
+
+  private final NetworkSnapshot snapshot;
+  private final Heuristic heuristic;
+
+  static VariableElimination create(Network network) {
+    return create(network, Heuristic.MIN_FILL);
+  }
+
+  static VariableElimination create(Network network, Heuristic heuristic) {
+    requireNonNull(network, "network cannot be null");
+    return create(network.snapshot(), heuristic);
+  }
+
+  static VariableElimination create(NetworkSnapshot snapshot) {
+    return create(snapshot, Heuristic.MIN_FILL);
+  }
+
+  static VariableElimination create(NetworkSnapshot snapshot, Heuristic heuristic) {
+    return new VariableElimination(snapshot, heuristic);
+  }
+
+  private VariableElimination(NetworkSnapshot snapshot, Heuristic heuristic) {
+    this.snapshot = requireNonNull(snapshot, "snapshot cannot be null");
+    this.heuristic = requireNonNull(heuristic, "heuristic cannot be null");
+  }
+
+  double query(String expression) {
+    return query(snapshot.parse(expression));
+  }
+
+  @Override
+  public double query(ProbabilityExpression expr) {
+    requireNonNull(expr, "expr cannot be null");
+    if (expr.hasTermDisagreemets()) {
+      return 0.0;
+    }
+    Map<String, String> evidence = expr.getEvidenceStates();
+    List<Integer> queryVars = Lists.newArrayList();
+    List<Integer> queryStates = Lists.newArrayList();
+    for (Entry<String, String> entry : expr.getHypothesisStates().entrySet()) {
+      // A hypothesis that repeats a piece of evidence is already known to hold
+      if (!evidence.containsKey(entry.getKey())) {
+        int var = snapshot.indexOf(entry.getKey());
+        queryVars.add(var);
+        queryStates.add(snapshot.stateIndex(var, entry.getValue()));
+      }
+    }
+    if (queryVars.isEmpty()) {
+      return 1.0;
+    }
+    int[] evidenceVars = new int[evidence.size()];
+    int[] evidenceStates = new int[evidence.size()];
+    int i = 0;
+    for (Entry<String, String> entry : evidence.entrySet()) {
+      evidenceVars[i] = snapshot.indexOf(entry.getKey());
+      evidenceStates[i] = snapshot.stateIndex(evidenceVars[i], entry.getValue());
+      i++;
+    }
+    EliminationPlan plan = EliminationPlan.compile(snapshot, Ints.toArray(queryVars), evidenceVars, heuristic);
+    Factor result = plan.execute(evidenceStates);
+    if (result.hasZeroMass()) {
+      throw new IllegalArgumentException("The evidence specified in " + expr + " has a probability of zero");
+    }
+    return result.normalizedValue(plan.getQueryVariables(), Ints.toArray(queryStates));
+  }
+
+}
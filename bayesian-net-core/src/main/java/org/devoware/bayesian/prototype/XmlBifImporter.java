@@ -0,0 +1,206 @@
+package org.devoware.bayesian.prototype;
+
+import static java.util.Objects.requireNonNull;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+import com.google.common.collect.Lists;
+
+// Loads networks from XMLBIF 0.3 files, reading them as a stream of parser events:
+//
+//   <VARIABLE TYPE="nature">
+//     <NAME>Rain</NAME> <OUTCOME>yes</OUTCOME> <OUTCOME>no</OUTCOME>
+//   </VARIABLE>
+//   <DEFINITION>
+//     <FOR>Rain</FOR> <GIVEN>Cloudy</GIVEN>
+//     <TABLE>0.8 0.2 0.2 0.8</TABLE>
+//   </DEFINITION>
+//
+// A table lists every entry with the variable's outcomes varying fastest and then the given
+// variables', last one fastest. Tables are parsed as their characters arrive rather than being
+// collected into strings. Document type declarations are not processed.
+public class XmlBifImporter {
+
+  private static final XMLInputFactory factory = createFactory();
+
+  private XmlBifImporter() {}
+
+  public static Network read(Path path) throws IOException {
+    requireNonNull(path, "path cannot be null");
+    try (InputStream in = Files.newInputStream(path)) {
+      return read(in);
+    }
+  }
+
+  public static Network read(InputStream in) throws IOException {
+    requireNonNull(in, "in cannot be null");
+    XMLStreamReader xml = null;
+    try {
+      xml = factory.createXMLStreamReader(in);
+      NetworkDefinition definition = new NetworkDefinition();
+      while (xml.hasNext()) {
+        if (xml.next() == XMLStreamConstants.START_ELEMENT) {
+          if (is(xml, "VARIABLE")) {
+            readVariable(xml, definition);
+          } else if (is(xml, "DEFINITION") || is(xml, "PROBABILITY")) {
+            readDefinition(xml, definition);
+          }
+        }
+      }
+      return definition.build();
+    } catch (XMLStreamException e) {
+      throw new IOException(e.getMessage(), e);
+    } finally {
+      if (xml != null) {
+        try {
+          xml.close();
+        } catch (XMLStreamException e) {
+          // The stream itself is closed by the caller
+        }
+      }
+    }
+  }
+
+  private static void readVariable(XMLStreamReader xml, NetworkDefinition definition) throws XMLStreamException, IOException {
+    String type = xml.getAttributeValue(null, "TYPE");
+    if (type != null && !type.equalsIgnoreCase("nature")) {
+      throw error(xml, "only chance variables are supported but found one of type " + type);
+    }
+    String id = null;
+    List<String> states = Lists.newArrayList();
+    while (xml.nextTag() == XMLStreamConstants.START_ELEMENT) {
+      if (is(xml, "NAME")) {
+        id = xml.getElementText().trim();
+      } else if (is(xml, "OUTCOME") || is(xml, "VALUE")) {
+        states.add(xml.getElementText().trim());
+      } else {
+        skipElement(xml);
+      }
+    }
+    if (id == null) {
+      throw error(xml, "a variable has no name");
+    }
+    if (!definition.addVariable(id, null, states)) {
+      throw error(xml, "the variable " + id + " is declared twice");
+    }
+  }
+
+  private static void readDefinition(XMLStreamReader xml, NetworkDefinition definition) throws XMLStreamException, IOException {
+    String id = null;
+    List<String> parents = Lists.newArrayList();
+    double[] table = null;
+    int size = 0;
+    while (xml.nextTag() == XMLStreamConstants.START_ELEMENT) {
+      if (is(xml, "FOR")) {
+        id = xml.getElementText().trim();
+      } else if (is(xml, "GIVEN")) {
+        parents.add(xml.getElementText().trim());
+      } else if (is(xml, "TABLE")) {
+        table = new double[16];
+        size = 0;
+        StringBuilder number = new StringBuilder();
+        for (int event = xml.next(); event != XMLStreamConstants.END_ELEMENT; event = xml.next()) {
+          if (event == XMLStreamConstants.START_ELEMENT) {
+            throw error(xml, "a table cannot contain other elements");
+          }
+          if (event != XMLStreamConstants.CHARACTERS && event != XMLStreamConstants.CDATA
+              && event != XMLStreamConstants.SPACE) {
+            continue;
+          }
+          // A number may be split between two runs of characters, so it is only complete once
+          // whitespace or the end of the table follows it
+          char[] text = xml.getTextCharacters();
+          for (int i = xml.getTextStart(), end = i + xml.getTextLength(); i < end; i++) {
+            if (Character.isWhitespace(text[i])) {
+              if (number.length() > 0) {
+                table = append(xml, table, size++, number);
+              }
+            } else {
+              number.append(text[i]);
+            }
+          }
+        }
+        if (number.length() > 0) {
+          table = append(xml, table, size++, number);
+        }
+      } else {
+        skipElement(xml);
+      }
+    }
+    if (id == null || table == null) {
+      throw error(xml, "a definition must name its variable and give a table");
+    }
+    List<String> states = states(xml, definition, id);
+    int[] parentCards = new int[parents.size()];
+    int expected = states.size();
+    for (int i = 0; i < parents.size(); i++) {
+      parentCards[i] = states(xml, definition, parents.get(i)).size();
+      expected *= parentCards[i];
+    }
+    if (size != expected) {
+      throw error(xml, "the table for " + id + " should have " + expected + " entries but has " + size);
+    }
+    table = Arrays.copyOf(table, size);
+    if (!definition.setDistribution(id, parents, NetworkDefinition.toCptLayout(table, states.size(), parentCards, true))) {
+      throw error(xml, "the table for " + id + " is given twice");
+    }
+  }
+
+  private static double[] append(XMLStreamReader xml, double[] table, int index, StringBuilder number) throws IOException {
+    if (index == table.length) {
+      table = Arrays.copyOf(table, 2 * table.length);
+    }
+    try {
+      table[index] = Double.parseDouble(number.toString());
+    } catch (NumberFormatException e) {
+      throw error(xml, "expected a number but found '" + number + "'");
+    }
+    number.setLength(0);
+    return table;
+  }
+
+  private static void skipElement(XMLStreamReader xml) throws XMLStreamException {
+    for (int depth = 1; depth > 0;) {
+      int event = xml.next();
+      if (event == XMLStreamConstants.START_ELEMENT) {
+        depth++;
+      } else if (event == XMLStreamConstants.END_ELEMENT) {
+        depth--;
+      }
+    }
+  }
+
+  private static List<String> states(XMLStreamReader xml, NetworkDefinition definition, String id) throws IOException {
+    List<String> states = definition.getStates(id);
+    if (states == null) {
+      throw error(xml, "the variable " + id + " is not declared");
+    }
+    return states;
+  }
+
+  private static boolean is(XMLStreamReader xml, String name) {
+    return xml.getLocalName().equalsIgnoreCase(name);
+  }
+
+  private static IOException error(XMLStreamReader xml, String message) {
+    return new IOException("Line " + xml.getLocation().getLineNumber() + ": " + message);
+  }
+
+  private static XMLInputFactory createFactory() {
+    XMLInputFactory factory = XMLInputFactory.newFactory();
+    factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+    factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+    return factory;
+  }
+
+}
@@ -3,98 +3,118 @@ package org.devoware.bayesian.prototype.expr;
 import static java.util.Objects.requireNonNull;
 import static org.devoware.bayesian.prototype.expr.Token.Type.COMMA;
 import static org.devoware.bayesian.prototype.expr.Token.Type.EOF;
+import static org.devoware.bayesian.prototype.expr.Token.Type.EQUALS;
 import static org.devoware.bayesian.prototype.expr.Token.Type.LEFT_PAREN;
 import static org.devoware.bayesian.prototype.expr.Token.Type.NOT;
 import static org.devoware.bayesian.prototype.expr.Token.Type.PIPE;
 import static org.devoware.bayesian.prototype.expr.Token.Type.RIGHT_PAREN;
-
-import java.io.IOException;
-import java.io.Reader;
+import static org.devoware.bayesian.prototype.expr.Token.Type.WORD;
 
 import org.devoware.bayesian.prototype.expr.Token.Type;
 
+// Splits an expression into tokens in place: the current token is described by its type and its
+// start and end offsets in the input, so scanning allocates nothing. Positions are only worked
+// out when an error is reported.
 class LexicalAnalyzer {
 
-  private final Reader in;
-  private int peek = ' ';
-  private Position position;
+  private final CharSequence in;
+  private int offset;
+  private int start;
+  private int end;
+  private Type previous;
 
-  
-  public LexicalAnalyzer(Reader in) {
+  public LexicalAnalyzer(CharSequence in) {
     this.in = requireNonNull(in, "in cannot be null");
-    this.position = new Position();
   }
 
+  // Advances to the next token and returns its type
+  public Type nextToken() {
+    previous = scan();
+    return previous;
+  }
 
-  public Token nextToken() throws IOException {
-    // skip whitespace
-    for (;; readChar()) {
-      if (peek == ' ' || peek == '\t' || peek == '\n' || peek == '\r') {
-        if (peek == '\n' || peek == '\r') {
-          position.advanceLine();
-        }
-        continue;
-      } else {
-        break;
-      }
+  private Type scan() {
+    while (offset < in.length() && isWhitespace(in.charAt(offset))) {
+      offset++;
+    }
+    start = offset;
+    if (offset == in.length()) {
+      end = offset;
+      return EOF;
     }
-    
+
     // Identify tokens representing operators
-    switch (peek) {
+    char c = in.charAt(offset);
+    Type type = null;
+    switch (c) {
       case '(':
-        return getToken(LEFT_PAREN, position);
+        type = LEFT_PAREN;
+        break;
       case ')':
-        return getToken(RIGHT_PAREN, position);
+        type = RIGHT_PAREN;
+        break;
       case ',':
-        return getToken(COMMA, position);
+        type = COMMA;
+        break;
       case '|':
-        return getToken(PIPE, position);
+        type = PIPE;
+        break;
       case '~':
-        return getToken(NOT, position);
-      case -1:
-        return getToken(EOF, position);
+        type = NOT;
+        break;
+      case '=':
+        type = EQUALS;
+        break;
     }
-
-    // Identify tokens representing words
-    if (Character.isLetter(peek)) {
-      Position wordStart = Position.copyOf(position);
-      StringBuilder buf = new StringBuilder();
-      
-      do {
-        buf.append((char) peek);
-        readChar();
-      } while (Character.isLetterOrDigit(peek));
-      
-      return getStringToken(buf.toString(), wordStart);
+    if (type != null) {
+      end = ++offset;
+      return type;
     }
 
-    if (peek == -1) {
-      throw new LexicalAnalysisException("Unexpected end of string");
+    // Identify tokens representing words; only a state named after '=' may begin with a digit,
+    // as in Level=3, so variable ids still begin with a letter
+    if (Character.isLetter(c) || (previous == EQUALS && Character.isDigit(c))) {
+      do {
+        offset++;
+      } while (offset < in.length() && Character.isLetterOrDigit(in.charAt(offset)));
+      end = offset;
+      return WORD;
     }
-    throw new LexicalAnalysisException("Unexpected character '" + (char) peek + "' at " + position);
+    throw new LexicalAnalysisException("Unexpected character '" + c + "' at " + Position.of(in, offset));
   }
-  
-  public Position getPosition() {
-    return position;
+
+  public CharSequence getInput() {
+    return in;
   }
 
-  private void readChar () throws IOException {
-    peek = in.read();
-    position.advanceCharacter();
+  // The offset of the first character of the current token
+  public int getStart() {
+    return start;
   }
 
-  private Token getToken(Type type, Position position) {
-    return getToken(type, position, true);
+  // The offset just past the last character of the current token
+  public int getEnd() {
+    return end;
   }
-  
-  private Token getToken(Type type, Position position, boolean resetPeek) {
-    if (resetPeek) {
-      peek = ' ';
+
+  // Returns true if the current token is the given word, ignoring case
+  public boolean isWord(String word) {
+    if (end - start != word.length()) {
+      return false;
     }
-    return new Token(type, position);
+    for (int i = 0; i < word.length(); i++) {
+      if (Character.toLowerCase(in.charAt(start + i)) != Character.toLowerCase(word.charAt(i))) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  public Position getPosition() {
+    return Position.of(in, start);
   }
 
-  private Token getStringToken(String value, Position position) {
-    return new WordToken(value, position);
+  private static boolean isWhitespace(char c) {
+    return c == ' ' || c == '\t' || c == '\n' || c == '\r';
   }
 }
@@ -1,7 +1,9 @@
 package org.devoware.bayesian.prototype.expr;
 
+import static java.util.Objects.requireNonNull;
 import static org.devoware.bayesian.prototype.expr.Token.Type.COMMA;
 import static org.devoware.bayesian.prototype.expr.Token.Type.EOF;
+import static org.devoware.bayesian.prototype.expr.Token.Type.EQUALS;
 import static org.devoware.bayesian.prototype.expr.Token.Type.LEFT_PAREN;
 import static org.devoware.bayesian.prototype.expr.Token.Type.NOT;
 import static org.devoware.bayesian.prototype.expr.Token.Type.PIPE;
@@ -10,119 +12,166 @@ import static org.devoware.bayesian.prototype.expr.Token.Type.WORD;
 
 import java.io.IOException;
 import java.io.Reader;
-import java.io.StringReader;
+import java.util.Arrays;
+import java.util.function.Predicate;
 
 import org.devoware.bayesian.prototype.Network;
-import org.devoware.bayesian.prototype.expr.ProbabilityExpression.Builder;
 import org.devoware.bayesian.prototype.expr.Token.Type;
 
+import com.google.common.io.CharStreams;
+
 public class Parser {
 
-  private final Network network;
-  private LexicalAnalyzer lexer;
-  private Token token;
+  // Parsing state lives in a Session created per call, so a single parser can be shared by any
+  // number of threads
+  private final Predicate<String> definedVariables;
+  // Shared by every parse, so that repeated expressions reuse the same id and state strings
+  private final WordTable words = new WordTable(ProbabilityExpression.TRUE, ProbabilityExpression.FALSE);
 
   static Parser create() {
-    return new Parser(null);
+    return new Parser(id -> true);
   }
   
   public static Parser create(Network network) {
-    return new Parser(network);
+    requireNonNull(network, "network cannot be null");
+    return new Parser(network::containsVar);
+  }
+
+  public static Parser create(Predicate<String> definedVariables) {
+    requireNonNull(definedVariables, "definedVariables cannot be null");
+    return new Parser(definedVariables);
   }
   
-  private Parser(Network network) {
-    this.network = network;
+  private Parser(Predicate<String> definedVariables) {
+    this.definedVariables = definedVariables;
   }
   
-  public ProbabilityExpression parse(String expression) {
-    try (Reader in = new StringReader(expression)) {
-      return parse(in);
-    } catch (IOException e) {
-      // This should never happen, but if it does, throw an assertion error
-      throw new AssertionError("Unexpected exception", e);
-    }
+  public ProbabilityExpression parse(CharSequence expression) {
+    requireNonNull(expression, "expression cannot be null");
+    return new Session(new LexicalAnalyzer(expression)).parse();
   }
 
   public ProbabilityExpression parse(Reader in) throws IOException {
-    lexer = new LexicalAnalyzer(in);
-    nextToken();
-    ProbabilityExpression e = expression();
-    expect(EOF);
-    return e;
+    requireNonNull(in, "in cannot be null");
+    return parse(CharStreams.toString(in));
   }
-  
-  private ProbabilityExpression expression() throws IOException {
-    boolean pFound = false;
-    if (token.getType() == WORD) {
-      String value = ((WordToken) token).value();
-      if ("p".equalsIgnoreCase(value)) {
-        pFound = true;
-      }
+
+  private class Session {
+    private final LexicalAnalyzer lexer;
+    private Type token;
+    private String state;
+    // The terms parsed so far, hypotheses first
+    private String[] ids = new String[8];
+    private String[] states = new String[8];
+    private int count;
+    private int hypothesisCount;
+
+    private Session(LexicalAnalyzer lexer) {
+      this.lexer = lexer;
     }
-    if (!pFound) {
-      throw new SyntaxException("Syntax error at " + token.getPosition() + ": found " + token.getType() + " when expecting P");
+
+    private ProbabilityExpression parse() {
+      nextToken();
+      expression();
+      expect(EOF);
+      return new ProbabilityExpression(Arrays.copyOf(ids, count), Arrays.copyOf(states, count), hypothesisCount);
     }
-    nextToken();
-    expect(LEFT_PAREN);
-    nextToken();
-    Builder builder = ProbabilityExpression.builder();
-    hypotheses(builder);
-    if (token.getType() == PIPE) {
+
+    private void expression() {
+      if (token != WORD || !lexer.isWord("p")) {
+        throw new SyntaxException("Syntax error at " + lexer.getPosition() + ": found " + token + " when expecting P");
+      }
+      nextToken();
+      expect(LEFT_PAREN);
+      nextToken();
+      hypotheses();
+      hypothesisCount = count;
+      if (token == PIPE) {
+        nextToken();
+        evidence();
+      }
+      expect(RIGHT_PAREN);
       nextToken();
-      evidence(builder);
     }
-    expect(RIGHT_PAREN);
-    nextToken();
-    return builder.build();
-  }
   
-  private void hypotheses(Builder builder) throws IOException {
-    do {
-      if (token.getType() == COMMA) {
+    private void hypotheses() {
+      do {
+        if (token == COMMA) {
+          nextToken();
+        }
+        String id = term();
+        if (!definedVariables.test(id)) {
+          throw new SyntaxException("The referenced variable " + id + " is not defined");
+        }
+        add(id, 0);
+      } while (token == COMMA);
+    }
+  
+    private void evidence() {
+      do {
+        if (token == COMMA) {
+          nextToken();
+        }
+        String id = term();
+        if (!definedVariables.test(id)) {
+          throw new SyntaxException("The referenced node " + id + " is not defined");
+        }
+        add(id, hypothesisCount);
+      } while (token == COMMA);
+    }
+
+    // Parses X, ~X or X=state, returning the variable id and leaving its state in the state field
+    private String term() {
+      boolean negated = false;
+      if (token == NOT) {
+        negated = true;
         nextToken();
       }
-       boolean value = true;
-       if (token.getType() == NOT) {
-         value = false;
-         nextToken();
-       }
-       expect(WORD);
-       String id = ((WordToken) token).value();
-       if (network != null && !network.containsVar(id)) {
-         throw new SyntaxException("The referenced variable " + id + " is not defined");
-       }
-       builder.withHypothesis(id, value);
-       nextToken();
-    } while (token.getType() == COMMA);
-  }
-  
-  private void evidence(Builder builder) throws IOException {
-    do {
-      if (token.getType() == COMMA) {
+      expect(WORD);
+      String id = word();
+      nextToken();
+      state = negated ? ProbabilityExpression.FALSE : ProbabilityExpression.TRUE;
+      if (token == EQUALS) {
+        if (negated) {
+          throw new SyntaxException("Syntax error at " + lexer.getPosition() + ": a negated term cannot name a state");
+        }
+        nextToken();
+        expect(WORD);
+        state = word();
         nextToken();
       }
-       boolean value = true;
-       if (token.getType() == NOT) {
-         value = false;
-         nextToken();
-       }
-       expect(WORD);
-       String id = ((WordToken) token).value();
-       if (!network.containsVar(id)) {
-         throw new SyntaxException("The referenced node " + id + " is not defined");
-       }
-       builder.withEvidence(id, value);
-       nextToken();
-    } while (token.getType() == COMMA);
-  }
+      return id;
+    }
 
-  private void nextToken () throws IOException {
-    token = lexer.nextToken();
-  }
+    // Adds a term for the variable in the current state, replacing the state of an earlier term for
+    // the same variable on the same side of the bar, which starts at the given offset
+    private void add(String id, int from) {
+      for (int i = from; i < count; i++) {
+        if (ids[i].equals(id)) {
+          states[i] = state;
+          return;
+        }
+      }
+      if (count == ids.length) {
+        ids = Arrays.copyOf(ids, count * 2);
+        states = Arrays.copyOf(states, count * 2);
+      }
+      ids[count] = id;
+      states[count++] = state;
+    }
 
-  private void expect(Type type) {
-    if (token.getType() != type) {
-      throw new SyntaxException("Syntax error at " + token.getPosition() + ": found " + token.getType() + " when expecting " + type);
+    private String word() {
+      return words.intern(lexer.getInput(), lexer.getStart(), lexer.getEnd());
+    }
+
+    private void nextToken () {
+      token = lexer.nextToken();
+    }
+
+    private void expect(Type type) {
+      if (token != type) {
+        throw new SyntaxException("Syntax error at " + lexer.getPosition() + ": found " + token + " when expecting " + type);
+      }
     }
   }
 
@@ -2,37 +2,40 @@ package org.devoware.bayesian.prototype.expr;
 
 public class Position {
   
+  // Positions are immutable, so a copy is never needed
+  @Deprecated
   public static Position copyOf(Position position) {
     return new Position(position.getLine(), position.getCharacter());
   }
 
-  private int line = 1;
-  private int character = -1;
+  // Works out the line and character of an offset into the input by counting the line breaks before it
+  static Position of(CharSequence in, int offset) {
+    int line = 1;
+    int lineStart = 0;
+    for (int i = 0; i < offset; i++) {
+      char c = in.charAt(i);
+      if (c == '\n' || (c == '\r' && (i + 1 == in.length() || in.charAt(i + 1) != '\n'))) {
+        line++;
+        lineStart = i + 1;
+      }
+    }
+    return new Position(line, offset - lineStart);
+  }
+
+  private final int line;
+  private final int character;
   
   Position(int line, int character) {
     this.line = line;
     this.character = character;
   }
 
-  Position() {}
-  
-  Position advanceCharacter () {
-    character += 1;
-    return this;
-  }
-
-  Position advanceLine () {
-    line += 1;
-    character = -1;
-    return this;
-  }
-
   public int getLine() {
     return line;
   }
 
   public int getCharacter() {
-    return Math.max(character, 0);
+    return character;
   }
   
   @Override
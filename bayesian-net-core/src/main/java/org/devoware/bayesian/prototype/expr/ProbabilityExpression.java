@@ -6,16 +6,30 @@ import static java.util.Objects.requireNonNull;
 import java.util.Map;
 import java.util.Map.Entry;
 
+import org.devoware.bayesian.prototype.RandomVariable;
+
+import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.Maps;
 
 public class ProbabilityExpression {
+  // The states of a boolean variable, as written X and ~X
+  public static final String TRUE = "true";
+  public static final String FALSE = "false";
+
   private static final Parser parser = Parser.create();
 
   
-  private Map<String, Boolean> hypotheses;
-  private Map<String, Boolean> evidence;
-  private boolean termDisagreements = false;
+  // The terms in the order they were written, hypotheses first: term i puts variable ids[i] in
+  // state states[i]. A variable appears at most once on each side of the bar.
+  private final String[] ids;
+  private final String[] states;
+  private final int hypothesisCount;
+  private final int hash;
+  private final boolean termDisagreements;
+  // Map views of the terms, built on first use
+  private volatile Map<String, String> hypotheses;
+  private volatile Map<String, String> evidence;
 
   public static ProbabilityExpression create (String expr) {
     requireNonNull(expr, "expr cannot be null");
@@ -30,35 +44,95 @@ public class ProbabilityExpression {
     return new Builder(expr);
   }
 
-  private ProbabilityExpression(Builder builder) {
-    this.hypotheses = ImmutableMap.copyOf(builder.hypotheses);
-    this.evidence = ImmutableMap.copyOf(builder.evidence);
-    for (Entry<String,Boolean> entry : this.hypotheses.entrySet()) {
-      if (evidence.containsKey(entry.getKey()) && evidence.get(entry.getKey()) != entry.getValue()) {
-        termDisagreements = true;
-        break;
+  ProbabilityExpression(String[] ids, String[] states, int hypothesisCount) {
+    checkArgument(hypothesisCount > 0, "You must specify at least one hypothesis");
+    this.ids = ids;
+    this.states = states;
+    this.hypothesisCount = hypothesisCount;
+    // The same hash as the maps of hypotheses and evidence would give
+    int hypothesesHash = 0;
+    int evidenceHash = 0;
+    boolean termDisagreements = false;
+    for (int i = 0; i < ids.length; i++) {
+      int termHash = ids[i].hashCode() ^ states[i].hashCode();
+      if (i < hypothesisCount) {
+        hypothesesHash += termHash;
+        int j = indexOf(ids[i], hypothesisCount, ids.length);
+        termDisagreements |= j >= 0 && !states[j].equals(states[i]);
+      } else {
+        evidenceHash += termHash;
       }
     }
+    this.hash = 31 * (31 + evidenceHash) + hypothesesHash;
+    this.termDisagreements = termDisagreements;
   }
 
+  // Returns the hypotheses of an expression over boolean variables
   public Map<String, Boolean> getHypothesesMap() {
-    return ImmutableMap.copyOf(hypotheses);
+    return toBooleans(0, hypothesisCount);
   }
   
+  public Map<String, String> getHypothesisStates() {
+    Map<String, String> hypotheses = this.hypotheses;
+    if (hypotheses == null) {
+      hypotheses = toMap(0, hypothesisCount);
+      this.hypotheses = hypotheses;
+    }
+    return hypotheses;
+  }
+
+  public int getHypothesisCount() {
+    return hypothesisCount;
+  }
+
   public boolean getHypothesis(String id) {
-    return hypotheses.get(id);
+    return toBoolean(id, getHypothesisState(id));
   }
   
+  public String getHypothesisState(String id) {
+    int i = indexOf(id, 0, hypothesisCount);
+    return i < 0 ? null : states[i];
+  }
+
   public boolean hasEvidence() {
-    return !evidence.isEmpty();
+    return ids.length > hypothesisCount;
   }
   
+  // Returns the evidence of an expression over boolean variables
   public Map<String, Boolean> getEvidenceMap() {
-    return ImmutableMap.copyOf(evidence);
+    return toBooleans(hypothesisCount, ids.length);
+  }
+
+  public Map<String, String> getEvidenceStates() {
+    Map<String, String> evidence = this.evidence;
+    if (evidence == null) {
+      evidence = toMap(hypothesisCount, ids.length);
+      this.evidence = evidence;
+    }
+    return evidence;
+  }
+
+  public int getEvidenceCount() {
+    return ids.length - hypothesisCount;
   }
 
   public boolean getEvidence(String id) {
-    return evidence.get(id);
+    return toBoolean(id, getEvidenceState(id));
+  }
+
+  public String getEvidenceState(String id) {
+    int i = indexOf(id, hypothesisCount, ids.length);
+    return i < 0 ? null : states[i];
+  }
+
+  // True when every term names the state of a boolean variable
+  public boolean isBoolean() {
+    for (String state : states) {
+      if (!TRUE.equals(state) && !FALSE.equals(state)) {
+        return false;
+      }
+    }
+    return true;
   }
   
   public boolean hasTermDisagreemets () {
@@ -68,11 +142,7 @@ public class ProbabilityExpression {
 
   @Override
   public int hashCode() {
-    final int prime = 31;
-    int result = 1;
-    result = prime * result + ((evidence == null) ? 0 : evidence.hashCode());
-    result = prime * result + ((hypotheses == null) ? 0 : hypotheses.hashCode());
-    return result;
+    return hash;
   }
 
   @Override
@@ -84,73 +154,141 @@ public class ProbabilityExpression {
     if (getClass() != obj.getClass())
       return false;
     ProbabilityExpression other = (ProbabilityExpression) obj;
-    if (evidence == null) {
-      if (other.evidence != null)
-        return false;
-    } else if (!evidence.equals(other.evidence))
+    if (hash != other.hash || hypothesisCount != other.hypothesisCount || ids.length != other.ids.length)
       return false;
-    if (hypotheses == null) {
-      if (other.hypotheses != null)
+    // The terms on each side may be listed in any order
+    for (int i = 0; i < ids.length; i++) {
+      int j = i < hypothesisCount ? other.indexOf(ids[i], 0, hypothesisCount) : other.indexOf(ids[i], hypothesisCount, ids.length);
+      if (j < 0 || !states[i].equals(other.states[j]))
         return false;
-    } else if (!hypotheses.equals(other.hypotheses))
-      return false;
+    }
     return true;
   }
 
   @Override
   public String toString() {
     StringBuilder buf = new StringBuilder("P(");
-    toString(buf, hypotheses);
-    if (!evidence.isEmpty()) {
-      buf.append("|");
-      toString(buf, evidence);
+    for (int i = 0; i < ids.length; i++) {
+      if (i > 0) {
+        buf.append(i == hypothesisCount ? "|" : ",");
+      }
+      if (FALSE.equals(states[i])) {
+        buf.append("~");
+      }
+      buf.append(ids[i]);
+      if (!TRUE.equals(states[i]) && !FALSE.equals(states[i])) {
+        buf.append("=").append(states[i]);
+      }
     }
     buf.append(")");
     return buf.toString();
   }
-  
-  private void toString(StringBuilder buf, Map<String,Boolean> map) {
-    boolean firstLoop = true;
-    for (Entry<String, Boolean> entry : map.entrySet()) {
-      if (firstLoop) {
-        firstLoop = false;
-      } else {
-        buf.append(",");
-      }
-      if (!entry.getValue()) {
-        buf.append("~");
+
+  private int indexOf(String id, int from, int to) {
+    for (int i = from; i < to; i++) {
+      if (ids[i] == id || ids[i].equals(id)) {
+        return i;
       }
-      buf.append(entry.getKey());
     }
+    return -1;
+  }
+
+  private Map<String, String> toMap(int from, int to) {
+    ImmutableMap.Builder<String, String> builder = ImmutableMap.builder();
+    for (int i = from; i < to; i++) {
+      builder.put(ids[i], states[i]);
+    }
+    return builder.build();
+  }
+
+  private Map<String, Boolean> toBooleans(int from, int to) {
+    ImmutableMap.Builder<String, Boolean> builder = ImmutableMap.builder();
+    for (int i = from; i < to; i++) {
+      builder.put(ids[i], toBoolean(ids[i], states[i]));
+    }
+    return builder.build();
+  }
+
+  private static boolean toBoolean(String id, String state) {
+    if (TRUE.equals(state)) {
+      return true;
+    }
+    if (FALSE.equals(state)) {
+      return false;
+    }
+    throw new IllegalStateException("The term " + id + "=" + state + " does not name a boolean state");
   }
   
   public static class Builder {
     
-    private final Map<String, Boolean> hypotheses = Maps.newLinkedHashMap();
-    private final Map<String, Boolean> evidence = Maps.newLinkedHashMap();
+    private final Map<String, String> hypotheses = Maps.newLinkedHashMap();
+    private final Map<String, String> evidence = Maps.newLinkedHashMap();
     
     private Builder () {}
     
     private Builder (ProbabilityExpression expr) {
-      this.hypotheses.putAll(expr.hypotheses);
-      this.evidence.putAll(expr.evidence);
+      this.hypotheses.putAll(expr.getHypothesisStates());
+      this.evidence.putAll(expr.getEvidenceStates());
     }
     
     public Builder withHypothesis(String id, boolean value) {
+      return withHypothesis(id, value ? TRUE : FALSE);
+    }
+
+    public Builder withHypothesis(String id, String state) {
       requireNonNull(id, "id cannot be null");
-      hypotheses.put(id, value);
+      requireNonNull(state, "state cannot be null");
+      hypotheses.put(id, state);
       return this;
     }
 
+    public Builder withHypothesis(RandomVariable var, boolean value) {
+      return withHypothesis(var, value ? TRUE : FALSE);
+    }
+
+    public Builder withHypothesis(RandomVariable var, String state) {
+      checkState(var, state);
+      return withHypothesis(var.getId(), state);
+    }
+
     public Builder withEvidence(String id, boolean value) {
+      return withEvidence(id, value ? TRUE : FALSE);
+    }
+
+    public Builder withEvidence(String id, String state) {
       requireNonNull(id, "id cannot be null");
-      evidence.put(id, value);
+      requireNonNull(state, "state cannot be null");
+      evidence.put(id, state);
       return this;
     }
     
+    public Builder withEvidence(RandomVariable var, boolean value) {
+      return withEvidence(var, value ? TRUE : FALSE);
+    }
+
+    public Builder withEvidence(RandomVariable var, String state) {
+      checkState(var, state);
+      return withEvidence(var.getId(), state);
+    }
+
     public ProbabilityExpression build () {
       checkArgument(!hypotheses.isEmpty(), "You must specify at least one hypothesis");
-      return new ProbabilityExpression(this);
+      String[] ids = new String[hypotheses.size() + evidence.size()];
+      String[] states = new String[ids.length];
+      int i = 0;
+      for (Map<String, String> terms : ImmutableList.of(hypotheses, evidence)) {
+        for (Entry<String, String> entry : terms.entrySet()) {
+          ids[i] = entry.getKey();
+          states[i++] = entry.getValue();
+        }
+      }
+      return new ProbabilityExpression(ids, states, hypotheses.size());
+    }
+
+    private static void checkState(RandomVariable var, String state) {
+      requireNonNull(var, "var cannot be null");
+      requireNonNull(state, "state cannot be null");
+      checkArgument(var.getStates().contains(state), "'" + state + "' is not a state of variable " + var.getId());
     }
   
   }
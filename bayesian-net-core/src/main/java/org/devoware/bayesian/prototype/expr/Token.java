@@ -9,6 +9,7 @@ public class Token {
     COMMA("','"),
     PIPE("'|'"),
     NOT("'~'"),
+    EQUALS("'='"),
     WORD("a word"),
     EOF("end of input string");
     
@@ -27,15 +28,19 @@ public class Token {
   private final Type type;
   private final Position position;
 
+  // The lexer scans tokens in place and no longer creates Token instances; only Token.Type is used
+  @Deprecated
   public Token(Type type, Position position) {
     this.type = requireNonNull(type, "type cannot be null");
     this.position = Position.copyOf(requireNonNull(position, "position cannot be null"));
   }
   
+  @Deprecated
   public final Type getType() {
     return type;
   }
   
+  @Deprecated
   public final Position getPosition() {
     return position;
   }
@@ -0,0 +1,94 @@
+package org.devoware.bayesian.prototype.expr;
+
+// Interns the words of parsed expressions, so that repeated parses share one String per variable
+// id or state and find it by comparing characters in place rather than copying them out of the
+// input. Lookups read an open-addressing table that is never modified once published, without
+// locking; a new word is added to a copy that then replaces the table. Words past the limit are
+// returned without being interned, which bounds the table for parsers that accept any id.
+class WordTable {
+
+  private static final int MAX_WORDS = 1 << 12;
+
+  private volatile String[] table = new String[16];
+  // Guarded by this
+  private int size;
+
+  WordTable(String... words) {
+    for (String word : words) {
+      add(word);
+    }
+  }
+
+  String intern(CharSequence in, int start, int end) {
+    int hash = hash(in, start, end);
+    String[] table = this.table;
+    int mask = table.length - 1;
+    for (int i = hash & mask; table[i] != null; i = (i + 1) & mask) {
+      if (matches(table[i], hash, in, start, end)) {
+        return table[i];
+      }
+    }
+    return add(in.subSequence(start, end).toString());
+  }
+
+  private synchronized String add(String word) {
+    String[] table = this.table;
+    int mask = table.length - 1;
+    int hash = word.hashCode();
+    int i = hash & mask;
+    for (; table[i] != null; i = (i + 1) & mask) {
+      if (table[i].equals(word)) {
+        return table[i];
+      }
+    }
+    if (size == MAX_WORDS) {
+      return word;
+    }
+    String[] copy;
+    if (2 * (size + 1) > table.length) {
+      copy = new String[table.length * 2];
+      for (String existing : table) {
+        if (existing != null) {
+          insert(copy, existing);
+        }
+      }
+    } else {
+      copy = table.clone();
+    }
+    insert(copy, word);
+    size++;
+    this.table = copy;
+    return word;
+  }
+
+  private static void insert(String[] table, String word) {
+    int mask = table.length - 1;
+    int i = word.hashCode() & mask;
+    while (table[i] != null) {
+      i = (i + 1) & mask;
+    }
+    table[i] = word;
+  }
+
+  // The same hash as String.hashCode() of the characters, which interned words have cached
+  private static int hash(CharSequence in, int start, int end) {
+    int hash = 0;
+    for (int i = start; i < end; i++) {
+      hash = 31 * hash + in.charAt(i);
+    }
+    return hash;
+  }
+
+  private static boolean matches(String word, int hash, CharSequence in, int start, int end) {
+    if (word.length() != end - start || word.hashCode() != hash) {
+      return false;
+    }
+    for (int i = 0; i < word.length(); i++) {
+      if (word.charAt(i) != in.charAt(start + i)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+}
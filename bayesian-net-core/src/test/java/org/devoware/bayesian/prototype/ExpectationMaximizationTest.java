@@ -0,0 +1,222 @@
+package org.devoware.bayesian.prototype;
+
+import static org.devoware.bayesian.prototype.ExpectationMaximization.MISSING;
+import static org.devoware.bayesian.prototype.TestNetworks.randomNetwork;
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+
+public class ExpectationMaximizationTest {
+
+  private Network network;
+
+  @Before
+  public void setup () {
+    network = TestNetworks.sprinkler();
+  }
+
+  @Test
+  public void test_complete_data_gives_maximum_likelihood () {
+    List<int[]> rows = sample(network, 5000, 0.0, new Random(2));
+    Network counted = TestNetworks.sprinklerStructure();
+    Network learned = TestNetworks.sprinklerStructure();
+    ParameterLearner.builder().withPseudoCount(1.0).build().learnStates(counted, rows.iterator());
+    LearningResult result = ExpectationMaximization.builder().withPseudoCount(1.0).withSeed(1).build()
+        .learn(learned, rows.iterator());
+
+    assertThat(result.isConverged(), equalTo(true));
+    // The first M-step reaches the maximum likelihood, so the third iteration finds the
+    // log-likelihood unchanged
+    assertThat(result.getIterations(), equalTo(3));
+    assertThat(result.getRowCount(), equalTo(5000L));
+    for (RandomVariable var : counted.getVariables()) {
+      assertArrayEquals(var.getCpt().getValues(), learned.getVariable(var.getId()).getCpt().getValues(), 1e-12);
+    }
+  }
+
+  @Test
+  public void test_learns_from_missing_values () {
+    List<int[]> rows = sample(network, 20000, 0.3, new Random(4));
+    Network learned = TestNetworks.sprinklerStructure();
+    LearningResult result = ExpectationMaximization.builder().withSeed(3).withParallelism(2).build()
+        .learn(learned, rows.iterator());
+
+    assertThat(result.isConverged(), equalTo(true));
+    assertTrue(result.getPatternCount() <= 81);
+    assertEquals(network.query("P(W)"), learned.query("P(W)"), 0.02);
+    assertEquals(network.query("P(R|W)"), learned.query("P(R|W)"), 0.02);
+    assertEquals(network.query("P(S|~R,W)"), learned.query("P(S|~R,W)"), 0.03);
+  }
+
+  @Test
+  public void test_log_likelihood_never_decreases () {
+    List<int[]> rows = sample(network, 2000, 0.4, new Random(6));
+    double previous = Double.NEGATIVE_INFINITY;
+    for (int iterations = 1; iterations <= 6; iterations++) {
+      LearningResult result = ExpectationMaximization.builder().withSeed(9).withMaxIterations(iterations)
+          .withTolerance(0.0).build().learn(TestNetworks.sprinklerStructure(), rows.iterator());
+      assertThat(result.getIterations(), equalTo(iterations));
+      assertTrue(result.getLogLikelihood() >= previous - 1e-9);
+      previous = result.getLogLikelihood();
+    }
+  }
+
+  @Test
+  public void test_log_likelihood_is_that_of_the_learned_cpts () {
+    List<int[]> rows = sample(network, 300, 0.3, new Random(10));
+    Network learned = TestNetworks.sprinklerStructure();
+    LearningResult result = ExpectationMaximization.builder().withSeed(5).withMaxIterations(3).withTolerance(0.0).build()
+        .learn(learned, rows.iterator());
+
+    String[] ids = {"C", "S", "R", "W"};
+    double logLikelihood = 0.0;
+    for (int[] row : rows) {
+      List<String> terms = Lists.newArrayList();
+      for (int v = 0; v < ids.length; v++) {
+        if (row[v] != MISSING) {
+          terms.add(row[v] == 1 ? ids[v] : "~" + ids[v]);
+        }
+      }
+      if (!terms.isEmpty()) {
+        logLikelihood += Math.log(learned.query("P(" + String.join(",", terms) + ")"));
+      }
+    }
+    assertThat(result.isConverged(), equalTo(false));
+    assertEquals(logLikelihood, result.getLogLikelihood(), 1e-9 * Math.abs(logLikelihood));
+  }
+
+  @Test
+  public void test_result_does_not_depend_on_parallelism_or_numeric_mode () {
+    Random random = new Random(12);
+    Network truth = randomNetwork(random, 12, 3);
+    List<int[]> rows = sample(truth, 8000, 0.3, random);
+
+    Network sequential = randomNetwork(new Random(12), 12, 3);
+    Network parallel = randomNetwork(new Random(12), 12, 3);
+    Network logSpace = randomNetwork(new Random(12), 12, 3);
+    logSpace.setNumericMode(NumericMode.LOG_SPACE);
+    LearningResult result = ExpectationMaximization.builder().withMaxIterations(5).build().learn(sequential, rows.iterator());
+    ExpectationMaximization.builder().withMaxIterations(5).withParallelism(3).build().learn(parallel, rows.iterator());
+    ExpectationMaximization.builder().withMaxIterations(5).build().learn(logSpace, rows.iterator());
+
+    assertTrue(result.getPatternCount() > 1024);
+    for (RandomVariable var : sequential.getVariables()) {
+      double[] expected = var.getCpt().getValues();
+      assertArrayEquals(expected, parallel.getVariable(var.getId()).getCpt().getValues(), 0.0);
+      assertArrayEquals(expected, logSpace.getVariable(var.getId()).getCpt().getValues(), 1e-9);
+    }
+  }
+
+  @Test
+  public void test_multi_valued_variables () {
+    Network truth = new Network();
+    RandomVariable season = truth.newVariable("Season", "Season", ImmutableList.of("winter", "summer"));
+    RandomVariable weather = truth.newVariable("Weather", "Weather", ImmutableList.of("sun", "rain", "snow"));
+    season.addChild(weather);
+    season.getCpt().put("P(Season=winter)", 0.4);
+    season.getCpt().put("P(Season=summer)", 0.6);
+    weather.getCpt().put("P(Weather=sun|Season=winter)", 0.2);
+    weather.getCpt().put("P(Weather=rain|Season=winter)", 0.3);
+    weather.getCpt().put("P(Weather=snow|Season=winter)", 0.5);
+    weather.getCpt().put("P(Weather=sun|Season=summer)", 0.7);
+    weather.getCpt().put("P(Weather=rain|Season=summer)", 0.3);
+    weather.getCpt().put("P(Weather=snow|Season=summer)", 0.0);
+
+    List<int[]> rows = sample(truth, 20000, 0.3, new Random(5));
+    Network learned = new Network();
+    learned.newVariable("Season", "Season", ImmutableList.of("winter", "summer"))
+        .addChild(learned.newVariable("Weather", "Weather", ImmutableList.of("sun", "rain", "snow")));
+    ExpectationMaximization.builder().withSeed(2).build().learn(learned, rows.iterator());
+
+    assertArrayEquals(truth.getVariable("Weather").getCpt().getValues(),
+        learned.getVariable("Weather").getCpt().getValues(), 0.02);
+  }
+
+  @Test
+  public void test_long_chain_does_not_underflow () {
+    int size = 1000;
+    Network truth = chain(size);
+    for (int i = 0; i < size; i++) {
+      truth.getVariable("X" + i).getCpt().putAll(i == 0 ? new double[] {0.5, 0.5} : new double[] {0.9, 0.1, 0.2, 0.8});
+    }
+    List<int[]> rows = sample(truth, 200, 0.1, new Random(8));
+
+    // The probability of a row is around 2^-1000, far below the smallest double
+    Network learned = chain(size);
+    learned.setNumericMode(NumericMode.DOUBLE);
+    LearningResult result = ExpectationMaximization.builder().withSeed(4).withMaxIterations(10).build()
+        .learn(learned, rows.iterator());
+
+    assertTrue(result.toString(), result.getLogLikelihood() > Double.NEGATIVE_INFINITY);
+    double stay = 0.0;
+    double leave = 0.0;
+    for (int i = 1; i < size; i++) {
+      ConditionalProbabilityTable cpt = learned.getVariable("X" + i).getCpt();
+      stay += cpt.getProbability(1, 1) / (size - 1);
+      leave += cpt.getProbability(0, 1) / (size - 1);
+    }
+    assertEquals(0.8, stay, 0.02);
+    assertEquals(0.1, leave, 0.02);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void test_rejects_unknown_states () {
+    List<int[]> rows = ImmutableList.of(new int[] {0, 1, MISSING, 2});
+    ExpectationMaximization.builder().build().learn(TestNetworks.sprinklerStructure(), rows.iterator());
+  }
+
+  // A chain X0 -> X1 -> ... of boolean variables with no CPTs assigned
+  private static Network chain(int size) {
+    NetworkBuilder builder = Network.builder();
+    for (int i = 0; i < size; i++) {
+      builder.withVariable("X" + i);
+      if (i > 0) {
+        builder.withEdge("X" + (i - 1), "X" + i);
+      }
+    }
+    return builder.build();
+  }
+
+  // Draws rows of state indices from a network whose variables are created in topological order,
+  // hiding each value with the given probability
+  private static List<int[]> sample(Network network, int count, double missing, Random random) {
+    List<RandomVariable> vars = Lists.newArrayList(network.getVariables());
+    List<int[]> rows = Lists.newArrayListWithCapacity(count);
+    for (int n = 0; n < count; n++) {
+      int[] row = new int[vars.size()];
+      for (int v = 0; v < vars.size(); v++) {
+        RandomVariable var = vars.get(v);
+        int cptRow = 0;
+        int radix = 1;
+        for (RandomVariable parent : var.getParents()) {
+          cptRow += radix * row[vars.indexOf(parent)];
+          radix *= parent.getCardinality();
+        }
+        double u = random.nextDouble();
+        int state = 0;
+        while (state < var.getCardinality() - 1 && (u -= var.getCpt().getProbability(cptRow, state)) >= 0) {
+          state++;
+        }
+        row[v] = state;
+      }
+      for (int v = 0; v < row.length; v++) {
+        if (random.nextDouble() < missing) {
+          row[v] = MISSING;
+        }
+      }
+      rows.add(row);
+    }
+    return rows;
+  }
+}
@@ -0,0 +1,101 @@
+package org.devoware.bayesian.prototype;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class GibbsSamplerTest {
+
+  private Network network;
+
+  @Before
+  public void setup () {
+    network = TestNetworks.sprinkler();
+  }
+
+  @Test
+  public void test_estimate_converges_to_exact_answer () {
+    GibbsSampler sampler = GibbsSampler.builder().withSeed(7).withSamples(20000).build();
+    for (String query : new String[] {"P(R|W)", "P(S|W,~C)", "P(C,~S)", "P(C|~W)"}) {
+      ChainEstimate estimate = sampler.estimate(network, query);
+      assertEquals(query, network.query(query), estimate.getValue(), 0.015);
+      assertTrue(query, estimate.hasConverged(1.05));
+      assertThat(estimate.getChainValues().size(), equalTo(4));
+      assertThat(estimate.getSampleCount(), equalTo(80000L));
+    }
+  }
+
+  @Test
+  public void test_unlikely_leaf_evidence () {
+    network = new Network();
+    RandomVariable fault = network.newVariable("F");
+    RandomVariable alarm = network.newVariable("A");
+    RandomVariable report = network.newVariable("R");
+    fault.addChild(alarm);
+    alarm.addChild(report);
+    fault.getCpt().put("P(F)", 0.001);
+    alarm.getCpt().put("P(A|F)", 0.95);
+    alarm.getCpt().put("P(A|~F)", 0.0005);
+    report.getCpt().put("P(R|A)", 0.9);
+    report.getCpt().put("P(R|~A)", 0.0001);
+
+    ChainEstimate estimate = GibbsSampler.builder().withSeed(11).withBurnIn(200).withThinning(2).build()
+        .estimate(network, "P(F|R)");
+    assertEquals(network.query("P(F|R)"), estimate.getValue(), 0.03);
+    assertTrue(estimate.getLowerBound() <= estimate.getValue() && estimate.getValue() <= estimate.getUpperBound());
+  }
+
+  @Test
+  public void test_seed_reproduces_estimate () {
+    GibbsSampler.Builder builder = GibbsSampler.builder().withSeed(3).withSamples(2000);
+    assertThat(builder.build().estimate(network, "P(S|W)").getValue(),
+        equalTo(builder.build().estimate(network, "P(S|W)").getValue()));
+  }
+
+  @Test
+  public void test_stuck_chains_fail_to_converge () {
+    network = new Network();
+    RandomVariable a = network.newVariable("A");
+    RandomVariable b = network.newVariable("B");
+    a.addChild(b);
+    a.getCpt().put("P(A)", 0.5);
+    b.getCpt().put("P(B|A)", 1.0);
+    b.getCpt().put("P(B|~A)", 0.0);
+
+    ChainEstimate estimate = GibbsSampler.builder().withSeed(1).withChains(8).withSamples(500).build()
+        .estimate(network, "P(A,B)");
+    assertTrue(estimate.toString(), !estimate.hasConverged(1.1));
+  }
+
+  @Test
+  public void test_evidence_no_forward_sample_satisfies () {
+    network = new Network();
+    RandomVariable a = network.newVariable("A");
+    RandomVariable b = network.newVariable("B");
+    a.addChild(b);
+    a.getCpt().put("P(A)", 0.001);
+    b.getCpt().put("P(B|A)", 0.001);
+    b.getCpt().put("P(B|~A)", 0.0);
+
+    ChainEstimate estimate = GibbsSampler.builder().withSeed(5).withSamples(500).build().estimate(network, "P(A|B)");
+    assertEquals(1.0, estimate.getValue(), 0.0);
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void test_evidence_inconsistent_with_every_sample () {
+    network.getVariable("W").getCpt().put("P(W|S,R)", 0.0);
+    network.getVariable("W").getCpt().put("P(W|S,~R)", 0.0);
+    network.getVariable("W").getCpt().put("P(W|~S,R)", 0.0);
+    GibbsSampler.builder().withSeed(3).build().estimate(network, "P(S|W)");
+  }
+
+  @Test
+  public void test_single_chain_has_no_diagnostic () {
+    ChainEstimate estimate = GibbsSampler.builder().withChains(1).withSamples(1000).build().estimate(network, "P(R)");
+    assertTrue(Double.isNaN(estimate.getPotentialScaleReduction()));
+  }
+}
@@ -0,0 +1,173 @@
+package org.devoware.bayesian.prototype;
+
+import static org.devoware.bayesian.prototype.TestNetworks.randomNetwork;
+import static org.devoware.bayesian.prototype.TestNetworks.randomQuery;
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.Map;
+import java.util.Random;
+
+import org.devoware.bayesian.prototype.JunctionTree.Calibration;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.common.collect.Maps;
+
+public class JunctionTreeTest {
+
+  private Network network;
+
+  @Before
+  public void setup () {
+    network = TestNetworks.sprinkler();
+  }
+
+  @Test
+  public void test_query () {
+    network.setInferenceAlgorithm(InferenceAlgorithm.JUNCTION_TREE);
+
+    assertThat(round(network.query("P(S|W)"), 3), equalTo(new BigDecimal("0.430")));
+    assertThat(round(network.query("P(R|W)"), 3), equalTo(new BigDecimal("0.708")));
+    assertThat(round(network.query("P(S,W)"), 4), equalTo(new BigDecimal("0.2781")));
+    assertThat(round(network.query("P(R,W)"), 4), equalTo(new BigDecimal("0.4581")));
+    assertThat(round(network.query("P(W)"), 4), equalTo(new BigDecimal("0.6471")));
+    assertThat(round(network.query("P(W|R)"), 4), equalTo(new BigDecimal("0.9162")));
+    assertThat(round(network.query("P(W|S,~R)"), 1), equalTo(new BigDecimal("0.9")));
+    assertThat(round(network.query("P(C|C)"), 1), equalTo(new BigDecimal("1.0")));
+    assertThat(round(network.query("P(C|~C)"), 1), equalTo(new BigDecimal("0.0")));
+  }
+
+  @Test
+  public void test_recompiles_after_cpt_change () {
+    network.setInferenceAlgorithm(InferenceAlgorithm.JUNCTION_TREE);
+    assertThat(round(network.query("P(C)"), 1), equalTo(new BigDecimal("0.5")));
+
+    network.getVariable("C").getCpt().put("P(C)", 0.3);
+    assertThat(round(network.query("P(C)"), 1), equalTo(new BigDecimal("0.3")));
+  }
+
+  @Test
+  public void test_matches_variable_elimination_on_random_networks () {
+    Random random = new Random(11);
+    for (int n = 0; n < 5; n++) {
+      network = randomNetwork(random, 25, 3);
+      VariableElimination expected = VariableElimination.create(network);
+      JunctionTreeEngine engine = JunctionTreeEngine.create(network);
+      for (int q = 0; q < 20; q++) {
+        String query = randomQuery(random, 25);
+        assertEquals(query, expected.query(network.parse(query)), engine.query(network.parse(query)), 1e-9);
+      }
+    }
+  }
+
+  @Test
+  public void test_impossible_evidence_in_another_component () {
+    // The alarm shares no clique with the sprinkler network and never sounds
+    RandomVariable alarm = network.newVariable("A", "Alarm");
+    alarm.getCpt().put("P(A)", 0.0);
+    network.setInferenceAlgorithm(InferenceAlgorithm.JUNCTION_TREE);
+    for (String query : new String[] {"P(R|A)", "P(R|W,A)", "P(S,R|A)"}) {
+      try {
+        network.query(query);
+        fail("Expected the evidence in " + query + " to be rejected");
+      } catch (IllegalArgumentException e) {
+        assertThat(e.getMessage(), equalTo("The evidence specified in " + network.parse(query) + " has a probability of zero"));
+      }
+    }
+    assertThat(round(network.query("P(R|W,~A)"), 3), equalTo(new BigDecimal("0.708")));
+  }
+
+  @Test
+  public void test_marginals_follow_evidence () {
+    Random random = new Random(5);
+    network = randomNetwork(random, 30, 3);
+    network.setEvidence("X29", true);
+    network.setEvidence("X3", false);
+    for (RandomVariable var : network.getVariables()) {
+      double expected = network.query("P(" + var.getId() + "|X29,~X3)");
+      assertEquals(var.getId(), expected, var.getProbability(), 1e-9);
+    }
+  }
+
+  @Test
+  public void test_incremental_evidence_matches_full_recalibration () {
+    Random random = new Random(43);
+    network = randomNetwork(random, 30, 3);
+    for (int step = 0; step < 40; step++) {
+      String id = "X" + random.nextInt(30);
+      if (random.nextInt(3) == 0) {
+        network.clearEvidence(id);
+      } else {
+        network.setEvidence(id, random.nextBoolean());
+      }
+      StringBuilder evidence = new StringBuilder();
+      for (Map.Entry<String, Boolean> entry : network.getEvidence().entrySet()) {
+        evidence.append(evidence.length() == 0 ? "|" : ",").append(entry.getValue() ? "" : "~").append(entry.getKey());
+      }
+      String var = "X" + random.nextInt(30);
+      double expected;
+      try {
+        expected = network.query("P(" + var + evidence + ")");
+      } catch (IllegalArgumentException e) {
+        // The accumulated evidence became impossible
+        network.clearEvidence();
+        continue;
+      }
+      assertEquals(var + evidence, expected, network.getVariable(var).getProbability(), 1e-9);
+    }
+  }
+
+  @Test
+  public void test_new_observation_reuses_unaffected_messages () {
+    network = randomNetwork(new Random(47), 50, 2);
+    JunctionTree tree = JunctionTree.compile(network.freeze());
+    Map<Integer, Integer> evidence = Maps.newHashMap();
+    evidence.put(49, 1);
+    Calibration calibration = tree.calibrate(evidence);
+    for (int v = 0; v < 50; v++) {
+      tree.marginal(new int[] {v}, calibration);
+    }
+
+    evidence.put(48, 0);
+    Calibration updated = calibration.update(evidence);
+    Calibration fresh = tree.calibrate(evidence);
+    for (int v = 0; v < 50; v++) {
+      Factor expected = tree.marginal(new int[] {v}, fresh);
+      Factor actual = tree.marginal(new int[] {v}, updated);
+      assertEquals(expected.normalizedValue(new int[] {v}, new int[] {1}), actual.normalizedValue(new int[] {v}, new int[] {1}), 1e-12);
+    }
+    assertThat(updated.getComputedMessages() < fresh.getComputedMessages(), equalTo(true));
+  }
+
+  @Test
+  public void test_deep_chain () {
+    int size = 10000;
+    NetworkBuilder builder = Network.builder();
+    for (int i = 0; i < size; i++) {
+      builder.withVariable("X" + i);
+      if (i > 0) {
+        builder.withEdge("X" + (i - 1), "X" + i);
+        builder.withCpt("X" + i, new double[] {0.9, 0.1, 0.2, 0.8});
+      }
+    }
+    network = builder.withCpt("X0", new double[] {0.5, 0.5}).build();
+    network.setInferenceAlgorithm(InferenceAlgorithm.JUNCTION_TREE);
+
+    // Far from the evidence the marginals settle at the chain's stationary distribution, 1/3 true
+    network.setEvidence("X0", true);
+    assertEquals(1.0 / 3.0, network.getVariable("X" + (size - 1)).getProbability(), 1e-9);
+    assertEquals(0.8, network.getVariable("X1").getProbability(), 1e-9);
+    network.setEvidence("X" + (size - 1), false);
+    assertEquals(1.0 / 3.0, network.getVariable("X" + (size / 2)).getProbability(), 1e-9);
+    assertEquals(0.1, network.query("P(X" + (size - 1) + "|~X" + (size - 2) + ")"), 1e-9);
+  }
+
+  private static BigDecimal round(double value, int scale) {
+    return new BigDecimal(value).setScale(scale, RoundingMode.HALF_UP);
+  }
+}
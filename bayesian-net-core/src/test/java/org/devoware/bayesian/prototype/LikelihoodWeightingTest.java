@@ -0,0 +1,81 @@
+package org.devoware.bayesian.prototype;
+
+import static org.devoware.bayesian.prototype.TestNetworks.randomNetwork;
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class LikelihoodWeightingTest {
+
+  private Network network;
+
+  @Before
+  public void setup () {
+    network = TestNetworks.sprinkler();
+  }
+
+  @Test
+  public void test_estimate_converges_to_exact_answer () {
+    LikelihoodWeighting sampler = LikelihoodWeighting.builder().withPrecision(0.002).withSeed(5).build();
+    for (String query : new String[] {"P(R|W)", "P(S|W,~C)", "P(C,~S)", "P(W|R)"}) {
+      Estimate estimate = sampler.estimate(network, query);
+      double exact = network.query(query);
+      assertEquals(query, exact, estimate.getValue(), 0.01);
+      assertTrue(query, estimate.getHalfWidth() <= 0.002);
+      assertTrue(query, estimate.getLowerBound() <= estimate.getValue() && estimate.getValue() <= estimate.getUpperBound());
+    }
+  }
+
+  @Test
+  public void test_seed_reproduces_estimate_at_any_parallelism () {
+    network = randomNetwork(new Random(41), 30, 3);
+    LikelihoodWeighting.Builder builder = LikelihoodWeighting.builder().withSeed(99).withPrecision(0.005);
+    Estimate sequential = builder.build().estimate(network, "P(X3|X20,~X25)");
+    Estimate parallel = builder.withParallelism(4).build().estimate(network, "P(X3|X20,~X25)");
+    assertThat(parallel.getValue(), equalTo(sequential.getValue()));
+    assertThat(parallel.getSampleCount(), equalTo(sequential.getSampleCount()));
+    assertEquals(network.query("P(X3|X20,~X25)"), sequential.getValue(), 0.02);
+
+    ForkJoinPool pool = new ForkJoinPool(2);
+    try {
+      Estimate pooled = builder.withPool(pool).build().estimate(network, "P(X3|X20,~X25)");
+      assertThat(pooled.getValue(), equalTo(sequential.getValue()));
+    } finally {
+      pool.shutdown();
+    }
+  }
+
+  @Test
+  public void test_stops_at_sample_limit_and_time_budget () {
+    LikelihoodWeighting sampler = LikelihoodWeighting.builder().withPrecision(1e-9).withMaxSamples(5000).build();
+    assertThat(sampler.estimate(network, "P(R|W)").getSampleCount(), equalTo(5000L));
+
+    sampler = LikelihoodWeighting.builder().withPrecision(1e-9).withTimeBudget(50, TimeUnit.MILLISECONDS).build();
+    long start = System.nanoTime();
+    sampler.estimate(network, "P(R|W)");
+    assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) < 5000);
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void test_evidence_inconsistent_with_every_sample () {
+    network.getVariable("W").getCpt().put("P(W|S,R)", 0.0);
+    network.getVariable("W").getCpt().put("P(W|S,~R)", 0.0);
+    network.getVariable("W").getCpt().put("P(W|~S,R)", 0.0);
+    LikelihoodWeighting.builder().withMaxSamples(2000).build().estimate(network, "P(S|W)");
+  }
+
+  @Test
+  public void test_z_score () {
+    assertEquals(1.959964, Estimate.zScore(0.95), 1e-6);
+    assertEquals(2.575829, Estimate.zScore(0.99), 1e-6);
+    assertEquals(3.290527, Estimate.zScore(0.999), 1e-6);
+  }
+}
@@ -0,0 +1,136 @@
+package org.devoware.bayesian.prototype;
+
+import static org.devoware.bayesian.prototype.TestNetworks.randomNetwork;
+import static org.devoware.bayesian.prototype.TestNetworks.randomQuery;
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.common.collect.ImmutableList;
+
+public class LoopyBeliefPropagationTest {
+
+  private Network network;
+
+  @Before
+  public void setup () {
+    network = TestNetworks.sprinkler();
+  }
+
+  @Test
+  public void test_exact_on_trees () {
+    Random random = new Random(13);
+    for (MessageSchedule schedule : MessageSchedule.values()) {
+      LoopyBeliefPropagation lbp = LoopyBeliefPropagation.builder().withSchedule(schedule).withTolerance(1e-10).build();
+      for (int n = 0; n < 3; n++) {
+        network = randomNetwork(random, 30, 1);
+        for (int q = 0; q < 20; q++) {
+          String query = randomQuery(random, 30);
+          assertEquals(schedule + " " + query, network.query(query), lbp.query(network, query), 1e-8);
+        }
+      }
+    }
+  }
+
+  @Test
+  public void test_close_to_exact_on_loops () {
+    for (MessageSchedule schedule : MessageSchedule.values()) {
+      LoopyBeliefPropagation lbp = LoopyBeliefPropagation.builder().withSchedule(schedule).withDamping(0.3).build();
+      for (String query : new String[] {"P(R|W)", "P(S|W)", "P(C|W)", "P(R,S|W)", "P(W)"}) {
+        assertEquals(schedule + " " + query, network.query(query), lbp.query(network, query), 0.1);
+      }
+      Random random = new Random(31);
+      network = randomNetwork(random, 40, 2);
+      for (int q = 0; q < 20; q++) {
+        String query = randomQuery(random, 40);
+        assertEquals(schedule + " " + query, network.query(query), lbp.query(network, query), 0.05);
+      }
+      setup();
+    }
+  }
+
+  @Test
+  public void test_converges_within_iteration_limit () {
+    network = randomNetwork(new Random(19), 40, 3);
+    NetworkSnapshot snapshot = network.freeze();
+    for (MessageSchedule schedule : MessageSchedule.values()) {
+      PropagationResult result = LoopyBeliefPropagation.builder().withSchedule(schedule)
+          .withDamping(0.2).withMaxIterations(200).build().evaluate(snapshot, "P(X30|X39,~X35)");
+      assertTrue(schedule.toString(), result.isConverged());
+      assertTrue(schedule.toString(), result.getIterations() < 200);
+    }
+
+    LoopyBeliefPropagation.Builder capped = LoopyBeliefPropagation.builder().withMaxIterations(1).withTolerance(1e-15);
+    PropagationResult result = capped.build().evaluate(snapshot, "P(X30|X39,~X35)");
+    assertTrue(!result.isConverged());
+    assertThat(result.getIterations(), equalTo(1));
+    assertThat(capped.withAllowNonConvergence(true).build().query(snapshot, "P(X30|X39,~X35)"),
+        equalTo(result.getValue()));
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void test_query_fails_without_convergence () {
+    network = randomNetwork(new Random(19), 40, 3);
+    LoopyBeliefPropagation.builder().withMaxIterations(1).withTolerance(1e-15).build().query(network, "P(X30|X39,~X35)");
+  }
+
+  @Test
+  public void test_network_queries () {
+    LoopyBeliefPropagation lbp = LoopyBeliefPropagation.builder().withDamping(0.1).build();
+    network.setBeliefPropagation(lbp);
+    network.setInferenceAlgorithm(InferenceAlgorithm.LOOPY_BELIEF_PROPAGATION);
+    List<String> queries = ImmutableList.of("P(R|W)", "P(S|W)", "P(S,R|W)", "P(C|~S)");
+    for (String query : queries) {
+      assertThat(query, network.query(query), equalTo(lbp.query(network, query)));
+    }
+    assertThat(network.queryAll(queries), equalTo(ImmutableList.of(lbp.query(network, "P(R|W)"),
+        lbp.query(network, "P(S|W)"), lbp.query(network, "P(S,R|W)"), lbp.query(network, "P(C|~S)"))));
+  }
+
+  @Test
+  public void test_network_queries_fail_without_convergence () {
+    network = randomNetwork(new Random(19), 40, 3);
+    network.setInferenceAlgorithm(InferenceAlgorithm.LOOPY_BELIEF_PROPAGATION);
+    network.setBeliefPropagation(LoopyBeliefPropagation.builder().withMaxIterations(1).withTolerance(1e-15).build());
+    for (int attempt = 0; attempt < 2; attempt++) {
+      try {
+        if (attempt == 0) {
+          network.query("P(X30|X39,~X35)");
+        } else {
+          network.queryAll(ImmutableList.of("P(X30|X39,~X35)"));
+        }
+        fail("Expected the query to fail without convergence");
+      } catch (IllegalStateException e) {
+        assertThat(e.getMessage(), equalTo("The messages for " + network.parse("P(X30|X39,~X35)")
+            + " did not converge within 1 iterations"));
+      }
+    }
+
+    network.setBeliefPropagation(LoopyBeliefPropagation.builder().withMaxIterations(1).withTolerance(1e-15)
+        .withAllowNonConvergence(true).build());
+    assertThat(network.query("P(X30|X39,~X35)"), equalTo(network.getBeliefPropagation().query(network, "P(X30|X39,~X35)")));
+  }
+
+  @Test
+  public void test_disagreements_and_repeated_evidence () {
+    LoopyBeliefPropagation lbp = LoopyBeliefPropagation.builder().build();
+    assertEquals(0.0, lbp.query(network, "P(W|~W)"), 0.0);
+    assertEquals(1.0, lbp.query(network, "P(W|W)"), 0.0);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void test_impossible_evidence () {
+    network.getVariable("W").getCpt().put("P(W|S,R)", 0.0);
+    network.getVariable("W").getCpt().put("P(W|S,~R)", 0.0);
+    network.getVariable("W").getCpt().put("P(W|~S,R)", 0.0);
+    LoopyBeliefPropagation.builder().build().query(network, "P(S|W)");
+  }
+}
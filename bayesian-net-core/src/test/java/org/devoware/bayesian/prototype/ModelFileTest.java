@@ -0,0 +1,147 @@
+package org.devoware.bayesian.prototype;
+
+import static org.devoware.bayesian.prototype.TestNetworks.randomNetwork;
+import static org.devoware.bayesian.prototype.TestNetworks.randomQuery;
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.google.common.collect.ImmutableList;
+
+public class ModelFileTest {
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  private Network network;
+
+  @Before
+  public void setup () {
+    network = TestNetworks.sprinkler();
+  }
+
+  @Test
+  public void test_round_trip () throws IOException {
+    Path path = folder.newFile("sprinkler.bnet").toPath();
+    ModelFile.write(network, path);
+    Network loaded = ModelFile.read(path);
+
+    assertThat(loaded.getVariable("W").getLabel(), equalTo("Wet Grass"));
+    assertThat(ImmutableList.copyOf(loaded.getVariable("W").getParents()).toString(), equalTo("[S, R]"));
+    assertThat(loaded.getVariable("W").getCpt().get("P(W|~S,R)"), equalTo(0.9));
+    assertThat(loaded.query("P(R|W)"), equalTo(network.query("P(R|W)")));
+  }
+
+  @Test
+  public void test_round_trip_random_networks () throws IOException {
+    Random random = new Random(23);
+    for (int n = 0; n < 3; n++) {
+      Network original = randomNetwork(random, 40, 3);
+      Path path = folder.newFile().toPath();
+      ModelFile.write(original, path);
+      Network loaded = ModelFile.read(path);
+      assertThat(loaded.getEdges().size(), equalTo(original.getEdges().size()));
+      for (int q = 0; q < 20; q++) {
+        String query = randomQuery(random, 40);
+        assertEquals(query, original.query(query), loaded.query(query), 0.0);
+      }
+    }
+  }
+
+  @Test
+  public void test_round_trip_multi_valued () throws IOException {
+    Network network = new Network();
+    RandomVariable season = network.newVariable("Season", "Season", ImmutableList.of("winter", "summer"));
+    RandomVariable weather = network.newVariable("Weather", "Weather", ImmutableList.of("sun", "rain", "snow"));
+    season.addChild(weather);
+    season.getCpt().put("P(Season=winter)", 0.4);
+    season.getCpt().put("P(Season=summer)", 0.6);
+    weather.getCpt().put("P(Weather=sun|Season=winter)", 0.2);
+    weather.getCpt().put("P(Weather=rain|Season=winter)", 0.3);
+    weather.getCpt().put("P(Weather=snow|Season=winter)", 0.5);
+    weather.getCpt().put("P(Weather=sun|Season=summer)", 0.7);
+    weather.getCpt().put("P(Weather=rain|Season=summer)", 0.3);
+    weather.getCpt().put("P(Weather=snow|Season=summer)", 0.0);
+
+    Path path = folder.newFile().toPath();
+    ModelFile.write(network, path);
+    Network loaded = ModelFile.read(path);
+    assertThat(loaded.getVariable("Weather").getStates(), equalTo(ImmutableList.of("sun", "rain", "snow")));
+    assertEquals(network.query("P(Season=winter|Weather=snow)"), loaded.query("P(Season=winter|Weather=snow)"), 0.0);
+  }
+
+  @Test(expected = IOException.class)
+  public void test_rejects_other_versions () throws IOException {
+    Path path = folder.newFile().toPath();
+    ModelFile.write(network, path);
+    byte[] bytes = Files.readAllBytes(path);
+    ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN).putInt(4, ModelFile.VERSION + 1);
+    Files.write(path, bytes);
+    ModelFile.read(path);
+  }
+
+  @Test(expected = IOException.class)
+  public void test_rejects_truncated_files () throws IOException {
+    Path path = folder.newFile().toPath();
+    ModelFile.write(network, path);
+    byte[] bytes = Files.readAllBytes(path);
+    Files.write(path, Arrays.copyOf(bytes, bytes.length - 8));
+    ModelFile.read(path);
+  }
+
+  @Test
+  public void test_rejects_cpt_sizes_that_overflow () throws IOException {
+    Path path = folder.newFile().toPath();
+    ModelFile.write(network, path);
+    byte[] header = Arrays.copyOf(Files.readAllBytes(path), 8);
+
+    // B has 41 edges from A, so its CPT would have 2 * 3^41 entries, which overflows a long
+    int edges = 41;
+    ByteBuffer buffer = ByteBuffer.allocate(256).order(ByteOrder.LITTLE_ENDIAN);
+    buffer.put(header).putInt(2).putInt(edges);
+    for (String string : new String[] {"B", "B"}) {
+      buffer.putInt(1).put(string.getBytes(StandardCharsets.UTF_8));
+    }
+    buffer.putInt(2);
+    for (String string : new String[] {"f", "t", "A", "A"}) {
+      buffer.putInt(1).put(string.getBytes(StandardCharsets.UTF_8));
+    }
+    buffer.putInt(3);
+    for (String string : new String[] {"x", "y", "z"}) {
+      buffer.putInt(1).put(string.getBytes(StandardCharsets.UTF_8));
+    }
+    buffer.putInt(0).putInt(edges).putInt(edges);
+    for (int e = 0; e < edges; e++) {
+      buffer.putInt(1);
+    }
+    buffer.position(buffer.position() + (-buffer.position() & 7));
+    Files.write(path, Arrays.copyOf(buffer.array(), buffer.position()));
+    try {
+      ModelFile.read(path);
+      fail("Expected an IOException");
+    } catch (IOException e) {
+      assertThat(e.getMessage(), equalTo(path + " is corrupt: the CPT of variable B has too many entries"));
+    }
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void test_rejects_incomplete_networks () throws IOException {
+    network.newVariable("X");
+    ModelFile.write(network, folder.newFile().toPath());
+  }
+}
@@ -0,0 +1,158 @@
+package org.devoware.bayesian.prototype;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertThat;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.StringReader;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.common.base.Joiner;
+import com.google.common.collect.ImmutableList;
+
+public class ModelImporterTest {
+
+  // The sprinkler network with its states listed true first, plus a three-state variable T whose
+  // entries are all distinct so that the order of its table is checked
+  private static final String BIF = Joiner.on('\n').join(
+      "// The sprinkler network",
+      "network sprinkler {",
+      "  property author \"test\";",
+      "}",
+      "variable C {",
+      "  type discrete [ 2 ] { true, false };",
+      "  property position = (1, 2);",
+      "}",
+      "variable S { type discrete [ 2 ] { true, false }; }",
+      "variable R { type discrete [ 2 ] { true, false }; }",
+      "variable W { type discrete [ 2 ] { true, false }; }",
+      "variable T { type discrete [ 3 ] { low, mid, high }; }",
+      "probability ( C ) {",
+      "  table 0.5, 0.5;",
+      "}",
+      "probability ( S | C ) {",
+      "  (true) 0.1, 0.9;",
+      "  (false) 0.5, 0.5;",
+      "}",
+      "probability ( R | C ) {",
+      "  default 0.2, 0.8;",
+      "  (true) 0.8, 0.2;",
+      "}",
+      "probability ( W | S, R ) {",
+      "  (true, true) 0.99, 0.01;",
+      "  (true, false) 0.9, 0.1;",
+      "  (false, true) 0.9, 0.1;",
+      "  (false, false) 0.0, 1.0;",
+      "}",
+      "/* the table lists T slowest and S fastest */",
+      "probability ( T | C, S ) {",
+      "  table 0.1, 0.3, 0.5, 0.6,",
+      "        0.2, 0.3, 0.4, 0.3,",
+      "        0.7, 0.4, 0.1, 0.1;",
+      "}");
+
+  private static final String XMLBIF = Joiner.on('\n').join(
+      "<?xml version=\"1.0\"?>",
+      "<BIF VERSION=\"0.3\">",
+      "<NETWORK>",
+      "<NAME>sprinkler</NAME>",
+      "<VARIABLE TYPE=\"nature\"><NAME>C</NAME><OUTCOME>true</OUTCOME><OUTCOME>false</OUTCOME>",
+      "  <PROPERTY>position = (1, 2)</PROPERTY></VARIABLE>",
+      "<VARIABLE TYPE=\"nature\"><NAME>S</NAME><OUTCOME>true</OUTCOME><OUTCOME>false</OUTCOME></VARIABLE>",
+      "<VARIABLE TYPE=\"nature\"><NAME>R</NAME><OUTCOME>true</OUTCOME><OUTCOME>false</OUTCOME></VARIABLE>",
+      "<VARIABLE TYPE=\"nature\"><NAME>W</NAME><OUTCOME>true</OUTCOME><OUTCOME>false</OUTCOME></VARIABLE>",
+      "<VARIABLE TYPE=\"nature\"><NAME>T</NAME><OUTCOME>low</OUTCOME><OUTCOME>mid</OUTCOME><OUTCOME>high</OUTCOME></VARIABLE>",
+      "<DEFINITION><FOR>C</FOR><TABLE>0.5 0.5</TABLE></DEFINITION>",
+      "<DEFINITION><FOR>S</FOR><GIVEN>C</GIVEN><TABLE>0.1 0.9 0.5 0.5</TABLE></DEFINITION>",
+      "<DEFINITION><FOR>R</FOR><GIVEN>C</GIVEN><TABLE>0.8 0.2 0.2 0.8</TABLE></DEFINITION>",
+      "<DEFINITION><FOR>W</FOR><GIVEN>S</GIVEN><GIVEN>R</GIVEN>",
+      "  <TABLE>0.99 0.01 0.9 0.1 <!-- S false --> 0.9 0.1 0.0 1.0</TABLE></DEFINITION>",
+      "<DEFINITION><FOR>T</FOR><GIVEN>C</GIVEN><GIVEN>S</GIVEN>",
+      "  <TABLE>0.1 0.2 0.7 0.3 0.3 0.4 0.5 0.4 0.1 0.6 0.3 0.1</TABLE></DEFINITION>",
+      "</NETWORK>",
+      "</BIF>");
+
+  private static final String HUGIN = Joiner.on('\n').join(
+      "% The sprinkler network",
+      "net {",
+      "  node_size = (80 40);",
+      "}",
+      "node C { label = \"Cloudy\"; position = (10 20); states = (\"true\" \"false\"); }",
+      "node S { label = \"Sprinkler\"; states = (\"true\" \"false\"); }",
+      "node R { label = \"Raining\"; states = (\"true\" \"false\"); }",
+      "discrete node W { label = \"Wet Grass\"; states = (\"true\" \"false\"); }",
+      "node T { states = (\"low\" \"mid\" \"high\"); }",
+      "potential ( C ) { data = ( 0.5 0.5 ); }",
+      "potential ( S | C ) { data = (( 0.1 0.9 ) ( 0.5 0.5 )); }",
+      "potential ( R | C ) { data = (( 0.8 0.2 ) ( 0.2 0.8 )); }",
+      "potential ( W | S R ) {",
+      "  data = ((( 0.99 0.01 ) ( 0.9 0.1 )) % S true",
+      "          (( 0.9 0.1 ) ( 0.0 1.0 ))); % S false",
+      "}",
+      "potential ( T | C S ) {",
+      "  data = ((( 0.1 0.2 0.7 ) ( 0.3 0.3 0.4 )) (( 0.5 0.4 0.1 ) ( 0.6 0.3 0.1 )));",
+      "}");
+
+  private Network network;
+
+  @Before
+  public void setup () {
+    network = TestNetworks.sprinkler();
+  }
+
+  @Test
+  public void test_bif () throws IOException {
+    assertMatches(BifImporter.read(new StringReader(BIF)));
+  }
+
+  @Test
+  public void test_xmlbif () throws IOException {
+    assertMatches(XmlBifImporter.read(new ByteArrayInputStream(XMLBIF.getBytes(UTF_8))));
+  }
+
+  @Test
+  public void test_hugin () throws IOException {
+    Network loaded = HuginImporter.read(new StringReader(HUGIN));
+    assertMatches(loaded);
+    assertThat(loaded.getVariable("W").getLabel(), equalTo("Wet Grass"));
+    assertThat(loaded.getVariable("T").getLabel(), equalTo("T"));
+  }
+
+  @Test(expected = IOException.class)
+  public void test_bif_rejects_undeclared_variables () throws IOException {
+    BifImporter.read(new StringReader(BIF.replace("probability ( C )", "probability ( X )")));
+  }
+
+  @Test(expected = IOException.class)
+  public void test_bif_rejects_missing_rows () throws IOException {
+    BifImporter.read(new StringReader(BIF.replace("(false, false) 0.0, 1.0;", "")));
+  }
+
+  @Test(expected = IOException.class)
+  public void test_xmlbif_rejects_short_tables () throws IOException {
+    XmlBifImporter.read(new ByteArrayInputStream(XMLBIF.replace("0.8 0.2 0.2 0.8", "0.8 0.2 0.2").getBytes(UTF_8)));
+  }
+
+  @Test(expected = IOException.class)
+  public void test_hugin_rejects_missing_potentials () throws IOException {
+    HuginImporter.read(new StringReader(HUGIN.replace("potential ( C ) { data = ( 0.5 0.5 ); }", "")));
+  }
+
+  private void assertMatches(Network loaded) {
+    assertThat(ImmutableList.copyOf(loaded.getVariable("W").getParents()).toString(), equalTo("[S, R]"));
+    assertThat(loaded.getVariable("T").getStates(), equalTo(ImmutableList.of("low", "mid", "high")));
+    assertEquals(network.query("P(R|W)"), loaded.query("P(R=true|W=true)"), 1e-12);
+    assertEquals(network.query("P(C|~S,W)"), loaded.query("P(C=true|S=false,W=true)"), 1e-12);
+
+    ConditionalProbabilityTable cpt = loaded.getVariable("T").getCpt();
+    assertThat(cpt.get("P(T=high|C=true,S=true)"), equalTo(0.7));
+    assertThat(cpt.get("P(T=mid|C=true,S=false)"), equalTo(0.3));
+    assertThat(cpt.get("P(T=low|C=false,S=true)"), equalTo(0.5));
+    assertThat(cpt.get("P(T=high|C=false,S=false)"), equalTo(0.1));
+  }
+}
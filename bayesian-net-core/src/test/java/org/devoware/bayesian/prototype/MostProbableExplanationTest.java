@@ -0,0 +1,110 @@
+package org.devoware.bayesian.prototype;
+
+import static org.devoware.bayesian.prototype.TestNetworks.randomNetwork;
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertThat;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Random;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+
+public class MostProbableExplanationTest {
+
+  private Network network;
+
+  @Before
+  public void setup () {
+    network = TestNetworks.sprinkler();
+  }
+
+  @Test
+  public void test_most_probable_explanation () {
+    Explanation explanation = network.mostProbableExplanation(ImmutableMap.of("W", "true"));
+    assertThat(explanation.getAssignment(), equalTo(ImmutableMap.of("C", "true", "S", "false", "R", "true")));
+    assertEquals(network.query("P(C,~S,R|W)"), explanation.getProbability(), 1e-12);
+    assertEquals(bestProbability(network, ImmutableList.of("C", "S", "R"), ImmutableMap.of("W", "true")),
+        explanation.getProbability(), 1e-12);
+  }
+
+  @Test
+  public void test_maximum_a_posteriori () {
+    Map<String, String> evidence = ImmutableMap.of("W", "true");
+    Explanation explanation = network.maximumAPosteriori(ImmutableList.of("S", "W"), evidence);
+    assertThat(explanation.getAssignment(), equalTo(ImmutableMap.of("S", "false", "W", "true")));
+    assertEquals(network.query("P(~S|W)"), explanation.getProbability(), 1e-12);
+    assertEquals(bestProbability(network, ImmutableList.of("S"), evidence), explanation.getProbability(), 1e-12);
+  }
+
+  @Test
+  public void test_matches_enumeration_on_random_networks () {
+    Random random = new Random(17);
+    for (NumericMode mode : new NumericMode[] {NumericMode.DOUBLE, NumericMode.LOG_SPACE}) {
+      for (int n = 0; n < 5; n++) {
+        Network network = randomNetwork(random, 9, 3);
+        network.setNumericMode(mode);
+        Map<String, String> evidence = ImmutableMap.of("X" + (5 + random.nextInt(4)), String.valueOf(random.nextBoolean()));
+        List<String> unobserved = Lists.newArrayList();
+        for (int i = 0; i < 9; i++) {
+          if (!evidence.containsKey("X" + i)) {
+            unobserved.add("X" + i);
+          }
+        }
+        Explanation mpe = network.mostProbableExplanation(evidence);
+        assertEquals(bestProbability(network, unobserved, evidence), mpe.getProbability(), 1e-12);
+        assertEquals(network.query(toExpression(mpe.getAssignment(), evidence)), mpe.getProbability(), 1e-12);
+
+        List<String> subset = ImmutableList.of(unobserved.get(0), unobserved.get(3), unobserved.get(6));
+        Explanation map = network.maximumAPosteriori(subset, evidence);
+        assertEquals(bestProbability(network, subset, evidence), map.getProbability(), 1e-12);
+        assertEquals(network.query(toExpression(map.getAssignment(), evidence)), map.getProbability(), 1e-12);
+      }
+    }
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void test_impossible_evidence () {
+    network.getVariable("W").getCpt().put("P(W|~S,R)", 0.0);
+    network.mostProbableExplanation(ImmutableMap.of("W", "true", "S", "false"));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void test_unknown_variable () {
+    network.maximumAPosteriori(ImmutableList.of("X"), ImmutableMap.of());
+  }
+
+  // Finds the largest posterior probability of any joint state of the variables by enumeration
+  private static double bestProbability(Network network, List<String> ids, Map<String, String> evidence) {
+    double best = 0.0;
+    for (int row = 0; row < (1 << ids.size()); row++) {
+      Map<String, String> assignment = Maps.newLinkedHashMap();
+      for (int j = 0; j < ids.size(); j++) {
+        assignment.put(ids.get(j), String.valueOf((row & (1 << j)) != 0));
+      }
+      best = Math.max(best, network.query(toExpression(assignment, evidence)));
+    }
+    return best;
+  }
+
+  private static String toExpression(Map<String, String> hypotheses, Map<String, String> evidence) {
+    StringBuilder buf = new StringBuilder("P(");
+    for (Entry<String, String> entry : hypotheses.entrySet()) {
+      buf.append(buf.length() > 2 ? "," : "").append(entry.getKey()).append("=").append(entry.getValue());
+    }
+    String separator = "|";
+    for (Entry<String, String> entry : evidence.entrySet()) {
+      buf.append(separator).append(entry.getKey()).append("=").append(entry.getValue());
+      separator = ",";
+    }
+    return buf.append(")").toString();
+  }
+}
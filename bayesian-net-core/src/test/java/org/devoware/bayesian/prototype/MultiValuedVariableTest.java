@@ -0,0 +1,152 @@
+package org.devoware.bayesian.prototype;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.List;
+
+import org.devoware.bayesian.prototype.expr.ProbabilityExpression;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.common.collect.ImmutableList;
+
+public class MultiValuedVariableTest {
+
+  private Network network;
+  private RandomVariable season;
+  private RandomVariable weather;
+  private RandomVariable umbrella;
+
+  @Before
+  public void setup () {
+    network = new Network();
+
+    season = network.newVariable("Season", "Season", ImmutableList.of("winter", "spring", "summer", "fall"));
+    weather = network.newVariable("Weather", "Weather", ImmutableList.of("sun", "rain", "snow"));
+    umbrella = network.newVariable("U", "Umbrella");
+
+    season.addChild(weather);
+    weather.addChild(umbrella);
+
+    season.getCpt().put("P(Season=winter)", 0.25);
+    season.getCpt().put("P(Season=spring)", 0.25);
+    season.getCpt().put("P(Season=summer)", 0.25);
+    season.getCpt().put("P(Season=fall)", 0.25);
+
+    putRow(weather, "Season=winter", 0.2, 0.3, 0.5);
+    putRow(weather, "Season=spring", 0.5, 0.4, 0.1);
+    putRow(weather, "Season=summer", 0.8, 0.2, 0.0);
+    putRow(weather, "Season=fall", 0.4, 0.5, 0.1);
+
+    umbrella.getCpt().put("P(U|Weather=sun)", 0.1);
+    umbrella.getCpt().put("P(U|Weather=rain)", 0.9);
+    umbrella.getCpt().put("P(U|Weather=snow)", 0.5);
+  }
+
+  @Test
+  public void test_parse_state_terms () {
+    ProbabilityExpression expr = network.parse("P(Weather=rain|Season=winter,~U)");
+    assertThat(expr.getHypothesisState("Weather"), equalTo("rain"));
+    assertThat(expr.getEvidenceState("Season"), equalTo("winter"));
+    assertThat(expr.getEvidenceState("U"), equalTo("false"));
+    assertFalse(expr.isBoolean());
+    assertThat(network.parse(expr.toString()), equalTo(expr));
+    assertThat(weather.getCpt().get("P(Weather=rain|Season=winter)"), equalTo(0.3));
+  }
+
+  @Test
+  public void test_cpt_requires_every_state () {
+    Network network = new Network();
+    RandomVariable weather = network.newVariable("Weather", "Weather", ImmutableList.of("sun", "rain", "snow"));
+    weather.getCpt().put("P(Weather=sun)", 0.5);
+    weather.getCpt().put("P(Weather=rain)", 0.3);
+    assertFalse(weather.getCpt().hasAllRequiredProbabilities());
+    weather.getCpt().put("P(Weather=snow)", 0.2);
+    assertTrue(weather.getCpt().hasAllRequiredProbabilities());
+    assertThat(weather.getCpt().expressions().size(), equalTo(3));
+  }
+
+  @Test
+  public void test_exact_engines_agree () {
+    for (NumericMode mode : NumericMode.values()) {
+      for (InferenceAlgorithm algorithm : InferenceAlgorithm.values()) {
+        network.setNumericMode(mode);
+        network.setInferenceAlgorithm(algorithm);
+        String setting = mode + " " + algorithm;
+        assertEquals(setting, 0.35, network.query("P(Weather=rain)"), 1e-12);
+        assertEquals(setting, 0.45, network.query("P(U)"), 1e-12);
+        assertEquals(setting, 0.3, network.query("P(Season=winter|U)"), 1e-12);
+        assertEquals(setting, 0.0, network.query("P(Weather=snow|Season=summer)"), 1e-12);
+        assertEquals(setting, 0.0, network.query("P(Weather=snow|Weather=sun)"), 1e-12);
+      }
+    }
+  }
+
+  @Test
+  public void test_marginals_sum_to_one () {
+    network.setEvidence("U", true);
+    double total = 0.0;
+    for (String state : season.getStates()) {
+      total += season.getProbability(state);
+    }
+    assertEquals(1.0, total, 1e-12);
+    assertEquals(0.3, season.getProbability("winter"), 1e-12);
+
+    List<Double> marginals = network.queryAll(ImmutableList.of("P(Weather=sun|~U)", "P(Weather=rain|~U)", "P(Weather=snow|~U)"));
+    assertEquals(1.0, marginals.get(0) + marginals.get(1) + marginals.get(2), 1e-12);
+  }
+
+  @Test
+  public void test_prepared_query_with_states () {
+    PreparedQuery query = network.prepare("P(U|Season=winter)");
+    assertEquals(network.query("P(U|Season=summer)"), query.execute("summer"), 1e-12);
+    assertEquals(network.query("P(U|Season=winter)"), query.execute(), 1e-12);
+  }
+
+  @Test
+  public void test_approximate_engines_agree () {
+    double expected = network.query("P(Season=winter|U)");
+    Estimate weighted = LikelihoodWeighting.builder().withSeed(5).withPrecision(0.005).build()
+        .estimate(network, "P(Season=winter|U)");
+    assertEquals(expected, weighted.getValue(), 0.02);
+    ChainEstimate gibbs = GibbsSampler.builder().withSeed(5).build().estimate(network, "P(Season=winter|U)");
+    assertEquals(expected, gibbs.getValue(), 0.02);
+    // The network is a tree, so belief propagation is exact
+    assertEquals(expected, LoopyBeliefPropagation.builder().build().query(network, "P(Season=winter|U)"), 1e-8);
+  }
+
+  @Test
+  public void test_rows_must_sum_to_one () {
+    weather.getCpt().put("P(Weather=snow|Season=fall)", 0.3);
+    try {
+      network.query("P(Weather=sun)");
+      fail("Expected an IllegalStateException");
+    } catch (IllegalStateException e) {
+      assertThat(e.getMessage(), equalTo("The probabilities of variable Weather given Season=fall sum to 1.2 rather than 1.0"));
+    }
+    // A row may pass through unnormalized values while it is edited one entry at a time
+    weather.getCpt().put("P(Weather=rain|Season=fall)", 0.3);
+    assertEquals(0.475, network.query("P(Weather=sun)"), 1e-12);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void test_unknown_state () {
+    network.query("P(Weather=hail)");
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void test_boolean_probability_of_multi_valued_variable () {
+    weather.getProbability();
+  }
+
+  private static void putRow(RandomVariable var, String evidence, double... probabilities) {
+    for (int i = 0; i < probabilities.length; i++) {
+      var.getCpt().put("P(" + var.getId() + "=" + var.getStates().get(i) + "|" + evidence + ")", probabilities[i]);
+    }
+  }
+}
@@ -0,0 +1,127 @@
+package org.devoware.bayesian.prototype;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+import java.util.Random;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.common.collect.ImmutableList;
+
+public class NetworkBuilderTest {
+
+  private Network network;
+
+  @Before
+  public void setup () {
+    network = TestNetworks.sprinkler();
+  }
+
+  @Test
+  public void test_build () {
+    Network built = sprinklerBuilder().build();
+
+    assertThat(built.getVariable("W").getLabel(), equalTo("Wet Grass"));
+    assertThat(ImmutableList.copyOf(built.getVariable("W").getParents()).toString(), equalTo("[S, R]"));
+    assertThat(ImmutableList.copyOf(built.getVariable("C").getChildren()).toString(), equalTo("[S, R]"));
+    assertThat(built.getVariable("W").getCpt().get("P(W|S,~R)"), equalTo(0.9));
+    assertThat(built.query("P(R|W)"), equalTo(network.query("P(R|W)")));
+    assertThat(built.query("P(C|~S,W)"), equalTo(network.query("P(C|~S,W)")));
+  }
+
+  @Test
+  public void test_built_network_can_be_extended () {
+    Network built = Network.builder()
+        .withVariable("C", "Cloudy")
+        .withVariable("R", "Raining")
+        .withEdge("C", "R")
+        .withCpt("C", new double[] {0.5, 0.5})
+        .build();
+    assertThat(built.getVariable("R").getCpt().hasAllRequiredProbabilities(), equalTo(false));
+    built.getVariable("R").getCpt().put("P(R|C)", 0.8);
+    built.getVariable("R").getCpt().put("P(R|~C)", 0.2);
+
+    RandomVariable wetGrass = built.newVariable("W", "Wet Grass");
+    built.getVariable("R").addChild(wetGrass);
+    wetGrass.getCpt().put("P(W|R)", 0.9);
+    wetGrass.getCpt().put("P(W|~R)", 0.1);
+    assertEquals(0.5 * 0.8 * 0.9, built.query("P(C,R,W)"), 1e-12);
+  }
+
+  @Test
+  public void test_build_large_network () {
+    Random random = new Random(5);
+    NetworkBuilder builder = Network.builder();
+    int n = 2000;
+    for (int v = 0; v < n; v++) {
+      builder.withVariable("X" + v);
+    }
+    for (int v = 0; v < n; v++) {
+      int rows = 1;
+      for (int i = 1; i <= 3 && v - i * 7 >= 0; i++) {
+        builder.withEdge("X" + (v - i * 7), "X" + v);
+        rows *= 2;
+      }
+      double[] values = new double[2 * rows];
+      for (int row = 0; row < rows; row++) {
+        values[2 * row + 1] = random.nextDouble();
+        values[2 * row] = 1.0 - values[2 * row + 1];
+      }
+      builder.withCpt("X" + v, values);
+    }
+    Network built = builder.build();
+    assertThat(built.getEdges().size(), equalTo(3 * n - 3 * 7 - 2 * 7 - 7));
+    assertThat(built.getVariable("X1999").getCpt().hasAllRequiredProbabilities(), equalTo(true));
+  }
+
+  @Test(expected = NetworkCycleException.class)
+  public void test_rejects_cycles () {
+    sprinklerBuilder().withEdge("W", "C").build();
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void test_rejects_unknown_variables () {
+    Network.builder().withVariable("C").withEdge("C", "X");
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void test_rejects_duplicate_variables () {
+    Network.builder().withVariable("C").withVariable("C");
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void test_rejects_cpts_of_the_wrong_size () {
+    sprinklerBuilder().withCpt("W", new double[] {0.5, 0.5}).build();
+  }
+
+  @Test
+  public void test_rejects_rows_that_do_not_sum_to_one () {
+    try {
+      sprinklerBuilder().withCpt("W", new double[] {1.0, 0.0, 0.1, 0.9, 0.2, 0.9, 0.01, 0.99}).build();
+      fail("Expected an IllegalArgumentException");
+    } catch (IllegalArgumentException e) {
+      assertThat(e.getMessage(), equalTo("The probabilities of variable W given S=false, R=true sum to 1.1 rather than 1.0"));
+    }
+  }
+
+  // The sprinkler network, with each CPT given as row * 2 + state and state 1 standing for true
+  private static NetworkBuilder sprinklerBuilder() {
+    return Network.builder()
+        .withVariable("C", "Cloudy")
+        .withVariable("S", "Sprinkler")
+        .withVariable("R", "Raining")
+        .withVariable("W", "Wet Grass")
+        .withEdge("C", "S")
+        .withEdge("C", "R")
+        .withEdge("S", "W")
+        .withEdge("R", "W")
+        .withCpt("C", new double[] {0.5, 0.5})
+        .withCpt("S", new double[] {0.5, 0.5, 0.9, 0.1})
+        .withCpt("R", new double[] {0.8, 0.2, 0.2, 0.8})
+        .withCpt("W", new double[] {1.0, 0.0, 0.1, 0.9, 0.1, 0.9, 0.01, 0.99});
+  }
+}
@@ -0,0 +1,94 @@
+package org.devoware.bayesian.prototype;
+
+import static org.devoware.bayesian.prototype.TestNetworks.randomNetwork;
+import static org.devoware.bayesian.prototype.TestNetworks.randomQuery;
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertThat;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.common.collect.Lists;
+
+public class NetworkSnapshotTest {
+
+  private Network network;
+
+  @Before
+  public void setup () {
+    network = TestNetworks.sprinkler();
+  }
+
+  @Test
+  public void test_snapshot_ignores_later_changes () {
+    NetworkSnapshot snapshot = network.freeze();
+    assertThat(network.freeze(), sameInstance(snapshot));
+
+    network.getVariable("C").getCpt().put("P(C)", 0.3);
+    network.setNumericMode(NumericMode.DECIMAL);
+
+    assertThat(round(snapshot.query("P(C)"), 1), equalTo(new BigDecimal("0.5")));
+    assertThat(snapshot.getNumericMode(), equalTo(NumericMode.DOUBLE));
+    assertThat(round(network.freeze().query("P(C)"), 1), equalTo(new BigDecimal("0.3")));
+    assertThat(round(snapshot.query("P(S|W)"), 3), equalTo(new BigDecimal("0.430")));
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void test_freeze_requires_complete_cpts () {
+    network.newVariable("X");
+    network.freeze();
+  }
+
+  @Test
+  public void test_concurrent_queries () throws Exception {
+    network = randomNetwork(new Random(23), 25, 3);
+    for (InferenceAlgorithm algorithm : InferenceAlgorithm.values()) {
+      network.setInferenceAlgorithm(algorithm);
+      NetworkSnapshot snapshot = network.freeze();
+      Random random = new Random(29);
+      List<String> queries = Lists.newArrayList();
+      List<Double> expected = Lists.newArrayList();
+      for (int q = 0; q < 50; q++) {
+        String query = randomQuery(random, 25);
+        queries.add(query);
+        expected.add(snapshot.query(query));
+      }
+      PreparedQuery prepared = snapshot.prepare(queries.get(0));
+
+      ExecutorService executor = Executors.newFixedThreadPool(8);
+      try {
+        List<Future<?>> futures = Lists.newArrayList();
+        for (int t = 0; t < 8; t++) {
+          int offset = t;
+          futures.add(executor.submit(() -> {
+            for (int i = 0; i < 200; i++) {
+              int q = (i + offset) % queries.size();
+              assertEquals(queries.get(q), expected.get(q), snapshot.query(queries.get(q)), 1e-12);
+              assertEquals(expected.get(0), prepared.execute(), 1e-12);
+            }
+            return null;
+          }));
+        }
+        for (Future<?> future : futures) {
+          future.get();
+        }
+      } finally {
+        executor.shutdown();
+      }
+    }
+  }
+
+  private static BigDecimal round(double value, int scale) {
+    return new BigDecimal(value).setScale(scale, RoundingMode.HALF_UP);
+  }
+}
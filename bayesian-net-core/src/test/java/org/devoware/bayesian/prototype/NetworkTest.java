@@ -9,6 +9,7 @@ import java.math.BigDecimal;
 import java.math.RoundingMode;
 import java.util.Map;
 
+import org.devoware.bayesian.prototype.expr.ProbabilityExpression;
 import org.junit.Before;
 import org.junit.Test;
 
@@ -187,6 +188,27 @@ public class NetworkTest {
   }
 
 
+  @Test
+  public void test_typed_query() {
+    ProbabilityExpression expr = ProbabilityExpression.builder()
+        .withHypothesis(sprinkler, true)
+        .withEvidence(wetGrass, true)
+        .withEvidence(cloudy, false)
+        .build();
+    assertThat(expr, equalTo(network.parse("P(S|W,~C)")));
+    assertThat(network.query(expr), equalTo(network.query("P(S|W,~C)")));
+
+    ProbabilityExpression entry = ProbabilityExpression.builder().withHypothesis(raining, "true").withEvidence(cloudy, "false").build();
+    raining.getCpt().put(entry, 0.3);
+    assertThat(raining.getCpt().get("P(R|~C)"), equalTo(0.3));
+    assertThat(raining.getCpt().get("P(~R|~C)"), equalTo(0.7));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void test_typed_query_rejects_unknown_state() {
+    ProbabilityExpression.builder().withHypothesis(sprinkler, "on");
+  }
+
   @Test
   public void test_evidence() {
     NetworkListener listener = new NetworkListener();
@@ -0,0 +1,65 @@
+package org.devoware.bayesian.prototype;
+
+import static org.devoware.bayesian.prototype.TestNetworks.randomNetwork;
+import static org.devoware.bayesian.prototype.TestNetworks.randomQuery;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+import com.google.common.collect.ImmutableList;
+
+public class NumericModeTest {
+
+  @Test
+  public void test_modes_agree_on_random_networks () {
+    Random random = new Random(3);
+    for (int n = 0; n < 3; n++) {
+      Network network = randomNetwork(random, 10, 3);
+      for (int q = 0; q < 10; q++) {
+        String query = randomQuery(random, 10);
+        network.setNumericMode(NumericMode.DECIMAL);
+        double expected = network.query(query);
+        // The exact algorithms; loopy belief propagation is approximate on these loopy networks
+        for (InferenceAlgorithm algorithm : ImmutableList.of(InferenceAlgorithm.VARIABLE_ELIMINATION, InferenceAlgorithm.JUNCTION_TREE)) {
+          network.setInferenceAlgorithm(algorithm);
+          network.setNumericMode(NumericMode.DOUBLE);
+          assertEquals(query, expected, network.query(query), 1e-12);
+          network.setNumericMode(NumericMode.LOG_SPACE);
+          assertEquals(query, expected, network.query(query), 1e-12);
+        }
+      }
+    }
+  }
+
+  @Test
+  public void test_log_space_does_not_underflow () {
+    Network network = new Network();
+    RandomVariable root = network.newVariable("X");
+    root.getCpt().put("P(X)", 0.3);
+    StringBuilder query = new StringBuilder("P(X|");
+    for (int i = 0; i < 500; i++) {
+      RandomVariable child = network.newVariable("Y" + i);
+      root.addChild(child);
+      child.getCpt().put("P(Y" + i + "|X)", 0.2);
+      child.getCpt().put("P(Y" + i + "|~X)", 0.2);
+      query.append(i == 0 ? "" : ",").append("Y" + i);
+    }
+    query.append(")");
+
+    network.setNumericMode(NumericMode.LOG_SPACE);
+    assertEquals(0.3, network.query(query.toString()), 1e-9);
+    network.setInferenceAlgorithm(InferenceAlgorithm.JUNCTION_TREE);
+    assertEquals(0.3, network.query(query.toString()), 1e-9);
+
+    network.setNumericMode(NumericMode.DOUBLE);
+    try {
+      network.query(query.toString());
+      fail("Expected the evidence to underflow in double precision");
+    } catch (IllegalArgumentException e) {
+      // expected
+    }
+  }
+}
@@ -0,0 +1,71 @@
+package org.devoware.bayesian.prototype;
+
+import static org.devoware.bayesian.prototype.TestNetworks.randomNetwork;
+import static org.devoware.bayesian.prototype.TestNetworks.randomQuery;
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertThat;
+
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import org.devoware.bayesian.prototype.expr.ProbabilityExpression;
+import org.junit.Test;
+
+public class ParallelEnumerationTest {
+
+  @Test
+  public void test_parallel_results_match_sequential_results_exactly () {
+    Random random = new Random(37);
+    Network network = ladder(random, 16);
+    NetworkSnapshot snapshot = network.freeze();
+    ForkJoinPool pool = new ForkJoinPool(4);
+    try {
+      Inferencer sequential = Inferencer.create(snapshot, null);
+      Inferencer parallel = Inferencer.create(snapshot, pool);
+      Inferencer common = Inferencer.create(snapshot, ForkJoinPool.commonPool());
+      VariableElimination expected = VariableElimination.create(snapshot);
+      for (int q = 0; q < 10; q++) {
+        // Observing the last variable makes every variable requisite, so the work is split into tasks
+        ProbabilityExpression expr = network.parse(q == 0 ? "P(X0|X15)" : randomQuery(random, 16));
+        double result = sequential.query(expr);
+        assertThat(expr.toString(), parallel.query(expr), equalTo(result));
+        assertThat(expr.toString(), common.query(expr), equalTo(result));
+        assertEquals(expr.toString(), expected.query(expr), result, 1e-9);
+      }
+    } finally {
+      pool.shutdown();
+    }
+  }
+
+  @Test
+  public void test_network_setting_reaches_decimal_queries () {
+    Network network = randomNetwork(new Random(41), 16, 3);
+    network.setNumericMode(NumericMode.DECIMAL);
+    double sequential = network.query("P(X0|X15)");
+
+    network.setEnumerationPool(ForkJoinPool.commonPool());
+    assertThat(network.freeze().getEnumerationPool(), sameInstance(ForkJoinPool.commonPool()));
+    assertThat(network.query("P(X0|X15)"), equalTo(sequential));
+  }
+
+  // Each variable depends on the two before it
+  private static Network ladder(Random random, int size) {
+    Network network = new Network();
+    for (int i = 0; i < size; i++) {
+      RandomVariable var = network.newVariable("X" + i);
+      for (int p = Math.max(0, i - 2); p < i; p++) {
+        network.getVariable("X" + p).addChild(var);
+      }
+    }
+    for (RandomVariable var : network.getVariables()) {
+      for (ProbabilityExpression expr : var.getCpt().expressions()) {
+        if (expr.getHypothesis(var.getId())) {
+          var.getCpt().put(expr, Math.round(5 + random.nextDouble() * 90) / 100.0);
+        }
+      }
+    }
+    return network;
+  }
+}
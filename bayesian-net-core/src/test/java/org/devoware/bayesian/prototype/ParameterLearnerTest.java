@@ -0,0 +1,154 @@
+package org.devoware.bayesian.prototype;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.common.base.Joiner;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+
+public class ParameterLearnerTest {
+
+  private Network network;
+
+  @Before
+  public void setup () {
+    network = TestNetworks.sprinkler();
+  }
+
+  @Test
+  public void test_recovers_the_cpts_from_samples () {
+    List<boolean[]> rows = sample(network, 200000, new Random(3));
+    Network learned = TestNetworks.sprinklerStructure();
+    long count = ParameterLearner.builder().withParallelism(4).build().learn(learned, rows.iterator());
+
+    assertThat(count, equalTo(200000L));
+    for (RandomVariable var : network.getVariables()) {
+      double[] expected = var.getCpt().getValues();
+      double[] actual = learned.getVariable(var.getId()).getCpt().getValues();
+      assertArrayEquals(var.getId(), expected, actual, 0.01);
+    }
+    assertEquals(network.query("P(R|W)"), learned.query("P(R|W)"), 0.01);
+  }
+
+  @Test
+  public void test_counts_do_not_depend_on_parallelism () {
+    List<boolean[]> rows = sample(network, 30000, new Random(8));
+    Network sequential = TestNetworks.sprinklerStructure();
+    Network parallel = TestNetworks.sprinklerStructure();
+    ParameterLearner.builder().withPseudoCount(1.0).build().learn(sequential, rows.iterator());
+    ParameterLearner.builder().withPseudoCount(1.0).withParallelism(3).build().learn(parallel, rows.iterator());
+    for (RandomVariable var : sequential.getVariables()) {
+      assertArrayEquals(var.getCpt().getValues(), parallel.getVariable(var.getId()).getCpt().getValues(), 0.0);
+    }
+  }
+
+  @Test
+  public void test_maximum_likelihood_and_smoothing () {
+    // C, S, R, W
+    List<boolean[]> rows = ImmutableList.of(
+        new boolean[] {true, false, true, true},
+        new boolean[] {true, false, true, false},
+        new boolean[] {true, true, false, true},
+        new boolean[] {false, false, false, false});
+
+    Network learned = TestNetworks.sprinklerStructure();
+    ParameterLearner.builder().build().learn(learned, rows.iterator());
+    assertThat(learned.getVariable("C").getCpt().get("P(C)"), equalTo(0.75));
+    assertEquals(1.0 / 3.0, learned.getVariable("S").getCpt().get("P(S|C)"), 1e-15);
+    assertThat(learned.getVariable("W").getCpt().get("P(W|~S,R)"), equalTo(0.5));
+    // No row has both S and R, so that row is uniform
+    assertThat(learned.getVariable("W").getCpt().get("P(W|S,R)"), equalTo(0.5));
+
+    ParameterLearner.builder().withPseudoCount(1.0).build().learn(learned, rows.iterator());
+    assertThat(learned.getVariable("C").getCpt().get("P(C)"), equalTo(4.0 / 6.0));
+    assertThat(learned.getVariable("W").getCpt().get("P(W|S,~R)"), equalTo(2.0 / 3.0));
+  }
+
+  @Test
+  public void test_learn_csv () throws IOException {
+    String csv = Joiner.on('\n').join(
+        "Id, W, R, S, C",
+        "1, true, true, false, true",
+        "2, false, true, false, true",
+        "",
+        "3, true, false, true, true",
+        "4, false, false, false, false");
+    Network learned = TestNetworks.sprinklerStructure();
+    long count = ParameterLearner.builder().withParallelism(2).build().learnCsv(learned, new StringReader(csv));
+
+    assertThat(count, equalTo(4L));
+    assertThat(learned.getVariable("C").getCpt().get("P(C)"), equalTo(0.75));
+    assertThat(learned.getVariable("R").getCpt().get("P(R|C)"), equalTo(2.0 / 3.0));
+  }
+
+  @Test
+  public void test_learn_states () {
+    Network learned = new Network();
+    RandomVariable season = learned.newVariable("Season", "Season", ImmutableList.of("winter", "summer"));
+    RandomVariable weather = learned.newVariable("Weather", "Weather", ImmutableList.of("sun", "rain", "snow"));
+    season.addChild(weather);
+    List<int[]> rows = ImmutableList.of(new int[] {0, 2}, new int[] {0, 1}, new int[] {1, 0}, new int[] {0, 2});
+
+    ParameterLearner.builder().build().learnStates(learned, rows.iterator());
+    assertThat(season.getCpt().get("P(Season=winter)"), equalTo(0.75));
+    assertThat(weather.getCpt().get("P(Weather=snow|Season=winter)"), equalTo(2.0 / 3.0));
+    assertThat(weather.getCpt().get("P(Weather=sun|Season=summer)"), equalTo(1.0));
+  }
+
+  @Test(expected = IOException.class)
+  public void test_csv_rejects_unknown_states () throws IOException {
+    String csv = "C,S,R,W\ntrue,false,maybe,true";
+    ParameterLearner.builder().build().learnCsv(TestNetworks.sprinklerStructure(), new StringReader(csv));
+  }
+
+  @Test(expected = IOException.class)
+  public void test_csv_requires_every_variable () throws IOException {
+    String csv = "C,S,R\ntrue,false,true";
+    ParameterLearner.builder().build().learnCsv(TestNetworks.sprinklerStructure(), new StringReader(csv));
+  }
+
+  @Test
+  public void test_bad_rows_leave_the_network_unchanged () {
+    List<boolean[]> rows = Lists.newArrayList(sample(network, 10000, new Random(1)));
+    rows.add(new boolean[] {true, false});
+    Network learned = TestNetworks.sprinklerStructure();
+    try {
+      ParameterLearner.builder().withParallelism(2).build().learn(learned, rows.iterator());
+      fail("Expected the short row to be rejected");
+    } catch (IllegalArgumentException e) {
+      assertThat(e.getMessage(), equalTo("Row 10001: Expected 4 values but found 2"));
+    }
+    assertThat(learned.getVariable("C").getCpt().hasAllRequiredProbabilities(), equalTo(false));
+  }
+
+  // Draws rows from the sprinkler network, whose variables are created in topological order
+  private static List<boolean[]> sample(Network network, int count, Random random) {
+    List<RandomVariable> vars = Lists.newArrayList(network.getVariables());
+    List<boolean[]> rows = Lists.newArrayListWithCapacity(count);
+    for (int n = 0; n < count; n++) {
+      boolean[] row = new boolean[vars.size()];
+      for (int v = 0; v < vars.size(); v++) {
+        int cptRow = 0;
+        int bit = 0;
+        for (RandomVariable parent : vars.get(v).getParents()) {
+          cptRow |= (row[vars.indexOf(parent)] ? 1 : 0) << bit++;
+        }
+        row[v] = random.nextDouble() < vars.get(v).getCpt().getProbability(cptRow, 1);
+      }
+      rows.add(row);
+    }
+    return rows;
+  }
+}
@@ -0,0 +1,134 @@
+package org.devoware.bayesian.prototype;
+
+import static org.devoware.bayesian.prototype.TestNetworks.randomNetwork;
+import static org.devoware.bayesian.prototype.TestNetworks.randomQuery;
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertThat;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.devoware.bayesian.prototype.expr.ProbabilityExpression;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Maps;
+
+public class PreparedQueryTest {
+
+  private Network network;
+
+  @Before
+  public void setup () {
+    network = TestNetworks.sprinkler();
+    // Otherwise the prepared queries would be answered from the results of the queries they are checked against
+    network.setQueryCacheSize(0);
+  }
+
+  @Test
+  public void test_execute_with_new_evidence () {
+    PreparedQuery query = network.prepare("P(R|W,C)");
+    assertThat(query.getEvidenceIds(), equalTo(ImmutableList.of("W", "C")));
+
+    assertEquals(network.query("P(R|W,C)"), query.execute(), 1e-12);
+    assertEquals(network.query("P(R|W,~C)"), query.execute(true, false), 1e-12);
+    assertEquals(network.query("P(R|~W,~C)"), query.execute(false, false), 1e-12);
+    assertEquals(network.query("P(R|~W,C)"), query.execute(ImmutableMap.of("C", true, "W", false)), 1e-12);
+    assertThat(round(query.execute(true, true), 4), equalTo(new BigDecimal("0.9758")));
+  }
+
+  @Test
+  public void test_repeated_hypotheses () {
+    PreparedQuery query = network.prepare("P(C,R|C)");
+    assertEquals(network.query("P(C,R|C)"), query.execute(true), 1e-12);
+    assertThat(query.execute(false), equalTo(0.0));
+
+    query = network.prepare("P(C|C)");
+    assertThat(query.execute(true), equalTo(1.0));
+    assertThat(query.execute(false), equalTo(0.0));
+  }
+
+  @Test
+  public void test_replans_after_model_changes () {
+    PreparedQuery query = network.prepare("P(C)");
+    assertThat(round(query.execute(), 1), equalTo(new BigDecimal("0.5")));
+
+    network.getVariable("C").getCpt().put("P(C)", 0.3);
+    assertThat(round(query.execute(), 1), equalTo(new BigDecimal("0.3")));
+
+    network.setNumericMode(NumericMode.DECIMAL);
+    assertThat(round(query.execute(), 1), equalTo(new BigDecimal("0.3")));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void test_evidence_must_match_the_prepared_variables () {
+    network.prepare("P(R|W,C)").execute(ImmutableMap.of("W", true, "S", false));
+  }
+
+  @Test
+  public void test_matches_network_query_on_random_networks () {
+    Random random = new Random(17);
+    for (int n = 0; n < 5; n++) {
+      network = randomNetwork(random, 25, 3);
+      network.setQueryCacheSize(0);
+      for (int q = 0; q < 20; q++) {
+        ProbabilityExpression expr = network.parse(randomQuery(random, 25));
+        PreparedQuery query = network.prepare(expr);
+        List<String> evidenceIds = query.getEvidenceIds();
+        for (int k = 0; k < 4; k++) {
+          Map<String, Boolean> evidence = Maps.newHashMap();
+          ProbabilityExpression.Builder builder = ProbabilityExpression.builder();
+          for (Map.Entry<String, Boolean> entry : expr.getHypothesesMap().entrySet()) {
+            builder.withHypothesis(entry.getKey(), entry.getValue());
+          }
+          for (String id : evidenceIds) {
+            boolean value = random.nextBoolean();
+            evidence.put(id, value);
+            builder.withEvidence(id, value);
+          }
+          ProbabilityExpression expected = builder.build();
+          assertEquals(expected.toString(), network.query(expected.toString()), query.execute(evidence), 1e-12);
+        }
+      }
+    }
+  }
+
+  @Test
+  public void test_follows_the_inference_algorithm () {
+    PreparedQuery query = network.prepare("P(R|W,~S)");
+    for (InferenceAlgorithm algorithm : InferenceAlgorithm.values()) {
+      network.setInferenceAlgorithm(algorithm);
+      for (NumericMode mode : NumericMode.values()) {
+        network.setNumericMode(mode);
+        assertThat(algorithm + " " + mode, query.execute(), equalTo(network.query("P(R|W,~S)")));
+        assertThat(algorithm + " " + mode, query.execute(false, true), equalTo(network.query("P(R|~W,S)")));
+      }
+    }
+  }
+
+  @Test
+  public void test_results_go_through_the_query_cache () {
+    network.setQueryCacheSize(16);
+    PreparedQuery query = network.prepare("P(R|W)");
+    query.execute();
+    assertThat(network.getQueryCacheStats().missCount(), equalTo(1L));
+    query.execute(true);
+    assertThat(network.getQueryCacheStats().hitCount(), equalTo(1L));
+    network.query("P(R|W)");
+    assertThat(network.getQueryCacheStats().hitCount(), equalTo(2L));
+    query.execute(false);
+    assertThat(network.getQueryCacheStats().missCount(), equalTo(2L));
+    assertThat(network.query("P(R|~W)"), equalTo(query.execute(false)));
+    assertThat(network.getQueryCacheStats().hitCount(), equalTo(4L));
+  }
+
+  private static BigDecimal round(double value, int scale) {
+    return new BigDecimal(value).setScale(scale, RoundingMode.HALF_UP);
+  }
+}
@@ -0,0 +1,61 @@
+package org.devoware.bayesian.prototype;
+
+import static org.devoware.bayesian.prototype.TestNetworks.randomNetwork;
+import static org.devoware.bayesian.prototype.TestNetworks.randomQuery;
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertThat;
+
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+
+public class QueryAllTest {
+
+  private Network network;
+
+  @Before
+  public void setup () {
+    network = TestNetworks.sprinkler();
+  }
+
+  @Test
+  public void test_results_follow_expression_order () {
+    List<String> queries = ImmutableList.of("P(R|W,C)", "P(S|W)", "P(S|W,C)", "P(C|~C)", "P(W)", "P(S,R|W,C)");
+    for (NumericMode mode : NumericMode.values()) {
+      network.setNumericMode(mode);
+      List<Double> results = network.queryAll(queries);
+      assertThat(results.size(), equalTo(queries.size()));
+      for (int i = 0; i < queries.size(); i++) {
+        assertEquals(mode + " " + queries.get(i), network.query(queries.get(i)), results.get(i), 1e-12);
+      }
+    }
+  }
+
+  @Test
+  public void test_matches_individual_queries_on_random_networks () {
+    Random random = new Random(31);
+    for (int n = 0; n < 5; n++) {
+      network = randomNetwork(random, 25, 3);
+      List<String> queries = Lists.newArrayList();
+      for (int q = 0; q < 30; q++) {
+        String query = randomQuery(random, 25);
+        queries.add(query);
+        // Repeat the evidence of some queries with other hypotheses so that groups form
+        int bar = query.indexOf('|');
+        if (bar > 0) {
+          queries.add("P(X" + random.nextInt(25) + query.substring(bar));
+        }
+      }
+      List<Double> results = network.queryAll(queries);
+      for (int i = 0; i < queries.size(); i++) {
+        assertEquals(queries.get(i), network.query(queries.get(i)), results.get(i), 1e-9);
+      }
+    }
+  }
+}
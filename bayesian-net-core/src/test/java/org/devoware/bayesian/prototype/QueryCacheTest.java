@@ -0,0 +1,103 @@
+package org.devoware.bayesian.prototype;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertThat;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.common.collect.ImmutableList;
+
+public class QueryCacheTest {
+
+  private Network network;
+
+  @Before
+  public void setup () {
+    network = TestNetworks.sprinkler();
+  }
+
+  @Test
+  public void test_repeated_queries_hit_the_cache () {
+    double first = network.query("P(R|W,C)");
+    assertThat(network.getQueryCacheStats().missCount(), equalTo(1L));
+
+    assertThat(network.query("P(R | C, W)"), equalTo(first));
+    assertThat(network.getQueryCacheStats().hitCount(), equalTo(1L));
+
+    List<Double> results = network.queryAll(ImmutableList.of("P(R|W,C)", "P(S|W,C)"));
+    assertThat(results.get(0), equalTo(first));
+    assertThat(network.getQueryCacheStats().hitCount(), equalTo(2L));
+    assertThat(network.query("P(S|W,C)"), equalTo(results.get(1)));
+    assertThat(network.getQueryCacheStats().hitCount(), equalTo(3L));
+  }
+
+  @Test
+  public void test_cpt_changes_invalidate_the_cache () {
+    assertThat(round(network.query("P(C)"), 1), equalTo(new BigDecimal("0.5")));
+    network.getVariable("C").getCpt().put("P(C)", 0.3);
+    assertThat(round(network.query("P(C)"), 1), equalTo(new BigDecimal("0.3")));
+    assertThat(network.getQueryCacheStats().hitCount(), equalTo(0L));
+  }
+
+  @Test
+  public void test_new_edges_invalidate_the_cache () {
+    network.query("P(S)");
+    RandomVariable x = network.newVariable("X");
+    network.getVariable("S").addChild(x);
+    x.getCpt().put("P(X|S)", 0.7);
+    x.getCpt().put("P(X|~S)", 0.2);
+    network.query("P(S)");
+    assertThat(network.getQueryCacheStats().hitCount(), equalTo(0L));
+
+    network.query("P(S)");
+    assertThat(network.getQueryCacheStats().hitCount(), equalTo(1L));
+  }
+
+  @Test
+  public void test_least_recently_used_entries_are_evicted () {
+    network.setQueryCacheSize(2);
+    network.query("P(C)");
+    network.query("P(S)");
+    network.query("P(C)");
+    network.query("P(R)");
+    assertThat(network.getQueryCacheStats().evictionCount(), equalTo(1L));
+
+    network.query("P(C)");
+    assertThat(network.getQueryCacheStats().hitCount(), equalTo(2L));
+    network.query("P(S)");
+    assertThat(network.getQueryCacheStats().missCount(), equalTo(4L));
+  }
+
+  @Test
+  public void test_disabled_cache_matches_cached_results () {
+    double cached = network.query("P(S|W)");
+    network.setQueryCacheSize(0);
+    assertEquals(cached, network.query("P(S|W)"), 1e-15);
+    assertEquals(cached, network.query("P(S|W)"), 1e-15);
+    assertThat(network.getQueryCacheStats().hitCount(), equalTo(0L));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void test_failed_queries_are_not_cached () {
+    network.getVariable("W").getCpt().put("P(W|S,R)", 0.0);
+    network.getVariable("W").getCpt().put("P(W|S,~R)", 0.0);
+    network.getVariable("W").getCpt().put("P(W|~S,R)", 0.0);
+    network.setNumericMode(NumericMode.DECIMAL);
+    try {
+      network.query("P(S|W)");
+    } finally {
+      assertThat(network.getQueryCacheStats().loadExceptionCount(), equalTo(1L));
+      assertThat(network.getQueryCacheStats().hitCount(), equalTo(0L));
+    }
+  }
+
+  private static BigDecimal round(double value, int scale) {
+    return new BigDecimal(value).setScale(scale, RoundingMode.HALF_UP);
+  }
+}
@@ -0,0 +1,84 @@
+package org.devoware.bayesian.prototype;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+import java.util.Set;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+
+public class QueryPrunerTest {
+
+  private Network network;
+
+  private RandomVariable cloudy;
+  private RandomVariable sprinkler;
+  private RandomVariable raining;
+  private RandomVariable wetGrass;
+
+  @Before
+  public void setup () {
+    network = TestNetworks.sprinklerStructure();
+
+    cloudy = network.getVariable("C");
+    sprinkler = network.getVariable("S");
+    raining = network.getVariable("R");
+    wetGrass = network.getVariable("W");
+  }
+
+  @Test
+  public void test_barren_nodes_are_pruned () {
+    assertThat(requisite("C"), equalTo(ImmutableSet.of(cloudy)));
+    assertThat(requisite("S"), equalTo(ImmutableSet.of(cloudy, sprinkler)));
+    assertThat(requisite("S,R"), equalTo(ImmutableSet.of(cloudy, sprinkler, raining)));
+    assertThat(requisite("W"), equalTo(ImmutableSet.of(cloudy, sprinkler, raining, wetGrass)));
+  }
+
+  @Test
+  public void test_d_separated_nodes_are_pruned () {
+    assertThat(requisite("R", "C"), equalTo(ImmutableSet.of(raining)));
+    assertThat(requisite("S", "C"), equalTo(ImmutableSet.of(sprinkler)));
+    assertThat(requisite("W", "S,R"), equalTo(ImmutableSet.of(wetGrass)));
+    assertThat(requisite("S", "C,W"), equalTo(ImmutableSet.of(sprinkler, raining, wetGrass)));
+    assertThat(requisite("C", "W"), equalTo(ImmutableSet.of(cloudy, sprinkler, raining, wetGrass)));
+  }
+
+  @Test
+  public void test_impossible_evidence_is_rejected_when_pruned () {
+    // W is d-separated from C by S and R, but the grass is never wet when neither holds
+    assertThat(requisite("C", "W,S,R"), equalTo(ImmutableSet.of(cloudy, sprinkler, raining)));
+
+    Network network = TestNetworks.sprinkler();
+    String query = "P(C|W,~S,~R)";
+    for (NumericMode mode : NumericMode.values()) {
+      network.setNumericMode(mode);
+      try {
+        network.query(query);
+        fail("Expected the evidence to be rejected in " + mode + " mode");
+      } catch (IllegalArgumentException e) {
+        assertThat(e.getMessage(), equalTo("The evidence specified in " + network.parse(query) + " has a probability of zero"));
+      }
+    }
+    ImmutableMap<String, String> evidence = ImmutableMap.of("W", "true", "S", "false", "R", "false");
+    try {
+      network.mostProbableExplanation(evidence);
+      fail("Expected the evidence to be rejected");
+    } catch (IllegalArgumentException e) {
+      assertThat(e.getMessage(), equalTo("The evidence " + evidence + " has a probability of zero"));
+    }
+  }
+
+  private Set<RandomVariable> requisite(String query) {
+    return requisite(query, "");
+  }
+
+  private Set<RandomVariable> requisite(String query, String evidence) {
+    return QueryPruner.requisiteVariables(network, ImmutableSet.copyOf(query.split(",")),
+        evidence.isEmpty() ? ImmutableSet.of() : ImmutableSet.copyOf(evidence.split(",")));
+  }
+}
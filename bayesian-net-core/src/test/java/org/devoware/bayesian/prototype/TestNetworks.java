@@ -0,0 +1,102 @@
+package org.devoware.bayesian.prototype;
+
+import java.util.List;
+import java.util.Random;
+
+import com.google.common.collect.Lists;
+
+// Networks shared by the tests
+public class TestNetworks {
+
+  // The cloudy/sprinkler/rain/wet grass network
+  public static Network sprinkler() {
+    Network network = sprinklerStructure();
+
+    network.getVariable("C").getCpt().put("P(C)", 0.5);
+
+    network.getVariable("S").getCpt().put("P(S|C)", 0.1);
+    network.getVariable("S").getCpt().put("P(S|~C)", 0.5);
+
+    network.getVariable("R").getCpt().put("P(R|C)", 0.8);
+    network.getVariable("R").getCpt().put("P(R|~C)", 0.2);
+
+    network.getVariable("W").getCpt().put("P(W|S,R)", 0.99);
+    network.getVariable("W").getCpt().put("P(W|S,~R)", 0.9);
+    network.getVariable("W").getCpt().put("P(W|~S,R)", 0.9);
+    network.getVariable("W").getCpt().put("P(W|~S,~R)", 0.0);
+    return network;
+  }
+
+  // The structure of the sprinkler network, without its probabilities
+  public static Network sprinklerStructure() {
+    Network network = new Network();
+
+    RandomVariable cloudy = network.newVariable("C", "Cloudy");
+    RandomVariable sprinkler = network.newVariable("S", "Sprinkler");
+    RandomVariable raining = network.newVariable("R", "Raining");
+    RandomVariable wetGrass = network.newVariable("W", "Wet Grass");
+
+    cloudy.addChild(sprinkler);
+    cloudy.addChild(raining);
+    sprinkler.addChild(wetGrass);
+    raining.addChild(wetGrass);
+    return network;
+  }
+
+  public static Network randomNetwork(Random random, int size, int maxParents) {
+    Network network = new Network();
+    List<RandomVariable> vars = Lists.newArrayList();
+    for (int i = 0; i < size; i++) {
+      vars.add(network.newVariable("X" + i));
+    }
+    for (int i = 1; i < size; i++) {
+      int parents = random.nextInt(Math.min(i, maxParents) + 1);
+      for (int p = 0; p < parents; p++) {
+        RandomVariable parent = vars.get(random.nextInt(i));
+        if (!vars.get(i).getParents().contains(parent)) {
+          parent.addChild(vars.get(i));
+        }
+      }
+    }
+    for (RandomVariable var : vars) {
+      List<RandomVariable> parents = Lists.newArrayList(var.getParents());
+      for (int row = 0; row < (1 << parents.size()); row++) {
+        StringBuilder buf = new StringBuilder("P(").append(var.getId());
+        for (int j = 0; j < parents.size(); j++) {
+          buf.append(j == 0 ? "|" : ",");
+          if ((row & (1 << j)) == 0) {
+            buf.append("~");
+          }
+          buf.append(parents.get(j).getId());
+        }
+        buf.append(")");
+        var.getCpt().put(buf.toString(), Math.round(5 + random.nextDouble() * 90) / 100.0);
+      }
+    }
+    return network;
+  }
+
+  public static String randomQuery(Random random, int size) {
+    List<Integer> vars = Lists.newArrayList();
+    int count = 1 + random.nextInt(4);
+    while (vars.size() < count) {
+      int var = random.nextInt(size);
+      if (!vars.contains(var)) {
+        vars.add(var);
+      }
+    }
+    int hypotheses = 1 + random.nextInt(count);
+    StringBuilder buf = new StringBuilder("P(");
+    for (int i = 0; i < vars.size(); i++) {
+      if (i > 0) {
+        buf.append(i == hypotheses ? "|" : ",");
+      }
+      buf.append(random.nextBoolean() ? "" : "~").append("X").append(vars.get(i));
+    }
+    buf.append(")");
+    return buf.toString();
+  }
+
+  private TestNetworks() {}
+
+}
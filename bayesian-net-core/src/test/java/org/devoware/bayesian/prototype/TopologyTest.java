@@ -0,0 +1,135 @@
+package org.devoware.bayesian.prototype;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.Test;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+
+public class TopologyTest {
+
+  @Test
+  public void test_bulk_and_incremental_construction_agree () {
+    Random random = new Random(3);
+    int n = 30;
+    int[] edgeParents = new int[60];
+    int[] edgeChildren = new int[60];
+    Topology.Builder builder = Topology.builder();
+    for (int v = 0; v < n; v++) {
+      builder.withVariable();
+    }
+    for (int e = 0; e < edgeParents.length; e++) {
+      int child = 1 + random.nextInt(n - 1);
+      edgeParents[e] = random.nextInt(child);
+      edgeChildren[e] = child;
+      builder.withEdge(edgeParents[e], edgeChildren[e]);
+    }
+    Topology incremental = builder.build();
+    Topology bulk = Topology.create(n, edgeParents, edgeChildren);
+
+    assertThat(bulk.size(), equalTo(n));
+    assertThat(bulk.getEdgeCount(), equalTo(edgeParents.length));
+    assertThat(incremental.getEdgeCount(), equalTo(edgeParents.length));
+    for (int v = 0; v < n; v++) {
+      assertThat(parents(incremental, v), equalTo(parents(bulk, v)));
+      assertThat(children(incremental, v), equalTo(children(bulk, v)));
+      for (int i = 0; i < bulk.getParentCount(v); i++) {
+        assertTrue(bulk.hasEdge(bulk.getParent(v, i), v));
+      }
+    }
+    assertThat(builder.build(), sameInstance(incremental));
+
+    Topology.Builder copy = Topology.builder(bulk);
+    assertThat(copy.build(), sameInstance(bulk));
+    copy.withVariable().withEdge(0, n);
+    Topology grown = copy.build();
+    assertThat(grown.size(), equalTo(n + 1));
+    assertThat(parents(grown, n), equalTo(ImmutableList.of(0)));
+    assertThat(children(grown, 0), equalTo(ImmutableList.<Integer>builder().addAll(children(bulk, 0)).add(n).build()));
+    assertThat(bulk.getChildCount(0), equalTo(children(bulk, 0).size()));
+  }
+
+  @Test
+  public void test_reaches () {
+    Topology.Builder builder = Topology.builder();
+    for (int v = 0; v < 4; v++) {
+      builder.withVariable();
+    }
+    builder.withEdge(0, 1).withEdge(1, 2).withEdge(0, 3);
+    assertTrue(builder.reaches(0, 2));
+    assertTrue(builder.reaches(1, 2));
+    assertFalse(builder.reaches(2, 0));
+    assertFalse(builder.reaches(3, 1));
+  }
+
+  @Test
+  public void test_views_keep_their_edges_as_rows_grow () {
+    Network network = new Network();
+    RandomVariable a = network.newVariable("A");
+    List<RandomVariable> children = Lists.newArrayList();
+    Set<RandomVariable> before = a.getChildren();
+    for (int i = 0; i < 20; i++) {
+      RandomVariable child = network.newVariable("C" + i);
+      a.addChild(child);
+      children.add(child);
+      assertThat(ImmutableList.copyOf(a.getChildren()), equalTo(children));
+    }
+    assertThat(before.size(), equalTo(0));
+    assertThat(ImmutableList.copyOf(children.get(19).getParents()), equalTo(ImmutableList.of(a)));
+  }
+
+  @Test
+  public void test_network_views_follow_edge_order () {
+    Network network = new Network();
+    RandomVariable a = network.newVariable("A");
+    RandomVariable b = network.newVariable("B");
+    RandomVariable c = network.newVariable("C");
+    c.addChild(a);
+    b.addChild(a);
+    c.addChild(a);
+
+    assertThat(ImmutableList.copyOf(a.getParents()), equalTo(ImmutableList.of(c, b)));
+    assertTrue(a.getParents().contains(b));
+    assertFalse(a.getParents().contains(a));
+    assertFalse(a.getParents().contains(new Network().newVariable("B")));
+    assertTrue(c.hasChildren());
+    assertFalse(a.hasChildren());
+    assertThat(network.getEdges().size(), equalTo(2));
+  }
+
+  @Test(expected = NetworkCycleException.class)
+  public void test_network_rejects_cycles () {
+    Network network = new Network();
+    RandomVariable a = network.newVariable("A");
+    RandomVariable b = network.newVariable("B");
+    RandomVariable c = network.newVariable("C");
+    a.addChild(b);
+    b.addChild(c);
+    c.addChild(a);
+  }
+
+  private static List<Integer> parents(Topology topology, int var) {
+    List<Integer> parents = Lists.newArrayList();
+    for (int i = 0; i < topology.getParentCount(var); i++) {
+      parents.add(topology.getParent(var, i));
+    }
+    return parents;
+  }
+
+  private static List<Integer> children(Topology topology, int var) {
+    List<Integer> children = Lists.newArrayList();
+    for (int i = 0; i < topology.getChildCount(var); i++) {
+      children.add(topology.getChild(var, i));
+    }
+    return children;
+  }
+}
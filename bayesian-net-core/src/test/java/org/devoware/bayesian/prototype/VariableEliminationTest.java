@@ -0,0 +1,73 @@
+package org.devoware.bayesian.prototype;
+
+import static org.devoware.bayesian.prototype.TestNetworks.randomNetwork;
+import static org.devoware.bayesian.prototype.TestNetworks.randomQuery;
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertThat;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.Random;
+
+import org.devoware.bayesian.prototype.EliminationOrder.Heuristic;
+import org.junit.Before;
+import org.junit.Test;
+
+public class VariableEliminationTest {
+
+  private Network network;
+
+  @Before
+  public void setup () {
+    network = TestNetworks.sprinkler();
+  }
+
+  @Test
+  public void test_query () {
+    VariableElimination engine = VariableElimination.create(network);
+
+    assertThat(round(engine.query("P(S|W)"), 3), equalTo(new BigDecimal("0.430")));
+    assertThat(round(engine.query("P(R|W)"), 3), equalTo(new BigDecimal("0.708")));
+    assertThat(round(engine.query("P(S,W)"), 4), equalTo(new BigDecimal("0.2781")));
+    assertThat(round(engine.query("P(R,W)"), 4), equalTo(new BigDecimal("0.4581")));
+    assertThat(round(engine.query("P(W)"), 4), equalTo(new BigDecimal("0.6471")));
+    assertThat(round(engine.query("P(W|R)"), 4), equalTo(new BigDecimal("0.9162")));
+    assertThat(round(engine.query("P(W|S)"), 4), equalTo(new BigDecimal("0.9270")));
+    assertThat(round(engine.query("P(W|~R)"), 4), equalTo(new BigDecimal("0.3780")));
+    assertThat(round(engine.query("P(W|~S)"), 4), equalTo(new BigDecimal("0.5271")));
+    assertThat(round(engine.query("P(W|S,~R)"), 1), equalTo(new BigDecimal("0.9")));
+    assertThat(round(engine.query("P(C)"), 1), equalTo(new BigDecimal("0.5")));
+    assertThat(round(engine.query("P(C|C)"), 1), equalTo(new BigDecimal("1.0")));
+    assertThat(round(engine.query("P(C|~C)"), 1), equalTo(new BigDecimal("0.0")));
+  }
+
+  @Test
+  public void test_matches_enumeration_on_random_networks () {
+    Random random = new Random(42);
+    for (int n = 0; n < 5; n++) {
+      network = randomNetwork(random, 10, 3);
+      Inferencer inferencer = Inferencer.create(network);
+      VariableElimination minFill = VariableElimination.create(network, Heuristic.MIN_FILL);
+      VariableElimination minDegree = VariableElimination.create(network, Heuristic.MIN_DEGREE);
+      for (int q = 0; q < 10; q++) {
+        String query = randomQuery(random, 10);
+        double expected = inferencer.query(query);
+        assertEquals(query, expected, minFill.query(query), 1e-4);
+        assertEquals(query, expected, minDegree.query(query), 1e-4);
+      }
+    }
+  }
+
+  @Test
+  public void test_large_network () {
+    Random random = new Random(7);
+    network = randomNetwork(random, 60, 2);
+    double sum = network.query("P(X59|X0)") + network.query("P(~X59|X0)");
+    assertEquals(1.0, sum, 1e-9);
+  }
+
+  private static BigDecimal round(double value, int scale) {
+    return new BigDecimal(value).setScale(scale, RoundingMode.HALF_UP);
+  }
+}
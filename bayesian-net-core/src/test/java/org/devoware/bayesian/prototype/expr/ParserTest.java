@@ -1,12 +1,16 @@
 package org.devoware.bayesian.prototype.expr;
 
 import static org.hamcrest.CoreMatchers.equalTo;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
 
 import org.devoware.bayesian.prototype.Network;
 import org.junit.Before;
 import org.junit.Test;
 
+import com.google.common.collect.ImmutableList;
+
 public class ParserTest {
   private Network network;
 
@@ -49,4 +53,49 @@ public class ParserTest {
   
   }
 
+  @Test
+  public void test_parse_char_sequence() {
+    Parser parser = Parser.create(network);
+    ProbabilityExpression expr = parser.parse(new StringBuilder("P( C , ~S |\n W=true )"));
+    assertThat(expr, equalTo(parser.parse("P(C,~S|W)")));
+    assertThat(expr.hashCode(), equalTo(ProbabilityExpression.builder()
+        .withHypothesis("S", false).withHypothesis("C", true).withEvidence("W", true).build().hashCode()));
+    assertThat(parser.parse("P(R,~R|W)").toString(), equalTo("P(~R|W)"));
+  }
+
+  @Test
+  public void test_words_are_interned() {
+    Parser parser = Parser.create(network);
+    ProbabilityExpression first = parser.parse("P(C|" + new String("W") + ")");
+    ProbabilityExpression second = parser.parse(new StringBuilder("P(C|W)"));
+    assertSame(first.getEvidenceStates().keySet().iterator().next(), second.getEvidenceStates().keySet().iterator().next());
+  }
+
+  @Test
+  public void test_numeric_states() {
+    network.newVariable("Level", "Level", ImmutableList.of("1", "2", "3"));
+    ProbabilityExpression expr = Parser.create(network).parse("P(Level=3|C)");
+    assertThat(expr.getHypothesisState("Level"), equalTo("3"));
+  }
+
+  @Test
+  public void test_variable_ids_begin_with_a_letter() {
+    try {
+      Parser.create(network).parse("P(3X|C)");
+      fail("Expected a LexicalAnalysisException");
+    } catch (LexicalAnalysisException e) {
+      assertThat(e.getMessage(), equalTo("Unexpected character '3' at line 1, character 2"));
+    }
+  }
+
+  @Test
+  public void test_error_position() {
+    try {
+      Parser.create(network).parse("P(C|\n  S,,R)");
+      fail("Expected a SyntaxException");
+    } catch (SyntaxException e) {
+      assertThat(e.getMessage(), equalTo("Syntax error at line 2, character 4: found ',' when expecting a word"));
+    }
+  }
+
 }